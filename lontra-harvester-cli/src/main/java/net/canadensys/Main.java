@@ -49,6 +49,15 @@ public class Main {
 	private static final String EXCLUDE_SHORT_OPTION = "e";
 	private static final String EXCLUDE_OPTION = "exclude";
 
+	private static final String INCLUDE_SHORT_OPTION = "i";
+	private static final String INCLUDE_OPTION = "include";
+
+	private static final String RESUME_SHORT_OPTION = "r";
+	private static final String RESUME_OPTION = "resume";
+
+	private static final String FORCE_SHORT_OPTION = "f";
+	private static final String FORCE_OPTION = "force";
+
 	// migration related options
 	private static final String MIGRATE_SHORT_OPTION = "m";
 	private static final String MIGRATE_OPTION = "migrate";
@@ -70,6 +79,12 @@ public class Main {
 				.build());
 		cmdLineOptions.addOption(new Option(EXCLUDE_SHORT_OPTION, EXCLUDE_OPTION, true,
 				"Location of an exclude file. Only used if -h is specified for a specific resource."));
+		cmdLineOptions.addOption(new Option(INCLUDE_SHORT_OPTION, INCLUDE_OPTION, true,
+				"Location of an include file, only the listed Dwc-A Id will be harvested. Only used if -h is specified for a specific resource."));
+		cmdLineOptions.addOption(new Option(RESUME_SHORT_OPTION, RESUME_OPTION, false,
+				"Resume an interrupted harvest from its last checkpoint. Only used if -h is specified for a specific resource."));
+		cmdLineOptions.addOption(new Option(FORCE_SHORT_OPTION, FORCE_OPTION, false,
+				"Harvest the resource even if its archive was not modified since the last harvest. Only used if -h is specified for a specific resource."));
 		// cmdLineOptions.addOption(new Option(NO_MQ_SHORT_OPTION, NO_MQ_OPTION, false, "Harvest without using a Message Queue"));
 	}
 
@@ -124,11 +139,15 @@ public class Main {
 			else if (cmdLine.hasOption(HARVEST_OPTION)) {
 				String harvestOptionValue = cmdLine.getOptionValue(HARVEST_OPTION);
 				String excludeOptionValue = cmdLine.getOptionValue(EXCLUDE_OPTION);
+				String includeOptionValue = cmdLine.getOptionValue(INCLUDE_OPTION);
 				boolean noMQ = cmdLine.hasOption(NO_MQ_OPTION);
 
 				CliOption cliOption = new CliOption(JobInitiatorMain.CommandType.HARVEST);
 				cliOption.setResourceIdentifier(harvestOptionValue);
 				cliOption.setExclusionFilePath(excludeOptionValue);
+				cliOption.setInclusionFilePath(includeOptionValue);
+				cliOption.setResume(cmdLine.hasOption(RESUME_OPTION));
+				cliOption.setForce(cmdLine.hasOption(FORCE_OPTION));
 
 				if (noMQ) {
 					System.out.println("harvest " + harvestOptionValue + " with no nodes");
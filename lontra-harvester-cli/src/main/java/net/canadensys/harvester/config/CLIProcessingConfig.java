@@ -1,5 +1,6 @@
 package net.canadensys.harvester.config;
 
+import java.io.File;
 import java.util.Properties;
 
 import javax.sql.DataSource;
@@ -46,8 +47,14 @@ import net.canadensys.harvester.jms.JMSWriter;
 import net.canadensys.harvester.jms.control.JMSControlConsumer;
 import net.canadensys.harvester.jms.control.JMSControlProducer;
 import net.canadensys.harvester.main.JobInitiatorMain;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpointStore;
+import net.canadensys.harvester.occurrence.download.DwcaDownloader;
+import net.canadensys.harvester.occurrence.download.HttpValidatorStore;
 import net.canadensys.harvester.occurrence.dao.IPTFeedDAO;
 import net.canadensys.harvester.occurrence.dao.impl.RSSIPTFeedDAO;
+import net.canadensys.harvester.occurrence.filter.DuplicateIdPolicy;
+import net.canadensys.harvester.occurrence.filter.IdSetStorage;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprintStore;
 import net.canadensys.harvester.occurrence.job.ComputeUniqueValueJob;
 import net.canadensys.harvester.occurrence.job.ImportDwcaJob;
 import net.canadensys.harvester.occurrence.job.MoveToPublicSchemaJob;
@@ -59,16 +66,23 @@ import net.canadensys.harvester.occurrence.processor.ResourceMetadataProcessor;
 import net.canadensys.harvester.occurrence.reader.DwcaEmlReader;
 import net.canadensys.harvester.occurrence.reader.DwcaExtensionInfoReader;
 import net.canadensys.harvester.occurrence.reader.DwcaExtensionReader;
+import net.canadensys.harvester.occurrence.reader.DwcaFileSplitter;
 import net.canadensys.harvester.occurrence.reader.DwcaItemReader;
+import net.canadensys.harvester.occurrence.reader.DwcaSnapshotBuilder;
+import net.canadensys.harvester.occurrence.reader.ParallelZipExtractor;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshotStore;
 import net.canadensys.harvester.occurrence.status.ResourceStatusCheckerIF;
 import net.canadensys.harvester.occurrence.status.impl.DefaultResourceStatusChecker;
 import net.canadensys.harvester.occurrence.step.HandleDwcaExtensionsStep;
 import net.canadensys.harvester.occurrence.step.StreamEmlContentStep;
+import net.canadensys.harvester.occurrence.step.SynchronousProcessEmlContentStep;
+import net.canadensys.harvester.occurrence.step.stream.StreamDwcChunkStep;
 import net.canadensys.harvester.occurrence.step.stream.StreamDwcContentStep;
 import net.canadensys.harvester.occurrence.step.stream.StreamDwcExtensionContentStep;
 import net.canadensys.harvester.occurrence.task.CheckHarvestingCompletenessTask;
 import net.canadensys.harvester.occurrence.task.ComputeGISDataTask;
 import net.canadensys.harvester.occurrence.task.ComputeUniqueValueTask;
+import net.canadensys.harvester.occurrence.task.DetectDuplicateIdTask;
 import net.canadensys.harvester.occurrence.task.GetResourceInfoTask;
 import net.canadensys.harvester.occurrence.task.PostProcessOccurrenceTask;
 import net.canadensys.harvester.occurrence.task.PrepareDwcaTask;
@@ -76,9 +90,14 @@ import net.canadensys.harvester.occurrence.task.PublisherNameUpdateTask;
 import net.canadensys.harvester.occurrence.task.RecordImportTask;
 import net.canadensys.harvester.occurrence.task.RemoveDwcaResourceTask;
 import net.canadensys.harvester.occurrence.task.ReplaceOldOccurrenceTask;
+import net.canadensys.harvester.occurrence.task.SnapshotDwcaTask;
+import net.canadensys.harvester.occurrence.task.ValidateDwcaTask;
+import net.canadensys.harvester.occurrence.validation.DuplicateIdDetector;
+import net.canadensys.harvester.occurrence.validation.DwcaFileScanner;
 import net.canadensys.harvester.occurrence.writer.OccurrenceHibernateWriter;
 import net.canadensys.harvester.occurrence.writer.RawOccurrenceHibernateWriter;
 import net.canadensys.harvester.occurrence.writer.ResourceMetadataHibernateWriter;
+import net.canadensys.harvester.reader.PrefetchItemReader;
 
 /**
  * Configuration class using Spring annotations.
@@ -131,6 +150,81 @@ public class CLIProcessingConfig {
 	@Value("${occurrence.extension.idGenerationSQL:}")
 	private String extIdGenerationSQL;
 
+	@Value("${dwca.reader.parallelism:1}")
+	private int dwcaReaderParallelism;
+
+	@Value("${dwca.reader.ordered:true}")
+	private boolean dwcaReaderOrdered;
+
+	@Value("${dwca.reader.mapped:false}")
+	private boolean dwcaReaderMapped;
+
+	@Value("${dwca.reader.prefetch:0}")
+	private int dwcaReaderPrefetch;
+
+	@Value("${dwca.extract:true}")
+	private boolean dwcaExtract;
+
+	@Value("${dwca.extract.parallelism:4}")
+	private int dwcaExtractParallelism;
+
+	@Value("${dwca.idfilter.storage:HEAP}")
+	private IdSetStorage dwcaIdFilterStorage;
+
+	@Value("${dwca.idfilter.bloom:true}")
+	private boolean dwcaIdFilterBloom;
+
+	@Value("${dwca.checkpoint.folder:work/checkpoint}")
+	private String dwcaCheckpointFolder;
+
+	@Value("${dwca.checkpoint.interval:10}")
+	private int dwcaCheckpointInterval;
+
+	@Value("${dwca.validation:false}")
+	private boolean dwcaValidation;
+
+	@Value("${dwca.validation.failOnError:true}")
+	private boolean dwcaValidationFailOnError;
+
+	@Value("${dwca.validation.parallelism:4}")
+	private int dwcaValidationParallelism;
+
+	@Value("${dwca.duplicateIds.detection:false}")
+	private boolean dwcaDuplicateIdsDetection;
+
+	@Value("${dwca.duplicateIds.policy:FAIL}")
+	private DuplicateIdPolicy dwcaDuplicateIdsPolicy;
+
+	@Value("${dwca.duplicateIds.parallelism:4}")
+	private int dwcaDuplicateIdsParallelism;
+
+	@Value("${dwca.snapshot:false}")
+	private boolean dwcaSnapshot;
+
+	@Value("${dwca.snapshot.folder:work/snapshot}")
+	private String dwcaSnapshotFolder;
+
+	@Value("${dwca.chunks:false}")
+	private boolean dwcaChunks;
+
+	@Value("${dwca.chunks.size:16777216}")
+	private long dwcaChunksSize;
+
+	@Value("${occurrence.idRangeSQL:}")
+	private String idRangeSQL;
+
+	@Value("${dwca.download.parallelism:4}")
+	private int dwcaDownloadParallelism;
+
+	@Value("${dwca.download.pipelined:false}")
+	private boolean dwcaDownloadPipelined;
+
+	@Value("${dwca.fingerprint.folder:work/fingerprint}")
+	private String dwcaFingerprintFolder;
+
+	@Value("${dwca.download.validators.folder:work/validators}")
+	private String dwcaDownloadValidatorsFolder;
+
 	@Bean
 	public JobInitiatorMain jobInitiatorMain() {
 		return new JobInitiatorMain();
@@ -138,7 +232,10 @@ public class CLIProcessingConfig {
 
 	@Bean
 	public CLIService jobService() {
-		return new DefaultCLIService();
+		DefaultCLIService cliService = new DefaultCLIService();
+		cliService.setIdSetStorage(dwcaIdFilterStorage);
+		cliService.setIdSetBloomFilter(dwcaIdFilterBloom);
+		return cliService;
 	}
 
 	@Bean(name = "datasource")
@@ -206,7 +303,20 @@ public class CLIProcessingConfig {
 	// ---JOB---
 	@Bean
 	public AbstractProcessingJob importDwcaJob() {
-		return new ImportDwcaJob();
+		ImportDwcaJob importDwcaJob = new ImportDwcaJob();
+		if (dwcaDuplicateIdsDetection) {
+			importDwcaJob.setDetectDuplicateIdTask(detectDuplicateIdTask());
+		}
+		if (dwcaValidation) {
+			importDwcaJob.setValidateDwcaTask(validateDwcaTask());
+		}
+		if (dwcaSnapshot) {
+			importDwcaJob.setSnapshotDwcaTask(snapshotDwcaTask());
+		}
+		if (dwcaChunks) {
+			importDwcaJob.setStreamDwcChunkStep(streamDwcChunkStep());
+		}
+		return importDwcaJob;
 	}
 
 	@Bean
@@ -225,9 +335,33 @@ public class CLIProcessingConfig {
 		return new StreamEmlContentStep();
 	}
 
+	@Bean(name = "synchronousProcessEmlContentStep")
+	public StepIF synchronousProcessEmlContentStep() {
+		return new SynchronousProcessEmlContentStep();
+	}
+
 	@Bean(name = "streamDwcContentStep")
 	public StepIF StreamDwcContentStep() {
-		return new StreamDwcContentStep();
+		StreamDwcContentStep streamDwcContentStep = new StreamDwcContentStep();
+		streamDwcContentStep.setCheckpointInterval(dwcaCheckpointInterval);
+		return streamDwcContentStep;
+	}
+
+	@Bean
+	public StepIF streamDwcChunkStep() {
+		StreamDwcChunkStep streamDwcChunkStep = new StreamDwcChunkStep();
+		DwcaFileSplitter splitter = new DwcaFileSplitter();
+		splitter.setRangeSize(dwcaChunksSize);
+		streamDwcChunkStep.setSplitter(splitter);
+		if (!idRangeSQL.trim().isEmpty()) {
+			streamDwcChunkStep.setIdRangeSQL(idRangeSQL);
+		}
+		return streamDwcChunkStep;
+	}
+
+	@Bean
+	public DwcaCheckpointStore dwcaCheckpointStore() {
+		return new DwcaCheckpointStore(new File(dwcaCheckpointFolder));
 	}
 
 	@Bean
@@ -245,7 +379,65 @@ public class CLIProcessingConfig {
 	// ---TASK wiring---
 	@Bean
 	public ItemTaskIF prepareDwcaTask() {
-		return new PrepareDwcaTask();
+		PrepareDwcaTask prepareDwcaTask = new PrepareDwcaTask();
+		prepareDwcaTask.setExtractArchive(dwcaExtract);
+		prepareDwcaTask.setPipelinedDownload(dwcaDownloadPipelined);
+		DwcaDownloader dwcaDownloader = new DwcaDownloader();
+		dwcaDownloader.setParallelism(dwcaDownloadParallelism);
+		prepareDwcaTask.setDwcaDownloader(dwcaDownloader);
+		ParallelZipExtractor zipExtractor = new ParallelZipExtractor();
+		zipExtractor.setParallelism(dwcaExtractParallelism);
+		prepareDwcaTask.setZipExtractor(zipExtractor);
+		prepareDwcaTask.setValidatorStore(httpValidatorStore());
+		prepareDwcaTask.setFingerprintStore(dwcaFingerprintStore());
+		return prepareDwcaTask;
+	}
+
+	@Bean
+	public HttpValidatorStore httpValidatorStore() {
+		return new HttpValidatorStore(new File(dwcaDownloadValidatorsFolder));
+	}
+
+	@Bean
+	public DwcaFingerprintStore dwcaFingerprintStore() {
+		return new DwcaFingerprintStore(new File(dwcaFingerprintFolder));
+	}
+
+	@Bean
+	public ItemTaskIF detectDuplicateIdTask() {
+		DetectDuplicateIdTask detectDuplicateIdTask = new DetectDuplicateIdTask();
+		DuplicateIdDetector duplicateIdDetector = new DuplicateIdDetector();
+		duplicateIdDetector.setParallelism(dwcaDuplicateIdsParallelism);
+		detectDuplicateIdTask.setDuplicateIdDetector(duplicateIdDetector);
+		detectDuplicateIdTask.setPolicy(dwcaDuplicateIdsPolicy);
+		return detectDuplicateIdTask;
+	}
+
+	@Bean
+	public DwcaSnapshotStore dwcaSnapshotStore() {
+		return new DwcaSnapshotStore(new File(dwcaSnapshotFolder));
+	}
+
+	@Bean
+	public ItemTaskIF snapshotDwcaTask() {
+		SnapshotDwcaTask snapshotDwcaTask = new SnapshotDwcaTask();
+		DwcaSnapshotBuilder snapshotBuilder = new DwcaSnapshotBuilder();
+		snapshotBuilder.setParallelism(dwcaReaderParallelism);
+		snapshotBuilder.setMappedRead(dwcaReaderMapped);
+		snapshotDwcaTask.setSnapshotBuilder(snapshotBuilder);
+		snapshotDwcaTask.setSnapshotStore(dwcaSnapshotStore());
+		return snapshotDwcaTask;
+	}
+
+	@Bean
+	public ItemTaskIF validateDwcaTask() {
+		ValidateDwcaTask validateDwcaTask = new ValidateDwcaTask();
+		DwcaFileScanner dwcaFileScanner = new DwcaFileScanner();
+		dwcaFileScanner.setParallelism(dwcaValidationParallelism);
+		dwcaFileScanner.setIdSetStorage(dwcaIdFilterStorage);
+		validateDwcaTask.setDwcaFileScanner(dwcaFileScanner);
+		validateDwcaTask.setFailOnError(dwcaValidationFailOnError);
+		return validateDwcaTask;
 	}
 
 	@Bean
@@ -328,7 +520,14 @@ public class CLIProcessingConfig {
 	@Bean
 	@Scope("prototype")
 	public ItemReaderIF<OccurrenceRawModel> dwcItemReader() {
-		return new DwcaItemReader();
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.setParallelism(dwcaReaderParallelism);
+		dwcaItemReader.setOrderedRead(dwcaReaderOrdered);
+		dwcaItemReader.setMappedRead(dwcaReaderMapped);
+		if (dwcaReaderPrefetch > 0) {
+			return new PrefetchItemReader<OccurrenceRawModel>(dwcaItemReader, dwcaReaderPrefetch);
+		}
+		return dwcaItemReader;
 	}
 
 	@Bean
@@ -348,6 +547,7 @@ public class CLIProcessingConfig {
 	public ItemReaderIF<OccurrenceExtensionModel> dwcaOccurrenceExtensionReader() {
 		DwcaExtensionReader<OccurrenceExtensionModel> dwcaExtReader = new DwcaExtensionReader<OccurrenceExtensionModel>();
 		dwcaExtReader.setMapper(occurrenceExtensionMapper());
+		dwcaExtReader.setMappedRead(dwcaReaderMapped);
 		return dwcaExtReader;
 	}
 
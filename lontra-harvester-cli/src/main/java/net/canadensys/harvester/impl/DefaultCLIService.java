@@ -18,11 +18,12 @@ import net.canadensys.harvester.AbstractProcessingJob;
 import net.canadensys.harvester.CLIService;
 import net.canadensys.harvester.model.CliOption;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.filter.DwcaIdFilter;
+import net.canadensys.harvester.occurrence.filter.IdSetIF;
+import net.canadensys.harvester.occurrence.filter.IdSetStorage;
 import net.canadensys.harvester.occurrence.model.JobStatusModel;
 import net.canadensys.harvester.occurrence.model.JobStatusModel.JobStatus;
 
-import org.apache.commons.compress.utils.Charsets;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
@@ -49,6 +50,9 @@ public class DefaultCLIService implements CLIService {
 
 	private final JobStatusModel jobStatusModel;
 
+	private IdSetStorage idSetStorage = IdSetStorage.HEAP;
+	private boolean idSetBloomFilter = true;
+
 	public DefaultCLIService() {
 		jobStatusModel = new JobStatusModel();
 		jobStatusModel.addPropertyChangeListener(new JobStatusModelListener());
@@ -100,12 +104,26 @@ public class DefaultCLIService implements CLIService {
 			ExecutorService executor = Executors.newFixedThreadPool(2);
 			importDwcaJob.addToSharedParameters(SharedParameterEnum.RESOURCE_ID, resourceModel.getId());
 
-			// exclusion list handling
-			if (StringUtils.isNotBlank(harvestOption.getExclusionFilePath())) {
-				List<String> exclusionList = loadExclusionList(harvestOption.getExclusionFilePath());
-				if (exclusionList != null && exclusionList.size() > 0) {
-					System.out.println(exclusionList.size() + " Dwc-A Id to exclude");
-					importDwcaJob.addToSharedParameters(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST, exclusionList);
+			// exclusion/inclusion list handling
+			if (harvestOption != null) {
+				IdSetIF exclusionSet = null;
+				IdSetIF inclusionSet = null;
+				if (StringUtils.isNotBlank(harvestOption.getExclusionFilePath())) {
+					exclusionSet = loadExclusionList(harvestOption.getExclusionFilePath());
+					System.out.println(exclusionSet.size() + " Dwc-A Id to exclude");
+				}
+				if (StringUtils.isNotBlank(harvestOption.getInclusionFilePath())) {
+					inclusionSet = loadExclusionList(harvestOption.getInclusionFilePath());
+					System.out.println(inclusionSet.size() + " Dwc-A Id to include");
+				}
+				if (exclusionSet != null || inclusionSet != null) {
+					importDwcaJob.addToSharedParameters(SharedParameterEnum.DWCA_ID_FILTER, new DwcaIdFilter(exclusionSet, inclusionSet));
+				}
+				if (harvestOption.isResume()) {
+					importDwcaJob.addToSharedParameters(SharedParameterEnum.DWCA_RESUME, Boolean.TRUE);
+				}
+				if (harvestOption.isForce()) {
+					importDwcaJob.addToSharedParameters(SharedParameterEnum.DWCA_FORCE_DOWNLOAD, Boolean.TRUE);
 				}
 			}
 
@@ -143,24 +161,67 @@ public class DefaultCLIService implements CLIService {
 	}
 
 	/**
-	 * Load an exclusion list from a file. The list returned will include one element per line in the file.
+	 * Load an exclusion (or inclusion) list from a file. The file is streamed into an id set including one element per
+	 * non empty line in the file.
 	 * 
 	 * @param exclusionFilePath
-	 * @return all lines from the file, never null
+	 * @return the id set, never null
 	 * @throws IOException
 	 */
-	private List<String> loadExclusionList(String exclusionFilePath) throws IOException {
+	private IdSetIF loadExclusionList(String exclusionFilePath) throws IOException {
 		File exclusionFile = new File(exclusionFilePath);
 		if (!exclusionFile.exists()) {
 			throw new FileNotFoundException(exclusionFilePath);
 		}
-		return FileUtils.readLines(exclusionFile, Charsets.UTF_8);
+		return DwcaIdFilter.load(exclusionFile, idSetStorage, idSetBloomFilter);
+	}
+
+	/**
+	 * Set where the exclusion/inclusion id sets are stored. Default is HEAP.
+	 * 
+	 * @param idSetStorage
+	 */
+	public void setIdSetStorage(IdSetStorage idSetStorage) {
+		this.idSetStorage = idSetStorage;
+	}
+
+	/**
+	 * Enable the Bloom filter pre-check on the exclusion/inclusion id sets. Default is true.
+	 * 
+	 * @param idSetBloomFilter
+	 */
+	public void setIdSetBloomFilter(boolean idSetBloomFilter) {
+		this.idSetBloomFilter = idSetBloomFilter;
 	}
 
 	private void onJobCompleted(String jobId, JobStatus jobStatus) {
 
 		// importJob completed
 		if (jobId.equals(importDwcaJob.getJobId()) && JobStatus.DONE.equals(jobStatus)) {
+			// nothing was imported, the public schema is already up to date
+			if (Boolean.TRUE.equals(importDwcaJob.getFromSharedParameters(SharedParameterEnum.DWCA_NOT_MODIFIED))) {
+				System.out.println("Dwc-A not modified since the last harvest, use -f to harvest it anyway");
+				return;
+			}
+			if (Boolean.TRUE.equals(importDwcaJob.getFromSharedParameters(SharedParameterEnum.DWCA_METADATA_ONLY))) {
+				System.out.println("Only the metadata of the Dwc-A was modified since the last harvest, the records are kept");
+				moveToPublicSchemaJob.addToSharedParameters(SharedParameterEnum.DWCA_METADATA_ONLY, Boolean.TRUE);
+			}
+			Object changedExtensions = importDwcaJob.getFromSharedParameters(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS);
+			if (changedExtensions != null) {
+				System.out.println("Only the extension(s) " + changedExtensions
+						+ " of the Dwc-A were modified since the last harvest, the core records are kept");
+				moveToPublicSchemaJob.addToSharedParameters(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS, changedExtensions);
+			}
+			// saved with the import record
+			Object fingerprint = importDwcaJob.getFromSharedParameters(SharedParameterEnum.DWCA_FINGERPRINT);
+			if (fingerprint != null) {
+				moveToPublicSchemaJob.addToSharedParameters(SharedParameterEnum.DWCA_FINGERPRINT, fingerprint);
+			}
+			Object validators = importDwcaJob.getFromSharedParameters(SharedParameterEnum.DWCA_HTTP_VALIDATORS);
+			if (validators != null) {
+				moveToPublicSchemaJob.addToSharedParameters(SharedParameterEnum.DWCA_HTTP_VALIDATORS, validators);
+			}
 			DwcaResourceModel dwcaResourceModel = (DwcaResourceModel) importDwcaJob.getFromSharedParameters(SharedParameterEnum.RESOURCE_MODEL);
 			moveToPublicSchema(dwcaResourceModel);
 		}
@@ -14,6 +14,9 @@ public class CliOption {
 
 	private String resourceIdentifier;
 	private String exclusionFilePath;
+	private String inclusionFilePath;
+	private boolean resume;
+	private boolean force;
 
 	public CliOption(CommandType commandType) {
 		this.commandType = commandType;
@@ -35,6 +38,30 @@ public class CliOption {
 		this.exclusionFilePath = exclusionFilePath;
 	}
 
+	public String getInclusionFilePath() {
+		return inclusionFilePath;
+	}
+
+	public void setInclusionFilePath(String inclusionFilePath) {
+		this.inclusionFilePath = inclusionFilePath;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public boolean isForce() {
+		return force;
+	}
+
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
 	public CommandType getCommandType() {
 		return commandType;
 	}
@@ -0,0 +1,27 @@
+package net.canadensys.harvester;
+
+/**
+ * ItemMapperIF that can also map properties provided as 2 parallel arrays, avoids building a Map for each element.
+ * Readers use the array version when the mapper implements this interface and fall back to the Map version otherwise.
+ * 
+ * @author canadensys
+ * 
+ * @param <T>
+ *            type of returned object
+ */
+public interface ArrayItemMapperIF<T> extends ItemMapperIF<T> {
+
+	/**
+	 * Map properties provided as 2 parallel arrays.
+	 * The same names array instance is usually provided for all the elements of a source so implementations can cache
+	 * what they compute from it (compared by identity).
+	 * Implementations must not keep a reference to the values array, it can be reused by the caller.
+	 * 
+	 * @param names
+	 *            property names, must not be modified
+	 * @param values
+	 *            property values, same length as names
+	 * @return
+	 */
+	public T mapElement(String[] names, Object[] values);
+}
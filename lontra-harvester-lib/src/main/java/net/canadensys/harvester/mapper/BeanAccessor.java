@@ -0,0 +1,336 @@
+package net.canadensys.harvester.mapper;
+
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.MappedPropertyDescriptor;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Get and set the properties of a bean class through method handles resolved once, instead of the introspection and
+ * converter lookup done by BeanUtils on each call.
+ * The result is the same as BeanUtils.setProperty: values that need a conversion (e.g. a String set on an Integer
+ * property, null set on a number that BeanUtils converts to 0) and property names with a nested, indexed or mapped
+ * syntax on an existing property are delegated to BeanUtils, other unknown properties are ignored.
+ * Properties read as String are converted like BeanUtils.getProperty.
+ * Use {@link #forClass(Class)} to share the accessor of a class.
+ * This class is immutable and thread safe.
+ *
+ * @author canadensys
+ *
+ * @param <T>
+ */
+public class BeanAccessor<T> {
+	private static final Logger LOGGER = Logger.getLogger(BeanAccessor.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final char[] EXPRESSION_CHARS = { '.', '[', '(' };
+
+	private static final ConcurrentMap<Class<?>, BeanAccessor<?>> ACCESSORS = new ConcurrentHashMap<Class<?>, BeanAccessor<?>>();
+
+	private final Class<T> beanClass;
+	private final Map<String, PropertySetter> setters;
+	private final Map<String, PropertyGetter> getters;
+	// all properties, including the read only and the indexed ones
+	private final Set<String> propertyNames;
+
+	/**
+	 * Get the shared accessor of a class, created on first use.
+	 *
+	 * @param beanClass
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BeanAccessor<T> forClass(Class<T> beanClass) {
+		BeanAccessor<?> accessor = ACCESSORS.get(beanClass);
+		if (accessor == null) {
+			// another thread could create the same accessor, keep the first one
+			BeanAccessor<?> previous = ACCESSORS.putIfAbsent(beanClass, new BeanAccessor<T>(beanClass));
+			accessor = (previous == null) ? ACCESSORS.get(beanClass) : previous;
+		}
+		return (BeanAccessor<T>) accessor;
+	}
+
+	/**
+	 * Prefer {@link #forClass(Class)}, an accessor introspects the whole class when it is created.
+	 *
+	 * @param beanClass
+	 */
+	public BeanAccessor(Class<T> beanClass) {
+		this.beanClass = beanClass;
+		Map<String, PropertySetter> setters = new HashMap<String, PropertySetter>();
+		Map<String, PropertyGetter> getters = new HashMap<String, PropertyGetter>();
+		Set<String> propertyNames = new HashSet<String>();
+		if (!DynaBean.class.isAssignableFrom(beanClass)) {
+			for (PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(beanClass)) {
+				propertyNames.add(descriptor.getName());
+				addGetter(getters, descriptor);
+				Method writeMethod = PropertyUtils.getWriteMethod(descriptor);
+				if (writeMethod == null) {
+					continue;
+				}
+				if (descriptor instanceof IndexedPropertyDescriptor || descriptor instanceof MappedPropertyDescriptor) {
+					setters.put(descriptor.getName(), new PropertySetter(descriptor.getName(), descriptor.getPropertyType(), null));
+					continue;
+				}
+				MethodHandle handle = null;
+				try {
+					handle = MethodHandles.publicLookup().unreflect(writeMethod).asType(SETTER_TYPE);
+				}
+				catch (IllegalAccessException e) {
+					LOGGER.warn("Can't access " + writeMethod + ", BeanUtils will be used", e);
+				}
+				setters.put(descriptor.getName(), new PropertySetter(descriptor.getName(), descriptor.getPropertyType(), handle));
+			}
+		}
+		this.setters = Collections.unmodifiableMap(setters);
+		this.getters = Collections.unmodifiableMap(getters);
+		this.propertyNames = Collections.unmodifiableSet(propertyNames);
+	}
+
+	private static void addGetter(Map<String, PropertyGetter> getters, PropertyDescriptor descriptor) {
+		Method readMethod = PropertyUtils.getReadMethod(descriptor);
+		if (readMethod == null) {
+			return;
+		}
+		MethodHandle handle = null;
+		if (!(descriptor instanceof IndexedPropertyDescriptor || descriptor instanceof MappedPropertyDescriptor)) {
+			try {
+				handle = MethodHandles.publicLookup().unreflect(readMethod).asType(GETTER_TYPE);
+			}
+			catch (IllegalAccessException e) {
+				LOGGER.warn("Can't access " + readMethod + ", BeanUtils will be used", e);
+			}
+		}
+		getters.put(descriptor.getName(), new PropertyGetter(descriptor.getName(), handle));
+	}
+
+	/**
+	 * Get the getter of a (simple) property.
+	 *
+	 * @param name
+	 * @return the getter or null if the property can't be read
+	 */
+	public PropertyGetter getGetter(String name) {
+		return getters.get(name);
+	}
+
+	/**
+	 * Get the setter of a property.
+	 *
+	 * @param name
+	 *            property name, the nested, indexed and mapped syntax of BeanUtils is supported
+	 * @return the setter or null if BeanUtils would ignore this property
+	 */
+	public PropertySetter getSetter(String name) {
+		PropertySetter setter = setters.get(name);
+		if (setter != null || name == null) {
+			return setter;
+		}
+		if (DynaBean.class.isAssignableFrom(beanClass)) {
+			return new PropertySetter(name, null, null);
+		}
+		// the first property of an expression must exist, otherwise BeanUtils ignores it
+		int end = -1;
+		for (char c : EXPRESSION_CHARS) {
+			int index = name.indexOf(c);
+			if (index >= 0 && (end < 0 || index < end)) {
+				end = index;
+			}
+		}
+		if (end >= 0 && propertyNames.contains(name.substring(0, end))) {
+			return new PropertySetter(name, null, null);
+		}
+		return null;
+	}
+
+	/**
+	 * Set a property like BeanUtils.setProperty.
+	 * Callers setting the same properties on many beans should keep the PropertySetter (see getSetter).
+	 *
+	 * @param bean
+	 * @param name
+	 * @param value
+	 * @throws IllegalAccessException
+	 * @throws InvocationTargetException
+	 */
+	public void setProperty(T bean, String name, Object value) throws IllegalAccessException, InvocationTargetException {
+		PropertySetter setter = getSetter(name);
+		if (setter != null) {
+			setter.set(bean, value);
+		}
+	}
+
+	/**
+	 * Check if a (simple) property can be read.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public boolean isReadable(String name) {
+		return getters.containsKey(name);
+	}
+
+	/**
+	 * Check if a (simple) property can be set.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public boolean isWriteable(String name) {
+		return setters.containsKey(name);
+	}
+
+	public Class<T> getBeanClass() {
+		return beanClass;
+	}
+
+	/**
+	 * Setter of one property.
+	 * The method handle is only used if the value can be set without conversion, BeanUtils is used otherwise.
+	 */
+	public static class PropertySetter {
+		private final String name;
+		private final MethodHandle handle;
+		// boxed type of the property
+		private final Class<?> valueType;
+		// can null be set without conversion?
+		private final boolean nullable;
+
+		private PropertySetter(String name, Class<?> type, MethodHandle handle) {
+			this.name = name;
+			this.valueType = (type == null) ? null : box(type);
+			// the converters return their default value for null, except for String
+			this.nullable = (valueType == String.class || (valueType != null && ConvertUtils.lookup(type) == null));
+			// a registered converter could return another value (e.g. a copy of a Date), keep BeanUtils in this case
+			if (handle != null && valueType != String.class && !isWrapper(valueType) && ConvertUtils.lookup(type) != null) {
+				this.handle = null;
+			}
+			else {
+				this.handle = handle;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Set the property on a bean.
+		 *
+		 * @param bean
+		 * @param value
+		 * @throws IllegalAccessException
+		 * @throws InvocationTargetException
+		 *             if the setter threw an exception
+		 */
+		public void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException {
+			if (handle != null && (value == null ? nullable : valueType.isInstance(value))) {
+				try {
+					handle.invokeExact(bean, value);
+				}
+				catch (Error e) {
+					throw e;
+				}
+				catch (Throwable t) {
+					throw new InvocationTargetException(t);
+				}
+			}
+			else {
+				BeanUtils.setProperty(bean, name, value);
+			}
+		}
+
+		private static boolean isWrapper(Class<?> type) {
+			return (Number.class.isAssignableFrom(type) && type.getName().startsWith("java.lang.")) || type == Boolean.class
+					|| type == Character.class;
+		}
+
+		private static Class<?> box(Class<?> type) {
+			if (!type.isPrimitive()) {
+				return type;
+			}
+			return MethodType.methodType(type).wrap().returnType();
+		}
+	}
+
+	/**
+	 * Getter of one property.
+	 */
+	public static class PropertyGetter {
+		private final String name;
+		// null for the indexed and mapped properties, read by BeanUtils
+		private final MethodHandle handle;
+
+		private PropertyGetter(String name, MethodHandle handle) {
+			this.name = name;
+			this.handle = handle;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the value of the property, like PropertyUtils.getSimpleProperty.
+		 *
+		 * @param bean
+		 * @return
+		 * @throws IllegalAccessException
+		 * @throws InvocationTargetException
+		 *             if the getter threw an exception
+		 */
+		public Object get(Object bean) throws IllegalAccessException, InvocationTargetException {
+			if (handle == null) {
+				try {
+					return PropertyUtils.getSimpleProperty(bean, name);
+				}
+				catch (NoSuchMethodException e) {
+					throw new IllegalAccessException(e.getMessage());
+				}
+			}
+			try {
+				return handle.invokeExact(bean);
+			}
+			catch (Error e) {
+				throw e;
+			}
+			catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		/**
+		 * Get the value of the property converted to String, like BeanUtils.getProperty.
+		 *
+		 * @param bean
+		 * @return
+		 * @throws IllegalAccessException
+		 * @throws InvocationTargetException
+		 */
+		public String getAsString(Object bean) throws IllegalAccessException, InvocationTargetException {
+			Object value = get(bean);
+			if (value == null || value instanceof String) {
+				return (String) value;
+			}
+			return ConvertUtils.convert(value);
+		}
+	}
+}
@@ -3,23 +3,27 @@ package net.canadensys.harvester.mapper;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
 
-import net.canadensys.harvester.ItemMapperIF;
+import net.canadensys.harvester.ArrayItemMapperIF;
+import net.canadensys.harvester.mapper.BeanAccessor.PropertySetter;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.log4j.Logger;
 
 /**
  * Blindly map a set of properties to an object of type defined by the generic.
+ * Properties are set through the shared BeanAccessor of the class, like BeanUtils.populate.
  * 
  * @author canadensys
  * 
  * @param <T>
  */
-public class DefaultBeanMapper<T> implements ItemMapperIF<T> {
+public class DefaultBeanMapper<T> implements ArrayItemMapperIF<T> {
 	private static final Logger LOGGER = Logger.getLogger(DefaultBeanMapper.class);
 
 	private Class<T> classOfT;
 
+	// setters resolved for the last names array received
+	private volatile NamesPlan namesPlan;
+
 	/**
 	 * This empty constructor is only to respect Java bean convention.
 	 * The other constructor should be used.
@@ -36,7 +40,39 @@ public class DefaultBeanMapper<T> implements ItemMapperIF<T> {
 		T object = null;
 		try {
 			object = classOfT.newInstance();
-			BeanUtils.populate(object, properties);
+			BeanAccessor<T> accessor = BeanAccessor.forClass(classOfT);
+			for (Map.Entry<String, Object> property : properties.entrySet()) {
+				accessor.setProperty(object, property.getKey(), property.getValue());
+			}
+		}
+		catch (IllegalAccessException e) {
+			LOGGER.fatal("Can not map properties to object", e);
+		}
+		catch (InvocationTargetException e) {
+			LOGGER.fatal("Can not map properties to object", e);
+		}
+		catch (InstantiationException e) {
+			LOGGER.fatal("Can not map properties to object", e);
+		}
+		return object;
+	}
+
+	@Override
+	public T mapElement(String[] names, Object[] values) {
+		T object = null;
+		try {
+			object = classOfT.newInstance();
+			NamesPlan plan = namesPlan;
+			if (plan == null || plan.names != names || plan.classOfT != classOfT) {
+				plan = new NamesPlan(classOfT, names);
+				namesPlan = plan;
+			}
+			PropertySetter[] setters = plan.setters;
+			for (int i = 0; i < names.length; i++) {
+				if (setters[i] != null) {
+					setters[i].set(object, values[i]);
+				}
+			}
 		}
 		catch (IllegalAccessException e) {
 			LOGGER.fatal("Can not map properties to object", e);
@@ -53,4 +89,24 @@ public class DefaultBeanMapper<T> implements ItemMapperIF<T> {
 	public void setClassOfT(Class<T> classOfT) {
 		this.classOfT = classOfT;
 	}
+
+	/**
+	 * Setters computed once per names array.
+	 */
+	private static class NamesPlan {
+		private final Class<?> classOfT;
+		private final String[] names;
+		// setter of the property or null if the property is ignored
+		private final PropertySetter[] setters;
+
+		NamesPlan(Class<?> classOfT, String[] names) {
+			this.classOfT = classOfT;
+			this.names = names;
+			this.setters = new PropertySetter[names.length];
+			BeanAccessor<?> accessor = BeanAccessor.forClass(classOfT);
+			for (int i = 0; i < names.length; i++) {
+				setters[i] = accessor.getSetter(names[i]);
+			}
+		}
+	}
 }
@@ -0,0 +1,158 @@
+package net.canadensys.harvester.mapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Deduplicate the String values of low cardinality columns (e.g. country, basisofrecord, institutioncode) so equal
+ * values share the same instance, it should be created for one job (or one resource) and dropped after.
+ * Each column keeps the distinct values it received until maxColumnCardinality is reached, the column is then
+ * switched off (and its values released) since it is not a low cardinality column. Values longer than maxLength are
+ * never kept and the dictionary stops adding values once it contains maxSize values.
+ * NOT thread safe
+ *
+ * @author canadensys
+ *
+ */
+public class StringDictionary {
+	private static final Logger LOGGER = Logger.getLogger(StringDictionary.class);
+
+	public static final int DEFAULT_MAX_COLUMN_CARDINALITY = 1024;
+	public static final int DEFAULT_MAX_SIZE = 65536;
+	public static final int DEFAULT_MAX_LENGTH = 128;
+
+	private final int maxColumnCardinality;
+	private final int maxSize;
+	private final int maxLength;
+
+	private final Map<String, Column> columns = new HashMap<String, Column>();
+	private int size = 0;
+
+	public StringDictionary() {
+		this(DEFAULT_MAX_COLUMN_CARDINALITY, DEFAULT_MAX_SIZE, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 *
+	 * @param maxColumnCardinality
+	 *            number of distinct values after which a column is switched off
+	 * @param maxSize
+	 *            maximum number of values kept by the dictionary
+	 * @param maxLength
+	 *            maximum length of the values kept
+	 */
+	public StringDictionary(int maxColumnCardinality, int maxSize, int maxLength) {
+		this.maxColumnCardinality = maxColumnCardinality;
+		this.maxSize = maxSize;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Get the column of a name, created on first use.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Column getColumn(String name) {
+		Column column = columns.get(name);
+		if (column == null) {
+			column = new Column(name);
+			columns.put(name, column);
+		}
+		return column;
+	}
+
+	/**
+	 * Get the columns of names, in the same order.
+	 *
+	 * @param names
+	 * @return
+	 */
+	public Column[] getColumns(String[] names) {
+		Column[] namesColumns = new Column[names.length];
+		for (int i = 0; i < names.length; i++) {
+			namesColumns[i] = getColumn(names[i]);
+		}
+		return namesColumns;
+	}
+
+	/**
+	 * Get the columns of names, in the same order.
+	 *
+	 * @param names
+	 * @return
+	 */
+	public Column[] getColumns(List<String> names) {
+		return getColumns(names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * Release all the values and switch the columns on again.
+	 */
+	public void clear() {
+		columns.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return number of values kept
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Values of one column.
+	 */
+	public class Column {
+		private final String name;
+		// null once the column is switched off
+		private Map<String, String> values = new HashMap<String, String>();
+
+		private Column(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Get the instance kept for a value.
+		 *
+		 * @param value
+		 * @return an instance equal to value, value itself if it is not kept
+		 */
+		public String intern(String value) {
+			if (values == null || value == null || value.length() > maxLength) {
+				return value;
+			}
+			String kept = values.get(value);
+			if (kept != null) {
+				return kept;
+			}
+			if (values.size() >= maxColumnCardinality) {
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("More than " + maxColumnCardinality + " distinct values in " + name + ", deduplication switched off");
+				}
+				size -= values.size();
+				values = null;
+			}
+			else if (size < maxSize) {
+				values.put(value, value);
+				size++;
+			}
+			return value;
+		}
+
+		/**
+		 * @return false if the column was switched off
+		 */
+		public boolean isEnabled() {
+			return values != null;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
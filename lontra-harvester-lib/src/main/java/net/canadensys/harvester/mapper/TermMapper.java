@@ -2,6 +2,8 @@ package net.canadensys.harvester.mapper;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 import org.gbif.dwc.terms.Term;
@@ -14,6 +16,7 @@ import com.google.common.collect.Maps;
  * Allows to map terms to a string based on definitions in file (termsMapping.txt).
  * Terms mapping is used to map a term to a property when, for example, 2 terms should 
  * be considered as the same by the harvester.
+ * The mapping of a header is computed once with {@link #createPlan(String[], BeanAccessor)}.
  *
  */
 public class TermMapper {
@@ -22,7 +25,12 @@ public class TermMapper {
 
 	private static TermMapper singletonObject;
 
+	// no mapping, ConcurrentHashMap doesn't accept null values
+	private static final String NO_MAPPING = "";
+
 	private Map<Term, String> termsMap;
+	// mapping by term name, filled on use
+	private final ConcurrentMap<String, String> nameMappingCache = new ConcurrentHashMap<String, String>();
 
 	/**
 	 * Singleton, use {@link #getInstance()}.
@@ -52,6 +60,42 @@ public class TermMapper {
 		return termsMap.get(term);
 	}
 
+	/**
+	 * Get the mapping defined for a term name, the term lookup is only done once per name.
+	 *
+	 * @param name
+	 *            name of the term (simple name or URI)
+	 * @return the property name mapped to the term or null if no mapping is defined for that term.
+	 */
+	public String getTermMapping(String name) {
+		String mapping = nameMappingCache.get(name);
+		if (mapping == null) {
+			mapping = getTermMapping(TermFactory.instance().findTerm(name));
+			if (mapping == null) {
+				mapping = NO_MAPPING;
+			}
+			nameMappingCache.putIfAbsent(name, mapping);
+		}
+		return (mapping == NO_MAPPING) ? null : mapping;
+	}
+
+	/**
+	 * Create the plan mapping the names of a header to the properties of a bean class.
+	 *
+	 * @param names
+	 *            header, the array must not be modified once the plan is created
+	 * @param accessor
+	 *            accessor of the bean class
+	 * @return
+	 */
+	public TermMappingPlan createPlan(String[] names, BeanAccessor<?> accessor) {
+		String[] mappedNames = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			mappedNames[i] = getTermMapping(names[i]);
+		}
+		return new TermMappingPlan(names, mappedNames, accessor);
+	}
+
 	public static TermMapper getInstance() {
 		synchronized (TermMapper.class) {
 			if (singletonObject == null) {
@@ -0,0 +1,135 @@
+package net.canadensys.harvester.mapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.canadensys.harvester.mapper.BeanAccessor.PropertySetter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * How the columns of a header (names array) are mapped to the properties of a bean class, computed once per header
+ * by {@link TermMapper#createPlan(String[], BeanAccessor)} and reused for all the rows.
+ * For each index: the setter of the property with the same name, the setter of the property the term is mapped to
+ * (see termsMapping.txt) and flags telling if the name is a writeable property or ignored by the mappers.
+ * The "id" name is the core id of the row.
+ * This class is immutable and thread safe, the names array must not be modified.
+ *
+ * @author canadensys
+ *
+ */
+public class TermMappingPlan {
+	private static final Logger LOGGER = Logger.getLogger(TermMappingPlan.class);
+
+	public static final String ID_NAME = "id";
+
+	private final String[] names;
+	// setter of the property or null if the property is ignored
+	private final PropertySetter[] setters;
+	// name and setter of the mapped property or null
+	private final String[] mappedNames;
+	private final PropertySetter[] mappedSetters;
+	private final boolean[] writeable;
+	private final int idIndex;
+
+	TermMappingPlan(String[] names, String[] mappedNames, BeanAccessor<?> accessor) {
+		this.names = names;
+		this.mappedNames = mappedNames;
+		this.setters = new PropertySetter[names.length];
+		this.mappedSetters = new PropertySetter[names.length];
+		this.writeable = new boolean[names.length];
+		Set<String> nameSet = new HashSet<String>(Arrays.asList(names));
+		int id = -1;
+		for (int i = 0; i < names.length; i++) {
+			if (ID_NAME.equals(names[i])) {
+				id = i;
+			}
+			setters[i] = accessor.getSetter(names[i]);
+			writeable[i] = accessor.isWriteable(names[i]);
+			if (mappedNames[i] != null) {
+				mappedSetters[i] = accessor.getSetter(mappedNames[i]);
+				if (nameSet.contains(mappedNames[i])) {
+					LOGGER.error("The term " + names[i] + " is defined in term mapping but is already present in source data");
+				}
+			}
+		}
+		this.idIndex = id;
+	}
+
+	/**
+	 * @return the names array this plan was created for
+	 */
+	public String[] getNames() {
+		return names;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * @param index
+	 * @return setter of the property named like the term or null
+	 */
+	public PropertySetter getSetter(int index) {
+		return setters[index];
+	}
+
+	/**
+	 * @param index
+	 * @return name of the property the term is mapped to or null
+	 */
+	public String getMappedName(int index) {
+		return mappedNames[index];
+	}
+
+	/**
+	 * @param index
+	 * @return setter of the property the term is mapped to or null
+	 */
+	public PropertySetter getMappedSetter(int index) {
+		return mappedSetters[index];
+	}
+
+	/**
+	 * @return index of the "id" name or -1
+	 */
+	public int getIdIndex() {
+		return idIndex;
+	}
+
+	/**
+	 * @param index
+	 * @return is the term a writeable property of the bean class?
+	 */
+	public boolean isWriteable(int index) {
+		return writeable[index];
+	}
+
+	/**
+	 * A term is ignored when it is not the id, has no property and no term mapping. Its column doesn't need to be
+	 * read.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean isIgnored(int index) {
+		return index != idIndex && setters[index] == null && mappedNames[index] == null;
+	}
+
+	/**
+	 * @return the names that are writeable properties of the bean class, in index order
+	 */
+	public List<String> getWriteableNames() {
+		List<String> writeableNames = new ArrayList<String>();
+		for (int i = 0; i < names.length; i++) {
+			if (writeable[i]) {
+				writeableNames.add(names[i]);
+			}
+		}
+		return writeableNames;
+	}
+}
@@ -2,11 +2,13 @@ package net.canadensys.harvester.model;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.commons.beanutils.BeanUtilsBean;
+import net.canadensys.harvester.mapper.BeanAccessor;
+import net.canadensys.harvester.mapper.BeanAccessor.PropertyGetter;
+import net.canadensys.harvester.mapper.BeanAccessor.PropertySetter;
+import net.canadensys.harvester.mapper.StringDictionary;
+
 import org.apache.log4j.Logger;
 
 /**
@@ -34,27 +36,29 @@ public class BulkDataObject<T> {
 
 	/**
 	 * Add a new Object of instance <T> to the bulk.
-	 * Reflection is used to extract properties based on fieldNames.
+	 * The properties based on fieldNames are read through the BeanAccessor of the class and converted to String like
+	 * BeanUtils.describe.
 	 *
 	 * @param obj
 	 */
-	@SuppressWarnings("unchecked")
 	public void addObject(T obj) throws IllegalArgumentException {
 		try {
-			Map<String, String> objDescription = BeanUtilsBean.getInstance().describe(obj);
+			BeanAccessor<?> accessor = BeanAccessor.forClass(obj.getClass());
 			String[] objData = new String[fieldNames.size()];
 			int i = 0;
+			PropertyGetter getter;
 			for (String fieldName : fieldNames) {
-				if (!objDescription.containsKey(fieldName)) {
+				getter = accessor.getGetter(fieldName);
+				if (getter == null) {
 					throw new IllegalArgumentException("Can't add object to BulkDataObject: " + fieldName + " is not a valid field name of "
 							+ obj.getClass());
 				}
-				objData[i] = objDescription.get(fieldName);
+				objData[i] = getter.getAsString(obj);
 				i++;
 			}
 			data.add(objData);
 		}
-		catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
+		catch (IllegalAccessException | InvocationTargetException ex) {
 			throw new IllegalArgumentException("Can't add object to BulkDataObject", ex);
 		}
 	}
@@ -73,7 +77,7 @@ public class BulkDataObject<T> {
 	}
 
 	/**
-	 * Rebuild an object from the properties.
+	 * Rebuild an object from the properties, set like BeanUtils.populate.
 	 *
 	 * @param index
 	 *            index of the object to retrieve.
@@ -82,16 +86,33 @@ public class BulkDataObject<T> {
 	 * @return same instance received in parameter.
 	 */
 	public T retrieveObject(int index, T obj) {
-		try {
-			HashMap<String, String> properties = new HashMap<String, String>(fieldNames.size());
+		return retrieveObject(index, obj, null);
+	}
 
+	/**
+	 * Rebuild an object from the properties, set like BeanUtils.populate, deduplicating the values.
+	 *
+	 * @param index
+	 *            index of the object to retrieve.
+	 * @param obj
+	 *            instance <T> to fill with the properties
+	 * @param columns
+	 *            dictionary columns of the fieldNames (see StringDictionary.getColumns) or null to keep the values
+	 * @return same instance received in parameter.
+	 */
+	public T retrieveObject(int index, T obj, StringDictionary.Column[] columns) {
+		try {
+			BeanAccessor<?> accessor = BeanAccessor.forClass(obj.getClass());
 			int idx = 0;
 			String objData[] = data.get(index);
+			PropertySetter setter;
 			for (String propName : fieldNames) {
-				properties.put(propName, objData[idx]);
+				setter = accessor.getSetter(propName);
+				if (setter != null) {
+					setter.set(obj, (columns == null) ? objData[idx] : columns[idx].intern(objData[idx]));
+				}
 				idx++;
 			}
-			BeanUtilsBean.getInstance().populate(obj, properties);
 		}
 		catch (IllegalAccessException e) {
 			LOGGER.error("Can't populate object from BulkDataObject", e);
@@ -0,0 +1,171 @@
+package net.canadensys.harvester.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
+import net.canadensys.harvester.occurrence.mapper.ExtensionDataSchema;
+
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * Allows to group OccurrenceExtensionModel of the same extension file under one Object.
+ * The terms of the ext_data are stored once and the ext_data of each model is stored as a String array in the terms
+ * order, the properties shared by the extension file (ext_type, ext_version, sourcefileid, resource_id) are also
+ * stored once.
+ * Main usage is JSON serialization where we will only print the term names once.
+ *
+ * @author canadensys
+ *
+ */
+public class BulkExtensionDataObject {
+
+	private String extType;
+	private String extVersion;
+	private String sourcefileid;
+	private Integer resourceId;
+
+	private List<String> terms;
+	private List<Integer> autoIds;
+	private List<String> dwcaids;
+	private List<String[]> data;
+
+	// not serialized, rebuilt from the terms when needed
+	private transient ExtensionDataSchema schema;
+
+	public BulkExtensionDataObject() {
+	}
+
+	/**
+	 * Add a model to the bulk.
+	 * The first model defines the terms and the properties shared by the bulk.
+	 *
+	 * @param model
+	 * @throws IllegalArgumentException
+	 *             if the model is not from the same extension file or if its ext_data contains a term unknown to the bulk
+	 */
+	public void addModel(OccurrenceExtensionModel model) throws IllegalArgumentException {
+		if (data == null) {
+			extType = model.getExt_type();
+			extVersion = model.getExt_version();
+			sourcefileid = model.getSourcefileid();
+			resourceId = model.getResource_id();
+			schema = ExtensionDataSchema.getSchema(model.getExt_data());
+			if (schema == null) {
+				schema = new ExtensionDataSchema(new ArrayList<String>(model.getExt_data().keySet()));
+			}
+			terms = schema.getTerms();
+			autoIds = new ArrayList<Integer>();
+			dwcaids = new ArrayList<String>();
+			data = new ArrayList<String[]>();
+		}
+		else if (!ObjectUtils.equals(extType, model.getExt_type()) || !ObjectUtils.equals(extVersion, model.getExt_version())
+				|| !ObjectUtils.equals(sourcefileid, model.getSourcefileid())
+				|| !ObjectUtils.equals(resourceId, model.getResource_id())) {
+			throw new IllegalArgumentException("Can't add model to BulkExtensionDataObject: not from the same extension file");
+		}
+		autoIds.add(model.getAuto_id());
+		dwcaids.add(model.getDwcaid());
+		data.add(getSchema().getValues(model.getExt_data()));
+	}
+
+	/**
+	 * Rebuild the models, their ext_data share the schema of the bulk.
+	 *
+	 * @return
+	 */
+	public List<OccurrenceExtensionModel> retrieveModels() {
+		List<OccurrenceExtensionModel> models = new ArrayList<OccurrenceExtensionModel>(size());
+		for (int i = 0; i < size(); i++) {
+			OccurrenceExtensionModel model = new OccurrenceExtensionModel();
+			model.setExt_type(extType);
+			model.setExt_version(extVersion);
+			model.setSourcefileid(sourcefileid);
+			model.setResource_id(resourceId);
+			model.setAuto_id(autoIds.get(i));
+			model.setDwcaid(dwcaids.get(i));
+			model.setExt_data(getSchema().newData(data.get(i)));
+			models.add(model);
+		}
+		return models;
+	}
+
+	/**
+	 * @return number of models in the bulk
+	 */
+	public int size() {
+		return (data == null) ? 0 : data.size();
+	}
+
+	private ExtensionDataSchema getSchema() {
+		if (schema == null) {
+			schema = new ExtensionDataSchema(terms);
+		}
+		return schema;
+	}
+
+	public String getExtType() {
+		return extType;
+	}
+
+	public void setExtType(String extType) {
+		this.extType = extType;
+	}
+
+	public String getExtVersion() {
+		return extVersion;
+	}
+
+	public void setExtVersion(String extVersion) {
+		this.extVersion = extVersion;
+	}
+
+	public String getSourcefileid() {
+		return sourcefileid;
+	}
+
+	public void setSourcefileid(String sourcefileid) {
+		this.sourcefileid = sourcefileid;
+	}
+
+	public Integer getResourceId() {
+		return resourceId;
+	}
+
+	public void setResourceId(Integer resourceId) {
+		this.resourceId = resourceId;
+	}
+
+	public List<String> getTerms() {
+		return terms;
+	}
+
+	public void setTerms(List<String> terms) {
+		this.terms = terms;
+		this.schema = null;
+	}
+
+	public List<Integer> getAutoIds() {
+		return autoIds;
+	}
+
+	public void setAutoIds(List<Integer> autoIds) {
+		this.autoIds = autoIds;
+	}
+
+	public List<String> getDwcaids() {
+		return dwcaids;
+	}
+
+	public void setDwcaids(List<String> dwcaids) {
+		this.dwcaids = dwcaids;
+	}
+
+	public List<String[]> getData() {
+		return data;
+	}
+
+	public void setData(List<String[]> data) {
+		this.data = data;
+	}
+}
@@ -9,11 +9,63 @@ package net.canadensys.harvester.occurrence;
 public enum SharedParameterEnum {
 
 	DWCA_URL, DWCA_PATH,
+	/**
+	 * Key used by PrepareDwcaTask to report that the archive at DWCA_URL was not modified since the last import
+	 * (Boolean)
+	 */
+	DWCA_NOT_MODIFIED,
+	/**
+	 * Key used to provide the HttpValidators of the downloaded archive, saved once the import is completed
+	 */
+	DWCA_HTTP_VALIDATORS,
+	/**
+	 * Key used to ask PrepareDwcaTask to download the archive even if it was not modified (Boolean)
+	 */
+	DWCA_FORCE_DOWNLOAD,
+	/**
+	 * Key used to provide the PartialZipArchive of an archive that is still being downloaded while it is read
+	 */
+	DWCA_PARTIAL_ARCHIVE,
+	/**
+	 * Key used to provide the DwcaFingerprint of the archive, saved once the archive is moved to the public schema
+	 */
+	DWCA_FINGERPRINT,
+	/**
+	 * Key used by PrepareDwcaTask to report that only the metadata (EML) of the archive changed since the last import
+	 * (Boolean)
+	 */
+	DWCA_METADATA_ONLY,
+	/**
+	 * Key used by PrepareDwcaTask to report that only some extensions of the archive changed since the last import
+	 * (List<String> of extension row type simple names)
+	 */
+	DWCA_CHANGED_EXTENSIONS,
+	/**
+	 * Key used by ValidateDwcaTask to provide the DwcaValidationReport of the archive
+	 */
+	DWCA_VALIDATION_REPORT,
+	/**
+	 * Key used by DetectDuplicateIdTask to provide the DuplicateIdReport of the core data file
+	 */
+	DWCA_DUPLICATE_ID_REPORT,
+	/**
+	 * Key used by SnapshotDwcaTask to provide the DwcaSnapshot the readers should read the rows from
+	 */
+	DWCA_SNAPSHOT,
+	/**
+	 * Key used to provide the DwcaFileRange of the core data file a reader should read instead of the complete file
+	 */
+	DWCA_FILE_RANGE,
 
 	/**
 	 * Key used to provide a List<String> of Dwca ID to exclude from the harvesting
 	 */
 	DWCA_ID_EXCLUSION_LIST,
+	/**
+	 * Key used to provide a DwcaIdFilter (exclusion and/or inclusion of Dwca ID), takes precedence over
+	 * DWCA_ID_EXCLUSION_LIST
+	 */
+	DWCA_ID_FILTER,
 
 	/**
 	 * Key used to provide the list of DarwinCore terms used in the archive.
@@ -22,7 +74,23 @@ public enum SharedParameterEnum {
 	/**
 	 * Key used to provide an instance of Term that represents the type of extension
 	 */
-	DWCA_EXTENSION_TYPE, RESOURCE_ID,
+	DWCA_EXTENSION_TYPE,
+	/**
+	 * Key used to provide a job-scoped DwcaArchiveCache shared by all the Dwc-A readers
+	 */
+	DWCA_ARCHIVE_CACHE,
+	/**
+	 * Key used to ask ImportDwcaJob to resume from the last checkpoint (Boolean)
+	 */
+	DWCA_RESUME,
+	/**
+	 * Key used to provide the DwcaCheckpoint the readers should resume from
+	 */
+	DWCA_CHECKPOINT,
+	/**
+	 * Key used to provide the last auto_id of the checkpoint, records with a greater auto_id will be sent again
+	 */
+	LAST_AUTO_ID, RESOURCE_ID,
 	/**
 	 * Key used to provide an instance of DwcaResourceModel.
 	 */
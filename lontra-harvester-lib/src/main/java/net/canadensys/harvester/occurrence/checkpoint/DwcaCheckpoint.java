@@ -0,0 +1,101 @@
+package net.canadensys.harvester.occurrence.checkpoint;
+
+/**
+ * Position reached while streaming the core data file of a Darwin Core Archive.
+ * All the records up to this position were sent and their auto_id are lower or equal to lastAutoId.
+ * This class is mutable.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaCheckpoint {
+
+	public static final long UNKNOWN_OFFSET = -1;
+
+	// location of the data file inside the archive (as declared in meta.xml)
+	private String dataFile;
+	// used to make sure the data file did not change between the checkpoint and the resume
+	private long dataLength;
+
+	private long byteOffset = UNKNOWN_OFFSET;
+	private long ordinal;
+
+	private long lastAutoId;
+	private int numberOfRecords;
+
+	public String getDataFile() {
+		return dataFile;
+	}
+
+	public void setDataFile(String dataFile) {
+		this.dataFile = dataFile;
+	}
+
+	public long getDataLength() {
+		return dataLength;
+	}
+
+	public void setDataLength(long dataLength) {
+		this.dataLength = dataLength;
+	}
+
+	/**
+	 * @return byte offset of the next row to read or UNKNOWN_OFFSET if the reader can not seek in the data file
+	 */
+	public long getByteOffset() {
+		return byteOffset;
+	}
+
+	public void setByteOffset(long byteOffset) {
+		this.byteOffset = byteOffset;
+	}
+
+	/**
+	 * @return number of rows read from the data file (including the rows that were skipped)
+	 */
+	public long getOrdinal() {
+		return ordinal;
+	}
+
+	public void setOrdinal(long ordinal) {
+		this.ordinal = ordinal;
+	}
+
+	public long getLastAutoId() {
+		return lastAutoId;
+	}
+
+	public void setLastAutoId(long lastAutoId) {
+		this.lastAutoId = lastAutoId;
+	}
+
+	/**
+	 * @return number of records sent
+	 */
+	public int getNumberOfRecords() {
+		return numberOfRecords;
+	}
+
+	public void setNumberOfRecords(int numberOfRecords) {
+		this.numberOfRecords = numberOfRecords;
+	}
+
+	/**
+	 * @return a new instance with the same values
+	 */
+	public DwcaCheckpoint copy() {
+		DwcaCheckpoint checkpoint = new DwcaCheckpoint();
+		checkpoint.dataFile = dataFile;
+		checkpoint.dataLength = dataLength;
+		checkpoint.byteOffset = byteOffset;
+		checkpoint.ordinal = ordinal;
+		checkpoint.lastAutoId = lastAutoId;
+		checkpoint.numberOfRecords = numberOfRecords;
+		return checkpoint;
+	}
+
+	@Override
+	public String toString() {
+		return dataFile + " row " + ordinal + " (offset " + byteOffset + ", auto_id " + lastAutoId + ")";
+	}
+}
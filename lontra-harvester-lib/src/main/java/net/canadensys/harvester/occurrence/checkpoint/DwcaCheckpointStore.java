@@ -0,0 +1,134 @@
+package net.canadensys.harvester.occurrence.checkpoint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persist the checkpoint of each resource in a properties file (one file per resource).
+ * Files are replaced atomically (when supported) so a crash while saving leaves the previous checkpoint intact.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaCheckpointStore {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaCheckpointStore.class);
+
+	private static final String FILE_EXTENSION = ".checkpoint";
+
+	private static final String DATA_FILE = "dataFile";
+	private static final String DATA_LENGTH = "dataLength";
+	private static final String BYTE_OFFSET = "byteOffset";
+	private static final String ORDINAL = "ordinal";
+	private static final String LAST_AUTO_ID = "lastAutoId";
+	private static final String NUMBER_OF_RECORDS = "numberOfRecords";
+
+	private final File folder;
+
+	/**
+	 *
+	 * @param folder
+	 *            folder where the checkpoint files are saved, created if it doesn't exist
+	 */
+	public DwcaCheckpointStore(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Save (replace) the checkpoint of a resource.
+	 *
+	 * @param resourceId
+	 * @param checkpoint
+	 * @throws IOException
+	 */
+	public void save(Integer resourceId, DwcaCheckpoint checkpoint) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(DATA_FILE, checkpoint.getDataFile());
+		properties.setProperty(DATA_LENGTH, Long.toString(checkpoint.getDataLength()));
+		properties.setProperty(BYTE_OFFSET, Long.toString(checkpoint.getByteOffset()));
+		properties.setProperty(ORDINAL, Long.toString(checkpoint.getOrdinal()));
+		properties.setProperty(LAST_AUTO_ID, Long.toString(checkpoint.getLastAutoId()));
+		properties.setProperty(NUMBER_OF_RECORDS, Integer.toString(checkpoint.getNumberOfRecords()));
+
+		folder.mkdirs();
+		File checkpointFile = getCheckpointFile(resourceId);
+		File tempFile = new File(folder, checkpointFile.getName() + ".tmp");
+		OutputStream os = new FileOutputStream(tempFile);
+		try {
+			properties.store(os, "Checkpoint of resource " + resourceId);
+		}
+		finally {
+			os.close();
+		}
+		try {
+			Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Load the checkpoint of a resource.
+	 *
+	 * @param resourceId
+	 * @return the checkpoint or null if there is no (valid) checkpoint for this resource
+	 */
+	public DwcaCheckpoint load(Integer resourceId) {
+		File checkpointFile = getCheckpointFile(resourceId);
+		if (!checkpointFile.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try {
+			InputStream is = new FileInputStream(checkpointFile);
+			try {
+				properties.load(is);
+			}
+			finally {
+				is.close();
+			}
+			DwcaCheckpoint checkpoint = new DwcaCheckpoint();
+			checkpoint.setDataFile(properties.getProperty(DATA_FILE));
+			checkpoint.setDataLength(Long.parseLong(properties.getProperty(DATA_LENGTH)));
+			checkpoint.setByteOffset(Long.parseLong(properties.getProperty(BYTE_OFFSET)));
+			checkpoint.setOrdinal(Long.parseLong(properties.getProperty(ORDINAL)));
+			checkpoint.setLastAutoId(Long.parseLong(properties.getProperty(LAST_AUTO_ID)));
+			checkpoint.setNumberOfRecords(Integer.parseInt(properties.getProperty(NUMBER_OF_RECORDS)));
+			return checkpoint;
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't read checkpoint " + checkpointFile, e);
+		}
+		catch (NumberFormatException e) {
+			LOGGER.error("Invalid checkpoint " + checkpointFile, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Delete the checkpoint of a resource, if any.
+	 *
+	 * @param resourceId
+	 */
+	public void delete(Integer resourceId) {
+		File checkpointFile = getCheckpointFile(resourceId);
+		if (checkpointFile.exists() && !checkpointFile.delete()) {
+			LOGGER.warn("Can't delete checkpoint " + checkpointFile);
+		}
+	}
+
+	private File getCheckpointFile(Integer resourceId) {
+		return new File(folder, resourceId + FILE_EXTENSION);
+	}
+}
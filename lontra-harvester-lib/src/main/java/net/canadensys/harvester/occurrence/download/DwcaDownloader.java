@@ -0,0 +1,527 @@
+package net.canadensys.harvester.occurrence.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Download a DarwinCore archive with a single conditional request.
+ * If validators of a previous download are provided, the request includes If-None-Match/If-Modified-Since and a 304
+ * response is reported as not modified without downloading anything.
+ * When parallelism is greater than 1, the first request asks for the first range of the file: if the server honors it
+ * (206), the remaining ranges are downloaded in parallel (with If-Range so a file modified during the download is
+ * detected). If the server ignores the range (200), the body is simply copied.
+ * The file is written under a temporary name and renamed once complete.
+ * The pipelined download (ZIP files only) returns as soon as the central directory is known: the file is then
+ * downloaded in the background and its entries can be read while the download continues (see PartialZipArchive).
+ * This class is immutable once configured and can be shared.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaDownloader {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaDownloader.class);
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+	private static final Pattern FILENAME = Pattern.compile("filename\\s*=\\s*\"?([^\";]+)\"?");
+	private static final String PART_EXTENSION = ".part";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int rangeSize = DEFAULT_RANGE_SIZE;
+
+	/**
+	 * Outcome of a download.
+	 */
+	public static final class Result {
+		private final File file;
+		private final HttpValidators validators;
+		private final PartialZipArchive partialArchive;
+
+		private Result(File file, HttpValidators validators, PartialZipArchive partialArchive) {
+			this.file = file;
+			this.validators = validators;
+			this.partialArchive = partialArchive;
+		}
+
+		/**
+		 * @return true if the server reported the archive as not modified (304)
+		 */
+		public boolean isNotModified() {
+			return file == null;
+		}
+
+		/**
+		 * @return the downloaded file or null if not modified
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return validators of the downloaded archive or null if the server didn't provide any
+		 */
+		public HttpValidators getValidators() {
+			return validators;
+		}
+
+		/**
+		 * @return the archive that is still being downloaded or null if the file is complete
+		 */
+		public PartialZipArchive getPartialArchive() {
+			return partialArchive;
+		}
+	}
+
+	/**
+	 * Download an archive in a folder.
+	 *
+	 * @param url
+	 * @param destinationFolder
+	 * @param previousValidators
+	 *            validators of the last archive imported from this URL or null
+	 * @return
+	 * @throws IOException
+	 */
+	public Result download(URL url, File destinationFolder, HttpValidators previousValidators) throws IOException {
+		URLConnection connection = url.openConnection();
+		if (previousValidators != null) {
+			previousValidators.addConditionalHeaders(connection);
+		}
+		if (parallelism > 1) {
+			connection.setRequestProperty("Range", "bytes=0-" + (rangeSize - 1));
+		}
+
+		int responseCode = getResponseCode(url, connection);
+		if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			LOGGER.info(url + " not modified since " + previousValidators);
+			return new Result(null, previousValidators, null);
+		}
+		return save(url, connection, responseCode, destinationFolder);
+	}
+
+	/**
+	 * Start the download of a ZIP archive and return as soon as its entries can be read.
+	 * The first request asks for the end of the file to get the central directory, the file is then downloaded in
+	 * chunks of rangeSize bytes by parallel range requests. Chunks of the metadata files (.xml) are downloaded first.
+	 * If the server doesn't support range requests or if the file is not a ZIP file (or a ZIP64 file), the archive is
+	 * downloaded like {@link #download(URL, File, HttpValidators)}.
+	 *
+	 * @param url
+	 * @param destinationFolder
+	 * @param previousValidators
+	 *            validators of the last archive imported from this URL or null
+	 * @return
+	 * @throws IOException
+	 */
+	public Result downloadPipelined(URL url, File destinationFolder, HttpValidators previousValidators) throws IOException {
+		URLConnection connection = url.openConnection();
+		if (previousValidators != null) {
+			previousValidators.addConditionalHeaders(connection);
+		}
+		// the end of central directory record is in the last bytes of the file
+		connection.setRequestProperty("Range", "bytes=-" + ZipDirectory.MAX_EOCD_LENGTH);
+
+		int responseCode = getResponseCode(url, connection);
+		if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			LOGGER.info(url + " not modified since " + previousValidators);
+			return new Result(null, previousValidators, null);
+		}
+		if (responseCode == HttpURLConnection.HTTP_OK) {
+			LOGGER.info(url + " doesn't support range requests, downloading the complete archive");
+			return save(url, connection, responseCode, destinationFolder);
+		}
+
+		HttpValidators validators = HttpValidators.from(url.toString(), connection);
+		String ifRange = (validators == null) ? null : validators.getIfRangeValue();
+		long[] contentRange = parseContentRange(url, connection);
+		ZipDirectory directory;
+		try {
+			byte[] tail = readFully(connection.getInputStream(), (int) (contentRange[1] - contentRange[0] + 1));
+			long[] directoryLocation = ZipDirectory.findDirectory(tail, contentRange[0]);
+			byte[] directoryBytes;
+			if (directoryLocation[0] >= contentRange[0]) {
+				int start = (int) (directoryLocation[0] - contentRange[0]);
+				directoryBytes = Arrays.copyOfRange(tail, start, start + (int) directoryLocation[1]);
+			}
+			else {
+				directoryBytes = readRange(url, ifRange, directoryLocation[0], directoryLocation[0] + directoryLocation[1] - 1);
+			}
+			directory = ZipDirectory.parse(directoryBytes, directoryLocation[0]);
+		}
+		catch (IOException e) {
+			LOGGER.warn("Can't read the ZIP directory of " + url + ", downloading the complete archive", e);
+			// the archive was modified (no 304), no need to send the validators again
+			return download(url, destinationFolder, null);
+		}
+
+		String filename = getFilename(connection, url);
+		// DwcaArchiveSupport only reads ZIP files with the zip extension
+		if (!FilenameUtils.isExtension(filename.toLowerCase(), "zip")) {
+			filename += ".zip";
+		}
+		final PartialZipArchive archive = new PartialZipArchive(new File(destinationFolder, filename), contentRange[2], rangeSize,
+				directory);
+		for (String name : directory.getEntryNames()) {
+			if (FilenameUtils.isExtension(name.toLowerCase(), "xml")) {
+				archive.prioritizeEntry(name);
+			}
+		}
+		startChunkDownloads(url, ifRange, archive);
+		LOGGER.info("Downloading " + url + " (" + contentRange[2] + " bytes) while reading it");
+		return new Result(archive.getFile(), validators, archive);
+	}
+
+	/**
+	 * Start the threads downloading the chunks of a partial archive, the threads end with the download.
+	 *
+	 * @param url
+	 * @param ifRange
+	 * @param archive
+	 */
+	private void startChunkDownloads(final URL url, final String ifRange, final PartialZipArchive archive) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		for (int i = 0; i < Math.max(1, parallelism); i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					int chunk;
+					try {
+						while ((chunk = archive.nextChunk()) >= 0) {
+							HttpURLConnection connection = openRange(url, ifRange, archive.getChunkStart(chunk), archive.getChunkEnd(chunk));
+							try {
+								archive.writeChunk(chunk, connection.getInputStream());
+							}
+							finally {
+								connection.disconnect();
+							}
+						}
+					}
+					catch (IOException e) {
+						LOGGER.error("Download of " + url + " failed", e);
+						archive.fail(e);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Save the body of a 200 or 206 response in the destination folder.
+	 *
+	 * @param url
+	 * @param connection
+	 * @param responseCode
+	 * @param destinationFolder
+	 * @return
+	 * @throws IOException
+	 */
+	private Result save(URL url, URLConnection connection, int responseCode, File destinationFolder) throws IOException {
+		HttpValidators validators = HttpValidators.from(url.toString(), connection);
+		File destinationFile = new File(destinationFolder, getFilename(connection, url));
+		File partFile = new File(destinationFolder, destinationFile.getName() + PART_EXTENSION);
+		try {
+			if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+				downloadRanges(url, connection, validators, partFile);
+			}
+			else {
+				copy(connection.getInputStream(), partFile);
+			}
+		}
+		catch (IOException e) {
+			partFile.delete();
+			throw e;
+		}
+		Files.move(partFile.toPath(), destinationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return new Result(destinationFile, validators, null);
+	}
+
+	/**
+	 * Get the response code of a request, only 200, 206 and 304 are accepted.
+	 *
+	 * @param url
+	 * @param connection
+	 * @return
+	 * @throws IOException
+	 */
+	private static int getResponseCode(URL url, URLConnection connection) throws IOException {
+		if (!(connection instanceof HttpURLConnection)) {
+			return HttpURLConnection.HTTP_OK;
+		}
+		HttpURLConnection httpConnection = (HttpURLConnection) connection;
+		int responseCode = httpConnection.getResponseCode();
+		if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			httpConnection.disconnect();
+		}
+		else if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+			httpConnection.disconnect();
+			throw new IOException("Can't download " + url + ", HTTP response code " + responseCode);
+		}
+		return responseCode;
+	}
+
+	/**
+	 * Parse the Content-Range header of a 206 response.
+	 *
+	 * @param url
+	 * @param connection
+	 * @return {first byte, last byte, length of the file}
+	 * @throws IOException
+	 */
+	private static long[] parseContentRange(URL url, URLConnection connection) throws IOException {
+		Matcher contentRange = CONTENT_RANGE.matcher(StringUtils.defaultString(connection.getHeaderField("Content-Range")));
+		if (!contentRange.matches() || "*".equals(contentRange.group(3))) {
+			throw new IOException("Unexpected Content-Range for " + url + ": " + connection.getHeaderField("Content-Range"));
+		}
+		return new long[] { Long.parseLong(contentRange.group(1)), Long.parseLong(contentRange.group(2)),
+				Long.parseLong(contentRange.group(3)) };
+	}
+
+	/**
+	 * Write the first range (already requested) and download the other ranges in parallel.
+	 *
+	 * @param url
+	 * @param firstConnection
+	 *            connection with a 206 response for the first range
+	 * @param validators
+	 * @param partFile
+	 * @throws IOException
+	 */
+	private void downloadRanges(final URL url, URLConnection firstConnection, HttpValidators validators, File partFile)
+			throws IOException {
+		long[] contentRange = parseContentRange(url, firstConnection);
+		if (contentRange[0] != 0) {
+			throw new IOException("Unexpected Content-Range for " + url + ": " + firstConnection.getHeaderField("Content-Range"));
+		}
+		long firstEnd = contentRange[1];
+		long length = contentRange[2];
+		final String ifRange = (validators == null) ? null : validators.getIfRangeValue();
+
+		RandomAccessFile raf = new RandomAccessFile(partFile, "rw");
+		ExecutorService executor = null;
+		try {
+			raf.setLength(length);
+			final FileChannel channel = raf.getChannel();
+			List<Callable<Void>> parts = new ArrayList<Callable<Void>>();
+			final InputStream firstStream = firstConnection.getInputStream();
+			parts.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					write(firstStream, channel, 0);
+					return null;
+				}
+			});
+			for (long start = firstEnd + 1; start < length; start += rangeSize) {
+				final long rangeStart = start;
+				final long rangeEnd = Math.min(start + rangeSize, length) - 1;
+				parts.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						downloadRange(url, ifRange, rangeStart, rangeEnd, channel);
+						return null;
+					}
+				});
+			}
+			LOGGER.info("Downloading " + url + " (" + length + " bytes) in " + parts.size() + " range(s)");
+
+			executor = Executors.newFixedThreadPool(Math.min(parallelism, parts.size()));
+			for (Future<Void> part : executor.invokeAll(parts)) {
+				part.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Download of " + url + " interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Can't download " + url, e.getCause());
+		}
+		finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			raf.close();
+		}
+	}
+
+	private void downloadRange(URL url, String ifRange, long start, long end, FileChannel channel) throws IOException {
+		HttpURLConnection connection = openRange(url, ifRange, start, end);
+		try {
+			long written = write(connection.getInputStream(), channel, start);
+			if (written != end - start + 1) {
+				throw new IOException("Incomplete range " + start + "-" + end + " for " + url);
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Read a range of a file in memory.
+	 */
+	private static byte[] readRange(URL url, String ifRange, long start, long end) throws IOException {
+		HttpURLConnection connection = openRange(url, ifRange, start, end);
+		try {
+			return readFully(connection.getInputStream(), (int) (end - start + 1));
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Request a range of a file.
+	 *
+	 * @param url
+	 * @param ifRange
+	 *            value of the If-Range header or null
+	 * @param start
+	 * @param end
+	 *            last byte (inclusive)
+	 * @return connection with a 206 response
+	 * @throws IOException
+	 *             if the server didn't return the range
+	 */
+	private static HttpURLConnection openRange(URL url, String ifRange, long start, long end) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+		if (ifRange != null) {
+			connection.setRequestProperty("If-Range", ifRange);
+		}
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+			connection.disconnect();
+			// the server returns the complete (new) file when If-Range doesn't match
+			throw new IOException(url + " was modified during the download (HTTP response code " + connection.getResponseCode() + ")");
+		}
+		return connection;
+	}
+
+	/**
+	 * Read a number of bytes from a stream, the stream is closed.
+	 */
+	private static byte[] readFully(InputStream is, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		try {
+			int offset = 0;
+			int read;
+			while (offset < length) {
+				read = is.read(bytes, offset, length - offset);
+				if (read == -1) {
+					throw new IOException("Unexpected end of stream after " + offset + " of " + length + " bytes");
+				}
+				offset += read;
+			}
+		}
+		finally {
+			is.close();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write a stream to a channel at a position, the stream is closed.
+	 *
+	 * @return number of bytes written
+	 */
+	private static long write(InputStream is, FileChannel channel, long position) throws IOException {
+		long written = 0;
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				byteBuffer.clear().limit(read);
+				while (byteBuffer.hasRemaining()) {
+					written += channel.write(byteBuffer, position + written);
+				}
+			}
+		}
+		finally {
+			is.close();
+		}
+		return written;
+	}
+
+	private static void copy(InputStream is, File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			write(is, raf.getChannel(), 0);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Get the filename as defined by Content-Disposition (e.g. attachment; filename="dwca-mt-specimens.zip").
+	 * If the URL end point can not tell the name of the file, generate a UUID and keep the extension.
+	 *
+	 * @param connection
+	 * @param url
+	 * @return
+	 */
+	static String getFilename(URLConnection connection, URL url) {
+		String contentDisposition = connection.getHeaderField("Content-Disposition");
+		if (StringUtils.isNotBlank(contentDisposition)) {
+			Matcher matcher = FILENAME.matcher(contentDisposition);
+			if (matcher.find()) {
+				// never trust a path from the server
+				return FilenameUtils.getName(matcher.group(1).trim());
+			}
+		}
+		return UUID.randomUUID().toString() + "." + FilenameUtils.getExtension(url.getPath());
+	}
+
+	/**
+	 * Maximum number of parallel range requests. 1 disables range requests.
+	 * Default is 4.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Size in bytes of each range request. Archives smaller than this size are downloaded with a single request.
+	 * Default is 8MB.
+	 *
+	 * @param rangeSize
+	 */
+	public void setRangeSize(int rangeSize) {
+		this.rangeSize = rangeSize;
+	}
+}
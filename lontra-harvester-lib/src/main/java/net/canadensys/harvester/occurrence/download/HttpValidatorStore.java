@@ -0,0 +1,130 @@
+package net.canadensys.harvester.occurrence.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persist the HttpValidators of the last archive imported from each URL in a properties file (one file per URL).
+ *
+ * @author canadensys
+ *
+ */
+public class HttpValidatorStore {
+
+	private static final Logger LOGGER = Logger.getLogger(HttpValidatorStore.class);
+
+	private static final String FILE_EXTENSION = ".validators";
+
+	private static final String URL = "url";
+	private static final String ETAG = "etag";
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private final File folder;
+
+	/**
+	 *
+	 * @param folder
+	 *            folder where the validator files are saved, created if it doesn't exist
+	 */
+	public HttpValidatorStore(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Save (replace) the validators of a URL.
+	 *
+	 * @param validators
+	 * @throws IOException
+	 */
+	public void save(HttpValidators validators) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(URL, validators.getUrl());
+		if (validators.getEtag() != null) {
+			properties.setProperty(ETAG, validators.getEtag());
+		}
+		if (validators.getLastModified() != null) {
+			properties.setProperty(LAST_MODIFIED, validators.getLastModified());
+		}
+
+		folder.mkdirs();
+		OutputStream os = new FileOutputStream(getValidatorsFile(validators.getUrl()));
+		try {
+			properties.store(os, "HTTP validators of " + validators.getUrl());
+		}
+		finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Load the validators of a URL.
+	 *
+	 * @param url
+	 * @return the validators or null if there is no validators for this URL
+	 */
+	public HttpValidators load(String url) {
+		File validatorsFile = getValidatorsFile(url);
+		if (!validatorsFile.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try {
+			InputStream is = new FileInputStream(validatorsFile);
+			try {
+				properties.load(is);
+			}
+			finally {
+				is.close();
+			}
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't read validators " + validatorsFile, e);
+			return null;
+		}
+		// make sure the file was not created for another URL
+		if (!url.equals(properties.getProperty(URL))) {
+			return null;
+		}
+		return new HttpValidators(url, properties.getProperty(ETAG), properties.getProperty(LAST_MODIFIED));
+	}
+
+	/**
+	 * Delete the validators of a URL, if any.
+	 *
+	 * @param url
+	 */
+	public void delete(String url) {
+		File validatorsFile = getValidatorsFile(url);
+		if (validatorsFile.exists() && !validatorsFile.delete()) {
+			LOGGER.warn("Can't delete validators " + validatorsFile);
+		}
+	}
+
+	private File getValidatorsFile(String url) {
+		return new File(folder, digest(url) + FILE_EXTENSION);
+	}
+
+	private static String digest(String url) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(Charset.forName("UTF-8")));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not available", e);
+		}
+	}
+}
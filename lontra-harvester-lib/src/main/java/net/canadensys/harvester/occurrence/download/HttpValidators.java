@@ -0,0 +1,85 @@
+package net.canadensys.harvester.occurrence.download;
+
+import java.net.URLConnection;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * HTTP cache validators (ETag and Last-Modified) returned by a server for a downloaded archive.
+ * They are sent back (If-None-Match/If-Modified-Since) to only download the archive again if it changed.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class HttpValidators {
+
+	private final String url;
+	private final String etag;
+	private final String lastModified;
+
+	public HttpValidators(String url, String etag, String lastModified) {
+		this.url = url;
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Get the validators from the headers of a response.
+	 *
+	 * @param url
+	 * @param connection
+	 * @return the validators or null if the response has none
+	 */
+	public static HttpValidators from(String url, URLConnection connection) {
+		String etag = connection.getHeaderField("ETag");
+		String lastModified = connection.getHeaderField("Last-Modified");
+		if (StringUtils.isBlank(etag) && StringUtils.isBlank(lastModified)) {
+			return null;
+		}
+		return new HttpValidators(url, etag, lastModified);
+	}
+
+	/**
+	 * Add the conditional headers to a request.
+	 *
+	 * @param connection
+	 */
+	public void addConditionalHeaders(URLConnection connection) {
+		if (StringUtils.isNotBlank(etag)) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		if (StringUtils.isNotBlank(lastModified)) {
+			connection.setRequestProperty("If-Modified-Since", lastModified);
+		}
+	}
+
+	/**
+	 * Value to use in an If-Range header: a strong ETag if available, the Last-Modified date otherwise.
+	 *
+	 * @return the value or null if the validators can not be used with If-Range
+	 */
+	public String getIfRangeValue() {
+		if (StringUtils.isNotBlank(etag) && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return StringUtils.isNotBlank(lastModified) ? lastModified : null;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	@Override
+	public String toString() {
+		return url + " (ETag " + etag + ", Last-Modified " + lastModified + ")";
+	}
+}
@@ -0,0 +1,421 @@
+package net.canadensys.harvester.occurrence.download;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.log4j.Logger;
+
+/**
+ * ZIP file that is still being downloaded.
+ * The file is downloaded in chunks (range requests) by DwcaDownloader while its entries are read: reading an entry moves
+ * its chunks in front of the download queue and blocks until the bytes are available. The location of the entries comes
+ * from the central directory, downloaded first.
+ * While the download is in progress, the archive can be found with {@link #get(File)}. Once the download is complete
+ * (or failed), the archive is removed and the file can be read like any ZIP file.
+ * This class is thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class PartialZipArchive {
+
+	private static final Logger LOGGER = Logger.getLogger(PartialZipArchive.class);
+
+	private static final ConcurrentMap<String, PartialZipArchive> IN_PROGRESS = new ConcurrentHashMap<String, PartialZipArchive>();
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_HEADER_LENGTH = 30;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final long length;
+	private final int chunkSize;
+	private final int numberOfChunks;
+	private final ZipDirectory directory;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	// number of bytes downloaded from the start of each chunk
+	private final long[] chunkProgress;
+	private final BitSet scheduledChunks;
+	private final LinkedList<Integer> priorityChunks = new LinkedList<Integer>();
+	private int completedChunks;
+	private IOException failure;
+
+	/**
+	 * Create the file (with its final length) and register the archive as in progress.
+	 *
+	 * @param file
+	 * @param length
+	 *            length of the complete file
+	 * @param chunkSize
+	 * @param directory
+	 * @throws IOException
+	 */
+	PartialZipArchive(File file, long length, int chunkSize, ZipDirectory directory) throws IOException {
+		this.file = file.getAbsoluteFile();
+		this.length = length;
+		this.chunkSize = chunkSize;
+		this.numberOfChunks = (int) ((length + chunkSize - 1) / chunkSize);
+		this.directory = directory;
+		this.chunkProgress = new long[numberOfChunks];
+		this.scheduledChunks = new BitSet(numberOfChunks);
+
+		raf = new RandomAccessFile(this.file, "rw");
+		raf.setLength(length);
+		channel = raf.getChannel();
+		IN_PROGRESS.put(this.file.getPath(), this);
+	}
+
+	/**
+	 * Get the archive of a file that is still being downloaded.
+	 *
+	 * @param file
+	 * @return the archive or null if the file is not being downloaded
+	 */
+	public static PartialZipArchive get(File file) {
+		return IN_PROGRESS.get(file.getAbsolutePath());
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public ZipDirectory getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Open the (uncompressed) content of an entry.
+	 * The entry is downloaded before the rest of the file and reading blocks until its bytes are available.
+	 *
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 *             if the entry doesn't exist, can not be read or if the download fails
+	 */
+	public InputStream openEntry(String name) throws IOException {
+		ZipDirectory.Entry entry = directory.getEntry(name);
+		if (entry == null) {
+			throw new IOException("Entry " + name + " not found in " + file.getName());
+		}
+		prioritizeEntry(name);
+
+		// the local header may have a different extra field than the central directory
+		byte[] header = new byte[LOCAL_HEADER_LENGTH];
+		InputStream headerStream = new RangeInputStream(entry.getLocalHeaderOffset(), entry.getLocalHeaderOffset() + LOCAL_HEADER_LENGTH);
+		try {
+			readFully(headerStream, header);
+		}
+		finally {
+			headerStream.close();
+		}
+		if (ZipDirectory.readInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+			throw new IOException("Invalid local header for entry " + name + " in " + file.getName());
+		}
+		long dataStart = entry.getLocalHeaderOffset() + LOCAL_HEADER_LENGTH + ZipDirectory.readShort(header, 26)
+				+ ZipDirectory.readShort(header, 28);
+		InputStream data = new RangeInputStream(dataStart, dataStart + entry.getCompressedSize());
+
+		switch (entry.getMethod()) {
+			case ZipEntry.STORED:
+				return data;
+			case ZipEntry.DEFLATED:
+				return new EntryInflaterInputStream(data);
+			default:
+				data.close();
+				throw new IOException("Unsupported compression method " + entry.getMethod() + " for entry " + name);
+		}
+	}
+
+	/**
+	 * Download the chunks of an entry before the other chunks.
+	 *
+	 * @param name
+	 */
+	public synchronized void prioritizeEntry(String name) {
+		ZipDirectory.Entry entry = directory.getEntry(name);
+		if (entry == null || entry.getEnd() <= entry.getLocalHeaderOffset()) {
+			return;
+		}
+		int last = (int) ((entry.getEnd() - 1) / chunkSize);
+		for (int chunk = (int) (entry.getLocalHeaderOffset() / chunkSize); chunk <= last; chunk++) {
+			if (!scheduledChunks.get(chunk)) {
+				priorityChunks.add(chunk);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the complete file was downloaded
+	 */
+	public synchronized boolean isComplete() {
+		return completedChunks == numberOfChunks;
+	}
+
+	/**
+	 * Wait until the complete file is downloaded.
+	 *
+	 * @throws IOException
+	 *             if the download failed
+	 */
+	public synchronized void awaitCompletion() throws IOException {
+		while (!isComplete()) {
+			checkFailure();
+			doWait();
+		}
+	}
+
+	/**
+	 * Stop the download if it's not complete, the file is deleted.
+	 */
+	public void cancel() {
+		fail(new IOException("Download of " + file.getName() + " canceled"));
+	}
+
+	/**
+	 * Get the next chunk to download, chunks of the prioritized entries first.
+	 *
+	 * @return index of the chunk or -1 if all the chunks are scheduled or if the download failed
+	 */
+	synchronized int nextChunk() {
+		if (failure != null) {
+			return -1;
+		}
+		Integer prioritized;
+		while ((prioritized = priorityChunks.poll()) != null) {
+			if (!scheduledChunks.get(prioritized)) {
+				scheduledChunks.set(prioritized);
+				return prioritized;
+			}
+		}
+		int chunk = scheduledChunks.nextClearBit(0);
+		if (chunk >= numberOfChunks) {
+			return -1;
+		}
+		scheduledChunks.set(chunk);
+		return chunk;
+	}
+
+	long getChunkStart(int chunk) {
+		return (long) chunk * chunkSize;
+	}
+
+	/**
+	 * @param chunk
+	 * @return position (inclusive) of the last byte of the chunk
+	 */
+	long getChunkEnd(int chunk) {
+		return Math.min(getChunkStart(chunk) + chunkSize, length) - 1;
+	}
+
+	/**
+	 * Write the content of a chunk, readers are notified as bytes are written.
+	 *
+	 * @param chunk
+	 * @param is
+	 *            content of the chunk, closed by this method
+	 * @throws IOException
+	 *             if the stream doesn't contain the complete chunk or if the download failed
+	 */
+	void writeChunk(int chunk, InputStream is) throws IOException {
+		long start = getChunkStart(chunk);
+		long expected = getChunkEnd(chunk) - start + 1;
+		long written = 0;
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			int read;
+			while (written < expected && (read = is.read(buffer, 0, (int) Math.min(buffer.length, expected - written))) != -1) {
+				byteBuffer.clear().limit(read);
+				while (byteBuffer.hasRemaining()) {
+					written += channel.write(byteBuffer, start + written);
+				}
+				progress(chunk, written);
+			}
+		}
+		finally {
+			is.close();
+		}
+		if (written != expected) {
+			throw new IOException("Incomplete range " + start + "-" + getChunkEnd(chunk) + " for " + file.getName());
+		}
+	}
+
+	private synchronized void progress(int chunk, long written) throws IOException {
+		checkFailure();
+		chunkProgress[chunk] = written;
+		if (getChunkStart(chunk) + written > getChunkEnd(chunk)) {
+			completedChunks++;
+			if (isComplete()) {
+				closeFile();
+				LOGGER.info("Download of " + file.getName() + " completed");
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Stop the download, readers waiting for bytes will get the exception.
+	 *
+	 * @param e
+	 */
+	synchronized void fail(IOException e) {
+		if (failure != null || isComplete()) {
+			return;
+		}
+		failure = e;
+		closeFile();
+		if (!file.delete()) {
+			LOGGER.warn("Can't delete " + file);
+		}
+		notifyAll();
+	}
+
+	private void closeFile() {
+		IN_PROGRESS.remove(file.getPath(), this);
+		try {
+			raf.close();
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't close " + file, e);
+		}
+	}
+
+	/**
+	 * Wait until at least one byte is available at a position.
+	 *
+	 * @param position
+	 * @return number of bytes available from this position
+	 * @throws IOException
+	 */
+	private synchronized long awaitAvailable(long position) throws IOException {
+		int chunk = (int) (position / chunkSize);
+		long available;
+		while ((available = getChunkStart(chunk) + chunkProgress[chunk] - position) <= 0) {
+			checkFailure();
+			doWait();
+		}
+		return available;
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Download of " + file.getName() + " failed", failure);
+		}
+	}
+
+	private void doWait() throws IOException {
+		try {
+			wait();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + file.getName());
+		}
+	}
+
+	private static void readFully(InputStream is, byte[] bytes) throws IOException {
+		int offset = 0;
+		int read;
+		while (offset < bytes.length) {
+			read = is.read(bytes, offset, bytes.length - offset);
+			if (read == -1) {
+				throw new EOFException();
+			}
+			offset += read;
+		}
+	}
+
+	/**
+	 * Read a range of the file, blocking until the bytes are downloaded.
+	 */
+	private class RangeInputStream extends InputStream {
+		private final RandomAccessFile in;
+		private final long end;
+		private long position;
+
+		RangeInputStream(long start, long end) throws IOException {
+			this.in = new RandomAccessFile(file, "r");
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int toRead = (int) Math.min(len, Math.min(end - position, awaitAvailable(position)));
+			in.seek(position);
+			int read = in.read(b, off, toRead);
+			if (read > 0) {
+				position += read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Inflate the raw deflate data of an entry, like java.util.zip.ZipFile a dummy byte is provided at the end of the
+	 * input.
+	 */
+	private static class EntryInflaterInputStream extends InflaterInputStream {
+		private boolean eof = false;
+
+		EntryInflaterInputStream(InputStream in) {
+			super(in, new Inflater(true), BUFFER_SIZE);
+		}
+
+		@Override
+		protected void fill() throws IOException {
+			if (eof) {
+				throw new EOFException("Unexpected end of ZLIB input stream");
+			}
+			len = in.read(buf, 0, buf.length);
+			if (len == -1) {
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			}
+			finally {
+				inf.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package net.canadensys.harvester.occurrence.download;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Central directory of a ZIP file parsed from the last bytes of the file (end of central directory record and central
+ * directory).
+ * It tells where each entry is located so entries can be read before the complete file is available.
+ * ZIP64 files are not supported.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class ZipDirectory {
+
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+	private static final int EOCD_LENGTH = 22;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_HEADER_LENGTH = 46;
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+	private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+	/**
+	 * Number of bytes at the end of a ZIP file that always include the end of central directory record.
+	 */
+	public static final int MAX_EOCD_LENGTH = EOCD_LENGTH + MAX_COMMENT_LENGTH;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Map<String, Entry> entries;
+	private final long directoryOffset;
+
+	/**
+	 * Location of an entry in the ZIP file.
+	 */
+	public static final class Entry {
+		private final String name;
+		private final int method;
+		private final long compressedSize;
+		private final long localHeaderOffset;
+		private long end;
+
+		private Entry(String name, int method, long compressedSize, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return compression method (0 = stored, 8 = deflated)
+		 */
+		public int getMethod() {
+			return method;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		public long getLocalHeaderOffset() {
+			return localHeaderOffset;
+		}
+
+		/**
+		 * @return position (exclusive) where the next entry (or the central directory) starts
+		 */
+		public long getEnd() {
+			return end;
+		}
+	}
+
+	private ZipDirectory(Map<String, Entry> entries, long directoryOffset) {
+		this.entries = Collections.unmodifiableMap(entries);
+		this.directoryOffset = directoryOffset;
+	}
+
+	/**
+	 * Find the offset and the size of the central directory in the last bytes of a ZIP file.
+	 *
+	 * @param tail
+	 *            last bytes of the file
+	 * @param tailOffset
+	 *            position of the first byte of tail in the file
+	 * @return {offset, size} of the central directory
+	 * @throws IOException
+	 *             if the end of central directory record can not be found or if the file is a ZIP64 file
+	 */
+	public static long[] findDirectory(byte[] tail, long tailOffset) throws IOException {
+		int eocd = -1;
+		for (int i = tail.length - EOCD_LENGTH; i >= 0 && eocd < 0; i--) {
+			// the comment length must match the remaining bytes
+			if (readInt(tail, i) == EOCD_SIGNATURE && i + EOCD_LENGTH + readShort(tail, i + 20) == tail.length) {
+				eocd = i;
+			}
+		}
+		if (eocd < 0) {
+			throw new IOException("End of central directory not found, not a ZIP file");
+		}
+		long size = readUnsignedInt(tail, eocd + 12);
+		long offset = readUnsignedInt(tail, eocd + 16);
+		if (offset == ZIP64_MARKER || size == ZIP64_MARKER || readShort(tail, eocd + 10) == 0xFFFF) {
+			throw new IOException("ZIP64 files are not supported");
+		}
+		if (offset + size > tailOffset + eocd) {
+			throw new IOException("Invalid central directory location");
+		}
+		return new long[] { offset, size };
+	}
+
+	/**
+	 * Parse the central directory.
+	 *
+	 * @param directory
+	 *            bytes of the central directory
+	 * @param directoryOffset
+	 *            position of the central directory in the file
+	 * @return
+	 * @throws IOException
+	 */
+	public static ZipDirectory parse(byte[] directory, long directoryOffset) throws IOException {
+		Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		List<Entry> byOffset = new ArrayList<Entry>();
+		int position = 0;
+		while (position + CENTRAL_HEADER_LENGTH <= directory.length && readInt(directory, position) == CENTRAL_HEADER_SIGNATURE) {
+			int nameLength = readShort(directory, position + 28);
+			int extraLength = readShort(directory, position + 30);
+			int commentLength = readShort(directory, position + 32);
+			if (position + CENTRAL_HEADER_LENGTH + nameLength > directory.length) {
+				throw new IOException("Truncated central directory");
+			}
+			// like java.util.zip.ZipFile, names are read as UTF-8
+			String name = new String(directory, position + CENTRAL_HEADER_LENGTH, nameLength, UTF8);
+			Entry entry = new Entry(name, readShort(directory, position + 10), readUnsignedInt(directory, position + 20),
+					readUnsignedInt(directory, position + 42));
+			if (entry.compressedSize == ZIP64_MARKER || entry.localHeaderOffset == ZIP64_MARKER) {
+				throw new IOException("ZIP64 files are not supported");
+			}
+			entries.put(name, entry);
+			byOffset.add(entry);
+			position += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+		}
+
+		// an entry ends where the next one starts
+		Collections.sort(byOffset, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return Long.compare(e1.localHeaderOffset, e2.localHeaderOffset);
+			}
+		});
+		for (int i = 0; i < byOffset.size(); i++) {
+			byOffset.get(i).end = (i + 1 < byOffset.size()) ? byOffset.get(i + 1).localHeaderOffset : directoryOffset;
+		}
+		return new ZipDirectory(entries, directoryOffset);
+	}
+
+	/**
+	 * Get an entry by name.
+	 *
+	 * @param name
+	 * @return the entry or null if the ZIP file doesn't contain it
+	 */
+	public Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * @return names of the entries in the order of the central directory
+	 */
+	public Set<String> getEntryNames() {
+		return entries.keySet();
+	}
+
+	public long getDirectoryOffset() {
+		return directoryOffset;
+	}
+
+	static int readShort(byte[] bytes, int position) {
+		return (bytes[position] & 0xFF) | ((bytes[position + 1] & 0xFF) << 8);
+	}
+
+	static int readInt(byte[] bytes, int position) {
+		return readShort(bytes, position) | (readShort(bytes, position + 2) << 16);
+	}
+
+	static long readUnsignedInt(byte[] bytes, int position) {
+		return readInt(bytes, position) & 0xFFFFFFFFL;
+	}
+}
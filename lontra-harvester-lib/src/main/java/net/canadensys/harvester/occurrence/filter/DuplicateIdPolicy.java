@@ -0,0 +1,14 @@
+package net.canadensys.harvester.occurrence.filter;
+
+/**
+ * What to do with the core records sharing the same Dwc-A id.
+ * FAIL: stop the import before any record is sent to the processing nodes.
+ * EXCLUDE: skip all the records of a duplicated id (the ids are added to the exclusion list).
+ * KEEP_FIRST: only harvest the first record read for a duplicated id.
+ *
+ * @author canadensys
+ *
+ */
+public enum DuplicateIdPolicy {
+	FAIL, EXCLUDE, KEEP_FIRST
+}
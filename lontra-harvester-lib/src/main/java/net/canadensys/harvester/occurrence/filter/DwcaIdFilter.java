@@ -0,0 +1,174 @@
+package net.canadensys.harvester.occurrence.filter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Record filter based on Dwc-A id.
+ * A record is accepted if its id is in the inclusion set (when provided) and not in the exclusion set (when provided).
+ * Ids known to be duplicated can also be excluded or accepted only once (see {@link #withDuplicateIds(IdSetIF, boolean)}).
+ * Once built, this class can be shared between readers.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaIdFilter {
+
+	private static final double BLOOM_FILTER_FPP = 0.01;
+
+	private final IdSetIF excludedIds;
+	private final IdSetIF includedIds;
+	private final IdSetIF duplicateIds;
+	private final boolean keepFirstDuplicate;
+	// duplicate ids already accepted once
+	private final Set<String> acceptedDuplicateIds;
+
+	/**
+	 *
+	 * @param excludedIds
+	 *            ids to exclude or null
+	 * @param includedIds
+	 *            ids to include or null to include all ids
+	 */
+	public DwcaIdFilter(IdSetIF excludedIds, IdSetIF includedIds) {
+		this(excludedIds, includedIds, null, false);
+	}
+
+	private DwcaIdFilter(IdSetIF excludedIds, IdSetIF includedIds, IdSetIF duplicateIds, boolean keepFirstDuplicate) {
+		this.excludedIds = excludedIds;
+		this.includedIds = includedIds;
+		this.duplicateIds = duplicateIds;
+		this.keepFirstDuplicate = keepFirstDuplicate;
+		this.acceptedDuplicateIds = keepFirstDuplicate ? Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()) : null;
+	}
+
+	/**
+	 * Get a new filter using the same inclusion and exclusion sets that also handles duplicated ids.
+	 * With keepFirst, the first record read for a duplicated id is accepted and the following ones are rejected, this
+	 * filter is then stateful and should only be used by one import. Otherwise, all the records of a duplicated id are
+	 * rejected.
+	 *
+	 * @param duplicateIds
+	 * @param keepFirst
+	 * @return
+	 */
+	public DwcaIdFilter withDuplicateIds(IdSetIF duplicateIds, boolean keepFirst) {
+		return new DwcaIdFilter(excludedIds, includedIds, duplicateIds, keepFirst);
+	}
+
+	/**
+	 * Check if a record should be harvested.
+	 *
+	 * @param dwcaId
+	 * @return
+	 */
+	public boolean accept(String dwcaId) {
+		if (includedIds != null && !includedIds.contains(dwcaId)) {
+			return false;
+		}
+		if (excludedIds != null && excludedIds.contains(dwcaId)) {
+			return false;
+		}
+		if (duplicateIds != null && duplicateIds.contains(dwcaId)) {
+			return keepFirstDuplicate && acceptedDuplicateIds.add(dwcaId);
+		}
+		return true;
+	}
+
+	public IdSetIF getExcludedIds() {
+		return excludedIds;
+	}
+
+	public IdSetIF getIncludedIds() {
+		return includedIds;
+	}
+
+	public IdSetIF getDuplicateIds() {
+		return duplicateIds;
+	}
+
+	/**
+	 * Is the first record of a duplicated id accepted? The filter then depends on all the records read before, it can
+	 * not be used to resume a partial read.
+	 *
+	 * @return
+	 */
+	public boolean isKeepFirstDuplicate() {
+		return keepFirstDuplicate;
+	}
+
+	/**
+	 * Release the resources used by the id sets.
+	 */
+	public void close() {
+		if (excludedIds != null) {
+			excludedIds.close();
+		}
+		if (includedIds != null) {
+			includedIds.close();
+		}
+		if (duplicateIds != null) {
+			duplicateIds.close();
+		}
+	}
+
+	/**
+	 * Build an exclusion filter from a collection of ids.
+	 *
+	 * @param excludedIds
+	 * @return
+	 */
+	public static DwcaIdFilter fromExclusionList(Collection<String> excludedIds) {
+		IdSetIF idSet = new OpenAddressingIdSet(IdSetStorage.HEAP, excludedIds.size());
+		for (String id : excludedIds) {
+			idSet.add(id);
+		}
+		return new DwcaIdFilter(idSet, null);
+	}
+
+	/**
+	 * Stream a file containing one id per line into an id set. Empty lines are ignored.
+	 *
+	 * @param idFile
+	 *            UTF-8 encoded file
+	 * @param storage
+	 * @param bloomFilter
+	 *            enable the Bloom filter pre-check
+	 * @return
+	 * @throws IOException
+	 */
+	public static IdSetIF load(File idFile, IdSetStorage storage, boolean bloomFilter) throws IOException {
+		// approximate the number of ids from the file size to limit rehashing
+		int expectedSize = (int) Math.min(Integer.MAX_VALUE / 4, idFile.length() / 16);
+		OpenAddressingIdSet idSet = new OpenAddressingIdSet(storage, expectedSize);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(idFile), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (StringUtils.isNotEmpty(line)) {
+					idSet.add(line);
+				}
+			}
+		}
+		catch (IOException e) {
+			idSet.close();
+			throw e;
+		}
+		finally {
+			reader.close();
+		}
+		if (bloomFilter) {
+			idSet.enableBloomFilter(BLOOM_FILTER_FPP);
+		}
+		return idSet;
+	}
+}
@@ -0,0 +1,36 @@
+package net.canadensys.harvester.occurrence.filter;
+
+/**
+ * Set of record identifiers (e.g. Dwc-A id) used to filter records.
+ *
+ * @author canadensys
+ *
+ */
+public interface IdSetIF {
+
+	/**
+	 * Add an identifier to the set.
+	 *
+	 * @param id
+	 * @return true if the identifier was not already in the set
+	 */
+	boolean add(String id);
+
+	/**
+	 * Check if an identifier is in the set.
+	 *
+	 * @param id
+	 * @return
+	 */
+	boolean contains(String id);
+
+	/**
+	 * @return number of identifiers in the set
+	 */
+	int size();
+
+	/**
+	 * Release the resources used by the set. The set should not be used after this call.
+	 */
+	void close();
+}
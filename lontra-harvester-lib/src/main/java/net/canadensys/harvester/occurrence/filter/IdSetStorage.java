@@ -0,0 +1,60 @@
+package net.canadensys.harvester.occurrence.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Where the content of an OpenAddressingIdSet is stored.
+ * HEAP: regular heap buffers.
+ * OFF_HEAP: direct buffers, not counted in the heap size (see -XX:MaxDirectMemorySize).
+ * MAPPED: buffers mapped on temporary files, the operating system can page them out.
+ *
+ * @author canadensys
+ *
+ */
+public enum IdSetStorage {
+	HEAP, OFF_HEAP, MAPPED;
+
+	private static final String TEMP_FILE_PREFIX = "lontra-idset";
+
+	/**
+	 * Allocate a zeroed buffer.
+	 *
+	 * @param capacity
+	 *            in bytes
+	 * @return
+	 */
+	public ByteBuffer allocate(int capacity) {
+		switch (this) {
+			case OFF_HEAP:
+				return ByteBuffer.allocateDirect(capacity);
+			case MAPPED:
+				return allocateMapped(capacity);
+			default:
+				return ByteBuffer.allocate(capacity);
+		}
+	}
+
+	private static ByteBuffer allocateMapped(int capacity) {
+		try {
+			File tempFile = File.createTempFile(TEMP_FILE_PREFIX, ".bin");
+			tempFile.deleteOnExit();
+			RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+			try {
+				raf.setLength(capacity);
+				return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			}
+			finally {
+				raf.close();
+				// the mapping stays valid, on most systems the file can be removed right away
+				tempFile.delete();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't allocate memory-mapped buffer", e);
+		}
+	}
+}
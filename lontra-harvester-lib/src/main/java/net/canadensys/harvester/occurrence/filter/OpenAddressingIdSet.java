@@ -0,0 +1,268 @@
+package net.canadensys.harvester.occurrence.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Hash set of identifiers using open addressing (linear probing).
+ * Identifiers are stored as UTF-8 bytes in an append-only arena, the table only keeps a 32 bits hash and the offset of
+ * the identifier in the arena. Both the table and the arena are allocated from an IdSetStorage so large sets can live
+ * outside of the heap.
+ * An optional Bloom filter can be used as a pre-check to avoid probing the table for most of the identifiers that are
+ * not in the set.
+ * This class is mutable and not thread safe, once loaded, concurrent calls to contains are safe.
+ *
+ * @author canadensys
+ *
+ */
+public class OpenAddressingIdSet implements IdSetIF {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+	private static final int MAX_CAPACITY = 1 << 27;
+	private static final int SLOT_SIZE = 8;
+	private static final int LENGTH_SIZE = 2;
+	private static final int LENGTH_MASK = 0xFFFF;
+	private static final int MIN_ARENA_CHUNK_SIZE = 64 * 1024;
+	// an identifier never spans two chunks, it must fit in the smallest chunk
+	private static final int MAX_ID_LENGTH = MIN_ARENA_CHUNK_SIZE - LENGTH_SIZE;
+	private static final int MAX_ARENA_CHUNK_SIZE = 16 * 1024 * 1024;
+	// rough estimate of the space used by an identifier in the arena
+	private static final int EXPECTED_ENTRY_SIZE = 32;
+	private static final long MAX_ARENA_SIZE = 0xFFFFFFFEL;
+
+	private final IdSetStorage storage;
+
+	// each slot is a long: hash (32 bits) | offset in the arena + 1 (32 bits), 0 means empty
+	private ByteBuffer table;
+	private int capacity;
+	private int mask;
+	private int size;
+
+	private final int arenaChunkSize;
+	private final List<ByteBuffer> arena = new ArrayList<ByteBuffer>();
+	private long arenaOffset;
+
+	private BloomFilter<byte[]> bloomFilter;
+
+	public OpenAddressingIdSet() {
+		this(IdSetStorage.HEAP, DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 *
+	 * @param storage
+	 * @param expectedSize
+	 *            expected number of identifiers, the set will grow if required
+	 */
+	public OpenAddressingIdSet(IdSetStorage storage, int expectedSize) {
+		this.storage = storage;
+		allocateTable(tableSizeFor(expectedSize));
+		int chunkSize = MIN_ARENA_CHUNK_SIZE;
+		while (chunkSize < (long) expectedSize * EXPECTED_ENTRY_SIZE && chunkSize < MAX_ARENA_CHUNK_SIZE) {
+			chunkSize <<= 1;
+		}
+		this.arenaChunkSize = chunkSize;
+	}
+
+	@Override
+	public boolean add(String id) {
+		byte[] idBytes = id.getBytes(UTF8);
+		if (idBytes.length > MAX_ID_LENGTH) {
+			throw new IllegalArgumentException("Identifier longer than " + MAX_ID_LENGTH + " bytes");
+		}
+		int hash = hash(idBytes);
+		if (find(idBytes, hash) >= 0) {
+			return false;
+		}
+		if ((size + 1) * 2 > capacity) {
+			rehash(capacity * 2);
+		}
+		long offset = append(idBytes);
+		insertSlot(((long) hash << 32) | (offset + 1));
+		size++;
+
+		if (bloomFilter != null) {
+			bloomFilter.put(idBytes);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(String id) {
+		if (id == null) {
+			return false;
+		}
+		byte[] idBytes = id.getBytes(UTF8);
+		if (bloomFilter != null && !bloomFilter.mightContain(idBytes)) {
+			return false;
+		}
+		return find(idBytes, hash(idBytes)) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Enable the Bloom filter pre-check.
+	 * Should be called once the set is loaded since the Bloom filter is sized on the current number of identifiers.
+	 *
+	 * @param falsePositiveProbability
+	 */
+	public void enableBloomFilter(double falsePositiveProbability) {
+		bloomFilter = BloomFilter.create(Funnels.byteArrayFunnel(), Math.max(size, 1), falsePositiveProbability);
+		long slot;
+		for (int i = 0; i < capacity; i++) {
+			slot = table.getLong(i * SLOT_SIZE);
+			if (slot != 0) {
+				bloomFilter.put(readId((slot & 0xFFFFFFFFL) - 1));
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		// buffers are released by the garbage collector
+		table = null;
+		arena.clear();
+		bloomFilter = null;
+		size = 0;
+	}
+
+	/**
+	 * Find the slot of an identifier.
+	 *
+	 * @param idBytes
+	 * @param hash
+	 * @return index of the slot or -1 if the identifier is not in the set
+	 */
+	private int find(byte[] idBytes, int hash) {
+		int index = hash & mask;
+		long slot;
+		while ((slot = table.getLong(index * SLOT_SIZE)) != 0) {
+			if ((int) (slot >>> 32) == hash && equalsAt((slot & 0xFFFFFFFFL) - 1, idBytes)) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void insertSlot(long slotValue) {
+		int index = ((int) (slotValue >>> 32)) & mask;
+		while (table.getLong(index * SLOT_SIZE) != 0) {
+			index = (index + 1) & mask;
+		}
+		table.putLong(index * SLOT_SIZE, slotValue);
+	}
+
+	private void rehash(int newCapacity) {
+		if (newCapacity > MAX_CAPACITY) {
+			throw new IllegalStateException("IdSet can not contain more than " + (MAX_CAPACITY / 2) + " identifiers");
+		}
+		ByteBuffer oldTable = table;
+		int oldCapacity = capacity;
+		allocateTable(newCapacity);
+		long slot;
+		for (int i = 0; i < oldCapacity; i++) {
+			slot = oldTable.getLong(i * SLOT_SIZE);
+			if (slot != 0) {
+				insertSlot(slot);
+			}
+		}
+	}
+
+	private void allocateTable(int newCapacity) {
+		table = storage.allocate(newCapacity * SLOT_SIZE);
+		capacity = newCapacity;
+		mask = newCapacity - 1;
+	}
+
+	/**
+	 * Append an identifier to the arena. An identifier never spans two chunks.
+	 *
+	 * @param idBytes
+	 * @return offset of the identifier
+	 */
+	private long append(byte[] idBytes) {
+		int entrySize = LENGTH_SIZE + idBytes.length;
+		long arenaEnd = (long) arena.size() * arenaChunkSize;
+		if (arenaOffset + entrySize > arenaEnd) {
+			// the end of the last chunk (if any) is left unused
+			arenaOffset = arenaEnd;
+			if (arenaOffset + entrySize > MAX_ARENA_SIZE) {
+				throw new IllegalStateException("IdSet arena is full");
+			}
+			arena.add(storage.allocate(arenaChunkSize));
+		}
+		int positionInChunk = (int) (arenaOffset % arenaChunkSize);
+		ByteBuffer chunk = arena.get(arena.size() - 1);
+		chunk.putShort(positionInChunk, (short) idBytes.length);
+		for (int i = 0; i < idBytes.length; i++) {
+			chunk.put(positionInChunk + LENGTH_SIZE + i, idBytes[i]);
+		}
+		long offset = arenaOffset;
+		arenaOffset += entrySize;
+		return offset;
+	}
+
+	private boolean equalsAt(long offset, byte[] idBytes) {
+		ByteBuffer chunk = arena.get((int) (offset / arenaChunkSize));
+		int position = (int) (offset % arenaChunkSize);
+		if ((chunk.getShort(position) & LENGTH_MASK) != idBytes.length) {
+			return false;
+		}
+		position += LENGTH_SIZE;
+		for (int i = 0; i < idBytes.length; i++) {
+			if (chunk.get(position + i) != idBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] readId(long offset) {
+		ByteBuffer chunk = arena.get((int) (offset / arenaChunkSize));
+		int position = (int) (offset % arenaChunkSize);
+		byte[] idBytes = new byte[chunk.getShort(position) & LENGTH_MASK];
+		position += LENGTH_SIZE;
+		for (int i = 0; i < idBytes.length; i++) {
+			idBytes[i] = chunk.get(position + i);
+		}
+		return idBytes;
+	}
+
+	/**
+	 * FNV-1a hash followed by a final mix to spread the bits used by the mask.
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	private static int hash(byte[] bytes) {
+		int h = 0x811C9DC5;
+		for (byte b : bytes) {
+			h ^= b;
+			h *= 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		int tableSize = DEFAULT_INITIAL_CAPACITY;
+		while (tableSize < expectedSize * 2 && tableSize < MAX_CAPACITY) {
+			tableSize <<= 1;
+		}
+		return tableSize;
+	}
+}
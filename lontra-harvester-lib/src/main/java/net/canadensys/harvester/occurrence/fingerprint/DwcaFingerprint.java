@@ -0,0 +1,272 @@
+package net.canadensys.harvester.occurrence.fingerprint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveSupport;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * Content fingerprint of a DarwinCore Archive used to detect a republished archive that didn't change.
+ * The data hash covers meta.xml and the data files of the core and the extensions, the metadata hash covers the EML
+ * file. Hashes are computed on the content only, zipping or extracting the archive doesn't change them.
+ * The core hash and the extension hashes (by row type simple name, e.g. Multimedia) cover the description (columns,
+ * default values, format) and the data file of each component, they allow to detect that only some extensions changed.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class DwcaFingerprint {
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	private static final String META_FILE = "meta.xml";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String dataHash;
+	private final String metadataHash;
+	private final Integer numberOfRecords;
+	private final String coreHash;
+	private final Map<String, String> extensionHashes;
+
+	/**
+	 * Fingerprint without component hashes.
+	 *
+	 * @param dataHash
+	 * @param metadataHash
+	 *            hash of the EML file or null if the archive has no EML
+	 * @param numberOfRecords
+	 *            number of core records imported from the archive or null if it was not imported yet
+	 */
+	public DwcaFingerprint(String dataHash, String metadataHash, Integer numberOfRecords) {
+		this(dataHash, metadataHash, numberOfRecords, null, null);
+	}
+
+	/**
+	 *
+	 * @param dataHash
+	 * @param metadataHash
+	 *            hash of the EML file or null if the archive has no EML
+	 * @param numberOfRecords
+	 *            number of core records imported from the archive or null if it was not imported yet
+	 * @param coreHash
+	 *            hash of the core or null if unknown
+	 * @param extensionHashes
+	 *            hash of each extension by row type simple name or null if unknown
+	 */
+	public DwcaFingerprint(String dataHash, String metadataHash, Integer numberOfRecords, String coreHash,
+			Map<String, String> extensionHashes) {
+		this.dataHash = dataHash;
+		this.metadataHash = metadataHash;
+		this.numberOfRecords = numberOfRecords;
+		this.coreHash = coreHash;
+		this.extensionHashes = (extensionHashes == null) ? Collections.<String, String> emptyMap() : Collections
+				.unmodifiableMap(new TreeMap<String, String>(extensionHashes));
+	}
+
+	/**
+	 * Compute the fingerprint of an archive.
+	 *
+	 * @param dwcaFile
+	 *            archive folder or ZIP file
+	 * @param descriptor
+	 * @return
+	 * @throws IOException
+	 */
+	public static DwcaFingerprint compute(File dwcaFile, DwcaArchiveDescriptor descriptor) throws IOException {
+		MessageDigest dataDigest = newDigest();
+		update(dataDigest, META_FILE, new FileInputStream(new File(descriptor.getLocation(), META_FILE)));
+		// the data files are read once for the data hash and the component hashes
+		MessageDigest coreDigest = newDigest();
+		coreDigest.update(describe(descriptor.getCore()).getBytes(UTF8));
+		update(new MessageDigest[] { dataDigest, coreDigest }, descriptor.getCore().getLocation(),
+				DwcaArchiveSupport.openDataStream(dwcaFile, descriptor.getCore()));
+		Map<String, String> extensionHashes = new HashMap<String, String>();
+		for (DwcaFileDescriptor extension : descriptor.getExtensions()) {
+			MessageDigest extensionDigest = newDigest();
+			extensionDigest.update(describe(extension).getBytes(UTF8));
+			update(new MessageDigest[] { dataDigest, extensionDigest }, extension.getLocation(),
+					DwcaArchiveSupport.openDataStream(dwcaFile, extension));
+			extensionHashes.put(extension.getRowType().simpleName(), toHex(extensionDigest.digest()));
+		}
+
+		String metadataHash = null;
+		File emlFile = descriptor.getMetadataLocationFile();
+		if (emlFile != null && emlFile.exists()) {
+			MessageDigest metadataDigest = newDigest();
+			update(metadataDigest, emlFile.getName(), new FileInputStream(emlFile));
+			metadataHash = toHex(metadataDigest.digest());
+		}
+		return new DwcaFingerprint(toHex(dataDigest.digest()), metadataHash, null, toHex(coreDigest.digest()), extensionHashes);
+	}
+
+	/**
+	 * Describe how the rows of a data file are read and mapped, part of the component hashes.
+	 */
+	private static String describe(DwcaFileDescriptor dwcaComponent) {
+		StringBuilder description = new StringBuilder();
+		description.append(dwcaComponent.getRowType()).append('|').append(dwcaComponent.getEncoding()).append('|')
+				.append(dwcaComponent.getFieldsTerminatedBy()).append('|').append(dwcaComponent.getFieldsEnclosedBy()).append('|')
+				.append(dwcaComponent.getIgnoreHeaderLines()).append('|').append(dwcaComponent.getIdIndex()).append('|')
+				.append(Arrays.toString(dwcaComponent.getHeaders()));
+		if (dwcaComponent.getDefaultValues() != null) {
+			description.append('|').append(new TreeMap<String, String>(dwcaComponent.getDefaultValues()));
+		}
+		return description.toString();
+	}
+
+	/**
+	 * Check if the data (meta.xml and data files) of both fingerprints is the same.
+	 *
+	 * @param other
+	 * @return
+	 */
+	public boolean isSameData(DwcaFingerprint other) {
+		return other != null && dataHash.equals(other.dataHash);
+	}
+
+	/**
+	 * Check if the metadata (EML) of both fingerprints is the same.
+	 *
+	 * @param other
+	 * @return
+	 */
+	public boolean isSameMetadata(DwcaFingerprint other) {
+		return other != null && ObjectUtils.equals(metadataHash, other.metadataHash);
+	}
+
+	/**
+	 * Check if the core (description and data file) of both fingerprints is the same.
+	 * Always false if a core hash is unknown.
+	 *
+	 * @param other
+	 * @return
+	 */
+	public boolean isSameCore(DwcaFingerprint other) {
+		return other != null && coreHash != null && coreHash.equals(other.coreHash);
+	}
+
+	/**
+	 * Get the extensions that are not the same in both fingerprints, including the extensions found in only one of
+	 * them.
+	 *
+	 * @param other
+	 * @return row type simple names, sorted
+	 */
+	public Set<String> getChangedExtensions(DwcaFingerprint other) {
+		Set<String> changedExtensions = new TreeSet<String>();
+		for (Map.Entry<String, String> entry : extensionHashes.entrySet()) {
+			if (!entry.getValue().equals(other.extensionHashes.get(entry.getKey()))) {
+				changedExtensions.add(entry.getKey());
+			}
+		}
+		for (String extension : other.extensionHashes.keySet()) {
+			if (!extensionHashes.containsKey(extension)) {
+				changedExtensions.add(extension);
+			}
+		}
+		return changedExtensions;
+	}
+
+	/**
+	 * @param numberOfRecords
+	 * @return a copy of this fingerprint with the number of imported records
+	 */
+	public DwcaFingerprint withNumberOfRecords(Integer numberOfRecords) {
+		return new DwcaFingerprint(dataHash, metadataHash, numberOfRecords, coreHash, extensionHashes);
+	}
+
+	public String getDataHash() {
+		return dataHash;
+	}
+
+	public String getMetadataHash() {
+		return metadataHash;
+	}
+
+	public Integer getNumberOfRecords() {
+		return numberOfRecords;
+	}
+
+	/**
+	 * @return hash of the core or null if unknown
+	 */
+	public String getCoreHash() {
+		return coreHash;
+	}
+
+	/**
+	 * @return unmodifiable map of the extension hashes by row type simple name
+	 */
+	public Map<String, String> getExtensionHashes() {
+		return extensionHashes;
+	}
+
+	/**
+	 * Add the name and the content of a file to a digest, the stream is closed.
+	 */
+	private static void update(MessageDigest digest, String name, InputStream is) throws IOException {
+		update(new MessageDigest[] { digest }, name, is);
+	}
+
+	/**
+	 * Add the name and the content of a file to several digests, the stream is closed.
+	 */
+	private static void update(MessageDigest[] digests, String name, InputStream is) throws IOException {
+		try {
+			for (MessageDigest digest : digests) {
+				digest.update(name.getBytes(UTF8));
+				// separate the name from the content
+				digest.update((byte) 0);
+			}
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				for (MessageDigest digest : digests) {
+					digest.update(buffer, 0, read);
+				}
+			}
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(DIGEST_ALGORITHM + " not available", e);
+		}
+	}
+
+	private static String toHex(byte[] hash) {
+		StringBuilder sb = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "data " + dataHash + ", metadata " + metadataHash;
+	}
+}
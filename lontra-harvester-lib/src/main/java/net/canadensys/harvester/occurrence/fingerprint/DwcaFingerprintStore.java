@@ -0,0 +1,139 @@
+package net.canadensys.harvester.occurrence.fingerprint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Persist the fingerprint of the last archive imported for each resource in a properties file (one file per
+ * resource).
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFingerprintStore {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaFingerprintStore.class);
+
+	private static final String FILE_EXTENSION = ".fingerprint";
+
+	private static final String DATA_HASH = "dataHash";
+	private static final String METADATA_HASH = "metadataHash";
+	private static final String NUMBER_OF_RECORDS = "numberOfRecords";
+	private static final String CORE_HASH = "coreHash";
+	// followed by the row type simple name of the extension
+	private static final String EXTENSION_HASH_PREFIX = "extensionHash.";
+
+	private final File folder;
+
+	/**
+	 *
+	 * @param folder
+	 *            folder where the fingerprint files are saved, created if it doesn't exist
+	 */
+	public DwcaFingerprintStore(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Save (replace) the fingerprint of a resource.
+	 *
+	 * @param resourceId
+	 * @param fingerprint
+	 * @throws IOException
+	 */
+	public void save(Integer resourceId, DwcaFingerprint fingerprint) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(DATA_HASH, fingerprint.getDataHash());
+		if (fingerprint.getMetadataHash() != null) {
+			properties.setProperty(METADATA_HASH, fingerprint.getMetadataHash());
+		}
+		if (fingerprint.getNumberOfRecords() != null) {
+			properties.setProperty(NUMBER_OF_RECORDS, fingerprint.getNumberOfRecords().toString());
+		}
+		if (fingerprint.getCoreHash() != null) {
+			properties.setProperty(CORE_HASH, fingerprint.getCoreHash());
+		}
+		for (Map.Entry<String, String> entry : fingerprint.getExtensionHashes().entrySet()) {
+			properties.setProperty(EXTENSION_HASH_PREFIX + entry.getKey(), entry.getValue());
+		}
+
+		folder.mkdirs();
+		OutputStream os = new FileOutputStream(getFingerprintFile(resourceId));
+		try {
+			properties.store(os, "Fingerprint of resource " + resourceId);
+		}
+		finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Load the fingerprint of a resource.
+	 *
+	 * @param resourceId
+	 * @return the fingerprint or null if there is no (valid) fingerprint for this resource
+	 */
+	public DwcaFingerprint load(Integer resourceId) {
+		File fingerprintFile = getFingerprintFile(resourceId);
+		if (!fingerprintFile.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try {
+			InputStream is = new FileInputStream(fingerprintFile);
+			try {
+				properties.load(is);
+			}
+			finally {
+				is.close();
+			}
+			if (StringUtils.isBlank(properties.getProperty(DATA_HASH))) {
+				LOGGER.error("Invalid fingerprint " + fingerprintFile);
+				return null;
+			}
+			String numberOfRecords = properties.getProperty(NUMBER_OF_RECORDS);
+			Map<String, String> extensionHashes = new HashMap<String, String>();
+			for (String key : properties.stringPropertyNames()) {
+				if (key.startsWith(EXTENSION_HASH_PREFIX)) {
+					extensionHashes.put(key.substring(EXTENSION_HASH_PREFIX.length()), properties.getProperty(key));
+				}
+			}
+			return new DwcaFingerprint(properties.getProperty(DATA_HASH), properties.getProperty(METADATA_HASH),
+					(numberOfRecords == null) ? null : Integer.valueOf(numberOfRecords), properties.getProperty(CORE_HASH),
+					extensionHashes);
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't read fingerprint " + fingerprintFile, e);
+		}
+		catch (NumberFormatException e) {
+			LOGGER.error("Invalid fingerprint " + fingerprintFile, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Delete the fingerprint of a resource, if any.
+	 *
+	 * @param resourceId
+	 */
+	public void delete(Integer resourceId) {
+		File fingerprintFile = getFingerprintFile(resourceId);
+		if (fingerprintFile.exists() && !fingerprintFile.delete()) {
+			LOGGER.warn("Can't delete fingerprint " + fingerprintFile);
+		}
+	}
+
+	private File getFingerprintFile(Integer resourceId) {
+		return new File(folder, resourceId + FILE_EXTENSION);
+	}
+}
@@ -1,5 +1,7 @@
 package net.canadensys.harvester.occurrence.job;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -11,14 +13,27 @@ import net.canadensys.harvester.ItemTaskIF;
 import net.canadensys.harvester.LongRunningTaskIF;
 import net.canadensys.harvester.StepIF;
 import net.canadensys.harvester.StepResult;
+import net.canadensys.harvester.exception.TaskExecutionException;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpointStore;
+import net.canadensys.harvester.occurrence.download.PartialZipArchive;
+import net.canadensys.harvester.occurrence.filter.DwcaIdFilter;
 import net.canadensys.harvester.occurrence.model.JobStatusModel;
 import net.canadensys.harvester.occurrence.model.JobStatusModel.JobStatus;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveCache;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveSupport;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+import net.canadensys.harvester.occurrence.step.stream.StreamDwcChunkStep;
 import net.canadensys.harvester.occurrence.task.CheckHarvestingCompletenessTask;
 import net.canadensys.harvester.occurrence.task.GetResourceInfoTask;
 import net.canadensys.harvester.occurrence.task.PrepareDwcaTask;
+import net.canadensys.harvester.occurrence.validation.DwcaValidationReport;
 
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 
 import com.google.common.collect.Maps;
@@ -26,12 +41,36 @@ import com.google.common.collect.Maps;
 /**
  * This job allows to give a resource ID, stream the content into JMS messages and waiting for completion.
  * At the end of this job, the content of the DarwinCore archive will be in the database as raw and processed data.
+ * If DWCA_RESUME is set and a checkpoint exists for the resource, the job resumes the streaming of the core data file from
+ * the checkpoint instead of starting from the first record. In this case, the messages of the interrupted import that
+ * were not consumed should be purged from the broker before resuming. An import keeping the first record of duplicated ids
+ * (KEEP_FIRST) is never resumed since the ids accepted before the checkpoint are unknown.
+ * If PrepareDwcaTask reports that the archive was not modified since the last import (DWCA_NOT_MODIFIED), the job ends
+ * right away. The HTTP validators of the archive (DWCA_HTTP_VALIDATORS) are saved by RecordImportTask once the records
+ * are moved to the public schema.
+ * If only the metadata of the archive changed (DWCA_METADATA_ONLY), the EML is processed synchronously and the
+ * records are not streamed.
+ * If only some extensions changed (DWCA_CHANGED_EXTENSIONS), the EML and these extensions are streamed but the core
+ * records are not.
+ * If the archive is read while it is downloaded (DWCA_PARTIAL_ARCHIVE), the job waits for the end of the download after
+ * streaming the content and stops the download if the streaming fails.
+ * If a validateDwcaTask is defined, the data files are validated before the buffer schema is cleaned and, when no record
+ * is filtered, the number of core rows it counted is the number of records expected in the buffer schema.
+ * If a detectDuplicateIdTask is defined, duplicate core ids are detected before the validation and, depending on its
+ * policy, fail the job or are filtered for this import only (DWCA_ID_EXCLUSION_LIST and DWCA_ID_FILTER are restored
+ * once the content is streamed).
+ * If a snapshotDwcaTask is defined, the rows are streamed from a binary snapshot of the archive that is created on the
+ * first import of an archive and reused by the following imports of the same data.
+ * If a streamDwcChunkStep is defined and the archive allows it (see StreamDwcChunkStep.isSupported), only byte ranges of
+ * the core data file are sent to the processing nodes that read the records from the shared storage.
  *
  * @author canadensys
  *
  */
 public class ImportDwcaJob extends AbstractProcessingJob implements ItemProgressListenerIF {
 
+	private static final Logger LOGGER = Logger.getLogger(ImportDwcaJob.class);
+
 	@Autowired
 	private ApplicationContext appContext;
 
@@ -45,12 +84,34 @@ public class ImportDwcaJob extends AbstractProcessingJob implements ItemProgress
 	@Autowired
 	private ItemTaskIF cleanBufferTableTask;
 
+	@Autowired
+	private ItemTaskIF trimBufferTableTask;
+
+	@Autowired(required = false)
+	private DwcaCheckpointStore checkpointStore;
+
 	@Autowired
 	private StepIF streamEmlContentStep;
 
+	// optional, see setValidateDwcaTask
+	private ItemTaskIF validateDwcaTask;
+
+	// optional, see setDetectDuplicateIdTask
+	private ItemTaskIF detectDuplicateIdTask;
+
+	// optional, see setSnapshotDwcaTask
+	private ItemTaskIF snapshotDwcaTask;
+
+	@Autowired(required = false)
+	@Qualifier("synchronousProcessEmlContentStep")
+	private StepIF synchronousProcessEmlContentStep;
+
 	@Autowired
 	private StepIF streamDwcContentStep;
 
+	// optional, see setStreamDwcChunkStep
+	private StepIF streamDwcChunkStep;
+
 	@Autowired
 	private StepIF handleDwcaExtensionsStep;
 
@@ -89,25 +150,254 @@ public class ImportDwcaJob extends AbstractProcessingJob implements ItemProgress
 		// TODO move strings to properties file
 		jobStatusModel.setCurrentStatusExplanation("Preparing Dwc-A");
 		prepareDwcaTask.execute(sharedParameters);
+		if (Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_NOT_MODIFIED))) {
+			jobStatusModel.setCurrentStatusExplanation("Dwc-A not modified since the last import, nothing to do");
+			jobStatusModel.setCurrentStatus(JobStatus.DONE);
+			return;
+		}
+		if (Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_METADATA_ONLY))) {
+			if (synchronousProcessEmlContentStep != null) {
+				jobStatusModel.setCurrentStatusExplanation("Dwc-A data not modified since the last import, refreshing the resource information");
+				executeStepSequentially(synchronousProcessEmlContentStep, sharedParameters);
+				jobStatusModel.setCurrentStatus(JobStatus.DONE);
+				return;
+			}
+			LOGGER.warn("No synchronousProcessEmlContentStep defined, importing the complete Dwc-A");
+			sharedParameters.remove(SharedParameterEnum.DWCA_METADATA_ONLY);
+		}
+		if (sharedParameters.get(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS) != null) {
+			if (sharedParameters.containsKey(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE)) {
+				// should not happen, a partial archive is not fingerprinted
+				LOGGER.warn("Dwc-A still downloading, importing the complete Dwc-A");
+				sharedParameters.remove(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS);
+			}
+			else {
+				importExtensions();
+				return;
+			}
+		}
 
-		jobStatusModel.setCurrentStatusExplanation("Cleaning buffer table");
-		cleanBufferTableTask.execute(sharedParameters);
+		// all readers of this job share the parsed archive
+		DwcaArchiveCache dwcaArchiveCache = new DwcaArchiveCache();
+		sharedParameters.put(SharedParameterEnum.DWCA_ARCHIVE_CACHE, dwcaArchiveCache);
+		PartialZipArchive partialArchive = (PartialZipArchive) sharedParameters.get(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE);
+		// the filters may be changed by detectDuplicateIdTask
+		Object idExclusionList = sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST);
+		Object idFilter = sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER);
+		int expectedNumberOfRecords;
+		StepResult dwcExtContent;
+		try {
+			if (detectDuplicateIdTask != null) {
+				jobStatusModel.setCurrentStatusExplanation("Detecting duplicate Dwc-A ids");
+				detectDuplicateIdTask.execute(sharedParameters);
+			}
+			if (validateDwcaTask != null) {
+				jobStatusModel.setCurrentStatusExplanation("Validating Dwc-A");
+				validateDwcaTask.execute(sharedParameters);
+			}
+			if (snapshotDwcaTask != null) {
+				jobStatusModel.setCurrentStatusExplanation("Snapshotting Dwc-A");
+				snapshotDwcaTask.execute(sharedParameters);
+			}
+
+			DwcaCheckpoint checkpoint = null;
+			boolean resume = Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_RESUME));
+			if (resume && isKeepFirstDuplicate()) {
+				// the duplicate ids accepted before the checkpoint are unknown
+				LOGGER.warn("The first record of duplicated ids is kept, the import can't be resumed and starts from the first record");
+				resume = false;
+			}
+			if (resume) {
+				checkpoint = loadCheckpoint(resourceModel.getId(), dwcaArchiveCache);
+			}
+			else if (checkpointStore != null) {
+				checkpointStore.delete(resourceModel.getId());
+			}
+
+			if (checkpoint != null) {
+				jobStatusModel.setCurrentStatusExplanation("Resuming from " + checkpoint);
+				sharedParameters.put(SharedParameterEnum.DWCA_CHECKPOINT, checkpoint);
+				sharedParameters.put(SharedParameterEnum.LAST_AUTO_ID, checkpoint.getLastAutoId());
+				trimBufferTableTask.execute(sharedParameters);
+			}
+			else {
+				jobStatusModel.setCurrentStatusExplanation("Cleaning buffer table");
+				cleanBufferTableTask.execute(sharedParameters);
+			}
+
+			jobStatusModel.setCurrentStatusExplanation("Streaming EML");
+			executeStepSequentially(streamEmlContentStep, sharedParameters);
+
+			StepIF dwcContentStep = streamDwcContentStep;
+			if (streamDwcChunkStep != null) {
+				if (StreamDwcChunkStep.isSupported(sharedParameters)) {
+					dwcContentStep = streamDwcChunkStep;
+				}
+				else {
+					LOGGER.info("The core data file can not be read by the processing nodes, streaming its content");
+				}
+			}
+			jobStatusModel.setCurrentStatusExplanation("Streaming DwcA content");
+			StepResult dwcContent = executeStepSequentially(dwcContentStep, sharedParameters);
+			expectedNumberOfRecords = getExpectedNumberOfRecords(dwcContent.getNumberOfRecord());
+
+			jobStatusModel.setCurrentStatusExplanation("Checking for DwcA extension(s)");
+			dwcExtContent = executeStepSequentially(handleDwcaExtensionsStep, sharedParameters);
+
+			if (partialArchive != null) {
+				jobStatusModel.setCurrentStatusExplanation("Waiting for the end of the Dwc-A download");
+				try {
+					partialArchive.awaitCompletion();
+				}
+				catch (IOException e) {
+					throw new TaskExecutionException("Error while downloading the DarwinCore Archive", e);
+				}
+			}
+		}
+		finally {
+			if (partialArchive != null) {
+				// no-op if the download is complete
+				partialArchive.cancel();
+				sharedParameters.remove(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE);
+			}
+			sharedParameters.remove(SharedParameterEnum.DWCA_ARCHIVE_CACHE);
+			sharedParameters.remove(SharedParameterEnum.DWCA_SNAPSHOT);
+			sharedParameters.remove(SharedParameterEnum.DWCA_RESUME);
+			sharedParameters.remove(SharedParameterEnum.DWCA_CHECKPOINT);
+			sharedParameters.remove(SharedParameterEnum.LAST_AUTO_ID);
+			restoreParameter(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST, idExclusionList);
+			restoreParameter(SharedParameterEnum.DWCA_ID_FILTER, idFilter);
+			dwcaArchiveCache.clear();
+		}
 
-		jobStatusModel.setCurrentStatusExplanation("Streaming EML");
-		executeStepSequentially(streamEmlContentStep, sharedParameters);
+		jobStatusModel.setCurrentStatusExplanation("Waiting for completion");
 
-		jobStatusModel.setCurrentStatusExplanation("Streaming DwcA content");
-		StepResult dwcContent = executeStepSequentially(streamDwcContentStep, sharedParameters);
+		checkJobStatus = createCheckCompletenessTask(expectedNumberOfRecords, dwcExtContent.getNumberOfRecord());
+		checkJobStatus.execute(sharedParameters);
+	}
 
-		jobStatusModel.setCurrentStatusExplanation("Checking for DwcA extension(s)");
-		StepResult dwcExtContent = executeStepSequentially(handleDwcaExtensionsStep, sharedParameters);
+	/**
+	 * Stream the EML and the changed extensions (DWCA_CHANGED_EXTENSIONS) of an archive whose core was already
+	 * imported.
+	 */
+	private void importExtensions() {
+		jobStatusModel.setCurrentStatusExplanation("Dwc-A core not modified since the last import, refreshing the extension(s) "
+				+ sharedParameters.get(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS));
+		DwcaArchiveCache dwcaArchiveCache = new DwcaArchiveCache();
+		sharedParameters.put(SharedParameterEnum.DWCA_ARCHIVE_CACHE, dwcaArchiveCache);
+		StepResult dwcExtContent;
+		try {
+			if (checkpointStore != null) {
+				checkpointStore.delete((Integer) sharedParameters.get(SharedParameterEnum.RESOURCE_ID));
+			}
+			jobStatusModel.setCurrentStatusExplanation("Cleaning buffer table");
+			cleanBufferTableTask.execute(sharedParameters);
+
+			jobStatusModel.setCurrentStatusExplanation("Streaming EML");
+			if (synchronousProcessEmlContentStep != null) {
+				executeStepSequentially(synchronousProcessEmlContentStep, sharedParameters);
+			}
+			else {
+				executeStepSequentially(streamEmlContentStep, sharedParameters);
+			}
+
+			jobStatusModel.setCurrentStatusExplanation("Streaming DwcA extension(s)");
+			dwcExtContent = executeStepSequentially(handleDwcaExtensionsStep, sharedParameters);
+		}
+		finally {
+			sharedParameters.remove(SharedParameterEnum.DWCA_ARCHIVE_CACHE);
+			sharedParameters.remove(SharedParameterEnum.DWCA_RESUME);
+			dwcaArchiveCache.clear();
+		}
 
 		jobStatusModel.setCurrentStatusExplanation("Waiting for completion");
-
-		checkJobStatus = createCheckCompletenessTask(dwcContent.getNumberOfRecord(), dwcExtContent.getNumberOfRecord());
+		checkJobStatus = createCheckCompletenessTask(0, dwcExtContent.getNumberOfRecord());
 		checkJobStatus.execute(sharedParameters);
 	}
 
+	/**
+	 * Put back a shared parameter to the value it had before the job changed it.
+	 *
+	 * @param key
+	 * @param value
+	 *            previous value, the parameter is removed if null
+	 */
+	private void restoreParameter(SharedParameterEnum key, Object value) {
+		if (value == null) {
+			sharedParameters.remove(key);
+		}
+		else {
+			sharedParameters.put(key, value);
+		}
+	}
+
+	/**
+	 * Check if the records are filtered by a DwcaIdFilter keeping the first record of duplicated ids (KEEP_FIRST policy
+	 * of detectDuplicateIdTask).
+	 *
+	 * @return
+	 */
+	private boolean isKeepFirstDuplicate() {
+		DwcaIdFilter idFilter = (DwcaIdFilter) sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER);
+		return idFilter != null && idFilter.isKeepFirstDuplicate();
+	}
+
+	/**
+	 * Load the checkpoint of a resource and make sure it was created on the same core data file.
+	 *
+	 * @param resourceId
+	 * @param dwcaArchiveCache
+	 * @return the checkpoint or null if there is no usable checkpoint
+	 */
+	private DwcaCheckpoint loadCheckpoint(Integer resourceId, DwcaArchiveCache dwcaArchiveCache) {
+		if (checkpointStore == null) {
+			LOGGER.warn("No checkpoint store defined, can't resume");
+			return null;
+		}
+		DwcaCheckpoint checkpoint = checkpointStore.load(resourceId);
+		if (checkpoint == null) {
+			LOGGER.info("No checkpoint found for resource " + resourceId);
+			return null;
+		}
+		File dwcaFile = new File((String) sharedParameters.get(SharedParameterEnum.DWCA_PATH));
+		try {
+			DwcaFileDescriptor core = dwcaArchiveCache.getDescriptor(dwcaFile).getCore();
+			if (core.getLocation().equals(checkpoint.getDataFile())
+					&& DwcaArchiveSupport.getDataLength(dwcaFile, core) == checkpoint.getDataLength()) {
+				return checkpoint;
+			}
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't open DarwinCore archive", e);
+		}
+		catch (UnsupportedArchiveException e) {
+			LOGGER.error("Can't open DarwinCore archive", e);
+		}
+		LOGGER.warn("Checkpoint " + checkpoint + " doesn't match the DarwinCore archive, starting from the beginning");
+		return null;
+	}
+
+	/**
+	 * Get the number of core records expected in the buffer schema.
+	 * The rows counted by the validation are expected unless some records are filtered, a record lost while streaming
+	 * will then be reported by the completeness check instead of going unnoticed.
+	 *
+	 * @param numberOfStreamedRecords
+	 * @return
+	 */
+	private int getExpectedNumberOfRecords(int numberOfStreamedRecords) {
+		DwcaValidationReport report = (DwcaValidationReport) sharedParameters.get(SharedParameterEnum.DWCA_VALIDATION_REPORT);
+		if (report == null || report.getCore() == null || sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER) != null
+				|| sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST) != null) {
+			return numberOfStreamedRecords;
+		}
+		long numberOfRows = report.getCore().getNumberOfRows();
+		if (numberOfRows != numberOfStreamedRecords) {
+			LOGGER.warn(numberOfStreamedRecords + " records streamed but the core contains " + numberOfRows + " rows");
+		}
+		return (int) numberOfRows;
+	}
+
 	/**
 	 * Dynamically create LongRunningTaskIF instance to check completeness task.
 	 *
@@ -134,6 +424,49 @@ public class ImportDwcaJob extends AbstractProcessingJob implements ItemProgress
 		this.prepareDwcaTask = prepareDwcaTask;
 	}
 
+	/**
+	 * Set the task validating the data files before they are streamed. If null (default), archives are not validated.
+	 *
+	 * @param validateDwcaTask
+	 */
+	public void setValidateDwcaTask(ItemTaskIF validateDwcaTask) {
+		this.validateDwcaTask = validateDwcaTask;
+	}
+
+	/**
+	 * Set the task detecting duplicate core ids before they are streamed. If null (default), duplicate ids are only
+	 * reported by the validation.
+	 *
+	 * @param detectDuplicateIdTask
+	 */
+	public void setDetectDuplicateIdTask(ItemTaskIF detectDuplicateIdTask) {
+		this.detectDuplicateIdTask = detectDuplicateIdTask;
+	}
+
+	/**
+	 * Set the task providing the snapshot the rows are streamed from. If null (default), the data files are always
+	 * parsed.
+	 *
+	 * @param snapshotDwcaTask
+	 */
+	public void setSnapshotDwcaTask(ItemTaskIF snapshotDwcaTask) {
+		this.snapshotDwcaTask = snapshotDwcaTask;
+	}
+
+	/**
+	 * Set the step sending byte ranges of the core data file to the processing nodes instead of its records. If null
+	 * (default), the records are always streamed.
+	 *
+	 * @param streamDwcChunkStep
+	 */
+	public void setStreamDwcChunkStep(StepIF streamDwcChunkStep) {
+		this.streamDwcChunkStep = streamDwcChunkStep;
+	}
+
+	public void setCheckpointStore(DwcaCheckpointStore checkpointStore) {
+		this.checkpointStore = checkpointStore;
+	}
+
 	@Override
 	public void cancel() {
 		// this is the only step/task that implements 'cancel'
@@ -165,6 +498,10 @@ public class ImportDwcaJob extends AbstractProcessingJob implements ItemProgress
 
 	@Override
 	public void onCompletion() {
+		// the import is complete, nothing to resume
+		if (checkpointStore != null) {
+			checkpointStore.delete((Integer) sharedParameters.get(SharedParameterEnum.RESOURCE_ID));
+		}
 		jobStatusModel.setCurrentStatus(JobStatus.DONE);
 	}
 
@@ -19,6 +19,8 @@ import net.canadensys.harvester.occurrence.task.ReplaceOldOccurrenceTask;
 /**
  * This job allows to move all the data from the buffer schema to the public
  * one. We are creating the GIS related data inside that step.
+ * If DWCA_METADATA_ONLY is set, only the resource information is moved.
+ * If DWCA_CHANGED_EXTENSIONS is set, only the resource information and the listed extensions are moved.
  *
  * @author canadensys
  *
@@ -55,6 +57,18 @@ public class MoveToPublicSchemaJob extends AbstractProcessingJob {
 		jobStatusModel.setCurrentJobId(getJobId());
 		jobStatusModel.setCurrentStatus(JobStatus.RUNNING);
 
+		if (Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_METADATA_ONLY))
+				|| sharedParameters.get(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS) != null) {
+			jobStatusModel.setCurrentStatusExplanation("Replace resource information and changed extension(s)");
+			replaceOldOccurrenceTask.execute(sharedParameters);
+
+			jobStatusModel.setCurrentStatusExplanation("Log import event");
+			recordImportTask.execute(sharedParameters);
+
+			jobStatusModel.setCurrentStatus(JobStatus.DONE);
+			return;
+		}
+
 		jobStatusModel.setCurrentStatusExplanation("Compute GIS data");
 		computeGISDataTask.execute(sharedParameters);
 
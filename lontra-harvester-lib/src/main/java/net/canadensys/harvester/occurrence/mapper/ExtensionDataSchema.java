@@ -0,0 +1,174 @@
+package net.canadensys.harvester.occurrence.mapper;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Terms of an extension file, established once per file and shared by all its rows.
+ * The ext_data of a row is a read-only Map backed by the schema and an array of values in the terms order, so the
+ * term names (e.g. http://purl.org/dc/terms/identifier) are not repeated on each row.
+ * This class is immutable and thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class ExtensionDataSchema {
+
+	private final List<String> terms;
+	private final Map<String, Integer> termIndex;
+
+	/**
+	 *
+	 * @param terms
+	 *            terms of the extension, in the order of the values
+	 */
+	public ExtensionDataSchema(List<String> terms) {
+		this.terms = Collections.unmodifiableList(new ArrayList<String>(terms));
+		this.termIndex = new HashMap<String, Integer>();
+		for (int i = 0; i < terms.size(); i++) {
+			if (termIndex.put(terms.get(i), i) != null) {
+				throw new IllegalArgumentException("The term " + terms.get(i) + " is defined more than once");
+			}
+		}
+	}
+
+	public List<String> getTerms() {
+		return terms;
+	}
+
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * @param term
+	 * @return index of the term or -1
+	 */
+	public int indexOf(String term) {
+		Integer index = termIndex.get(term);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * Create the ext_data of a row.
+	 *
+	 * @param values
+	 *            values in the terms order, the array is kept by the map and must not be modified
+	 * @return
+	 */
+	public Map<String, String> newData(String[] values) {
+		if (values.length != terms.size()) {
+			throw new IllegalArgumentException("Size of values must match the number of terms.");
+		}
+		return new ExtensionData(this, values);
+	}
+
+	/**
+	 * Get the schema of ext_data created by {@link #newData(String[])}.
+	 *
+	 * @param extData
+	 * @return the schema or null if extData is another Map
+	 */
+	public static ExtensionDataSchema getSchema(Map<String, String> extData) {
+		return (extData instanceof ExtensionData) ? ((ExtensionData) extData).schema : null;
+	}
+
+	/**
+	 * Get the values of ext_data in the terms order.
+	 * Values of ext_data created by this schema are returned as is, other maps are read term by term.
+	 *
+	 * @param extData
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if extData contains a term that is not part of this schema
+	 */
+	public String[] getValues(Map<String, String> extData) {
+		if (getSchema(extData) == this) {
+			return ((ExtensionData) extData).values;
+		}
+		String[] values = new String[terms.size()];
+		for (Map.Entry<String, String> entry : extData.entrySet()) {
+			int index = indexOf(entry.getKey());
+			if (index < 0) {
+				throw new IllegalArgumentException("The term " + entry.getKey() + " is not part of the extension schema");
+			}
+			values[index] = entry.getValue();
+		}
+		return values;
+	}
+
+	/**
+	 * Read-only ext_data of one row.
+	 */
+	private static class ExtensionData extends AbstractMap<String, String> {
+		private final ExtensionDataSchema schema;
+		private final String[] values;
+
+		private ExtensionData(ExtensionDataSchema schema, String[] values) {
+			this.schema = schema;
+			this.values = values;
+		}
+
+		@Override
+		public String get(Object key) {
+			Integer index = schema.termIndex.get(key);
+			return (index == null) ? null : values[index];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return schema.termIndex.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new Iterator<Map.Entry<String, String>>() {
+						private int index = 0;
+
+						@Override
+						public boolean hasNext() {
+							return index < values.length;
+						}
+
+						@Override
+						public Map.Entry<String, String> next() {
+							if (index >= values.length) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>(schema.terms.get(index),
+									values[index]);
+							index++;
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return values.length;
+				}
+			};
+		}
+	}
+}
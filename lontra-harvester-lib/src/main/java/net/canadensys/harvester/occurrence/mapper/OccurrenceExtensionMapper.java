@@ -1,19 +1,25 @@
 package net.canadensys.harvester.occurrence.mapper;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
-import net.canadensys.harvester.ItemMapperIF;
+import net.canadensys.harvester.ArrayItemMapperIF;
 
 /**
  * Map properties into OccurrenceExtensionModel.
  * Set the dwcaid using the "id" property.
+ * Rows mapped from a names array share the ExtensionDataSchema of those names, their ext_data only holds the values.
  * 
  * @author cgendreau
  * 
  */
-public class OccurrenceExtensionMapper implements ItemMapperIF<OccurrenceExtensionModel> {
+public class OccurrenceExtensionMapper implements ArrayItemMapperIF<OccurrenceExtensionModel> {
+
+	// schema of the last names array, replaced as a whole since the mapper can be shared by readers
+	private volatile NamesSchema namesSchema;
 
 	@Override
 	public OccurrenceExtensionModel mapElement(Map<String, Object> properties) {
@@ -34,4 +40,63 @@ public class OccurrenceExtensionMapper implements ItemMapperIF<OccurrenceExtensi
 		return occExtModel;
 	}
 
+	@Override
+	public OccurrenceExtensionModel mapElement(String[] names, Object[] values) {
+
+		NamesSchema current = namesSchema;
+		if (current == null || current.names != names) {
+			current = new NamesSchema(names);
+			namesSchema = current;
+		}
+
+		OccurrenceExtensionModel occExtModel = new OccurrenceExtensionModel();
+		String[] extValues = new String[current.schema.size()];
+		for (int i = 0; i < names.length; i++) {
+			if (current.termIndex[i] < 0) {
+				occExtModel.setDwcaid(toStringValue(values[i]));
+			}
+			else {
+				extValues[current.termIndex[i]] = toStringValue(values[i]);
+			}
+		}
+		occExtModel.setExt_data(current.schema.newData(extValues));
+
+		return occExtModel;
+	}
+
+	private static String toStringValue(Object value) {
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Schema of a names array, without the "id" name.
+	 * A name present more than once is kept once, the last value wins like in a Map.
+	 */
+	private static class NamesSchema {
+		private final String[] names;
+		// index of each name in the schema, -1 for "id"
+		private final int[] termIndex;
+		private final ExtensionDataSchema schema;
+
+		NamesSchema(String[] names) {
+			this.names = names;
+			this.termIndex = new int[names.length];
+			List<String> terms = new ArrayList<String>(names.length);
+			Map<String, Integer> indexByTerm = new HashMap<String, Integer>();
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equalsIgnoreCase("id")) {
+					termIndex[i] = -1;
+					continue;
+				}
+				Integer index = indexByTerm.get(names[i]);
+				if (index == null) {
+					index = terms.size();
+					indexByTerm.put(names[i], index);
+					terms.add(names[i]);
+				}
+				termIndex[i] = index;
+			}
+			this.schema = new ExtensionDataSchema(terms);
+		}
+	}
 }
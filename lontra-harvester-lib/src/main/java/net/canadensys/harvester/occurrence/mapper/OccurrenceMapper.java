@@ -4,40 +4,104 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
 
 import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
-import net.canadensys.harvester.ItemMapperIF;
+import net.canadensys.harvester.ArrayItemMapperIF;
+import net.canadensys.harvester.mapper.BeanAccessor;
+import net.canadensys.harvester.mapper.BeanAccessor.PropertySetter;
+import net.canadensys.harvester.mapper.StringDictionary;
 import net.canadensys.harvester.mapper.TermMapper;
+import net.canadensys.harvester.mapper.TermMappingPlan;
 
-import org.apache.commons.beanutils.BeanUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.gbif.dwc.terms.Term;
-import org.gbif.dwc.terms.TermFactory;
 
 import com.google.common.collect.Maps;
 
 /**
  * Map properties into OccurrenceRawModel.
- * Set the dwcaid using the "id" property and map 'sanitized' Strings to ensure proper behavior in the following steps.
+ * Set the dwcaid using the "id" property.
+ * Values are expected to be sanitized by the reader (see InputSanitizer), invalid characters are not removed here.
+ * Properties are set through the shared BeanAccessor of OccurrenceRawModel, the result is the same as with BeanUtils.populate.
+ * The array version of mapElement uses a TermMappingPlan created once per names array and, if a StringDictionary is
+ * set, deduplicates the values of the low cardinality columns.
  * 
  * @author canadensys
  * 
  */
-public class OccurrenceMapper implements ItemMapperIF<OccurrenceRawModel> {
+public class OccurrenceMapper implements ArrayItemMapperIF<OccurrenceRawModel> {
 	// get log4j handler
 	private static final Logger LOGGER = Logger.getLogger(OccurrenceMapper.class);
 
 	private static TermMapper TERM_MAPPER = TermMapper.getInstance(); 
-	private static TermFactory TF = TermFactory.instance();
-	
-	private static final char NULL_CHAR = '\0';
+	private static final BeanAccessor<OccurrenceRawModel> ACCESSOR = BeanAccessor.forClass(OccurrenceRawModel.class);
+	private static final PropertySetter DWCAID_SETTER = ACCESSOR.getSetter("dwcaid");
+
+	// plan of the last names array received, replaced when another array is received
+	private volatile NamesState namesState;
+	private volatile StringDictionary stringDictionary;
 
 	@Override
 	public OccurrenceRawModel mapElement(Map<String, Object> properties) {
 		OccurrenceRawModel newOccurrenceRawModel = new OccurrenceRawModel();
 		try {
 			prepareProperties(properties);
-			BeanUtils.populate(newOccurrenceRawModel, properties);
-			BeanUtils.setProperty(newOccurrenceRawModel, "dwcaid", properties.get("id"));
+			PropertySetter setter;
+			for (Map.Entry<String, Object> property : properties.entrySet()) {
+				setter = ACCESSOR.getSetter(property.getKey());
+				if (setter != null) {
+					setter.set(newOccurrenceRawModel, property.getValue());
+				}
+			}
+			DWCAID_SETTER.set(newOccurrenceRawModel, properties.get(TermMappingPlan.ID_NAME));
+		}
+		catch (IllegalAccessException e) {
+			LOGGER.error("Issue while mapping properties", e);
+		}
+		catch (InvocationTargetException e) {
+			LOGGER.error("Issue while mapping properties", e);
+		}
+		return newOccurrenceRawModel;
+	}
+
+	/**
+	 * Create the plan used to map the names of a header to OccurrenceRawModel.
+	 * Names that are not ignored by the plan are used by this mapper: the id, a property of OccurrenceRawModel or a
+	 * term with a term mapping. Other names can be skipped by the reader.
+	 * 
+	 * @param names
+	 * @return
+	 */
+	public static TermMappingPlan createPlan(String[] names) {
+		return TERM_MAPPER.createPlan(names, ACCESSOR);
+	}
+
+	@Override
+	public OccurrenceRawModel mapElement(String[] names, Object[] values) {
+		NamesState state = namesState;
+		StringDictionary dictionary = stringDictionary;
+		if (state == null || state.plan.getNames() != names || state.dictionary != dictionary) {
+			state = new NamesState(createPlan(names), dictionary);
+			namesState = state;
+		}
+		TermMappingPlan plan = state.plan;
+
+		OccurrenceRawModel newOccurrenceRawModel = new OccurrenceRawModel();
+		try {
+			PropertySetter setter;
+			for (int i = 0; i < names.length; i++) {
+				setter = plan.getSetter(i);
+				if (setter != null) {
+					setter.set(newOccurrenceRawModel, state.toStringValue(i, values[i]));
+				}
+			}
+			// mapped terms are applied last, as with the Map version
+			for (int i = 0; i < names.length; i++) {
+				setter = plan.getMappedSetter(i);
+				if (setter != null) {
+					setter.set(newOccurrenceRawModel, state.toStringValue(i, values[i]));
+				}
+			}
+			if (plan.getIdIndex() >= 0) {
+				DWCAID_SETTER.set(newOccurrenceRawModel, toStringValue(values[plan.getIdIndex()]));
+			}
 		}
 		catch (IllegalAccessException e) {
 			LOGGER.error("Issue while mapping properties", e);
@@ -48,34 +112,73 @@ public class OccurrenceMapper implements ItemMapperIF<OccurrenceRawModel> {
 		return newOccurrenceRawModel;
 	}
 
+	/**
+	 * Convert a value of the array version of mapElement.
+	 * CharSequence (e.g. a cell view of the reader) are converted to String.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static Object toStringValue(Object value) {
+		return (value instanceof CharSequence) ? value.toString() : value;
+	}
+
+	/**
+	 * Set the dictionary used to deduplicate the values of the array version of mapElement, it should be replaced for
+	 * each job. The dictionary is not thread safe, the mapper should then be used by one thread.
+	 * 
+	 * @param stringDictionary
+	 *            dictionary or null to keep all the values (default)
+	 */
+	public void setStringDictionary(StringDictionary stringDictionary) {
+		this.stringDictionary = stringDictionary;
+	}
+
 	/**
 	 * Prepare the properties for mapping to OccurrenceRawModel.
-	 * Sanitize the value if is a String. Remove characters like NUL char.
+	 * Add the properties of the mapped terms.
 	 * 
 	 * @param properties
 	 */
 	private void prepareProperties(Map<String, Object> properties) {
-		Term term;
+		String mappedName;
 		Map<String, Object> toAdd = Maps.newHashMap();
 		for (String key : properties.keySet()) {
-			if (properties.get(key).getClass() == String.class) {
-				if (properties.get(key).toString().indexOf(NULL_CHAR) >= 0) {
-					properties.put(key, StringUtils.remove(properties.get(key).toString(), NULL_CHAR));
-					LOGGER.warn("Some invalid characters were removed from the record identified with id=" + properties.get("id"));
-				}
-			}
-			term = TF.findTerm(key);
+			mappedName = TERM_MAPPER.getTermMapping(key);
 			
 			//if a term mapping exists, map the value to the mapped term
-			if(TERM_MAPPER.getTermMapping(term) != null) {
-				toAdd.put(TERM_MAPPER.getTermMapping(term), properties.get(key));
+			if(mappedName != null) {
+				toAdd.put(mappedName, properties.get(key));
 				
-				if(properties.containsKey(TERM_MAPPER.getTermMapping(term))){
-					LOGGER.error("The term " + term + " is defined in term mapping but is already present in source data");
+				if(properties.containsKey(mappedName)){
+					LOGGER.error("The term " + key + " is defined in term mapping but is already present in source data");
 				}
 			}
 		}
 		properties.putAll(toAdd);
 	}
 
+	/**
+	 * Plan and dictionary columns of a names array.
+	 */
+	private static class NamesState {
+		private final TermMappingPlan plan;
+		// null if the values are not deduplicated
+		private final StringDictionary.Column[] columns;
+		private final StringDictionary dictionary;
+
+		NamesState(TermMappingPlan plan, StringDictionary dictionary) {
+			this.plan = plan;
+			this.dictionary = dictionary;
+			this.columns = (dictionary == null) ? null : dictionary.getColumns(plan.getNames());
+		}
+
+		Object toStringValue(int index, Object value) {
+			Object stringValue = OccurrenceMapper.toStringValue(value);
+			if (columns != null && stringValue instanceof String) {
+				return columns[index].intern((String) stringValue);
+			}
+			return stringValue;
+		}
+	}
 }
@@ -0,0 +1,72 @@
+package net.canadensys.harvester.occurrence.message;
+
+import net.canadensys.harvester.message.ProcessingMessageIF;
+import net.canadensys.harvester.occurrence.reader.DwcaFileRange;
+
+/**
+ * Message asking to read, process and insert the records of a byte range of the core data file of a Darwin Core
+ * Archive. The archive must be extracted on a storage shared with the processing nodes (same path).
+ * The records of the range get the auto_id from firstAutoId to firstAutoId + (number of rows of the range) - 1, in
+ * file order.
+ *
+ * @author canadensys
+ *
+ */
+public class ProcessDwcaChunkMessage implements ProcessingMessageIF {
+	private String when;
+
+	private String dwcaPath;
+	private DwcaFileRange fileRange;
+	private long firstAutoId;
+
+	private Integer resourceId;
+	private String sourcefileid;
+
+	public String getWhen() {
+		return when;
+	}
+
+	public void setWhen(String when) {
+		this.when = when;
+	}
+
+	public String getDwcaPath() {
+		return dwcaPath;
+	}
+
+	public void setDwcaPath(String dwcaPath) {
+		this.dwcaPath = dwcaPath;
+	}
+
+	public DwcaFileRange getFileRange() {
+		return fileRange;
+	}
+
+	public void setFileRange(DwcaFileRange fileRange) {
+		this.fileRange = fileRange;
+	}
+
+	public long getFirstAutoId() {
+		return firstAutoId;
+	}
+
+	public void setFirstAutoId(long firstAutoId) {
+		this.firstAutoId = firstAutoId;
+	}
+
+	public Integer getResourceId() {
+		return resourceId;
+	}
+
+	public void setResourceId(Integer resourceId) {
+		this.resourceId = resourceId;
+	}
+
+	public String getSourcefileid() {
+		return sourcefileid;
+	}
+
+	public void setSourcefileid(String sourcefileid) {
+		this.sourcefileid = sourcefileid;
+	}
+}
@@ -0,0 +1,68 @@
+package net.canadensys.harvester.occurrence.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
+import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
+
+import org.gbif.dwc.terms.Term;
+
+/**
+ * Core record of a DarwinCore Archive with the extension rows that refer to it (by coreid).
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaJoinedRecord {
+
+	private final OccurrenceRawModel core;
+	private final Map<Term, List<OccurrenceExtensionModel>> extensions;
+
+	/**
+	 *
+	 * @param core
+	 * @param extensions
+	 *            extension rows by rowType, only extensions with at least one row are expected
+	 */
+	public DwcaJoinedRecord(OccurrenceRawModel core, Map<Term, List<OccurrenceExtensionModel>> extensions) {
+		this.core = core;
+		this.extensions = extensions;
+	}
+
+	public OccurrenceRawModel getCore() {
+		return core;
+	}
+
+	/**
+	 * @return extension rows by rowType
+	 */
+	public Map<Term, List<OccurrenceExtensionModel>> getExtensions() {
+		return extensions;
+	}
+
+	/**
+	 * Get the rows of an extension.
+	 *
+	 * @param rowType
+	 * @return the rows or an empty list, never null
+	 */
+	public List<OccurrenceExtensionModel> getExtension(Term rowType) {
+		List<OccurrenceExtensionModel> rows = extensions.get(rowType);
+		if (rows == null) {
+			return Collections.emptyList();
+		}
+		return rows;
+	}
+
+	/**
+	 * Check if at least one row of an extension refers to this record (e.g. hasmedia for Multimedia).
+	 *
+	 * @param rowType
+	 * @return
+	 */
+	public boolean hasExtension(Term rowType) {
+		return !getExtension(rowType).isEmpty();
+	}
+}
@@ -14,6 +14,7 @@ import org.hibernate.HibernateException;
 import org.hibernate.SQLQuery;
 import org.hibernate.SessionFactory;
 import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -37,7 +38,9 @@ public class DwcaLineProcessor implements ItemProcessorIF<OccurrenceRawModel, Oc
 	// get log4j handler
 	private static final Logger LOGGER = Logger.getLogger(DwcaLineProcessor.class);
 
-	private String idGenerationSQL = "SELECT nextval('buffer.occurrence_raw_auto_id_seq') FROM generate_series(1,100)";
+	// the advisory lock (released at the end of the transaction) serializes the ids drawn with the blocks reserved by
+	// StreamDwcChunkStep
+	private String idGenerationSQL = "WITH id_lock AS (SELECT pg_advisory_xact_lock(CAST(CAST(CAST('buffer.occurrence_raw_auto_id_seq' AS regclass) AS oid) AS bigint))) SELECT nextval('buffer.occurrence_raw_auto_id_seq') FROM id_lock, generate_series(1,100)";
 
 	// we take id by batch of 100 to reduce the number of calls
 	private Long nextId = null;
@@ -47,7 +50,6 @@ public class DwcaLineProcessor implements ItemProcessorIF<OccurrenceRawModel, Oc
 	public void init() {
 		try {
 			session = sessionFactory.openStatelessSession();
-			session.beginTransaction();
 			sqlQuery = session.createSQLQuery(idGenerationSQL);
 		}
 		catch (HibernateException hEx) {
@@ -57,7 +59,7 @@ public class DwcaLineProcessor implements ItemProcessorIF<OccurrenceRawModel, Oc
 
 	@Override
 	public void destroy() {
-		session.getTransaction().commit();
+		session.close();
 	}
 
 	/**
@@ -79,10 +81,14 @@ public class DwcaLineProcessor implements ItemProcessorIF<OccurrenceRawModel, Oc
 		occModel.setResource_id(resourceId);
 
 		if (nextId == null || idPoll.isEmpty()) {
+			// one short transaction per batch, a lock taken by the query must not be held until destroy()
+			Transaction tx = session.beginTransaction();
 			try {
 				idPoll = sqlQuery.list();
+				tx.commit();
 			}
 			catch (HibernateException hEx) {
+				tx.rollback();
 				LOGGER.fatal("Can't get ID from sequence", hEx);
 			}
 			catch (ClassCastException ccEx) {
@@ -99,6 +105,12 @@ public class DwcaLineProcessor implements ItemProcessorIF<OccurrenceRawModel, Oc
 		this.sessionFactory = sessionFactory;
 	}
 
+	/**
+	 * SQL query returning the next 100 values of the auto_id sequence, executed in its own transaction.
+	 * If StreamDwcChunkStep reserves blocks of the same sequence, the query must take the advisory lock of its idRangeSQL.
+	 *
+	 * @param idGenerationSQL
+	 */
 	public void setIdGenerationSQL(String idGenerationSQL) {
 		this.idGenerationSQL = idGenerationSQL;
 	}
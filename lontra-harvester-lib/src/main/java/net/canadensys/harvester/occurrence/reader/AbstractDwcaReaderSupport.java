@@ -1,17 +1,38 @@
 package net.canadensys.harvester.occurrence.reader;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
-import org.gbif.dwca.io.ArchiveField;
-import org.gbif.dwca.io.ArchiveFile;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.reader.parser.BoundedInputStream;
+import net.canadensys.harvester.occurrence.reader.parser.DelimitedLineTokenizer;
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+import net.canadensys.harvester.occurrence.reader.parser.InputSanitizer;
+import net.canadensys.harvester.occurrence.reader.parser.MappedDwcaFileIterator;
+import net.canadensys.harvester.occurrence.reader.parser.ParallelDwcaFileIterator;
+import net.canadensys.harvester.occurrence.reader.parser.SeekableRowIteratorIF;
+import net.canadensys.harvester.occurrence.reader.parser.StreamDwcaFileIterator;
+import net.canadensys.harvester.occurrence.reader.parser.StringArrayRowIterator;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshot;
+import net.canadensys.harvester.occurrence.snapshot.SnapshotRowIterator;
+
+import org.apache.log4j.Logger;
 import org.gbif.utils.file.ClosableIterator;
 
 /**
  * Base class for reading Dwc-A
+ * The content of the data files is sanitized by an InputSanitizer before it is tokenized, what was changed is reported
+ * for each data file when the reader is closed.
+ * If a DwcaSnapshot of the archive is provided (DWCA_SNAPSHOT), the rows are read from the snapshot instead of the data
+ * files.
+ * If a DwcaFileRange is provided (DWCA_FILE_RANGE), only the rows of this byte range of the data file are read.
+ * A checkpoint is a prefix of the data file: the rows are always read in the file order when resuming and no checkpoint
+ * can be created in the unordered parallel read mode.
  * This class is mutable.
  *
  * @author cgendreau
@@ -19,79 +40,374 @@ import org.gbif.utils.file.ClosableIterator;
  */
 public abstract class AbstractDwcaReaderSupport {
 
-	// TODO should be configurable
-	static final Map<String, String> RESERVED_WORDS = new HashMap<String, String>();
-	static {
-		RESERVED_WORDS.put("class", "_class");
-		RESERVED_WORDS.put("group", "_group");
-		RESERVED_WORDS.put("order", "_order");
-		RESERVED_WORDS.put("references", "_references");
-	}
-	protected static final String DEFAULT_ID_FIELD = "id";
+	private static final Logger LOGGER = Logger.getLogger(AbstractDwcaReaderSupport.class);
 
 	protected String dwcaFilePath = null;
 	protected String[] headers;
 	protected Map<String, String> defaultValues = null;
+	// compiled from headers and defaultValues
+	protected RowBinder rowBinder;
+
+	protected ClosableIterator<DwcaRowIF> rowsIt;
+	// snapshot of the archive or null to read the data files
+	protected DwcaSnapshot snapshot = null;
+	// byte range of a data file to read or null to read the complete data files
+	protected DwcaFileRange fileRange = null;
+
+	private DwcaFileDescriptor dwcaComponent;
+	// by location of the data file, reported when the reader is closed
+	private final Map<String, InputSanitizer> inputSanitizers = new LinkedHashMap<String, InputSanitizer>();
+	private long dataLength;
+	// number of rows returned by nextRow()
+	private long rowOrdinal;
+
+	// parallel read mode, disabled when parallelism is 1
+	private int parallelism = 1;
+	private boolean orderedRead = true;
+	// set while reading from a checkpoint, forces the file order
+	private boolean resuming = false;
+	private int chunkSize = ParallelDwcaFileIterator.DEFAULT_CHUNK_SIZE;
 
-	protected ClosableIterator<String[]> rowsIt;
+	// memory-mapped read mode
+	private boolean mappedRead = false;
+	private int mappedWindowSize = MappedDwcaFileIterator.DEFAULT_WINDOW_SIZE;
 
 	/**
-	 * Prepare the reader by setting the headers and default values related variables
+	 * Prepare the reader by setting the headers and default values related variables and compiling the RowBinder.
 	 */
-	protected void prepareReader(ArchiveFile dwcaComponent) {
+	protected void prepareReader(DwcaFileDescriptor dwcaComponent) {
+		prepareReader(dwcaComponent, null);
+	}
+
+	/**
+	 * Prepare the reader for a projection: only the columns of the provided names are materialized and bound. Other
+	 * columns are still delimited but no String is created for them (when the read mode allows it).
+	 *
+	 * @param dwcaComponent
+	 * @param projection
+	 *            names used by the mapper or null to read all the columns
+	 */
+	protected void prepareReader(DwcaFileDescriptor dwcaComponent, Set<String> projection) {
+		prepareReader(dwcaComponent, projection, null);
+	}
+
+	/**
+	 * Prepare the reader for a projection and position it after the last row of a checkpoint.
+	 * The rows are read in the file order even if the unordered parallel read mode is enabled, the rows skipped by the
+	 * checkpoint would not be a prefix of the data file otherwise.
+	 *
+	 * @param dwcaComponent
+	 * @param projection
+	 *            names used by the mapper or null to read all the columns
+	 * @param checkpoint
+	 *            checkpoint to resume from or null to read from the beginning
+	 */
+	protected void prepareReader(DwcaFileDescriptor dwcaComponent, Set<String> projection, DwcaCheckpoint checkpoint) {
+		this.dwcaComponent = dwcaComponent;
+		resuming = (checkpoint != null);
+		dataLength = DwcaArchiveSupport.getDataLength(new File(dwcaFilePath), dwcaComponent);
+		rowOrdinal = 0;
+		headers = dwcaComponent.getHeaders();
+		defaultValues = dwcaComponent.getDefaultValues();
+		rowBinder = RowBinder.compile(headers, defaultValues, projection);
+		boolean[] projectedColumns = null;
+		if (projection != null) {
+			projectedColumns = rowBinder.getBoundColumns(headers.length);
+			LOGGER.info("Reading " + rowBinder.getNames().length + " of " + headers.length + " columns of " + dwcaComponent.getLocation());
+		}
 		try {
-			// get headers
-			List<ArchiveField> sortedFieldList = dwcaComponent.getFieldsSorted();
-			ArrayList<String> indexedColumns = new ArrayList<String>();
-
-			// check if the id column is used within a term or not
-			int idIndex = dwcaComponent.getId().getIndex();
-			boolean idColumnIncluded = false;
-			for (ArchiveField currArField : sortedFieldList) {
-				// check if the field is a default column or not
-				if (currArField.getIndex() != null) {
-					if (idIndex == currArField.getIndex().intValue()) {
-						idColumnIncluded = true;
-					}
-					indexedColumns.add(getHeaderName(currArField));
-				}
-				else {
-					// lazy init, do not create if not needed for this archive
-					if (defaultValues == null) {
-						defaultValues = new HashMap<String, String>();
-					}
-					defaultValues.put(getHeaderName(currArField), currArField.getDefaultValue());
-				}
+			// get rows
+			rowsIt = openRows(dwcaComponent, projectedColumns);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (checkpoint != null && rowsIt != null) {
+			resumeFrom(checkpoint);
+		}
+	}
+
+	/**
+	 * Open the rows of a data file (core or extension) of the archive using the configured read mode.
+	 *
+	 * @param dwcaComponent
+	 * @return
+	 * @throws IOException
+	 */
+	protected ClosableIterator<DwcaRowIF> openRows(DwcaFileDescriptor dwcaComponent) throws IOException {
+		return openRows(dwcaComponent, null);
+	}
+
+	/**
+	 * Open the rows of a data file, only the projected columns are materialized.
+	 * When a byte range of the data file is provided, only the rows of the range are read, sequentially.
+	 * Rows are read from the snapshot when it contains the data file, only the projected columns are then decompressed.
+	 * The memory-mapped read mode only decodes the cells that are used so it doesn't need the projection. The gbif
+	 * CSVReader always materializes all the columns.
+	 *
+	 * @param dwcaComponent
+	 * @param projectedColumns
+	 *            columns to materialize (by index) or null for all the columns
+	 * @return
+	 * @throws IOException
+	 */
+	protected ClosableIterator<DwcaRowIF> openRows(DwcaFileDescriptor dwcaComponent, boolean[] projectedColumns) throws IOException {
+		if (fileRange != null && fileRange.getDataFile().equals(dwcaComponent.getLocation())) {
+			return openRangeRows(dwcaComponent, fileRange, projectedColumns);
+		}
+		if (snapshot != null && snapshot.contains(dwcaComponent)) {
+			try {
+				return snapshot.openRows(dwcaComponent, projectedColumns);
 			}
-			if (!idColumnIncluded) {
-				indexedColumns.add(idIndex, DEFAULT_ID_FIELD);
+			catch (IOException e) {
+				LOGGER.warn("Can't read " + dwcaComponent.getLocation() + " from " + snapshot + ", reading the data file", e);
 			}
-			headers = indexedColumns.toArray(new String[0]);
+		}
+		int numberOfColumns = dwcaComponent.getHeaders().length;
+		InputSanitizer sanitizer = getInputSanitizer(dwcaComponent);
+		if (DwcaArchiveSupport.isStreamedComponent(new File(dwcaFilePath), dwcaComponent)) {
+			return DwcaArchiveSupport.openZipEntryRows(new File(dwcaFilePath), dwcaComponent, numberOfColumns, projectedColumns,
+					sanitizer);
+		}
+		if (parallelism > 1 && isByteParsingSupported(dwcaComponent)) {
+			return new StringArrayRowIterator(new ParallelDwcaFileIterator(dwcaComponent.getLocationFile(),
+					Charset.forName(dwcaComponent.getEncoding()), new DelimitedLineTokenizer(dwcaComponent.getFieldsTerminatedBy(),
+							dwcaComponent.getFieldsEnclosedBy(), numberOfColumns, projectedColumns), dwcaComponent.getIgnoreHeaderLines(),
+					parallelism, chunkSize, orderedRead, sanitizer));
+		}
+		if (mappedRead && isByteParsingSupported(dwcaComponent)) {
+			return new MappedDwcaFileIterator(dwcaComponent.getLocationFile(), Charset.forName(dwcaComponent.getEncoding()),
+					dwcaComponent.getFieldsTerminatedBy().charAt(0), dwcaComponent.getFieldsEnclosedBy(),
+					dwcaComponent.getIgnoreHeaderLines(), numberOfColumns, mappedWindowSize, sanitizer);
+		}
+		return new StringArrayRowIterator(dwcaComponent.openCSVIterator(), sanitizer);
+	}
 
-			// get rows
-			rowsIt = dwcaComponent.getCSVReader().iterator();
+	/**
+	 * Open the rows of a byte range of an extracted data file, the range must not include the header lines.
+	 *
+	 * @param dwcaComponent
+	 * @param range
+	 * @param projectedColumns
+	 *            columns to materialize (by index) or null for all the columns
+	 * @return
+	 * @throws IOException
+	 */
+	private ClosableIterator<DwcaRowIF> openRangeRows(DwcaFileDescriptor dwcaComponent, DwcaFileRange range, boolean[] projectedColumns)
+			throws IOException {
+		if (!isByteParsingSupported(dwcaComponent)) {
+			throw new IOException("Data file " + dwcaComponent.getLocation() + " can not be read by byte range");
+		}
+		FileInputStream fis = new FileInputStream(dwcaComponent.getLocationFile());
+		try {
+			fis.getChannel().position(range.getOffset());
+			return new StreamDwcaFileIterator(new BoundedInputStream(fis, range.getLength()), Charset.forName(dwcaComponent
+					.getEncoding()), new DelimitedLineTokenizer(dwcaComponent.getFieldsTerminatedBy(), dwcaComponent.getFieldsEnclosedBy(),
+					dwcaComponent.getHeaders().length, projectedColumns), 0, getInputSanitizer(dwcaComponent));
 		}
 		catch (IOException e) {
-			e.printStackTrace();
+			fis.close();
+			throw e;
 		}
 	}
 
-	protected void closeReader() {
-		rowsIt.close();
+	/**
+	 * Get the InputSanitizer of a data file, all the rows opened on the same data file share the same sanitizer.
+	 *
+	 * @param dwcaComponent
+	 * @return
+	 */
+	protected InputSanitizer getInputSanitizer(DwcaFileDescriptor dwcaComponent) {
+		InputSanitizer sanitizer = inputSanitizers.get(dwcaComponent.getLocation());
+		if (sanitizer == null) {
+			Charset charset = null;
+			try {
+				charset = Charset.forName(dwcaComponent.getEncoding());
+			}
+			catch (IllegalArgumentException e) {
+				// unknown encoding, read by the gbif CSVReader where only the cells are sanitized
+			}
+			sanitizer = new InputSanitizer(charset, dwcaComponent.getFieldsTerminatedBy(), dwcaComponent.getFieldsEnclosedBy());
+			inputSanitizers.put(dwcaComponent.getLocation(), sanitizer);
+		}
+		return sanitizer;
+	}
+
+	/**
+	 * Check if the data file of this component can be split in byte ranges and tokenized on bytes.
+	 * Multi-character or non-ASCII delimiters and encodings where a line feed is not a single byte are read with the gbif
+	 * CSVReader.
+	 *
+	 * @param dwcaComponent
+	 * @return
+	 */
+	private boolean isByteParsingSupported(DwcaFileDescriptor dwcaComponent) {
+		String delimiter = dwcaComponent.getFieldsTerminatedBy();
+		Character quote = dwcaComponent.getFieldsEnclosedBy();
+		if (delimiter == null || delimiter.length() != 1 || delimiter.charAt(0) > Byte.MAX_VALUE
+				|| (quote != null && quote.charValue() > Byte.MAX_VALUE) || dwcaComponent.getLocationFile() == null) {
+			LOGGER.warn("Data file delimiter not supported, using the default reader");
+			return false;
+		}
+		try {
+			if (!ParallelDwcaFileIterator.isSupported(Charset.forName(dwcaComponent.getEncoding()))) {
+				LOGGER.warn("Encoding " + dwcaComponent.getEncoding() + " not supported, using the default reader");
+				return false;
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOGGER.warn("Unknown encoding " + dwcaComponent.getEncoding() + ", using the default reader");
+			return false;
+		}
+		return true;
 	}
 
 	/**
-	 * Handle reserved word and lowercase header from ArchiveField.
+	 * Get the next row of the data file and keep track of the number of rows read.
 	 *
-	 * @param archiveField
 	 * @return
 	 */
-	protected String getHeaderName(ArchiveField archiveField) {
-		String headerName = archiveField.getTerm().simpleName().toLowerCase();
-		if (RESERVED_WORDS.get(headerName) != null) {
-			headerName = RESERVED_WORDS.get(headerName);
+	protected DwcaRowIF nextRow() {
+		DwcaRowIF row = rowsIt.next();
+		rowOrdinal++;
+		return row;
+	}
+
+	/**
+	 * Position the reader after the last row of a checkpoint.
+	 * If the checkpoint includes a byte offset and the reader can seek, the rows are not parsed again. Rows read from a
+	 * snapshot are skipped by row group. Otherwise, the rows are read and ignored.
+	 *
+	 * @param checkpoint
+	 */
+	protected void resumeFrom(DwcaCheckpoint checkpoint) {
+		if (!dwcaComponent.getLocation().equals(checkpoint.getDataFile())) {
+			throw new IllegalStateException("Checkpoint " + checkpoint + " doesn't match data file " + dwcaComponent.getLocation());
+		}
+		if (checkpoint.getByteOffset() != DwcaCheckpoint.UNKNOWN_OFFSET && rowsIt instanceof SeekableRowIteratorIF) {
+			((SeekableRowIteratorIF) rowsIt).seek(checkpoint.getByteOffset());
+		}
+		else if (rowsIt instanceof SnapshotRowIterator) {
+			((SnapshotRowIterator) rowsIt).skipTo(checkpoint.getOrdinal());
+		}
+		else {
+			while (rowOrdinal < checkpoint.getOrdinal() && rowsIt.hasNext()) {
+				rowsIt.next();
+				rowOrdinal++;
+			}
+		}
+		rowOrdinal = checkpoint.getOrdinal();
+		LOGGER.info("Resuming from " + checkpoint);
+	}
+
+	/**
+	 * Can the current position of the reader be saved as a checkpoint?
+	 * In the unordered parallel read mode, the rows read so far are not a prefix of the data file.
+	 *
+	 * @return
+	 */
+	protected boolean isCheckpointSupported() {
+		return parallelism <= 1 || orderedRead || resuming;
+	}
+
+	/**
+	 * Create a checkpoint of the current position of the reader.
+	 *
+	 * @return
+	 */
+	protected DwcaCheckpoint createCheckpoint() {
+		DwcaCheckpoint checkpoint = new DwcaCheckpoint();
+		fillCheckpoint(checkpoint);
+		return checkpoint;
+	}
+
+	/**
+	 * Set the current position of the reader on an existing checkpoint.
+	 *
+	 * @param checkpoint
+	 */
+	protected void fillCheckpoint(DwcaCheckpoint checkpoint) {
+		checkpoint.setDataFile(dwcaComponent.getLocation());
+		checkpoint.setDataLength(dataLength);
+		checkpoint.setOrdinal(rowOrdinal);
+		if (rowsIt instanceof SeekableRowIteratorIF) {
+			checkpoint.setByteOffset(((SeekableRowIteratorIF) rowsIt).getOffset());
+		}
+		else {
+			checkpoint.setByteOffset(DwcaCheckpoint.UNKNOWN_OFFSET);
+		}
+	}
+
+	protected void closeReader() {
+		rowsIt.close();
+		reportInputSanitizers();
+	}
+
+	/**
+	 * Log what was changed by the sanitizer of each data file read since the last report.
+	 */
+	private void reportInputSanitizers() {
+		for (Map.Entry<String, InputSanitizer> entry : inputSanitizers.entrySet()) {
+			if (entry.getValue().hasInvalidCharacters()) {
+				LOGGER.warn("Invalid characters found in " + entry.getKey() + ": " + entry.getValue());
+			}
+			else if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Data file " + entry.getKey() + " sanitized: " + entry.getValue());
+			}
 		}
-		return headerName;
+		inputSanitizers.clear();
+	}
+
+	/**
+	 * Number of threads used to parse the data file.
+	 * A value greater than 1 enables the parallel read mode where the data file is split in byte ranges aligned on
+	 * line boundaries.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * In parallel read mode, should the records be returned in the same order as the data file.
+	 * When false, no checkpoint can be created (see isCheckpointSupported) and the records are still read in the file
+	 * order when resuming from a checkpoint.
+	 * Default is true.
+	 *
+	 * @param orderedRead
+	 */
+	public void setOrderedRead(boolean orderedRead) {
+		this.orderedRead = orderedRead;
+	}
+
+	/**
+	 * In parallel read mode, approximate size in bytes of each byte range.
+	 *
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Read the data file using a memory-mapped buffer where cells are only decoded when used.
+	 * Ignored when the parallel read mode is enabled.
+	 * Default is false.
+	 *
+	 * @param mappedRead
+	 */
+	public void setMappedRead(boolean mappedRead) {
+		this.mappedRead = mappedRead;
+	}
+
+	/**
+	 * In memory-mapped read mode, maximum number of bytes mapped at once.
+	 *
+	 * @param mappedWindowSize
+	 */
+	public void setMappedWindowSize(int mappedWindowSize) {
+		this.mappedWindowSize = mappedWindowSize;
 	}
 
 }
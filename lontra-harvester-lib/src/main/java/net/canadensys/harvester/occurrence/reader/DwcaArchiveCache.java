@@ -0,0 +1,79 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+
+/**
+ * Job-scoped cache of parsed DarwinCore Archive descriptors keyed by path and modification time.
+ * A job puts an instance in the shared parameters (DWCA_ARCHIVE_CACHE) and clears it when it ends, all the readers
+ * created for this job (including prototype readers) will then share the same parsed archive.
+ * This class is thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaArchiveCache {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaArchiveCache.class);
+
+	private final ConcurrentMap<String, DwcaArchiveDescriptor> descriptors = new ConcurrentHashMap<String, DwcaArchiveDescriptor>();
+
+	/**
+	 * Get the descriptor of an archive, parse it if it's not in the cache or if it was modified since it was parsed.
+	 *
+	 * @param dwcaFile
+	 * @return
+	 * @throws IOException
+	 * @throws UnsupportedArchiveException
+	 */
+	public DwcaArchiveDescriptor getDescriptor(File dwcaFile) throws IOException, UnsupportedArchiveException {
+		String key = dwcaFile.getAbsolutePath();
+		DwcaArchiveDescriptor descriptor = descriptors.get(key);
+		if (descriptor == null || descriptor.getModificationTime() != DwcaArchiveDescriptor.getModificationTime(dwcaFile)) {
+			descriptor = DwcaArchiveDescriptor.open(dwcaFile);
+			descriptors.put(key, descriptor);
+		}
+		else if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Using cached descriptor for " + key);
+		}
+		return descriptor;
+	}
+
+	/**
+	 * Evict all descriptors.
+	 */
+	public void clear() {
+		descriptors.clear();
+	}
+
+	public int size() {
+		return descriptors.size();
+	}
+
+	/**
+	 * Get the descriptor of an archive using the cache provided in the shared parameters.
+	 * If there is no cache, the archive is parsed.
+	 *
+	 * @param sharedParameters
+	 * @param dwcaFile
+	 * @return
+	 * @throws IOException
+	 * @throws UnsupportedArchiveException
+	 */
+	public static DwcaArchiveDescriptor getDescriptor(Map<SharedParameterEnum, Object> sharedParameters, File dwcaFile)
+			throws IOException, UnsupportedArchiveException {
+		DwcaArchiveCache cache = (DwcaArchiveCache) sharedParameters.get(SharedParameterEnum.DWCA_ARCHIVE_CACHE);
+		if (cache != null) {
+			return cache.getDescriptor(dwcaFile);
+		}
+		return DwcaArchiveDescriptor.open(dwcaFile);
+	}
+}
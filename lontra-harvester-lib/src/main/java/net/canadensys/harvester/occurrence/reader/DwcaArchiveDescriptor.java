@@ -0,0 +1,117 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gbif.dwc.terms.Term;
+import org.gbif.dwca.io.Archive;
+import org.gbif.dwca.io.ArchiveFile;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+
+/**
+ * Parsed description of a DarwinCore Archive: metadata file, core and extensions.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class DwcaArchiveDescriptor {
+
+	private static final String META_FILE = "meta.xml";
+
+	private final File dwcaFile;
+	private final long modificationTime;
+	private final File location;
+	private final File metadataLocationFile;
+	private final DwcaFileDescriptor core;
+	private final Map<Term, DwcaFileDescriptor> extensions;
+
+	private DwcaArchiveDescriptor(File dwcaFile, long modificationTime, Archive archive) {
+		this.dwcaFile = dwcaFile;
+		this.modificationTime = modificationTime;
+		this.location = archive.getLocation();
+		this.metadataLocationFile = archive.getMetadataLocationFile();
+		this.core = DwcaFileDescriptor.from(archive.getCore());
+
+		Map<Term, DwcaFileDescriptor> extensionMap = new LinkedHashMap<Term, DwcaFileDescriptor>();
+		if (archive.getExtensions() != null) {
+			for (ArchiveFile extension : archive.getExtensions()) {
+				extensionMap.put(extension.getRowType(), DwcaFileDescriptor.from(extension));
+			}
+		}
+		this.extensions = Collections.unmodifiableMap(extensionMap);
+	}
+
+	/**
+	 * Open and parse a DarwinCore Archive (folder or ZIP file).
+	 *
+	 * @param dwcaFile
+	 * @return
+	 * @throws IOException
+	 * @throws UnsupportedArchiveException
+	 */
+	public static DwcaArchiveDescriptor open(File dwcaFile) throws IOException, UnsupportedArchiveException {
+		long modificationTime = getModificationTime(dwcaFile);
+		return new DwcaArchiveDescriptor(dwcaFile, modificationTime, DwcaArchiveSupport.openArchive(dwcaFile));
+	}
+
+	/**
+	 * Get the modification time of an archive.
+	 * For a folder, the modification time of meta.xml is also considered since editing a file does not change the
+	 * modification time of its folder.
+	 *
+	 * @param dwcaFile
+	 * @return
+	 */
+	public static long getModificationTime(File dwcaFile) {
+		long modificationTime = dwcaFile.lastModified();
+		if (dwcaFile.isDirectory()) {
+			modificationTime = Math.max(modificationTime, new File(dwcaFile, META_FILE).lastModified());
+		}
+		return modificationTime;
+	}
+
+	public File getDwcaFile() {
+		return dwcaFile;
+	}
+
+	public long getModificationTime() {
+		return modificationTime;
+	}
+
+	/**
+	 * @return folder containing meta.xml (the metadata sidecar folder for a ZIP file)
+	 */
+	public File getLocation() {
+		return location;
+	}
+
+	public File getMetadataLocationFile() {
+		return metadataLocationFile;
+	}
+
+	public DwcaFileDescriptor getCore() {
+		return core;
+	}
+
+	/**
+	 * Get an extension by its rowType.
+	 *
+	 * @param rowType
+	 * @return the extension or null if the archive does not include it
+	 */
+	public DwcaFileDescriptor getExtension(Term rowType) {
+		return extensions.get(rowType);
+	}
+
+	/**
+	 * @return unmodifiable collection of the extensions in the order of meta.xml
+	 */
+	public Collection<DwcaFileDescriptor> getExtensions() {
+		return extensions.values();
+	}
+}
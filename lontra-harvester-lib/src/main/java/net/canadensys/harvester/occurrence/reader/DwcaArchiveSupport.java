@@ -0,0 +1,341 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.canadensys.harvester.occurrence.download.PartialZipArchive;
+import net.canadensys.harvester.occurrence.reader.parser.DelimitedLineTokenizer;
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+import net.canadensys.harvester.occurrence.reader.parser.InputSanitizer;
+import net.canadensys.harvester.occurrence.reader.parser.StreamDwcaFileIterator;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.Archive;
+import org.gbif.dwca.io.ArchiveFactory;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Open Darwin Core Archives from a folder or directly from a ZIP file.
+ * When a ZIP file is provided, only the metadata files (meta.xml, eml.xml) are extracted in a sidecar folder so the gbif
+ * library can parse them. The data files are read straight from the ZIP entries.
+ * ZIP files without meta.xml are fully extracted.
+ * If the ZIP file is still being downloaded (see PartialZipArchive), the entries are read from the partial archive and
+ * reading blocks until their bytes are downloaded.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaArchiveSupport {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaArchiveSupport.class);
+
+	private static final String ZIP_EXTENSION = "zip";
+	private static final String META_FILE = "meta.xml";
+	private static final String METADATA_FOLDER_SUFFIX = "-metadata";
+
+	private DwcaArchiveSupport() {
+	}
+
+	/**
+	 * Check if the provided file is a ZIP file that should be read in streaming mode.
+	 *
+	 * @param dwcaFile
+	 * @return
+	 */
+	public static boolean isZipArchive(File dwcaFile) {
+		return dwcaFile.isFile() && FilenameUtils.isExtension(dwcaFile.getName().toLowerCase(), ZIP_EXTENSION);
+	}
+
+	/**
+	 * Open a Darwin Core Archive from a folder or a ZIP file.
+	 *
+	 * @param dwcaFile
+	 * @return
+	 * @throws IOException
+	 * @throws UnsupportedArchiveException
+	 */
+	public static Archive openArchive(File dwcaFile) throws IOException, UnsupportedArchiveException {
+		PartialZipArchive partialArchive = PartialZipArchive.get(dwcaFile);
+		if (partialArchive != null) {
+			return ArchiveFactory.openArchive(extractMetadata(partialArchive));
+		}
+		if (isZipArchive(dwcaFile)) {
+			return ArchiveFactory.openArchive(extractMetadata(dwcaFile));
+		}
+		return ArchiveFactory.openArchive(dwcaFile);
+	}
+
+	/**
+	 * Check if the data file of an archive component must be read from the ZIP file.
+	 *
+	 * @param dwcaFile
+	 * @param dwcaComponent
+	 * @return
+	 */
+	public static boolean isStreamedComponent(File dwcaFile, DwcaFileDescriptor dwcaComponent) {
+		return isZipArchive(dwcaFile) && !dwcaComponent.getLocationFile().exists();
+	}
+
+	/**
+	 * Get the length of the data file of an archive component.
+	 * For a component read from a ZIP file, the length of the ZIP file is returned.
+	 *
+	 * @param dwcaFile
+	 * @param dwcaComponent
+	 * @return
+	 */
+	public static long getDataLength(File dwcaFile, DwcaFileDescriptor dwcaComponent) {
+		if (isStreamedComponent(dwcaFile, dwcaComponent)) {
+			return dwcaFile.length();
+		}
+		return dwcaComponent.getLocationFile().length();
+	}
+
+	/**
+	 * Open an iterator on the rows of an archive component stored in a ZIP file.
+	 * Closing the iterator closes the ZIP file.
+	 *
+	 * @param zipFile
+	 * @param dwcaComponent
+	 * @param expectedColumns
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClosableIterator<DwcaRowIF> openZipEntryRows(File zipFile, DwcaFileDescriptor dwcaComponent, int expectedColumns)
+			throws IOException {
+		return openZipEntryRows(zipFile, dwcaComponent, expectedColumns, null);
+	}
+
+	/**
+	 * Open an iterator on the rows of an archive component stored in a ZIP file, only the projected columns are
+	 * materialized.
+	 * Closing the iterator closes the ZIP file.
+	 *
+	 * @param zipFile
+	 * @param dwcaComponent
+	 * @param expectedColumns
+	 * @param projectedColumns
+	 *            columns to materialize or null for all the columns
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClosableIterator<DwcaRowIF> openZipEntryRows(File zipFile, DwcaFileDescriptor dwcaComponent, int expectedColumns,
+			boolean[] projectedColumns) throws IOException {
+		Charset charset = Charset.forName(dwcaComponent.getEncoding());
+		return openZipEntryRows(zipFile, dwcaComponent, expectedColumns, projectedColumns, new InputSanitizer(charset,
+				dwcaComponent.getFieldsTerminatedBy(), dwcaComponent.getFieldsEnclosedBy()));
+	}
+
+	/**
+	 * Open an iterator on the rows of an archive component stored in a ZIP file, only the projected columns are
+	 * materialized and the content is sanitized by the provided InputSanitizer.
+	 * Closing the iterator closes the ZIP file.
+	 *
+	 * @param zipFile
+	 * @param dwcaComponent
+	 * @param expectedColumns
+	 * @param projectedColumns
+	 *            columns to materialize or null for all the columns
+	 * @param sanitizer
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClosableIterator<DwcaRowIF> openZipEntryRows(File zipFile, DwcaFileDescriptor dwcaComponent, int expectedColumns,
+			boolean[] projectedColumns, InputSanitizer sanitizer) throws IOException {
+		return new StreamDwcaFileIterator(openZipEntry(zipFile, dwcaComponent), Charset.forName(dwcaComponent.getEncoding()),
+				new DelimitedLineTokenizer(dwcaComponent.getFieldsTerminatedBy(), dwcaComponent.getFieldsEnclosedBy(), expectedColumns,
+						projectedColumns), dwcaComponent.getIgnoreHeaderLines(), sanitizer);
+	}
+
+	/**
+	 * Open the raw content of the data file of an archive component, from the ZIP file or from the archive folder.
+	 *
+	 * @param dwcaFile
+	 * @param dwcaComponent
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream openDataStream(File dwcaFile, DwcaFileDescriptor dwcaComponent) throws IOException {
+		if (isStreamedComponent(dwcaFile, dwcaComponent)) {
+			return openZipEntry(dwcaFile, dwcaComponent);
+		}
+		return new FileInputStream(dwcaComponent.getLocationFile());
+	}
+
+	/**
+	 * Open the stream of a data file stored in a ZIP file, closing the stream closes the ZIP file.
+	 *
+	 * @param zipFile
+	 * @param dwcaComponent
+	 * @return
+	 * @throws IOException
+	 */
+	private static InputStream openZipEntry(File zipFile, DwcaFileDescriptor dwcaComponent) throws IOException {
+		PartialZipArchive partialArchive = PartialZipArchive.get(zipFile);
+		if (partialArchive != null) {
+			String prefix = getEntryPrefix(partialArchive.getDirectory().getEntryNames());
+			return partialArchive.openEntry(prefix + dwcaComponent.getLocation());
+		}
+		final ZipFile zip = new ZipFile(zipFile);
+		ZipEntry entry = zip.getEntry(getEntryPrefix(zip) + dwcaComponent.getLocation());
+		if (entry == null) {
+			zip.close();
+			throw new IOException("Data file " + dwcaComponent.getLocation() + " not found in " + zipFile.getName());
+		}
+		return new FilterInputStream(zip.getInputStream(entry)) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				}
+				finally {
+					zip.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Extract the metadata files of a ZIP archive in a sidecar folder.
+	 * If the archive has no meta.xml, the complete archive is extracted.
+	 *
+	 * @param zipFile
+	 * @return the folder to give to the gbif ArchiveFactory
+	 * @throws IOException
+	 */
+	static File extractMetadata(File zipFile) throws IOException {
+		String basePath = FilenameUtils.removeExtension(zipFile.getAbsolutePath());
+		ZipFile zip = new ZipFile(zipFile);
+		try {
+			String prefix = getEntryPrefix(zip);
+			if (prefix == null) {
+				LOGGER.info("No " + META_FILE + " found in " + zipFile.getName() + ", extracting the archive");
+				zip.close();
+				new ParallelZipExtractor().extract(zipFile, new File(basePath));
+				return new File(basePath);
+			}
+
+			File metadataFolder = new File(basePath + METADATA_FOLDER_SUFFIX);
+			FileUtils.deleteQuietly(metadataFolder);
+			metadataFolder.mkdirs();
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			ZipEntry entry;
+			String name;
+			while (entries.hasMoreElements()) {
+				entry = entries.nextElement();
+				name = entry.getName();
+				if (!entry.isDirectory() && isMetadataEntry(name, prefix)) {
+					copy(zip.getInputStream(entry), new File(metadataFolder, name.substring(prefix.length())));
+				}
+			}
+			return metadataFolder;
+		}
+		finally {
+			zip.close();
+		}
+	}
+
+	/**
+	 * Extract the metadata files of a ZIP archive that is still being downloaded, only the metadata entries are waited
+	 * for. If the archive has no meta.xml, the complete download is waited for and the archive is extracted.
+	 *
+	 * @param partialArchive
+	 * @return the folder to give to the gbif ArchiveFactory
+	 * @throws IOException
+	 */
+	static File extractMetadata(PartialZipArchive partialArchive) throws IOException {
+		File zipFile = partialArchive.getFile();
+		String prefix = getEntryPrefix(partialArchive.getDirectory().getEntryNames());
+		if (prefix == null) {
+			partialArchive.awaitCompletion();
+			return extractMetadata(zipFile);
+		}
+
+		File metadataFolder = new File(FilenameUtils.removeExtension(zipFile.getAbsolutePath()) + METADATA_FOLDER_SUFFIX);
+		FileUtils.deleteQuietly(metadataFolder);
+		metadataFolder.mkdirs();
+		for (String name : partialArchive.getDirectory().getEntryNames()) {
+			if (isMetadataEntry(name, prefix)) {
+				copy(partialArchive.openEntry(name), new File(metadataFolder, name.substring(prefix.length())));
+			}
+		}
+		return metadataFolder;
+	}
+
+	/**
+	 * Only the xml files located beside meta.xml are metadata.
+	 *
+	 * @param name
+	 * @param prefix
+	 * @return
+	 */
+	private static boolean isMetadataEntry(String name, String prefix) {
+		return !name.endsWith("/") && name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0
+				&& FilenameUtils.isExtension(name.toLowerCase(), "xml");
+	}
+
+	/**
+	 * Get the path of the folder containing meta.xml inside the ZIP file.
+	 * Some archives are zipped with their root folder.
+	 *
+	 * @param zip
+	 * @return prefix ending with '/', empty String for the root or null if meta.xml can not be found
+	 */
+	private static String getEntryPrefix(ZipFile zip) {
+		List<String> names = new ArrayList<String>();
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		while (entries.hasMoreElements()) {
+			names.add(entries.nextElement().getName());
+		}
+		return getEntryPrefix(names);
+	}
+
+	/**
+	 * Get the path of the folder containing meta.xml from the names of the entries.
+	 *
+	 * @param entryNames
+	 * @return prefix ending with '/', empty String for the root or null if meta.xml can not be found
+	 */
+	private static String getEntryPrefix(Iterable<String> entryNames) {
+		String prefix = null;
+		for (String name : entryNames) {
+			if (name.equals(META_FILE) || name.endsWith("/" + META_FILE)) {
+				String currPrefix = StringUtils.removeEnd(name, META_FILE);
+				if (prefix == null || currPrefix.length() < prefix.length()) {
+					prefix = currPrefix;
+				}
+			}
+		}
+		return prefix;
+	}
+
+	/**
+	 * Copy a stream to a file, the stream is closed.
+	 */
+	private static void copy(InputStream is, File destination) throws IOException {
+		OutputStream os = new FileOutputStream(destination);
+		try {
+			IOUtils.copy(is, os);
+		}
+		finally {
+			os.close();
+			is.close();
+		}
+	}
+}
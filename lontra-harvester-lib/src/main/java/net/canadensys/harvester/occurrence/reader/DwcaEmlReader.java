@@ -12,8 +12,6 @@ import net.canadensys.harvester.ItemReaderIF;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
 
 import org.apache.log4j.Logger;
-import org.gbif.dwca.io.Archive;
-import org.gbif.dwca.io.ArchiveFactory;
 import org.gbif.dwca.io.UnsupportedArchiveException;
 import org.gbif.metadata.eml.Eml;
 import org.gbif.metadata.eml.EmlFactory;
@@ -55,7 +53,7 @@ public class DwcaEmlReader implements ItemReaderIF<Eml> {
 		File dwcaFile = null;
 		try {
 			dwcaFile = new File(dwcaFilePath);
-			Archive dwcArchive = ArchiveFactory.openArchive(dwcaFile);
+			DwcaArchiveDescriptor dwcArchive = DwcaArchiveCache.getDescriptor(sharedParameters, dwcaFile);
 			eml = EmlFactory.build(new FileInputStream(dwcArchive.getMetadataLocationFile()));
 		}
 		catch (UnsupportedArchiveException e) {
@@ -11,9 +11,6 @@ import net.canadensys.harvester.occurrence.SharedParameterEnum;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.gbif.dwc.terms.Term;
-import org.gbif.dwca.io.Archive;
-import org.gbif.dwca.io.ArchiveFactory;
-import org.gbif.dwca.io.ArchiveFile;
 import org.gbif.dwca.io.UnsupportedArchiveException;
 
 /**
@@ -27,7 +24,7 @@ public class DwcaExtensionInfoReader implements ItemReaderIF<Term> {
 	// get log4j handler
 	private static final Logger LOGGER = Logger.getLogger(DwcaExtensionInfoReader.class);
 
-	private Iterator<ArchiveFile> extIt;
+	private Iterator<DwcaFileDescriptor> extIt;
 
 	@Override
 	public void openReader(Map<SharedParameterEnum, Object> sharedParameters) {
@@ -37,10 +34,10 @@ public class DwcaExtensionInfoReader implements ItemReaderIF<Term> {
 		}
 
 		File dwcaFile = new File(dwcaFilePath);
-		Archive dwcArchive;
+		DwcaArchiveDescriptor dwcArchive;
 		try {
-			dwcArchive = ArchiveFactory.openArchive(dwcaFile);
-			if (dwcArchive.getExtensions() != null && !dwcArchive.getExtensions().isEmpty()) {
+			dwcArchive = DwcaArchiveCache.getDescriptor(sharedParameters, dwcaFile);
+			if (!dwcArchive.getExtensions().isEmpty()) {
 				extIt = dwcArchive.getExtensions().iterator();
 			}
 		}
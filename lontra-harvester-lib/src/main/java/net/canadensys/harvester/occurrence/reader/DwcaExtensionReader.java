@@ -2,19 +2,19 @@ package net.canadensys.harvester.occurrence.reader;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import net.canadensys.harvester.ArrayItemMapperIF;
 import net.canadensys.harvester.ItemMapperIF;
 import net.canadensys.harvester.ItemReaderIF;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshot;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.gbif.dwc.terms.Term;
-import org.gbif.dwca.io.Archive;
-import org.gbif.dwca.io.ArchiveFactory;
 import org.gbif.dwca.io.UnsupportedArchiveException;
 
 /**
@@ -36,10 +36,15 @@ public class DwcaExtensionReader<T> extends AbstractDwcaReaderSupport implements
 	private Term dwcaExtensionType = null;
 
 	private ItemMapperIF<T> occurrenceExtensionMapper;
+	// same mapper if it can map arrays, null otherwise
+	private ArrayItemMapperIF<T> arrayMapper;
+	// reused for each row, the mapper does not keep a reference to it
+	private Object[] rowValues;
 
 	@Override
 	public void openReader(Map<SharedParameterEnum, Object> sharedParameters) {
 		dwcaFilePath = (String)sharedParameters.get(SharedParameterEnum.DWCA_PATH);
+		snapshot = (DwcaSnapshot)sharedParameters.get(SharedParameterEnum.DWCA_SNAPSHOT);
 		dwcaExtensionType = (Term) sharedParameters.get(SharedParameterEnum.DWCA_EXTENSION_TYPE);
 
 		if(occurrenceExtensionMapper == null){
@@ -50,10 +55,11 @@ public class DwcaExtensionReader<T> extends AbstractDwcaReaderSupport implements
 		}
 
 		File dwcaFile = new File(dwcaFilePath);
-		Archive dwcArchive;
+		DwcaArchiveDescriptor dwcArchive;
 		try {
-			dwcArchive = ArchiveFactory.openArchive(dwcaFile);
+			dwcArchive = DwcaArchiveCache.getDescriptor(sharedParameters, dwcaFile);
 			prepareReader(dwcArchive.getExtension(dwcaExtensionType));
+			rowValues = rowBinder.newValues();
 		} catch (UnsupportedArchiveException e) {
 			LOGGER.fatal("Can't open DwcaExtensionReader", e);
 		} catch (IOException e) {
@@ -72,38 +78,29 @@ public class DwcaExtensionReader<T> extends AbstractDwcaReaderSupport implements
 			return null;
 		}
 
-		//ImmutableMap from Google Collections?
-		Map<String,Object> properties = new HashMap<String, Object>();
-		int i=0;
-		String[] data = skipEmptyRows?getNextNonEmptyLine():rowsIt.next();
-
-		for(String currHeader : headers){
-			properties.put(currHeader, data[i]);
-			i++;
+		DwcaRowIF row = skipEmptyRows?getNextNonEmptyLine():rowsIt.next();
+		if(row == null){
+			return null;
 		}
-		//check if some default values must be handled
-		if(defaultValues != null){
-			for(String defaultValueCol : defaultValues.keySet()){
-				properties.put(defaultValueCol, defaultValues.get(defaultValueCol));
-			}
+
+		rowBinder.bindStrings(row, rowValues);
+		if(arrayMapper != null){
+			return arrayMapper.mapElement(rowBinder.getNames(), rowValues);
 		}
-		return occurrenceExtensionMapper.mapElement(properties);
+		return occurrenceExtensionMapper.mapElement(rowBinder.toProperties(rowValues));
 	}
 
 	/**
 	 * This method will skip rows where all the terms are empty.
 	 * @return
 	 */
-	private String[] getNextNonEmptyLine(){
+	private DwcaRowIF getNextNonEmptyLine(){
 
-		String[] data = null;
+		DwcaRowIF row = null;
 		while(rowsIt.hasNext()){
-			data = rowsIt.next();
-
-			for (String element : data) {
-				if(StringUtils.isNotBlank(element)){
-					return data;
-				}
+			row = rowsIt.next();
+			if(!row.isBlank()){
+				return row;
 			}
 		}
 		return null;
@@ -111,10 +108,12 @@ public class DwcaExtensionReader<T> extends AbstractDwcaReaderSupport implements
 
 	/**
 	 * Set the row mapper to use to translate properties into object.
+	 * If the mapper is an ArrayItemMapperIF, no Map is built for each row.
 	 * @param mapper
 	 */
 	public void setMapper(ItemMapperIF<T> mapper){
 		this.occurrenceExtensionMapper = mapper;
+		this.arrayMapper = (mapper instanceof ArrayItemMapperIF) ? (ArrayItemMapperIF<T>) mapper : null;
 	}
 
 	@Override
@@ -0,0 +1,176 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gbif.dwc.terms.Term;
+import org.gbif.dwca.io.ArchiveField;
+import org.gbif.dwca.io.ArchiveFile;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Description of a data file (core or extension) of a DarwinCore Archive.
+ * The headers and default values are computed once from the ArchiveField(s) so readers can be prepared without going
+ * through meta.xml again.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class DwcaFileDescriptor {
+
+	// TODO should be configurable
+	static final Map<String, String> RESERVED_WORDS = new HashMap<String, String>();
+	static {
+		RESERVED_WORDS.put("class", "_class");
+		RESERVED_WORDS.put("group", "_group");
+		RESERVED_WORDS.put("order", "_order");
+		RESERVED_WORDS.put("references", "_references");
+	}
+	static final String DEFAULT_ID_FIELD = "id";
+
+	private final ArchiveFile archiveFile;
+	private final Term rowType;
+	private final String location;
+	private final File locationFile;
+	private final String encoding;
+	private final String fieldsTerminatedBy;
+	private final Character fieldsEnclosedBy;
+	private final int ignoreHeaderLines;
+	private final int idIndex;
+	private final String[] headers;
+	private final Map<String, String> defaultValues;
+
+	private DwcaFileDescriptor(ArchiveFile archiveFile, String[] headers, Map<String, String> defaultValues) {
+		this.archiveFile = archiveFile;
+		this.rowType = archiveFile.getRowType();
+		this.location = archiveFile.getLocation();
+		this.locationFile = archiveFile.getLocationFile();
+		this.encoding = archiveFile.getEncoding();
+		this.fieldsTerminatedBy = archiveFile.getFieldsTerminatedBy();
+		this.fieldsEnclosedBy = archiveFile.getFieldsEnclosedBy();
+		this.ignoreHeaderLines = archiveFile.getIgnoreHeaderLines() == null ? 0 : archiveFile.getIgnoreHeaderLines().intValue();
+		this.idIndex = archiveFile.getId().getIndex().intValue();
+		this.headers = headers;
+		this.defaultValues = defaultValues;
+	}
+
+	/**
+	 * Build a descriptor from an ArchiveFile by setting the headers and default values.
+	 *
+	 * @param dwcaComponent
+	 * @return
+	 */
+	public static DwcaFileDescriptor from(ArchiveFile dwcaComponent) {
+		// get headers
+		List<ArchiveField> sortedFieldList = dwcaComponent.getFieldsSorted();
+		ArrayList<String> indexedColumns = new ArrayList<String>();
+		Map<String, String> defaultValues = null;
+
+		// check if the id column is used within a term or not
+		int idIndex = dwcaComponent.getId().getIndex();
+		boolean idColumnIncluded = false;
+		for (ArchiveField currArField : sortedFieldList) {
+			// check if the field is a default column or not
+			if (currArField.getIndex() != null) {
+				if (idIndex == currArField.getIndex().intValue()) {
+					idColumnIncluded = true;
+				}
+				indexedColumns.add(getHeaderName(currArField));
+			}
+			else {
+				// lazy init, do not create if not needed for this archive
+				if (defaultValues == null) {
+					defaultValues = new HashMap<String, String>();
+				}
+				defaultValues.put(getHeaderName(currArField), currArField.getDefaultValue());
+			}
+		}
+		if (!idColumnIncluded) {
+			indexedColumns.add(idIndex, DEFAULT_ID_FIELD);
+		}
+		return new DwcaFileDescriptor(dwcaComponent, indexedColumns.toArray(new String[0]),
+				defaultValues == null ? null : Collections.unmodifiableMap(defaultValues));
+	}
+
+	/**
+	 * Handle reserved word and lowercase header from ArchiveField.
+	 *
+	 * @param archiveField
+	 * @return
+	 */
+	static String getHeaderName(ArchiveField archiveField) {
+		String headerName = archiveField.getTerm().simpleName().toLowerCase();
+		if (RESERVED_WORDS.get(headerName) != null) {
+			headerName = RESERVED_WORDS.get(headerName);
+		}
+		return headerName;
+	}
+
+	/**
+	 * Open the gbif CSVReader on the data file.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public ClosableIterator<String[]> openCSVIterator() throws IOException {
+		return archiveFile.getCSVReader().iterator();
+	}
+
+	public Term getRowType() {
+		return rowType;
+	}
+
+	/**
+	 * @return location of the data file relative to the archive
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	public File getLocationFile() {
+		return locationFile;
+	}
+
+	public String getEncoding() {
+		return encoding;
+	}
+
+	public String getFieldsTerminatedBy() {
+		return fieldsTerminatedBy;
+	}
+
+	public Character getFieldsEnclosedBy() {
+		return fieldsEnclosedBy;
+	}
+
+	public int getIgnoreHeaderLines() {
+		return ignoreHeaderLines;
+	}
+
+	/**
+	 * @return index of the column holding the id (core) or the coreid (extension)
+	 */
+	public int getIdIndex() {
+		return idIndex;
+	}
+
+	/**
+	 * @return copy of the headers, in the column order
+	 */
+	public String[] getHeaders() {
+		return headers.clone();
+	}
+
+	/**
+	 * @return unmodifiable map of the default values or null if the file has no default value
+	 */
+	public Map<String, String> getDefaultValues() {
+		return defaultValues;
+	}
+}
@@ -0,0 +1,74 @@
+package net.canadensys.harvester.occurrence.reader;
+
+/**
+ * Byte range of a data file of a Darwin Core Archive made of complete lines, created by DwcaFileSplitter.
+ * A range never includes the header lines of the data file.
+ * This class is mutable.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFileRange {
+
+	// location of the data file inside the archive (as declared in meta.xml)
+	private String dataFile;
+	private long offset;
+	private long length;
+	private int numberOfRows;
+
+	public DwcaFileRange() {
+	}
+
+	public DwcaFileRange(String dataFile, long offset, long length, int numberOfRows) {
+		this.dataFile = dataFile;
+		this.offset = offset;
+		this.length = length;
+		this.numberOfRows = numberOfRows;
+	}
+
+	public String getDataFile() {
+		return dataFile;
+	}
+
+	public void setDataFile(String dataFile) {
+		this.dataFile = dataFile;
+	}
+
+	/**
+	 * @return position of the first byte of the range in the data file
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * @return number of bytes of the range
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public void setLength(long length) {
+		this.length = length;
+	}
+
+	/**
+	 * @return number of rows (non blank lines) of the range
+	 */
+	public int getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	public void setNumberOfRows(int numberOfRows) {
+		this.numberOfRows = numberOfRows;
+	}
+
+	@Override
+	public String toString() {
+		return dataFile + "[" + offset + "+" + length + ", " + numberOfRows + " rows]";
+	}
+}
@@ -0,0 +1,153 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.canadensys.harvester.occurrence.validation.DwcaFileScanner;
+
+/**
+ * Split an extracted data file in byte ranges of complete lines that can be read independently (e.g. by different
+ * processing nodes), see DWCA_FILE_RANGE.
+ * The data file is only scanned for line feeds, the lines are not tokenized. The number of rows of each range is the
+ * number of non blank lines, like the readers do, lines can end with LF, CR+LF or CR but ranges are only split after a
+ * LF.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFileSplitter {
+
+	public static final int DEFAULT_RANGE_SIZE = 16 * 1024 * 1024;
+
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private long rangeSize = DEFAULT_RANGE_SIZE;
+
+	/**
+	 * Check if a data file can be split, it must be extracted and tokenized on bytes.
+	 *
+	 * @param descriptor
+	 * @return
+	 */
+	public static boolean isSupported(DwcaFileDescriptor descriptor) {
+		return descriptor.getLocationFile() != null && descriptor.getLocationFile().isFile()
+				&& DwcaFileScanner.isSupported(descriptor);
+	}
+
+	/**
+	 * Split a data file, see {@link #isSupported(DwcaFileDescriptor)}.
+	 *
+	 * @param descriptor
+	 * @return ranges in file order, ranges without rows are not included
+	 * @throws IOException
+	 */
+	public List<DwcaFileRange> split(DwcaFileDescriptor descriptor) throws IOException {
+		if (!isSupported(descriptor)) {
+			throw new IllegalArgumentException("Data file " + descriptor.getLocation() + " can not be split");
+		}
+		return split(descriptor.getLocationFile(), descriptor.getLocation(), descriptor.getIgnoreHeaderLines());
+	}
+
+	/**
+	 * Split a data file.
+	 *
+	 * @param dataFile
+	 * @param location
+	 *            location of the data file inside the archive
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @return ranges in file order, ranges without rows are not included
+	 * @throws IOException
+	 */
+	public List<DwcaFileRange> split(File dataFile, String location, int ignoreHeaderLines) throws IOException {
+		List<DwcaFileRange> ranges = new ArrayList<DwcaFileRange>();
+		InputStream is = new FileInputStream(dataFile);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long position = 0;
+			int headerLinesToSkip = ignoreHeaderLines;
+			boolean firstBuffer = true;
+
+			long rangeStart = 0;
+			int rows = 0;
+			boolean lineHasContent = false;
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				int i = 0;
+				if (firstBuffer) {
+					firstBuffer = false;
+					if (read >= UTF8_BOM.length && buffer[0] == UTF8_BOM[0] && buffer[1] == UTF8_BOM[1] && buffer[2] == UTF8_BOM[2]) {
+						i = UTF8_BOM.length;
+					}
+					rangeStart = i;
+				}
+				for (; i < read; i++) {
+					byte b = buffer[i];
+					if (headerLinesToSkip > 0) {
+						if (b == LF) {
+							headerLinesToSkip--;
+							rangeStart = position + i + 1;
+						}
+						continue;
+					}
+					if (b == LF) {
+						// nothing to count if the line already ended on CR
+						if (lineHasContent) {
+							rows++;
+						}
+						lineHasContent = false;
+						long rangeEnd = position + i + 1;
+						if (rangeEnd - rangeStart >= rangeSize) {
+							addRange(ranges, location, rangeStart, rangeEnd, rows);
+							rangeStart = rangeEnd;
+							rows = 0;
+						}
+					}
+					else if (b == CR) {
+						if (lineHasContent) {
+							rows++;
+						}
+						lineHasContent = false;
+					}
+					else {
+						lineHasContent = true;
+					}
+				}
+				position += read;
+			}
+			if (lineHasContent) {
+				rows++;
+			}
+			if (headerLinesToSkip == 0) {
+				addRange(ranges, location, rangeStart, position, rows);
+			}
+		}
+		finally {
+			is.close();
+		}
+		return ranges;
+	}
+
+	private void addRange(List<DwcaFileRange> ranges, String location, long start, long end, int rows) {
+		if (rows > 0) {
+			ranges.add(new DwcaFileRange(location, start, end - start, rows));
+		}
+	}
+
+	/**
+	 * Approximate size in bytes of each range, a range is larger when a line is longer than this size.
+	 *
+	 * @param rangeSize
+	 */
+	public void setRangeSize(long rangeSize) {
+		this.rangeSize = rangeSize;
+	}
+}
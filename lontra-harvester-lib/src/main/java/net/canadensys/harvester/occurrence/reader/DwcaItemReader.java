@@ -3,26 +3,28 @@ package net.canadensys.harvester.occurrence.reader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
-import net.canadensys.harvester.ItemMapperIF;
 import net.canadensys.harvester.ItemReaderIF;
+import net.canadensys.harvester.mapper.StringDictionary;
+import net.canadensys.harvester.mapper.TermMappingPlan;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.filter.DwcaIdFilter;
 import net.canadensys.harvester.occurrence.mapper.OccurrenceMapper;
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshot;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.gbif.dwca.io.Archive;
-import org.gbif.dwca.io.ArchiveFactory;
 import org.gbif.dwca.io.UnsupportedArchiveException;
 
-import com.google.common.collect.Lists;
-
 /**
  * Item reader for Darwin Core Archive.
  * This class is mutable.
@@ -30,13 +32,16 @@ import com.google.common.collect.Lists;
  * @author canadensys
  *
  */
-public class DwcaItemReader extends AbstractDwcaReaderSupport implements ItemReaderIF<OccurrenceRawModel> {
+public class DwcaItemReader extends AbstractDwcaReaderSupport implements ItemReaderIF<OccurrenceRawModel>, ResumableReaderIF {
 	// get log4j handler
 	private static final Logger LOGGER = Logger.getLogger(DwcaItemReader.class);
 
 	private final AtomicBoolean canceled = new AtomicBoolean(false);
-	private final ItemMapperIF<OccurrenceRawModel> mapper = new OccurrenceMapper();
-	private final List<String> dwcaIdExcludeList = Lists.newArrayList();
+	private final OccurrenceMapper mapper = new OccurrenceMapper();
+	private boolean stringDeduplication = true;
+	private DwcaIdFilter idFilter;
+	// reused for each row, the mapper does not keep a reference to it
+	private Object[] rowValues;
 
 	@Override
 	public OccurrenceRawModel read() {
@@ -47,21 +52,9 @@ public class DwcaItemReader extends AbstractDwcaReaderSupport implements ItemRea
 				return null;
 			}
 
-			// ImmutableMap from Google Collections?
-			Map<String, Object> properties = new HashMap<String, Object>();
-			int i = 0;
-			String[] data = rowsIt.next();
-			for (String currHeader : headers) {
-				properties.put(currHeader, data[i]);
-				i++;
-			}
-			// check if some default values must be handled
-			if (defaultValues != null) {
-				for (String defaultValueCol : defaultValues.keySet()) {
-					properties.put(defaultValueCol, defaultValues.get(defaultValueCol));
-				}
-			}
-			occurrenceRawModel = mapper.mapElement(properties);
+			DwcaRowIF row = nextRow();
+			rowBinder.bind(row, rowValues);
+			occurrenceRawModel = mapper.mapElement(rowBinder.getNames(), rowValues);
 		}
 		while (shouldSkipRecord(occurrenceRawModel));
 
@@ -75,23 +68,37 @@ public class DwcaItemReader extends AbstractDwcaReaderSupport implements ItemRea
 	@Override
 	public void openReader(Map<SharedParameterEnum, Object> sharedParameters) {
 		dwcaFilePath = (String) sharedParameters.get(SharedParameterEnum.DWCA_PATH);
-		if (mapper == null) {
-			throw new IllegalStateException("No mapper defined");
-		}
+		snapshot = (DwcaSnapshot) sharedParameters.get(SharedParameterEnum.DWCA_SNAPSHOT);
+		fileRange = (DwcaFileRange) sharedParameters.get(SharedParameterEnum.DWCA_FILE_RANGE);
+		// values are deduplicated for this job only
+		mapper.setStringDictionary(stringDeduplication ? new StringDictionary() : null);
 		if (StringUtils.isBlank(dwcaFilePath)) {
 			throw new IllegalStateException("sharedParameters missing: DWCA_PATH is required.");
 		}
 
-		// handle exclusion list if provided
-		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST)) {
-			dwcaIdExcludeList.addAll((List<String>) sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST));
+		// handle id filter or exclusion list if provided
+		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_FILTER)) {
+			idFilter = (DwcaIdFilter) sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER);
+		}
+		else if (sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST)) {
+			idFilter = DwcaIdFilter.fromExclusionList((List<String>) sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST));
+		}
+		// the duplicate ids accepted before the checkpoint are unknown
+		if (idFilter != null && idFilter.isKeepFirstDuplicate()
+				&& sharedParameters.containsKey(SharedParameterEnum.DWCA_CHECKPOINT)) {
+			throw new IllegalStateException("Can't resume from a checkpoint when the first record of duplicated ids is kept");
 		}
 
 		File dwcaFile = new File(dwcaFilePath);
-		Archive dwcArchive;
+		DwcaArchiveDescriptor dwcArchive;
+		TermMappingPlan plan = null;
 		try {
-			dwcArchive = ArchiveFactory.openArchive(dwcaFile);
-			prepareReader(dwcArchive.getCore());
+			dwcArchive = DwcaArchiveCache.getDescriptor(sharedParameters, dwcaFile);
+			plan = OccurrenceMapper.createPlan(getNames(dwcArchive.getCore()));
+			// only read the columns the mapper will use, from the checkpoint if any
+			prepareReader(dwcArchive.getCore(), getProjection(plan),
+					(DwcaCheckpoint) sharedParameters.get(SharedParameterEnum.DWCA_CHECKPOINT));
+			rowValues = rowBinder.newValues();
 		}
 		catch (UnsupportedArchiveException e) {
 			LOGGER.fatal("Can't open DwcaItemReader", e);
@@ -101,7 +108,7 @@ public class DwcaItemReader extends AbstractDwcaReaderSupport implements ItemRea
 		}
 
 		// only use terms we know
-		List<String> usedDwcTerms = getDwcaUsedTerms();
+		List<String> usedDwcTerms = (plan == null) ? new ArrayList<String>() : getDwcaUsedTerms(plan);
 
 		// set the used dwc terms used by this archive
 		sharedParameters.put(SharedParameterEnum.DWCA_USED_TERMS, usedDwcTerms);
@@ -116,41 +123,82 @@ public class DwcaItemReader extends AbstractDwcaReaderSupport implements ItemRea
 	 * @return
 	 */
 	private boolean shouldSkipRecord(OccurrenceRawModel occurrenceRawModel) {
-		if (!dwcaIdExcludeList.isEmpty()) {
-			return dwcaIdExcludeList.contains(occurrenceRawModel.getDwcaid());
+		if (idFilter != null) {
+			return !idFilter.accept(occurrenceRawModel.getDwcaid());
 		}
 		return false;
 	}
 
 	/**
-	 * Get headers found in the archive that can be mapped to OccurrenceRawModel.
+	 * Get the names of the core: headers followed by the default values.
 	 *
-	 * @return list of terms (simpleName)
+	 * @param core
+	 * @return
 	 */
-	private List<String> getDwcaUsedTerms() {
-		OccurrenceRawModel testModel = new OccurrenceRawModel();
-		List<String> usedDwcTerms = new ArrayList<String>();
+	private String[] getNames(DwcaFileDescriptor core) {
+		List<String> names = new ArrayList<String>(Arrays.asList(core.getHeaders()));
+		if (core.getDefaultValues() != null) {
+			names.addAll(core.getDefaultValues().keySet());
+		}
+		return names.toArray(new String[names.size()]);
+	}
 
-		for (String currHeader : headers) {
-			if (PropertyUtils.isWriteable(testModel, currHeader)) {
-				usedDwcTerms.add(currHeader);
-			}
-			else {
-				LOGGER.warn("Property [" + currHeader + "] is not found or writeable in OccurrenceRawModel");
+	/**
+	 * Get the names (headers and default values) of the core that are used by the OccurrenceMapper.
+	 *
+	 * @param plan
+	 *            plan of the names of the core
+	 * @return
+	 */
+	private Set<String> getProjection(TermMappingPlan plan) {
+		Set<String> projection = new HashSet<String>();
+		for (int i = 0; i < plan.size(); i++) {
+			if (!plan.isIgnored(i)) {
+				projection.add(plan.getNames()[i]);
 			}
 		}
+		return projection;
+	}
 
-		if (defaultValues != null) {
-			for (String currHeader : defaultValues.keySet()) {
-				if (PropertyUtils.isWriteable(testModel, currHeader)) {
-					usedDwcTerms.add(currHeader);
-				}
-				else {
-					LOGGER.warn("Property [" + currHeader + "] is not found or writeable in OccurrenceRawModel");
-				}
+	/**
+	 * Get headers found in the archive that can be mapped to OccurrenceRawModel.
+	 *
+	 * @param plan
+	 *            plan of the names of the core
+	 * @return list of terms (simpleName)
+	 */
+	private List<String> getDwcaUsedTerms(TermMappingPlan plan) {
+		for (int i = 0; i < plan.size(); i++) {
+			if (!plan.isWriteable(i)) {
+				LOGGER.warn("Property [" + plan.getNames()[i] + "] is not found or writeable in OccurrenceRawModel");
 			}
 		}
-		return usedDwcTerms;
+		return plan.getWriteableNames();
+	}
+
+	@Override
+	public DwcaCheckpoint getCheckpoint() {
+		return createCheckpoint();
+	}
+
+	@Override
+	public void fillCheckpoint(DwcaCheckpoint checkpoint) {
+		super.fillCheckpoint(checkpoint);
+	}
+
+	@Override
+	public boolean isCheckpointSupported() {
+		return super.isCheckpointSupported();
+	}
+
+	/**
+	 * Should the values of the low cardinality columns share the same String instances (see StringDictionary)?
+	 * Default is true.
+	 *
+	 * @param stringDeduplication
+	 */
+	public void setStringDeduplication(boolean stringDeduplication) {
+		this.stringDeduplication = stringDeduplication;
 	}
 
 	@Override
@@ -0,0 +1,314 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
+import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
+import net.canadensys.harvester.ArrayItemMapperIF;
+import net.canadensys.harvester.ItemReaderIF;
+import net.canadensys.harvester.mapper.StringDictionary;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.filter.DwcaIdFilter;
+import net.canadensys.harvester.occurrence.mapper.OccurrenceExtensionMapper;
+import net.canadensys.harvester.occurrence.mapper.OccurrenceMapper;
+import net.canadensys.harvester.occurrence.model.DwcaJoinedRecord;
+import net.canadensys.harvester.occurrence.reader.join.ExternalRowSorter;
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+import net.canadensys.harvester.occurrence.reader.parser.StringArrayRow;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshot;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.gbif.dwc.terms.Term;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Item reader returning the core records of a Darwin Core Archive with their extension rows attached.
+ * The core and each extension are sorted on their id/coreid column with an external merge sort (bounded memory,
+ * spilled to temporary files) and then merge-joined in a single pass, without random access to the data files.
+ * Records are therefore returned in id order, not in the order of the core data file.
+ * Extension rows referring to an id that is not in the core are ignored (and counted). If the core contains
+ * duplicated ids, the extension rows are attached to the first record only.
+ * This class is mutable.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaJoinItemReader extends AbstractDwcaReaderSupport implements ItemReaderIF<DwcaJoinedRecord> {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaJoinItemReader.class);
+
+	private final AtomicBoolean canceled = new AtomicBoolean(false);
+	private final OccurrenceMapper mapper = new OccurrenceMapper();
+	private boolean stringDeduplication = true;
+	private final ArrayItemMapperIF<OccurrenceExtensionModel> extensionMapper = new OccurrenceExtensionMapper();
+
+	// extensions to join, null to join all the extensions of the archive
+	private List<Term> extensionTypes;
+	private int maxRowsInMemory = ExternalRowSorter.DEFAULT_MAX_ROWS_IN_MEMORY;
+	private File tempFolder;
+
+	private DwcaIdFilter idFilter;
+	private int coreIdIndex;
+	private ClosableIterator<String[]> sortedCore;
+	private List<ExtensionCursor> extensionCursors;
+	private Object[] rowValues;
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void openReader(Map<SharedParameterEnum, Object> sharedParameters) {
+		dwcaFilePath = (String) sharedParameters.get(SharedParameterEnum.DWCA_PATH);
+		snapshot = (DwcaSnapshot) sharedParameters.get(SharedParameterEnum.DWCA_SNAPSHOT);
+		// values are deduplicated for this job only
+		mapper.setStringDictionary(stringDeduplication ? new StringDictionary() : null);
+		if (StringUtils.isBlank(dwcaFilePath)) {
+			throw new IllegalStateException("sharedParameters missing: DWCA_PATH is required.");
+		}
+		// handle id filter or exclusion list if provided
+		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_FILTER)) {
+			idFilter = (DwcaIdFilter) sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER);
+		}
+		else if (sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST)) {
+			idFilter = DwcaIdFilter.fromExclusionList((List<String>) sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST));
+		}
+
+		File dwcaFile = new File(dwcaFilePath);
+		extensionCursors = new ArrayList<ExtensionCursor>();
+		try {
+			DwcaArchiveDescriptor dwcArchive = DwcaArchiveCache.getDescriptor(sharedParameters, dwcaFile);
+			prepareReader(dwcArchive.getCore());
+			rowValues = rowBinder.newValues();
+			coreIdIndex = dwcArchive.getCore().getIdIndex();
+			sortedCore = new ExternalRowSorter(coreIdIndex, maxRowsInMemory, tempFolder).sort(new RowCopyIterator(rowsIt,
+					headers.length, false));
+
+			for (DwcaFileDescriptor extension : dwcArchive.getExtensions()) {
+				if (extensionTypes == null || extensionTypes.contains(extension.getRowType())) {
+					extensionCursors.add(openExtension(extension));
+				}
+			}
+		}
+		catch (UnsupportedArchiveException e) {
+			LOGGER.fatal("Can't open DwcaJoinItemReader", e);
+		}
+		catch (IOException e) {
+			LOGGER.fatal("Can't open DwcaJoinItemReader", e);
+		}
+	}
+
+	/**
+	 * Sort the rows of an extension on the coreid.
+	 *
+	 * @param extension
+	 * @return
+	 * @throws IOException
+	 */
+	private ExtensionCursor openExtension(DwcaFileDescriptor extension) throws IOException {
+		ClosableIterator<DwcaRowIF> extensionRows = openRows(extension);
+		try {
+			// like DwcaExtensionReader, rows where all the terms are empty are skipped
+			ClosableIterator<String[]> sortedRows = new ExternalRowSorter(extension.getIdIndex(), maxRowsInMemory, tempFolder)
+					.sort(new RowCopyIterator(extensionRows, extension.getHeaders().length, true));
+			return new ExtensionCursor(extension, sortedRows);
+		}
+		finally {
+			extensionRows.close();
+		}
+	}
+
+	@Override
+	public DwcaJoinedRecord read() {
+		String[] coreRow;
+		String id;
+		do {
+			if (canceled.get() || sortedCore == null || !sortedCore.hasNext()) {
+				return null;
+			}
+			coreRow = sortedCore.next();
+			id = coreRow[coreIdIndex];
+		}
+		while (idFilter != null && !idFilter.accept(id));
+
+		rowBinder.bindStrings(new StringArrayRow(coreRow), rowValues);
+		OccurrenceRawModel core = mapper.mapElement(rowBinder.getNames(), rowValues);
+
+		Map<Term, List<OccurrenceExtensionModel>> extensions = new HashMap<Term, List<OccurrenceExtensionModel>>();
+		List<OccurrenceExtensionModel> extensionRows;
+		for (ExtensionCursor cursor : extensionCursors) {
+			extensionRows = cursor.join(id);
+			if (!extensionRows.isEmpty()) {
+				extensions.put(cursor.rowType, extensionRows);
+			}
+		}
+		return new DwcaJoinedRecord(core, extensions);
+	}
+
+	/**
+	 * Should the values of the low cardinality columns share the same String instances (see StringDictionary)?
+	 * Default is true.
+	 *
+	 * @param stringDeduplication
+	 */
+	public void setStringDeduplication(boolean stringDeduplication) {
+		this.stringDeduplication = stringDeduplication;
+	}
+
+	@Override
+	public void closeReader() {
+		if (sortedCore != null) {
+			sortedCore.close();
+			sortedCore = null;
+		}
+		if (extensionCursors != null) {
+			for (ExtensionCursor cursor : extensionCursors) {
+				cursor.close();
+			}
+			extensionCursors = null;
+		}
+		super.closeReader();
+	}
+
+	@Override
+	public void abort() {
+		canceled.set(true);
+	}
+
+	/**
+	 * Extensions to join to the core records.
+	 * By default, all the extensions of the archive are joined.
+	 *
+	 * @param extensionTypes
+	 *            rowType of the extensions
+	 */
+	public void setExtensionTypes(List<Term> extensionTypes) {
+		this.extensionTypes = extensionTypes;
+	}
+
+	/**
+	 * Maximum number of rows (per data file) kept in memory while sorting, additional rows are spilled to disk.
+	 *
+	 * @param maxRowsInMemory
+	 */
+	public void setMaxRowsInMemory(int maxRowsInMemory) {
+		this.maxRowsInMemory = maxRowsInMemory;
+	}
+
+	/**
+	 * Folder used to write the sorted runs. Default is the system temporary folder.
+	 *
+	 * @param tempFolder
+	 */
+	public void setTempFolder(File tempFolder) {
+		this.tempFolder = tempFolder;
+	}
+
+	/**
+	 * Copy the rows of a data file into String arrays, rows returned by the parsers can be reused.
+	 */
+	private static class RowCopyIterator implements Iterator<String[]> {
+		private final Iterator<DwcaRowIF> rows;
+		private final int numberOfColumns;
+		private final boolean skipEmptyRows;
+		private DwcaRowIF nextRow;
+
+		RowCopyIterator(Iterator<DwcaRowIF> rows, int numberOfColumns, boolean skipEmptyRows) {
+			this.rows = rows;
+			this.numberOfColumns = numberOfColumns;
+			this.skipEmptyRows = skipEmptyRows;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (nextRow == null && rows.hasNext()) {
+				nextRow = rows.next();
+				if (skipEmptyRows && nextRow.isBlank()) {
+					nextRow = null;
+				}
+			}
+			return nextRow != null;
+		}
+
+		@Override
+		public String[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String[] cells = new String[numberOfColumns];
+			for (int i = 0; i < numberOfColumns; i++) {
+				cells[i] = nextRow.getString(i);
+			}
+			nextRow = null;
+			return cells;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Position in the sorted rows of an extension.
+	 */
+	private class ExtensionCursor {
+		private final Term rowType;
+		private final String location;
+		private final int idIndex;
+		private final RowBinder extensionRowBinder;
+		private final Object[] extensionRowValues;
+		private final ClosableIterator<String[]> sortedRows;
+		private String[] current;
+		private long orphanRows;
+
+		ExtensionCursor(DwcaFileDescriptor extension, ClosableIterator<String[]> sortedRows) {
+			this.rowType = extension.getRowType();
+			this.location = extension.getLocation();
+			this.idIndex = extension.getIdIndex();
+			this.extensionRowBinder = RowBinder.compile(extension.getHeaders(), extension.getDefaultValues());
+			this.extensionRowValues = extensionRowBinder.newValues();
+			this.sortedRows = sortedRows;
+			this.current = sortedRows.hasNext() ? sortedRows.next() : null;
+		}
+
+		/**
+		 * Move forward to the rows of the provided id and map them.
+		 * Ids must be provided in ascending order.
+		 *
+		 * @param id
+		 * @return
+		 */
+		List<OccurrenceExtensionModel> join(String id) {
+			List<OccurrenceExtensionModel> rows = new ArrayList<OccurrenceExtensionModel>();
+			int comparison;
+			while (current != null && (comparison = ExternalRowSorter.compareKeys(current[idIndex], id)) <= 0) {
+				if (comparison < 0) {
+					orphanRows++;
+				}
+				else {
+					extensionRowBinder.bindStrings(new StringArrayRow(current), extensionRowValues);
+					OccurrenceExtensionModel model = extensionMapper.mapElement(extensionRowBinder.getNames(), extensionRowValues);
+					model.setExt_type(rowType.simpleName());
+					rows.add(model);
+				}
+				current = sortedRows.hasNext() ? sortedRows.next() : null;
+			}
+			return rows;
+		}
+
+		void close() {
+			if (orphanRows > 0) {
+				LOGGER.warn(orphanRows + " row(s) of " + location + " do not refer to a core record");
+			}
+			sortedRows.close();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshot;
+import net.canadensys.harvester.occurrence.snapshot.SnapshotFileWriter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Write the rows of the core and the extensions of an archive in a DwcaSnapshot.
+ * The data files are read (and sanitized) like the other readers, the parallel read mode is always ordered so the
+ * rows of the snapshot are in the same order as the data file.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaSnapshotBuilder extends AbstractDwcaReaderSupport {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaSnapshotBuilder.class);
+
+	private int rowGroupSize = SnapshotFileWriter.DEFAULT_ROW_GROUP_SIZE;
+
+	public DwcaSnapshotBuilder() {
+		setOrderedRead(true);
+	}
+
+	/**
+	 * Write all the data files of an archive in a snapshot.
+	 *
+	 * @param dwcaFile
+	 *            archive folder or ZIP file
+	 * @param descriptor
+	 * @param snapshot
+	 *            empty snapshot
+	 * @throws IOException
+	 */
+	public void build(File dwcaFile, DwcaArchiveDescriptor descriptor, DwcaSnapshot snapshot) throws IOException {
+		dwcaFilePath = dwcaFile.getAbsolutePath();
+		write(descriptor.getCore(), snapshot);
+		for (DwcaFileDescriptor extension : descriptor.getExtensions()) {
+			write(extension, snapshot);
+		}
+	}
+
+	private void write(DwcaFileDescriptor dwcaComponent, DwcaSnapshot snapshot) throws IOException {
+		long start = System.currentTimeMillis();
+		rowsIt = openRows(dwcaComponent);
+		long numberOfRows;
+		try {
+			numberOfRows = snapshot.write(dwcaComponent, rowsIt, rowGroupSize);
+		}
+		finally {
+			closeReader();
+		}
+		LOGGER.info(numberOfRows + " rows of " + dwcaComponent.getLocation() + " written in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Number of rows per row group of the snapshot files.
+	 *
+	 * @param rowGroupSize
+	 */
+	public void setRowGroupSize(int rowGroupSize) {
+		this.rowGroupSize = rowGroupSize;
+	}
+}
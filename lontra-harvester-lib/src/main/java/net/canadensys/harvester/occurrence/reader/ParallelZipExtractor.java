@@ -0,0 +1,221 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Extract the entries of a ZIP file in parallel.
+ * Each entry is inflated by one thread of a bounded pool (largest entries first), the target file is preallocated with
+ * the size of the entry and written through a direct buffer. The CRC of each entry is verified while it is written so an
+ * archive that was extracted without error can be read right away.
+ *
+ * @author canadensys
+ *
+ */
+public class ParallelZipExtractor {
+
+	private static final Logger LOGGER = Logger.getLogger(ParallelZipExtractor.class);
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * Extract all the entries of a ZIP file in a folder.
+	 *
+	 * @param zipFile
+	 * @param folder
+	 *            created if it doesn't exist
+	 * @throws IOException
+	 *             if an entry can not be extracted, is outside the folder or has an invalid CRC
+	 */
+	public void extract(final File zipFile, File folder) throws IOException {
+		final File destination = folder.getCanonicalFile();
+		destination.mkdirs();
+		final ConcurrentLinkedQueue<ZipEntry> queue = new ConcurrentLinkedQueue<ZipEntry>(listFileEntries(zipFile, destination));
+		if (queue.isEmpty()) {
+			return;
+		}
+
+		int numberOfThreads = Math.max(1, Math.min(parallelism, queue.size()));
+		List<Callable<Void>> workers = new ArrayList<Callable<Void>>(numberOfThreads);
+		for (int i = 0; i < numberOfThreads; i++) {
+			workers.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					extractEntries(zipFile, queue, destination);
+					return null;
+				}
+			});
+		}
+
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			for (Future<Void> worker : executor.invokeAll(workers)) {
+				worker.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Extraction of " + zipFile.getName() + " interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Can't extract " + zipFile.getName(), e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		LOGGER.info("Extracted " + zipFile.getName() + " with " + numberOfThreads + " thread(s) in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Create the directories and list the file entries, largest first.
+	 */
+	private List<ZipEntry> listFileEntries(File zipFile, File destination) throws IOException {
+		List<ZipEntry> fileEntries = new ArrayList<ZipEntry>();
+		ZipFile zip = new ZipFile(zipFile);
+		try {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			ZipEntry entry;
+			while (entries.hasMoreElements()) {
+				entry = entries.nextElement();
+				File target = getTarget(destination, entry);
+				if (entry.isDirectory()) {
+					target.mkdirs();
+				}
+				else {
+					target.getParentFile().mkdirs();
+					fileEntries.add(entry);
+				}
+			}
+		}
+		finally {
+			zip.close();
+		}
+		Collections.sort(fileEntries, new Comparator<ZipEntry>() {
+			@Override
+			public int compare(ZipEntry e1, ZipEntry e2) {
+				return Long.compare(e2.getSize(), e1.getSize());
+			}
+		});
+		return fileEntries;
+	}
+
+	/**
+	 * Extract entries until the queue is empty. Each worker uses its own ZipFile and buffer.
+	 */
+	private void extractEntries(File zipFile, ConcurrentLinkedQueue<ZipEntry> queue, File destination) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+		byte[] bytes = new byte[bufferSize];
+		ZipFile zip = new ZipFile(zipFile);
+		try {
+			ZipEntry entry;
+			while ((entry = queue.poll()) != null) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new IOException("Extraction of " + zipFile.getName() + " interrupted");
+				}
+				extractEntry(zip, entry, getTarget(destination, entry), buffer, bytes);
+			}
+		}
+		catch (IOException e) {
+			// the other workers stop after their current entry
+			queue.clear();
+			throw e;
+		}
+		finally {
+			zip.close();
+		}
+	}
+
+	private void extractEntry(ZipFile zip, ZipEntry entry, File target, ByteBuffer buffer, byte[] bytes) throws IOException {
+		CRC32 crc = new CRC32();
+		long written = 0;
+		InputStream is = zip.getInputStream(entry);
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		try {
+			if (entry.getSize() >= 0) {
+				raf.setLength(entry.getSize());
+			}
+			FileChannel channel = raf.getChannel();
+			int read;
+			while ((read = is.read(bytes)) != -1) {
+				crc.update(bytes, 0, read);
+				buffer.clear();
+				buffer.put(bytes, 0, read);
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					written += channel.write(buffer, written);
+				}
+			}
+			// the size from the central directory could be wrong
+			if (written != raf.length()) {
+				raf.setLength(written);
+			}
+		}
+		finally {
+			raf.close();
+			is.close();
+		}
+		if (entry.getCrc() != -1 && entry.getCrc() != crc.getValue()) {
+			throw new IOException("Invalid CRC for entry " + entry.getName() + " in " + zip.getName());
+		}
+	}
+
+	/**
+	 * Get the file of an entry, making sure it is inside the destination folder.
+	 */
+	private static File getTarget(File destination, ZipEntry entry) throws IOException {
+		File target = new File(destination, entry.getName()).getCanonicalFile();
+		if (!target.getPath().startsWith(destination.getPath() + File.separator) && !target.equals(destination)) {
+			throw new IOException("Entry " + entry.getName() + " is outside of " + destination);
+		}
+		return target;
+	}
+
+	/**
+	 * Maximum number of entries extracted at the same time.
+	 * Default is 4.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Size in bytes of the buffer of each thread.
+	 * Default is 1MB.
+	 *
+	 * @param bufferSize
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+}
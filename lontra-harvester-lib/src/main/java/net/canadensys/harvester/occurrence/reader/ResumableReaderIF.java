@@ -0,0 +1,38 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+
+/**
+ * Reader that can report its position as a checkpoint.
+ * A reader implementing this interface resumes from the checkpoint provided in the shared parameters
+ * (DWCA_CHECKPOINT) when it is opened.
+ *
+ * @author canadensys
+ *
+ */
+public interface ResumableReaderIF {
+
+	/**
+	 * Get the position following the last item returned by read().
+	 * The step is responsible to set the values it knows (auto_id, number of records).
+	 *
+	 * @return new checkpoint instance
+	 */
+	DwcaCheckpoint getCheckpoint();
+
+	/**
+	 * Same as getCheckpoint but set the values of an existing instance, allows to reuse checkpoint instances.
+	 *
+	 * @param checkpoint
+	 */
+	void fillCheckpoint(DwcaCheckpoint checkpoint);
+
+	/**
+	 * Is the position of this reader a prefix of the data file?
+	 * When false (e.g. unordered parallel read), no checkpoint should be saved since resuming from it would skip rows
+	 * that were never read.
+	 *
+	 * @return
+	 */
+	boolean isCheckpointSupported();
+}
@@ -0,0 +1,163 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+
+/**
+ * Binding plan from the rows of a data file to the property names/values arrays given to an ArrayItemMapperIF.
+ * The plan is compiled once from the headers and the default values of an archive component: each property is either a
+ * cell of the row (by index) or a constant default value. As with the previous Map based binding, a default value
+ * replaces a column with the same name and the last column wins if a name is used twice.
+ * The plan can be limited to a projection (the names used by the mapper), other columns are not bound.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class RowBinder {
+
+	private static final int DEFAULT_VALUE = -1;
+
+	private final String[] names;
+	private final int[] cellIndexes;
+	private final Object[] constants;
+
+	private RowBinder(String[] names, int[] cellIndexes, Object[] constants) {
+		this.names = names;
+		this.cellIndexes = cellIndexes;
+		this.constants = constants;
+	}
+
+	/**
+	 * Compile the binding plan.
+	 *
+	 * @param headers
+	 *            header of each column of the data file
+	 * @param defaultValues
+	 *            default values or null
+	 * @return
+	 */
+	public static RowBinder compile(String[] headers, Map<String, String> defaultValues) {
+		return compile(headers, defaultValues, null);
+	}
+
+	/**
+	 * Compile the binding plan of the projected names only.
+	 *
+	 * @param headers
+	 *            header of each column of the data file
+	 * @param defaultValues
+	 *            default values or null
+	 * @param projection
+	 *            names to bind or null to bind all the names
+	 * @return
+	 */
+	public static RowBinder compile(String[] headers, Map<String, String> defaultValues, Set<String> projection) {
+		// name -> column index or DEFAULT_VALUE, keeps the order of the headers
+		Map<String, Integer> plan = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < headers.length; i++) {
+			plan.put(headers[i], i);
+		}
+		if (defaultValues != null) {
+			for (String defaultValueCol : defaultValues.keySet()) {
+				plan.put(defaultValueCol, DEFAULT_VALUE);
+			}
+		}
+		if (projection != null) {
+			plan.keySet().retainAll(projection);
+		}
+
+		String[] names = new String[plan.size()];
+		int[] cellIndexes = new int[plan.size()];
+		Object[] constants = new Object[plan.size()];
+		int idx = 0;
+		for (Entry<String, Integer> entry : plan.entrySet()) {
+			names[idx] = entry.getKey();
+			cellIndexes[idx] = entry.getValue();
+			if (entry.getValue() == DEFAULT_VALUE) {
+				constants[idx] = defaultValues.get(entry.getKey());
+			}
+			idx++;
+		}
+		return new RowBinder(names, cellIndexes, constants);
+	}
+
+	/**
+	 * Property names, the same instance is returned for each call and must not be modified.
+	 *
+	 * @return
+	 */
+	public String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * Columns of the data file used by this plan.
+	 *
+	 * @param numberOfColumns
+	 *            number of columns of the data file
+	 * @return array where the columns (by index) used are set to true
+	 */
+	public boolean[] getBoundColumns(int numberOfColumns) {
+		boolean[] boundColumns = new boolean[numberOfColumns];
+		for (int cellIndex : cellIndexes) {
+			if (cellIndex != DEFAULT_VALUE && cellIndex < numberOfColumns) {
+				boundColumns[cellIndex] = true;
+			}
+		}
+		return boundColumns;
+	}
+
+	/**
+	 * @return a new array that can hold the values of a row
+	 */
+	public Object[] newValues() {
+		return new Object[names.length];
+	}
+
+	/**
+	 * Bind the cells of a row to the values array. Cells are not decoded, they are bound as CharSequence.
+	 *
+	 * @param row
+	 * @param values
+	 *            array of length getNames().length
+	 */
+	public void bind(DwcaRowIF row, Object[] values) {
+		for (int i = 0; i < cellIndexes.length; i++) {
+			values[i] = (cellIndexes[i] == DEFAULT_VALUE) ? constants[i] : row.get(cellIndexes[i]);
+		}
+	}
+
+	/**
+	 * Bind the cells of a row to the values array as String.
+	 *
+	 * @param row
+	 * @param values
+	 *            array of length getNames().length
+	 */
+	public void bindStrings(DwcaRowIF row, Object[] values) {
+		for (int i = 0; i < cellIndexes.length; i++) {
+			values[i] = (cellIndexes[i] == DEFAULT_VALUE) ? constants[i] : row.getString(cellIndexes[i]);
+		}
+	}
+
+	/**
+	 * Build the properties Map of bound values, for the mappers that only implement the Map version of mapElement.
+	 *
+	 * @param values
+	 *            array of length getNames().length
+	 * @return new Map of the names and values
+	 */
+	public Map<String, Object> toProperties(Object[] values) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for (int i = 0; i < names.length; i++) {
+			properties.put(names[i], values[i]);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,349 @@
+package net.canadensys.harvester.occurrence.reader.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * External merge sort of rows (String[]) on a key column.
+ * At most maxRowsInMemory rows are kept in memory: when this limit is reached, the rows are sorted and spilled to a
+ * temporary file (a run). The runs are then merged with a k-way merge. If all the rows fit in memory, nothing is
+ * written to disk.
+ * The sort is stable: rows with the same key are returned in the order they were provided.
+ * Keys are compared with String.compareTo, null keys are sorted first.
+ * This class is immutable, the iterators it returns are not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class ExternalRowSorter {
+
+	private static final Logger LOGGER = Logger.getLogger(ExternalRowSorter.class);
+
+	public static final int DEFAULT_MAX_ROWS_IN_MEMORY = 100000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int NULL_CELL = -1;
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+	private final int keyIndex;
+	private final int maxRowsInMemory;
+	private final File tempFolder;
+	private final Comparator<String[]> keyComparator;
+
+	/**
+	 *
+	 * @param keyIndex
+	 *            index of the column to sort on
+	 * @param maxRowsInMemory
+	 *            maximum number of rows kept in memory before spilling to disk
+	 * @param tempFolder
+	 *            folder where the runs are written, null to use the default temporary folder
+	 */
+	public ExternalRowSorter(int keyIndex, int maxRowsInMemory, File tempFolder) {
+		if (maxRowsInMemory < 1) {
+			throw new IllegalArgumentException("maxRowsInMemory must be greater than 0");
+		}
+		this.keyIndex = keyIndex;
+		this.maxRowsInMemory = maxRowsInMemory;
+		this.tempFolder = tempFolder;
+		this.keyComparator = new KeyComparator(keyIndex);
+	}
+
+	/**
+	 * Consume all the rows and return them sorted on the key column.
+	 * The returned iterator must be closed to delete the temporary files.
+	 *
+	 * @param rows
+	 *            rows to sort, they are not copied so they must not be modified afterward
+	 * @return
+	 * @throws IOException
+	 */
+	public ClosableIterator<String[]> sort(Iterator<String[]> rows) throws IOException {
+		List<File> runs = new ArrayList<File>();
+		List<String[]> buffer = new ArrayList<String[]>();
+		try {
+			while (rows.hasNext()) {
+				buffer.add(rows.next());
+				if (buffer.size() == maxRowsInMemory) {
+					runs.add(spill(buffer));
+					buffer.clear();
+				}
+			}
+			Collections.sort(buffer, keyComparator);
+			if (runs.isEmpty()) {
+				return new ListIterator(buffer);
+			}
+			// the last run is not written, it is merged from memory
+			LOGGER.info("Merging " + (runs.size() + 1) + " sorted runs");
+			return new MergeIterator(runs, buffer);
+		}
+		catch (IOException e) {
+			deleteRuns(runs);
+			throw e;
+		}
+	}
+
+	/**
+	 * Sort the rows and write them to a new temporary file.
+	 *
+	 * @param buffer
+	 * @return
+	 * @throws IOException
+	 */
+	private File spill(List<String[]> buffer) throws IOException {
+		Collections.sort(buffer, keyComparator);
+		File run = File.createTempFile("sort-run", ".tmp", tempFolder);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+		try {
+			for (String[] row : buffer) {
+				writeRow(out, row);
+			}
+		}
+		finally {
+			out.close();
+		}
+		return run;
+	}
+
+	private static void writeRow(DataOutputStream out, String[] row) throws IOException {
+		out.writeInt(row.length);
+		for (String cell : row) {
+			if (cell == null) {
+				out.writeInt(NULL_CELL);
+			}
+			else {
+				byte[] bytes = cell.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Read the next row of a run.
+	 *
+	 * @param in
+	 * @return the row or null if the end of the run is reached
+	 * @throws IOException
+	 */
+	private static String[] readRow(DataInputStream in) throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		}
+		catch (EOFException e) {
+			return null;
+		}
+		String[] row = new String[length];
+		for (int i = 0; i < length; i++) {
+			int size = in.readInt();
+			if (size != NULL_CELL) {
+				byte[] bytes = new byte[size];
+				in.readFully(bytes);
+				row[i] = new String(bytes, UTF8);
+			}
+		}
+		return row;
+	}
+
+	private static void deleteRuns(List<File> runs) {
+		for (File run : runs) {
+			if (run.exists() && !run.delete()) {
+				LOGGER.warn("Can't delete temporary file " + run);
+			}
+		}
+	}
+
+	private static class KeyComparator implements Comparator<String[]> {
+		private final int keyIndex;
+
+		KeyComparator(int keyIndex) {
+			this.keyIndex = keyIndex;
+		}
+
+		@Override
+		public int compare(String[] row1, String[] row2) {
+			return compareKeys(row1[keyIndex], row2[keyIndex]);
+		}
+	}
+
+	/**
+	 * Compare 2 keys, null first.
+	 *
+	 * @param key1
+	 * @param key2
+	 * @return
+	 */
+	public static int compareKeys(String key1, String key2) {
+		if (key1 == null) {
+			return key2 == null ? 0 : -1;
+		}
+		if (key2 == null) {
+			return 1;
+		}
+		return key1.compareTo(key2);
+	}
+
+	/**
+	 * Iterator on rows sorted in memory.
+	 */
+	private static class ListIterator implements ClosableIterator<String[]> {
+		private final Iterator<String[]> it;
+
+		ListIterator(List<String[]> rows) {
+			this.it = rows.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public String[] next() {
+			return it.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Head of a sorted run. The run index is used to keep the merge stable.
+	 */
+	private static class RunCursor {
+		private final int runIndex;
+		private final DataInputStream in;
+		private final Iterator<String[]> memoryIt;
+		private String[] current;
+
+		RunCursor(int runIndex, DataInputStream in, Iterator<String[]> memoryIt) {
+			this.runIndex = runIndex;
+			this.in = in;
+			this.memoryIt = memoryIt;
+		}
+
+		/**
+		 * @return true if a row is available
+		 * @throws IOException
+		 */
+		boolean advance() throws IOException {
+			if (in != null) {
+				current = readRow(in);
+			}
+			else {
+				current = memoryIt.hasNext() ? memoryIt.next() : null;
+			}
+			return current != null;
+		}
+
+		void close() {
+			if (in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException e) {
+					LOGGER.warn("Can't close sorted run", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * K-way merge of the sorted runs.
+	 */
+	private class MergeIterator implements ClosableIterator<String[]> {
+		private final List<File> runs;
+		private final List<RunCursor> cursors = new ArrayList<RunCursor>();
+		private final PriorityQueue<RunCursor> queue;
+
+		MergeIterator(List<File> runs, List<String[]> memoryRun) throws IOException {
+			this.runs = runs;
+			this.queue = new PriorityQueue<RunCursor>(runs.size() + 1, new Comparator<RunCursor>() {
+				@Override
+				public int compare(RunCursor c1, RunCursor c2) {
+					int result = keyComparator.compare(c1.current, c2.current);
+					return result != 0 ? result : (c1.runIndex < c2.runIndex ? -1 : (c1.runIndex == c2.runIndex ? 0 : 1));
+				}
+			});
+			try {
+				for (int i = 0; i < runs.size(); i++) {
+					cursors.add(new RunCursor(i, new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)),
+							IO_BUFFER_SIZE)), null));
+				}
+				// rows kept in memory were read last
+				cursors.add(new RunCursor(runs.size(), null, memoryRun.iterator()));
+				for (RunCursor cursor : cursors) {
+					if (cursor.advance()) {
+						queue.add(cursor);
+					}
+				}
+			}
+			catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !queue.isEmpty();
+		}
+
+		@Override
+		public String[] next() {
+			RunCursor cursor = queue.poll();
+			if (cursor == null) {
+				throw new NoSuchElementException();
+			}
+			String[] row = cursor.current;
+			try {
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Can't read sorted run", e);
+			}
+			return row;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			for (RunCursor cursor : cursors) {
+				cursor.close();
+			}
+			queue.clear();
+			deleteRuns(runs);
+		}
+	}
+}
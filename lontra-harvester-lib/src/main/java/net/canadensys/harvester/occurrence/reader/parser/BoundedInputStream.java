@@ -0,0 +1,71 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream returning at most a given number of bytes of the wrapped stream, used to read a byte range of a data
+ * file. Closing this stream closes the wrapped stream.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+	private long remaining;
+
+	/**
+	 *
+	 * @param in
+	 *            stream positioned at the beginning of the range
+	 * @param length
+	 *            number of bytes of the range
+	 */
+	public BoundedInputStream(InputStream in, long length) {
+		super(in);
+		this.remaining = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int b = in.read();
+		if (b != -1) {
+			remaining--;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int read = in.read(b, off, (int) Math.min(len, remaining));
+		if (read > 0) {
+			remaining -= read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(Math.min(n, remaining));
+		remaining -= skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(in.available(), remaining);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
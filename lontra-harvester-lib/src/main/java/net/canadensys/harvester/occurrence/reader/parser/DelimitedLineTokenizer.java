@@ -0,0 +1,153 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Split a single line of a Dwc-A data file into cells.
+ * The tokenizer works on a delimiter (usually a single character) and an optional quote character.
+ * A quoted cell can contain the delimiter and a doubled quote is read as a single quote.
+ * Rows shorter than the expected number of columns are padded with empty Strings.
+ * An optional projection limits the cells that are materialized: the other cells are still delimited but returned as
+ * empty Strings, without creating a new String.
+ * This class is immutable and thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DelimitedLineTokenizer {
+
+	private static final String EMPTY = "";
+
+	private final String delimiter;
+	private final int delimiterLength;
+	private final boolean quoted;
+	private final char quote;
+	private final int expectedColumns;
+	// null when all the cells are materialized
+	private final boolean[] projectedColumns;
+
+	/**
+	 *
+	 * @param delimiter
+	 * @param quote
+	 *            quote character or null if the cells are not enclosed
+	 * @param expectedColumns
+	 *            minimum number of cells returned for each line
+	 */
+	public DelimitedLineTokenizer(char delimiter, Character quote, int expectedColumns) {
+		this(String.valueOf(delimiter), quote, expectedColumns);
+	}
+
+	/**
+	 *
+	 * @param delimiter
+	 *            delimiter of one or more characters
+	 * @param quote
+	 *            quote character or null if the cells are not enclosed
+	 * @param expectedColumns
+	 *            minimum number of cells returned for each line
+	 */
+	public DelimitedLineTokenizer(String delimiter, Character quote, int expectedColumns) {
+		this(delimiter, quote, expectedColumns, null);
+	}
+
+	/**
+	 *
+	 * @param delimiter
+	 *            delimiter of one or more characters
+	 * @param quote
+	 *            quote character or null if the cells are not enclosed
+	 * @param expectedColumns
+	 *            minimum number of cells returned for each line
+	 * @param projectedColumns
+	 *            columns to materialize (by index) or null for all the columns. Columns outside of the array are not
+	 *            materialized.
+	 */
+	public DelimitedLineTokenizer(String delimiter, Character quote, int expectedColumns, boolean[] projectedColumns) {
+		this.projectedColumns = (projectedColumns == null) ? null : projectedColumns.clone();
+		this.delimiter = delimiter;
+		this.delimiterLength = delimiter.length();
+		this.quoted = (quote != null && delimiter.indexOf(quote.charValue()) < 0);
+		this.quote = quoted ? quote.charValue() : 0;
+		this.expectedColumns = expectedColumns;
+	}
+
+	/**
+	 * Tokenize a line that does not include the line terminator.
+	 *
+	 * @param line
+	 * @return cells of the line, never null
+	 */
+	public String[] tokenize(String line) {
+		List<String> cells = new ArrayList<String>(expectedColumns);
+		int length = line.length();
+		int pos = 0;
+		boolean projected;
+		while (pos <= length) {
+			projected = isProjected(cells.size());
+			if (quoted && pos < length && line.charAt(pos) == quote) {
+				StringBuilder sb = projected ? new StringBuilder() : null;
+				pos++;
+				while (pos < length) {
+					char c = line.charAt(pos);
+					if (c == quote) {
+						// doubled quote is an escaped quote
+						if (pos + 1 < length && line.charAt(pos + 1) == quote) {
+							if (projected) {
+								sb.append(quote);
+							}
+							pos += 2;
+							continue;
+						}
+						pos++;
+						break;
+					}
+					if (projected) {
+						sb.append(c);
+					}
+					pos++;
+				}
+				// ignore anything between the closing quote and the next delimiter
+				int next = line.indexOf(delimiter, pos);
+				cells.add(projected ? sb.toString() : EMPTY);
+				pos = (next < 0) ? length + 1 : next + delimiterLength;
+			}
+			else {
+				int next = line.indexOf(delimiter, pos);
+				if (next < 0) {
+					cells.add((pos == length || !projected) ? EMPTY : line.substring(pos));
+					pos = length + 1;
+				}
+				else {
+					cells.add((next == pos || !projected) ? EMPTY : line.substring(pos, next));
+					pos = next + delimiterLength;
+				}
+			}
+		}
+
+		String[] row = cells.toArray(new String[cells.size()]);
+		if (row.length < expectedColumns) {
+			int previousLength = row.length;
+			row = Arrays.copyOf(row, expectedColumns);
+			Arrays.fill(row, previousLength, expectedColumns, EMPTY);
+		}
+		return row;
+	}
+
+	private boolean isProjected(int column) {
+		return projectedColumns == null || (column < projectedColumns.length && projectedColumns[column]);
+	}
+
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * @return quote character or null if the cells are not enclosed
+	 */
+	public Character getQuote() {
+		return quoted ? quote : null;
+	}
+}
@@ -0,0 +1,45 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+/**
+ * A row of a Dwc-A data file.
+ * Cells are exposed as CharSequence so implementations can decode them only when needed.
+ * A row (and its cells) returned by an iterator may be reused by the iterator and should be considered valid only
+ * until the next call to next().
+ *
+ * @author canadensys
+ *
+ */
+public interface DwcaRowIF {
+
+	/**
+	 * Number of cells found in the row.
+	 *
+	 * @return
+	 */
+	int size();
+
+	/**
+	 * Get the cell at the provided index.
+	 * An index greater or equal to size() returns an empty cell.
+	 *
+	 * @param index
+	 * @return cell content, never null
+	 */
+	CharSequence get(int index);
+
+	/**
+	 * Get the cell at the provided index as a String.
+	 * An index greater or equal to size() returns an empty String.
+	 *
+	 * @param index
+	 * @return cell content, never null
+	 */
+	String getString(int index);
+
+	/**
+	 * Check if all the cells of the row are blank.
+	 *
+	 * @return
+	 */
+	boolean isBlank();
+}
@@ -0,0 +1,328 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Sanitize the raw content of a Dwc-A data file before it is tokenized, in a single pass over the bytes:
+ * <ul>
+ * <li>NUL characters are removed</li>
+ * <li>other control characters (except tab, line feed and the delimiter or quote characters) are replaced by a space</li>
+ * <li>invalid UTF-8 sequences are replaced by U+FFFD (UTF-8 data files only)</li>
+ * <li>CRLF and CR line endings are replaced by LF</li>
+ * </ul>
+ * Runs of bytes that don't need to be changed are copied in bulk.
+ * What was changed is counted so the problems of a data file can be reported once instead of once per value.
+ * Bytes are only sanitized for encodings supported by {@link #isSupported(Charset)}, in those encodings a byte lower than
+ * 0x20 is always a control character. Rows of other encodings can be sanitized after decoding with
+ * {@link #sanitize(String[])}.
+ * The counters are thread safe, the same instance can sanitize byte ranges of a data file concurrently.
+ *
+ * @author canadensys
+ *
+ */
+public class InputSanitizer {
+
+	private static final byte NUL = 0;
+	private static final byte TAB = '\t';
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final byte SPACE = ' ';
+	private static final byte[] REPLACEMENT = { (byte) 0xEF, (byte) 0xBF, (byte) 0xBD };
+	// longest UTF-8 sequence, the output buffer must have this room to process a byte
+	private static final int MAX_SEQUENCE_LENGTH = 4;
+	private static final int INCOMPLETE_SEQUENCE = 0;
+
+	private final boolean utf8;
+	// bytes copied without any check, by unsigned value
+	private final boolean[] unchanged = new boolean[256];
+
+	private long removedNulCount;
+	private long replacedControlCount;
+	private long replacedSequenceCount;
+	private long normalizedLineEndingCount;
+
+	/**
+	 *
+	 * @param charset
+	 *            encoding of the data file or null if unknown (only {@link #sanitize(String[])} can then be used)
+	 * @param delimiter
+	 *            delimiter of the data file, control characters used as delimiter are kept
+	 * @param quote
+	 *            quote character of the data file or null
+	 */
+	public InputSanitizer(Charset charset, String delimiter, Character quote) {
+		this.utf8 = charset != null && "UTF-8".equals(charset.name());
+		for (int i = SPACE; i < 256; i++) {
+			// non-ASCII bytes are only checked in UTF-8
+			unchanged[i] = (i < 0x80) || !utf8;
+		}
+		unchanged[TAB] = true;
+		unchanged[LF] = true;
+		if (delimiter != null) {
+			for (int i = 0; i < delimiter.length(); i++) {
+				if (delimiter.charAt(i) < SPACE && delimiter.charAt(i) != NUL) {
+					unchanged[delimiter.charAt(i)] = true;
+				}
+			}
+		}
+		if (quote != null && quote.charValue() < SPACE && quote.charValue() != NUL) {
+			unchanged[quote.charValue()] = true;
+		}
+	}
+
+	/**
+	 * Check if the bytes of a data file using this encoding can be sanitized.
+	 *
+	 * @param charset
+	 * @return
+	 */
+	public static boolean isSupported(Charset charset) {
+		return ParallelDwcaFileIterator.isSupported(charset);
+	}
+
+	/**
+	 * Get the size of an output buffer large enough to sanitize a complete input in a single call.
+	 *
+	 * @param inputLength
+	 * @return
+	 */
+	public static int getMaxOutputLength(int inputLength) {
+		return inputLength * REPLACEMENT.length + MAX_SEQUENCE_LENGTH;
+	}
+
+	/**
+	 * Sanitize the bytes of the input buffer into the output buffer.
+	 * Like a CharsetDecoder, the method returns when the input is consumed or when the output buffer is (almost) full.
+	 * If endOfInput is false, an incomplete UTF-8 sequence or a CR at the end of the input is left in the input buffer
+	 * until more bytes are available.
+	 * Both buffers must be backed by an array.
+	 *
+	 * @param in
+	 * @param out
+	 * @param endOfInput
+	 *            is the end of the input buffer the end of the data
+	 */
+	public void sanitize(ByteBuffer in, ByteBuffer out, boolean endOfInput) {
+		byte[] src = in.array();
+		int sp = in.arrayOffset() + in.position();
+		int sl = in.arrayOffset() + in.limit();
+		byte[] dst = out.array();
+		int dp = out.arrayOffset() + out.position();
+		int dl = out.arrayOffset() + out.limit();
+
+		long nuls = 0;
+		long controls = 0;
+		long sequences = 0;
+		long lineEndings = 0;
+		int runEnd, runLimit, length;
+		byte b;
+		while (sp < sl) {
+			runEnd = sp;
+			runLimit = Math.min(sl, sp + (dl - dp));
+			while (runEnd < runLimit && unchanged[src[runEnd] & 0xFF]) {
+				runEnd++;
+			}
+			if (runEnd > sp) {
+				System.arraycopy(src, sp, dst, dp, runEnd - sp);
+				dp += runEnd - sp;
+				sp = runEnd;
+			}
+			if (sp == sl || dl - dp < MAX_SEQUENCE_LENGTH) {
+				break;
+			}
+
+			b = src[sp];
+			if (b < 0) {
+				length = checkSequence(src, sp, sl);
+				if (length == INCOMPLETE_SEQUENCE) {
+					if (!endOfInput) {
+						break;
+					}
+					length = sp - sl;
+				}
+				if (length > 0) {
+					System.arraycopy(src, sp, dst, dp, length);
+					dp += length;
+					sp += length;
+				}
+				else {
+					System.arraycopy(REPLACEMENT, 0, dst, dp, REPLACEMENT.length);
+					dp += REPLACEMENT.length;
+					sp -= length;
+					sequences++;
+				}
+			}
+			else if (b == CR) {
+				if (sp + 1 == sl && !endOfInput) {
+					break;
+				}
+				dst[dp++] = LF;
+				sp += (sp + 1 < sl && src[sp + 1] == LF) ? 2 : 1;
+				lineEndings++;
+			}
+			else if (b == NUL) {
+				sp++;
+				nuls++;
+			}
+			else {
+				dst[dp++] = SPACE;
+				sp++;
+				controls++;
+			}
+		}
+		in.position(sp - in.arrayOffset());
+		out.position(dp - out.arrayOffset());
+		if (nuls > 0 || controls > 0 || sequences > 0 || lineEndings > 0) {
+			addCounts(nuls, controls, sequences, lineEndings);
+		}
+	}
+
+	/**
+	 * Sanitize the cells of a decoded row, in place.
+	 * NUL characters are removed and the other control characters are replaced like on bytes. Invalid sequences and line
+	 * endings are left to the decoder and the tokenizer.
+	 *
+	 * @param cells
+	 * @return the same array
+	 */
+	public String[] sanitize(String[] cells) {
+		long nuls = 0;
+		long controls = 0;
+		String cell;
+		char c;
+		StringBuilder sb;
+		for (int i = 0; i < cells.length; i++) {
+			cell = cells[i];
+			if (cell == null) {
+				continue;
+			}
+			sb = null;
+			for (int j = 0; j < cell.length(); j++) {
+				c = cell.charAt(j);
+				if (c >= SPACE || unchanged[c] || c == CR) {
+					if (sb != null) {
+						sb.append(c);
+					}
+					continue;
+				}
+				if (sb == null) {
+					sb = new StringBuilder(cell.length()).append(cell, 0, j);
+				}
+				if (c == NUL) {
+					nuls++;
+				}
+				else {
+					sb.append((char) SPACE);
+					controls++;
+				}
+			}
+			if (sb != null) {
+				cells[i] = sb.toString();
+			}
+		}
+		if (nuls > 0 || controls > 0) {
+			addCounts(nuls, controls, 0, 0);
+		}
+		return cells;
+	}
+
+	/**
+	 * Check the UTF-8 sequence starting with a non-ASCII byte.
+	 *
+	 * @param src
+	 * @param sp
+	 *            position of the first byte of the sequence
+	 * @param sl
+	 *            limit of the input
+	 * @return length of a valid sequence, INCOMPLETE_SEQUENCE if the input ends inside a valid prefix or minus the number
+	 *         of bytes to replace for an invalid sequence
+	 */
+	private static int checkSequence(byte[] src, int sp, int sl) {
+		int lead = src[sp] & 0xFF;
+		int length;
+		// accepted range of the second byte
+		int min = 0x80;
+		int max = 0xBF;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			length = 2;
+		}
+		else if (lead >= 0xE0 && lead <= 0xEF) {
+			length = 3;
+			if (lead == 0xE0) {
+				// overlong
+				min = 0xA0;
+			}
+			else if (lead == 0xED) {
+				// surrogates
+				max = 0x9F;
+			}
+		}
+		else if (lead >= 0xF0 && lead <= 0xF4) {
+			length = 4;
+			if (lead == 0xF0) {
+				min = 0x90;
+			}
+			else if (lead == 0xF4) {
+				// above U+10FFFF
+				max = 0x8F;
+			}
+		}
+		else {
+			return -1;
+		}
+		int c;
+		for (int i = 1; i < length; i++) {
+			if (sp + i >= sl) {
+				return INCOMPLETE_SEQUENCE;
+			}
+			c = src[sp + i] & 0xFF;
+			if (c < min || c > max) {
+				return -i;
+			}
+			min = 0x80;
+			max = 0xBF;
+		}
+		return length;
+	}
+
+	private synchronized void addCounts(long nuls, long controls, long sequences, long lineEndings) {
+		removedNulCount += nuls;
+		replacedControlCount += controls;
+		replacedSequenceCount += sequences;
+		normalizedLineEndingCount += lineEndings;
+	}
+
+	/**
+	 * @return true if at least one NUL, control character or invalid sequence was found
+	 */
+	public synchronized boolean hasInvalidCharacters() {
+		return removedNulCount > 0 || replacedControlCount > 0 || replacedSequenceCount > 0;
+	}
+
+	public synchronized long getRemovedNulCount() {
+		return removedNulCount;
+	}
+
+	public synchronized long getReplacedControlCount() {
+		return replacedControlCount;
+	}
+
+	public synchronized long getReplacedSequenceCount() {
+		return replacedSequenceCount;
+	}
+
+	/**
+	 * @return number of CRLF or CR line endings replaced by LF
+	 */
+	public synchronized long getNormalizedLineEndingCount() {
+		return normalizedLineEndingCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return removedNulCount + " NUL characters removed, " + replacedControlCount + " control characters replaced, "
+				+ replacedSequenceCount + " invalid UTF-8 sequences replaced, " + normalizedLineEndingCount
+				+ " line endings normalized";
+	}
+}
@@ -0,0 +1,465 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Iterator over the rows of a Dwc-A data file that tokenizes the rows directly on a memory-mapped buffer.
+ * The file is mapped in windows (aligned on line boundaries) so files larger than 2GB can be read.
+ * Cells are exposed as CharSequence views on the buffer and are only decoded (and sanitized) when
+ * toString() (or any CharSequence method) is called. Reading a row allocates nothing except the Strings of the cells
+ * that are actually used.
+ * The returned DwcaRowIF instance and its cells are reused, they are only valid until the next call to next().
+ * Only encodings where the byte '\n' always represents a line feed are supported, see
+ * {@link ParallelDwcaFileIterator#isSupported(Charset)}.
+ * The iterator can be repositioned on the offset of a row (see {@link SeekableRowIteratorIF}).
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class MappedDwcaFileIterator implements SeekableRowIteratorIF {
+
+	private static final Logger LOGGER = Logger.getLogger(MappedDwcaFileIterator.class);
+
+	public static final int DEFAULT_WINDOW_SIZE = 512 * 1024 * 1024;
+
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final byte SPACE = ' ';
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final long fileLength;
+	private final Charset charset;
+	private final byte delimiter;
+	private final boolean quoted;
+	private final byte quote;
+	private final int windowSize;
+	private final InputSanitizer sanitizer;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	// number of bytes of complete lines in the current window
+	private int windowLimit;
+	private int position;
+
+	private final MappedRow row;
+	private byte[] scratch = new byte[256];
+	private ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+	private ByteBuffer sanitizedBuffer = ByteBuffer.allocate(InputSanitizer.getMaxOutputLength(scratch.length));
+
+	/**
+	 *
+	 * @param file
+	 *            data file to read
+	 * @param charset
+	 *            encoding of the file
+	 * @param delimiter
+	 *            ASCII delimiter
+	 * @param quote
+	 *            ASCII quote character or null if the cells are not enclosed
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @param expectedColumns
+	 *            expected number of cells per row
+	 * @param windowSize
+	 *            maximum number of bytes mapped at once, a line can not be longer than this value
+	 * @throws IOException
+	 */
+	public MappedDwcaFileIterator(File file, Charset charset, char delimiter, Character quote, int ignoreHeaderLines,
+			int expectedColumns, int windowSize) throws IOException {
+		this(file, charset, delimiter, quote, ignoreHeaderLines, expectedColumns, windowSize, new InputSanitizer(charset, String
+				.valueOf(delimiter), quote));
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            data file to read
+	 * @param charset
+	 *            encoding of the file
+	 * @param delimiter
+	 *            ASCII delimiter
+	 * @param quote
+	 *            ASCII quote character or null if the cells are not enclosed
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @param expectedColumns
+	 *            expected number of cells per row
+	 * @param windowSize
+	 *            maximum number of bytes mapped at once, a line can not be longer than this value
+	 * @param sanitizer
+	 *            sanitizer counting the changes made to the decoded cells
+	 * @throws IOException
+	 */
+	public MappedDwcaFileIterator(File file, Charset charset, char delimiter, Character quote, int ignoreHeaderLines,
+			int expectedColumns, int windowSize, InputSanitizer sanitizer) throws IOException {
+		if (!ParallelDwcaFileIterator.isSupported(charset)) {
+			throw new IllegalArgumentException("Encoding " + charset + " can not be tokenized on bytes");
+		}
+		if (delimiter > Byte.MAX_VALUE || (quote != null && quote.charValue() > Byte.MAX_VALUE)) {
+			throw new IllegalArgumentException("Only ASCII delimiter and quote characters are supported");
+		}
+		this.charset = charset;
+		this.delimiter = (byte) delimiter;
+		this.quoted = (quote != null && quote.charValue() != delimiter);
+		this.quote = quoted ? (byte) quote.charValue() : 0;
+		this.windowSize = windowSize;
+		this.sanitizer = sanitizer;
+		this.row = new MappedRow(expectedColumns);
+
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		fileLength = channel.size();
+
+		mapWindow(0);
+		if (windowLimit >= UTF8_BOM.length && window.get(0) == UTF8_BOM[0] && window.get(1) == UTF8_BOM[1]
+				&& window.get(2) == UTF8_BOM[2]) {
+			position = UTF8_BOM.length;
+		}
+		for (int i = 0; i < ignoreHeaderLines && ensureData(); i++) {
+			while (position < windowLimit && window.get(position++) != LF) {
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		skipBlankLines();
+		return position < windowLimit;
+	}
+
+	@Override
+	public DwcaRowIF next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		row.reset(window);
+
+		int p = position;
+		int start, end;
+		boolean escaped;
+		byte b;
+		while (true) {
+			escaped = false;
+			if (quoted && p < windowLimit && window.get(p) == quote) {
+				start = ++p;
+				while (p < windowLimit && (b = window.get(p)) != LF) {
+					if (b == quote) {
+						// doubled quote is an escaped quote
+						if (p + 1 < windowLimit && window.get(p + 1) == quote) {
+							escaped = true;
+							p += 2;
+							continue;
+						}
+						break;
+					}
+					p++;
+				}
+				end = p;
+				// ignore anything between the closing quote and the next delimiter
+				while (p < windowLimit && (b = window.get(p)) != delimiter && b != LF) {
+					p++;
+				}
+			}
+			else {
+				start = p;
+				while (p < windowLimit && (b = window.get(p)) != delimiter && b != LF) {
+					p++;
+				}
+				end = p;
+				// CR of a CRLF line terminator
+				if (end > start && window.get(end - 1) == CR && (p == windowLimit || window.get(p) == LF)) {
+					end--;
+				}
+			}
+			row.addCell(start, end, escaped);
+
+			if (p < windowLimit && window.get(p) == delimiter) {
+				p++;
+			}
+			else {
+				if (p < windowLimit) {
+					// consume the line feed
+					p++;
+				}
+				break;
+			}
+		}
+		position = p;
+		return row;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getOffset() {
+		return windowStart + position;
+	}
+
+	@Override
+	public void seek(long offset) {
+		if (offset >= fileLength) {
+			// nothing left to read, ensureData will not map another window
+			windowStart = fileLength;
+			position = 0;
+			windowLimit = 0;
+			return;
+		}
+		try {
+			mapWindow(offset);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't map data file", e);
+		}
+	}
+
+	/**
+	 * Close the file. The mapped buffer is released by the garbage collector.
+	 */
+	@Override
+	public void close() {
+		window = null;
+		try {
+			raf.close();
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't close data file", e);
+		}
+	}
+
+	/**
+	 * Skip empty lines, like the gbif CSVReader, blank lines are not rows.
+	 */
+	private void skipBlankLines() {
+		while (ensureData()) {
+			byte b = window.get(position);
+			if (b == LF) {
+				position++;
+			}
+			else if (b == CR && (position + 1 == windowLimit || window.get(position + 1) == LF)) {
+				position++;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Make sure the current position points to data, map the next window if required.
+	 *
+	 * @return false if the end of the file is reached
+	 */
+	private boolean ensureData() {
+		if (position < windowLimit) {
+			return true;
+		}
+		long nextStart = windowStart + position;
+		if (nextStart >= fileLength) {
+			return false;
+		}
+		try {
+			mapWindow(nextStart);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't map data file", e);
+		}
+		return position < windowLimit;
+	}
+
+	/**
+	 * Map a window starting at the provided position. The window limit is set on the last line terminator of the
+	 * window unless the window reaches the end of the file.
+	 *
+	 * @param start
+	 * @throws IOException
+	 */
+	private void mapWindow(long start) throws IOException {
+		long size = Math.min(windowSize, fileLength - start);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		windowStart = start;
+		position = 0;
+		if (start + size < fileLength) {
+			int last = (int) size - 1;
+			while (last >= 0 && window.get(last) != LF) {
+				last--;
+			}
+			if (last < 0) {
+				throw new IllegalStateException("Line longer than " + windowSize + " bytes found at offset " + start);
+			}
+			windowLimit = last + 1;
+		}
+		else {
+			windowLimit = (int) size;
+		}
+	}
+
+	/**
+	 * Decode the bytes of a cell.
+	 * Doubled quotes are unescaped and the bytes are sanitized before decoding.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @param escaped
+	 * @return
+	 */
+	private String decode(MappedByteBuffer buffer, int start, int end, boolean escaped) {
+		int length = end - start;
+		if (length > scratch.length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+			scratchBuffer = ByteBuffer.wrap(scratch);
+			sanitizedBuffer = ByteBuffer.allocate(InputSanitizer.getMaxOutputLength(scratch.length));
+		}
+		int n = 0;
+		byte b;
+		for (int i = start; i < end; i++) {
+			b = buffer.get(i);
+			if (escaped && b == quote && i + 1 < end && buffer.get(i + 1) == quote) {
+				i++;
+			}
+			scratch[n++] = b;
+		}
+		scratchBuffer.clear();
+		scratchBuffer.limit(n);
+		sanitizedBuffer.clear();
+		sanitizer.sanitize(scratchBuffer, sanitizedBuffer, true);
+		return new String(sanitizedBuffer.array(), 0, sanitizedBuffer.position(), charset);
+	}
+
+	/**
+	 * Reusable row. Only keeps the boundaries of the cells.
+	 */
+	private class MappedRow implements DwcaRowIF {
+		private MappedByteBuffer buffer;
+		private MappedCell[] cells;
+		private int count;
+
+		MappedRow(int expectedColumns) {
+			cells = new MappedCell[Math.max(expectedColumns, 1)];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = new MappedCell(this);
+			}
+		}
+
+		void reset(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+			count = 0;
+		}
+
+		void addCell(int start, int end, boolean escaped) {
+			if (count == cells.length) {
+				int previousLength = cells.length;
+				cells = Arrays.copyOf(cells, previousLength * 2);
+				for (int i = previousLength; i < cells.length; i++) {
+					cells[i] = new MappedCell(this);
+				}
+			}
+			cells[count++].set(start, end, escaped);
+		}
+
+		@Override
+		public int size() {
+			return count;
+		}
+
+		@Override
+		public CharSequence get(int index) {
+			if (index >= count) {
+				return StringUtils.EMPTY;
+			}
+			return cells[index];
+		}
+
+		@Override
+		public String getString(int index) {
+			return get(index).toString();
+		}
+
+		@Override
+		public boolean isBlank() {
+			for (int i = 0; i < count; i++) {
+				if (!cells[i].isBlank()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reusable view on the bytes of a cell.
+	 */
+	private class MappedCell implements CharSequence {
+		private final MappedRow row;
+		private int start;
+		private int end;
+		private boolean escaped;
+		private String value;
+
+		MappedCell(MappedRow row) {
+			this.row = row;
+		}
+
+		void set(int start, int end, boolean escaped) {
+			this.start = start;
+			this.end = end;
+			this.escaped = escaped;
+			this.value = null;
+		}
+
+		boolean isBlank() {
+			byte b;
+			for (int i = start; i < end; i++) {
+				b = row.buffer.get(i);
+				// non ASCII bytes could be a multi-byte whitespace, decode to be sure
+				if (b < 0) {
+					return StringUtils.isBlank(toString());
+				}
+				if (b > SPACE) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int length() {
+			return toString().length();
+		}
+
+		@Override
+		public char charAt(int index) {
+			return toString().charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			if (value == null) {
+				value = (start == end) ? StringUtils.EMPTY : decode(row.buffer, start, end, escaped);
+			}
+			return value;
+		}
+	}
+}
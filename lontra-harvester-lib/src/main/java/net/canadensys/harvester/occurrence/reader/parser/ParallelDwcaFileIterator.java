@@ -0,0 +1,360 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Iterator over the rows of a Dwc-A data file that parses the file in parallel.
+ * The file is split in byte ranges aligned on line boundaries, each range is parsed on a ForkJoinPool and the rows are
+ * returned in file order (ordered mode) or in the order the ranges complete (unordered mode).
+ * Only encodings where the byte '\n' always represents a line feed are supported, see {@link #isSupported(Charset)}.
+ * Like the gbif CSVReader, a line feed inside a quoted cell is not supported.
+ * Each range is sanitized by an InputSanitizer before it is decoded.
+ * This class is mutable and not thread safe, only the parsing is done in parallel.
+ *
+ * @author canadensys
+ *
+ */
+public class ParallelDwcaFileIterator implements ClosableIterator<String[]> {
+
+	private static final Logger LOGGER = Logger.getLogger(ParallelDwcaFileIterator.class);
+
+	public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final byte LF = '\n';
+	private static final char CR = '\r';
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	private static final int SCAN_BUFFER_SIZE = 8192;
+	private static final int SANITIZED_BUFFER_MARGIN = 1024;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final long fileLength;
+	private final Charset charset;
+	private final DelimitedLineTokenizer tokenizer;
+	private final InputSanitizer sanitizer;
+	private final int chunkSize;
+	private final int maxChunksInFlight;
+	private final boolean ordered;
+
+	private final ForkJoinPool pool;
+	// only used in unordered mode, in ordered mode the completed ranges would pile up in the completion queue
+	private final BlockingQueue<Future<List<String[]>>> completionQueue;
+	private final CompletionService<List<String[]>> completionService;
+	private final LinkedList<Future<List<String[]>>> inFlight = new LinkedList<Future<List<String[]>>>();
+
+	private long nextChunkStart;
+	private Iterator<String[]> currentChunk = Collections.<String[]> emptyList().iterator();
+	private boolean closed = false;
+
+	/**
+	 *
+	 * @param file
+	 *            data file to read
+	 * @param charset
+	 *            encoding of the file, must be supported by {@link #isSupported(Charset)}
+	 * @param tokenizer
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @param parallelism
+	 *            number of threads used to parse the file
+	 * @param chunkSize
+	 *            approximate size (in bytes) of each range
+	 * @param ordered
+	 *            should the rows be returned in the same order as the file
+	 * @throws IOException
+	 */
+	public ParallelDwcaFileIterator(File file, Charset charset, DelimitedLineTokenizer tokenizer, int ignoreHeaderLines,
+			int parallelism, int chunkSize, boolean ordered) throws IOException {
+		this(file, charset, tokenizer, ignoreHeaderLines, parallelism, chunkSize, ordered, new InputSanitizer(charset, tokenizer
+				.getDelimiter(), tokenizer.getQuote()));
+	}
+
+	/**
+	 *
+	 * @param file
+	 *            data file to read
+	 * @param charset
+	 *            encoding of the file, must be supported by {@link #isSupported(Charset)}
+	 * @param tokenizer
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @param parallelism
+	 *            number of threads used to parse the file
+	 * @param chunkSize
+	 *            approximate size (in bytes) of each range
+	 * @param ordered
+	 *            should the rows be returned in the same order as the file
+	 * @param sanitizer
+	 *            sanitizer counting the changes made to this data file
+	 * @throws IOException
+	 */
+	public ParallelDwcaFileIterator(File file, Charset charset, DelimitedLineTokenizer tokenizer, int ignoreHeaderLines,
+			int parallelism, int chunkSize, boolean ordered, InputSanitizer sanitizer) throws IOException {
+		if (!isSupported(charset)) {
+			throw new IllegalArgumentException("Encoding " + charset + " can not be split on byte boundaries");
+		}
+		this.charset = charset;
+		this.tokenizer = tokenizer;
+		this.sanitizer = sanitizer;
+		this.chunkSize = Math.max(chunkSize, SCAN_BUFFER_SIZE);
+		this.ordered = ordered;
+		this.maxChunksInFlight = Math.max(parallelism, 1) * 2;
+
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		fileLength = channel.size();
+
+		nextChunkStart = skipHeader(ignoreHeaderLines);
+
+		pool = new ForkJoinPool(Math.max(parallelism, 1));
+		if (ordered) {
+			completionQueue = null;
+			completionService = null;
+		}
+		else {
+			completionQueue = new LinkedBlockingQueue<Future<List<String[]>>>();
+			completionService = new ExecutorCompletionService<List<String[]>>(pool, completionQueue);
+		}
+		fillPipeline();
+	}
+
+	/**
+	 * Check if a file using this encoding can be split on the line feed byte.
+	 *
+	 * @param charset
+	 * @return
+	 */
+	public static boolean isSupported(Charset charset) {
+		byte[] lf = "\n".getBytes(charset);
+		return charset.canEncode() && lf.length == 1 && lf[0] == LF && !charset.name().toUpperCase().startsWith("UTF-16")
+				&& !charset.name().toUpperCase().startsWith("UTF-32");
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentChunk.hasNext()) {
+			if (closed || (inFlight.isEmpty() && nextChunkStart >= fileLength)) {
+				return false;
+			}
+			currentChunk = takeNextChunk().iterator();
+			fillPipeline();
+		}
+		return true;
+	}
+
+	@Override
+	public String[] next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return currentChunk.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (Future<List<String[]>> future : inFlight) {
+			future.cancel(true);
+		}
+		inFlight.clear();
+		pool.shutdownNow();
+		try {
+			raf.close();
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't close data file", e);
+		}
+	}
+
+	/**
+	 * Number of ranges submitted and not yet returned, parsed or being parsed.
+	 *
+	 * @return
+	 */
+	int getChunksInFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * Get the maximum number of ranges parsed or being parsed at the same time.
+	 *
+	 * @return
+	 */
+	int getMaxChunksInFlight() {
+		return maxChunksInFlight;
+	}
+
+	/**
+	 * Get the next parsed range according to the ordered flag.
+	 *
+	 * @return
+	 */
+	private List<String[]> takeNextChunk() {
+		Future<List<String[]>> future;
+		try {
+			if (ordered) {
+				future = inFlight.removeFirst();
+			}
+			else {
+				future = completionService.take();
+				inFlight.remove(future);
+			}
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while reading data file", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Can't parse data file", e.getCause());
+		}
+	}
+
+	/**
+	 * Submit ranges until the maximum number of ranges in flight is reached.
+	 */
+	private void fillPipeline() {
+		while (!closed && inFlight.size() < maxChunksInFlight && nextChunkStart < fileLength) {
+			long start = nextChunkStart;
+			long end;
+			try {
+				end = findLineEnd(Math.min(start + chunkSize, fileLength));
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Can't split data file", e);
+			}
+			nextChunkStart = end;
+			ParseChunkTask task = new ParseChunkTask(start, end);
+			inFlight.add(ordered ? pool.submit(task) : completionService.submit(task));
+		}
+	}
+
+	/**
+	 * Find the position following the first line feed at or after the provided position.
+	 *
+	 * @param position
+	 * @return position of the beginning of the next line or the file length
+	 * @throws IOException
+	 */
+	private long findLineEnd(long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		long pos = position;
+		while (pos < fileLength) {
+			buffer.clear();
+			int read = channel.read(buffer, pos);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == LF) {
+					return pos + i + 1;
+				}
+			}
+			pos += read;
+		}
+		return fileLength;
+	}
+
+	/**
+	 * Skip the byte order mark (if any) and the header lines.
+	 *
+	 * @param ignoreHeaderLines
+	 * @return position of the first data line
+	 * @throws IOException
+	 */
+	private long skipHeader(int ignoreHeaderLines) throws IOException {
+		long position = 0;
+		ByteBuffer bom = ByteBuffer.allocate(UTF8_BOM.length);
+		channel.read(bom, 0);
+		if (bom.position() == UTF8_BOM.length && bom.get(0) == UTF8_BOM[0] && bom.get(1) == UTF8_BOM[1]
+				&& bom.get(2) == UTF8_BOM[2]) {
+			position = UTF8_BOM.length;
+		}
+		for (int i = 0; i < ignoreHeaderLines; i++) {
+			position = findLineEnd(position);
+		}
+		return position;
+	}
+
+	/**
+	 * Parse all the lines of a byte range.
+	 */
+	private class ParseChunkTask implements Callable<List<String[]>> {
+		private final long start;
+		private final long end;
+
+		ParseChunkTask(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public List<String[]> call() throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					break;
+				}
+			}
+			buffer.flip();
+			ByteBuffer sanitized = ByteBuffer.allocate(buffer.remaining() + SANITIZED_BUFFER_MARGIN);
+			sanitizer.sanitize(buffer, sanitized, true);
+			while (buffer.hasRemaining()) {
+				// replaced invalid sequences made the range longer
+				ByteBuffer larger = ByteBuffer.allocate(sanitized.position() + InputSanitizer.getMaxOutputLength(buffer.remaining()));
+				sanitized.flip();
+				larger.put(sanitized);
+				sanitized = larger;
+				sanitizer.sanitize(buffer, sanitized, true);
+			}
+			String content = new String(sanitized.array(), 0, sanitized.position(), charset);
+
+			List<String[]> rows = new ArrayList<String[]>();
+			int lineStart = 0;
+			int length = content.length();
+			while (lineStart < length) {
+				int lineEnd = content.indexOf(LF, lineStart);
+				if (lineEnd < 0) {
+					lineEnd = length;
+				}
+				int contentEnd = lineEnd;
+				if (contentEnd > lineStart && content.charAt(contentEnd - 1) == CR) {
+					contentEnd--;
+				}
+				// like the gbif CSVReader, blank lines are not rows
+				if (contentEnd > lineStart) {
+					rows.add(tokenizer.tokenize(content.substring(lineStart, contentEnd)));
+				}
+				lineStart = lineEnd + 1;
+			}
+			return rows;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream returning the content of another stream sanitized by an InputSanitizer.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class SanitizingInputStream extends InputStream {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream source;
+	private final InputSanitizer sanitizer;
+	// both buffers are kept in read mode
+	private final ByteBuffer raw;
+	private final ByteBuffer sanitized;
+	private boolean endOfSource = false;
+
+	/**
+	 *
+	 * @param source
+	 *            raw stream, closed by {@link #close()}
+	 * @param sanitizer
+	 */
+	public SanitizingInputStream(InputStream source, InputSanitizer sanitizer) {
+		this(source, sanitizer, DEFAULT_BUFFER_SIZE);
+	}
+
+	public SanitizingInputStream(InputStream source, InputSanitizer sanitizer, int bufferSize) {
+		this.source = source;
+		this.sanitizer = sanitizer;
+		raw = ByteBuffer.allocate(bufferSize);
+		raw.flip();
+		sanitized = ByteBuffer.allocate(InputSanitizer.getMaxOutputLength(bufferSize));
+		sanitized.flip();
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (!sanitized.hasRemaining()) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		return sanitized.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (!sanitized.hasRemaining()) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, sanitized.remaining());
+		sanitized.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return sanitized.remaining();
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+
+	/**
+	 * Read and sanitize the next bytes of the source. The bytes left by the sanitizer (e.g. an incomplete sequence) are
+	 * kept for the next call.
+	 *
+	 * @return false if the source is consumed and all the bytes were returned
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if (endOfSource && !raw.hasRemaining()) {
+			return false;
+		}
+		raw.compact();
+		if (!endOfSource) {
+			int read = source.read(raw.array(), raw.arrayOffset() + raw.position(), raw.remaining());
+			if (read < 0) {
+				endOfSource = true;
+			}
+			else {
+				raw.position(raw.position() + read);
+			}
+		}
+		raw.flip();
+		sanitized.clear();
+		sanitizer.sanitize(raw, sanitized, endOfSource);
+		sanitized.flip();
+		return true;
+	}
+}
@@ -0,0 +1,27 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Iterator over the rows of a Dwc-A data file that knows the byte offset of its rows and can be repositioned on it.
+ * Used to resume the reading of a data file without parsing the rows that were already read.
+ *
+ * @author canadensys
+ *
+ */
+public interface SeekableRowIteratorIF extends ClosableIterator<DwcaRowIF> {
+
+	/**
+	 * Byte offset (in the data file) following the last row returned by next().
+	 *
+	 * @return
+	 */
+	long getOffset();
+
+	/**
+	 * Move the iterator to a byte offset previously returned by getOffset().
+	 *
+	 * @param offset
+	 */
+	void seek(long offset);
+}
@@ -0,0 +1,142 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Iterator over the rows of a Dwc-A data file read from an InputStream (e.g. a ZIP entry).
+ * The stream is read only once, sequentially.
+ * The content is sanitized by an InputSanitizer, on bytes when the encoding allows it or on the cells of each row.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class StreamDwcaFileIterator implements ClosableIterator<DwcaRowIF> {
+
+	private static final Logger LOGGER = Logger.getLogger(StreamDwcaFileIterator.class);
+
+	private static final char BOM = '\uFEFF';
+
+	private final BufferedReader reader;
+	private final DelimitedLineTokenizer tokenizer;
+	// only used when the bytes can not be sanitized
+	private final InputSanitizer cellSanitizer;
+	private String nextLine;
+	private boolean firstLine = true;
+
+	/**
+	 *
+	 * @param inputStream
+	 *            stream of the data file, closed by {@link #close()}
+	 * @param charset
+	 *            encoding of the data file
+	 * @param tokenizer
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @throws IOException
+	 */
+	public StreamDwcaFileIterator(InputStream inputStream, Charset charset, DelimitedLineTokenizer tokenizer, int ignoreHeaderLines)
+			throws IOException {
+		this(inputStream, charset, tokenizer, ignoreHeaderLines, new InputSanitizer(charset, tokenizer.getDelimiter(),
+				tokenizer.getQuote()));
+	}
+
+	/**
+	 *
+	 * @param inputStream
+	 *            stream of the data file, closed by {@link #close()}
+	 * @param charset
+	 *            encoding of the data file
+	 * @param tokenizer
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the file
+	 * @param sanitizer
+	 *            sanitizer counting the changes made to this data file
+	 * @throws IOException
+	 */
+	public StreamDwcaFileIterator(InputStream inputStream, Charset charset, DelimitedLineTokenizer tokenizer, int ignoreHeaderLines,
+			InputSanitizer sanitizer) throws IOException {
+		if (InputSanitizer.isSupported(charset)) {
+			this.reader = new BufferedReader(new InputStreamReader(new SanitizingInputStream(inputStream, sanitizer), charset));
+			this.cellSanitizer = null;
+		}
+		else {
+			this.reader = new BufferedReader(new InputStreamReader(inputStream, charset));
+			this.cellSanitizer = sanitizer;
+		}
+		this.tokenizer = tokenizer;
+		for (int i = 0; i < ignoreHeaderLines; i++) {
+			if (readLine() == null) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (nextLine == null) {
+			String line;
+			try {
+				line = readLine();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Can't read data file", e);
+			}
+			if (line == null) {
+				return false;
+			}
+			// like the gbif CSVReader, blank lines are not rows
+			if (!line.isEmpty()) {
+				nextLine = line;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public DwcaRowIF next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String line = nextLine;
+		nextLine = null;
+		if (cellSanitizer != null) {
+			return new StringArrayRow(cellSanitizer.sanitize(tokenizer.tokenize(line)));
+		}
+		return new StringArrayRow(tokenizer.tokenize(line));
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		try {
+			reader.close();
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't close data file stream", e);
+		}
+	}
+
+	private String readLine() throws IOException {
+		String line = reader.readLine();
+		if (firstLine && line != null) {
+			firstLine = false;
+			if (!line.isEmpty() && line.charAt(0) == BOM) {
+				line = line.substring(1);
+			}
+		}
+		return line;
+	}
+}
@@ -0,0 +1,47 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * DwcaRowIF backed by an array of String.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public class StringArrayRow implements DwcaRowIF {
+
+	private final String[] cells;
+
+	public StringArrayRow(String[] cells) {
+		this.cells = cells;
+	}
+
+	@Override
+	public int size() {
+		return cells.length;
+	}
+
+	@Override
+	public CharSequence get(int index) {
+		return getString(index);
+	}
+
+	@Override
+	public String getString(int index) {
+		if (index >= cells.length || cells[index] == null) {
+			return StringUtils.EMPTY;
+		}
+		return cells[index];
+	}
+
+	@Override
+	public boolean isBlank() {
+		for (String cell : cells) {
+			if (StringUtils.isNotBlank(cell)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
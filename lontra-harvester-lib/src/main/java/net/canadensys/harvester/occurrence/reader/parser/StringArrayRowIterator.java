@@ -0,0 +1,54 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Expose an iterator of String[] (e.g. the gbif CSVReader) as an iterator of DwcaRowIF.
+ * The cells can optionally be sanitized when the wrapped iterator doesn't sanitize its content.
+ *
+ * @author canadensys
+ *
+ */
+public class StringArrayRowIterator implements ClosableIterator<DwcaRowIF> {
+
+	private final ClosableIterator<String[]> wrappedIterator;
+	private final InputSanitizer cellSanitizer;
+
+	public StringArrayRowIterator(ClosableIterator<String[]> wrappedIterator) {
+		this(wrappedIterator, null);
+	}
+
+	/**
+	 *
+	 * @param wrappedIterator
+	 * @param cellSanitizer
+	 *            sanitizer applied to the cells of each row or null
+	 */
+	public StringArrayRowIterator(ClosableIterator<String[]> wrappedIterator, InputSanitizer cellSanitizer) {
+		this.wrappedIterator = wrappedIterator;
+		this.cellSanitizer = cellSanitizer;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return wrappedIterator.hasNext();
+	}
+
+	@Override
+	public DwcaRowIF next() {
+		if (cellSanitizer != null) {
+			return new StringArrayRow(cellSanitizer.sanitize(wrappedIterator.next()));
+		}
+		return new StringArrayRow(wrappedIterator.next());
+	}
+
+	@Override
+	public void remove() {
+		wrappedIterator.remove();
+	}
+
+	@Override
+	public void close() {
+		wrappedIterator.close();
+	}
+}
@@ -0,0 +1,108 @@
+package net.canadensys.harvester.occurrence.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Columnar binary snapshot of the data files of an archive: a folder containing one snapshot file per data file (see
+ * {@link SnapshotFormat}).
+ * A snapshot is identified by the data hash of the archive fingerprint and contains the sanitized rows, reading it
+ * doesn't require any text parsing.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class DwcaSnapshot {
+
+	private static final String FILE_EXTENSION = ".snapshot";
+
+	private final File folder;
+	private final String dataHash;
+
+	/**
+	 *
+	 * @param folder
+	 *            folder of the snapshot files
+	 * @param dataHash
+	 *            data hash of the archive
+	 */
+	public DwcaSnapshot(File folder, String dataHash) {
+		this.folder = folder;
+		this.dataHash = dataHash;
+	}
+
+	/**
+	 * Check if the snapshot contains the rows of a data file.
+	 *
+	 * @param dwcaComponent
+	 * @return
+	 */
+	public boolean contains(DwcaFileDescriptor dwcaComponent) {
+		return getSnapshotFile(dwcaComponent.getLocation()).isFile();
+	}
+
+	/**
+	 * Open the rows of a data file.
+	 *
+	 * @param dwcaComponent
+	 * @param projectedColumns
+	 *            columns to read (by index) or null for all the columns
+	 * @return
+	 * @throws IOException
+	 */
+	public SnapshotRowIterator openRows(DwcaFileDescriptor dwcaComponent, boolean[] projectedColumns) throws IOException {
+		return new SnapshotRowIterator(getSnapshotFile(dwcaComponent.getLocation()), projectedColumns);
+	}
+
+	/**
+	 * Write the rows of a data file in this snapshot, the rows iterator is not closed.
+	 *
+	 * @param dwcaComponent
+	 * @param rows
+	 * @param rowGroupSize
+	 * @return number of rows written
+	 * @throws IOException
+	 */
+	public long write(DwcaFileDescriptor dwcaComponent, ClosableIterator<DwcaRowIF> rows, int rowGroupSize) throws IOException {
+		SnapshotFileWriter writer = new SnapshotFileWriter(getSnapshotFile(dwcaComponent.getLocation()),
+				dwcaComponent.getHeaders().length, rowGroupSize);
+		try {
+			while (rows.hasNext()) {
+				writer.write(rows.next());
+			}
+		}
+		finally {
+			writer.close();
+		}
+		return writer.getNumberOfRows();
+	}
+
+	/**
+	 * Get the snapshot file of a data file, the location may contain folders.
+	 *
+	 * @param location
+	 * @return
+	 */
+	File getSnapshotFile(String location) {
+		return new File(folder, location.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_EXTENSION);
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+
+	public String getDataHash() {
+		return dataHash;
+	}
+
+	@Override
+	public String toString() {
+		return "snapshot " + dataHash + " in " + folder;
+	}
+}
@@ -0,0 +1,121 @@
+package net.canadensys.harvester.occurrence.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Keep the snapshot of the last archive imported for each resource (one folder per resource).
+ * The snapshot of a resource is identified by the data hash of the archive and the snapshot format version, a snapshot
+ * created from another archive or by another version is never returned. A snapshot is written in a temporary folder
+ * and renamed once complete so an interrupted snapshot is never used.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaSnapshotStore {
+
+	private static final Logger LOGGER = Logger.getLogger(DwcaSnapshotStore.class);
+
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private final File folder;
+
+	/**
+	 *
+	 * @param folder
+	 *            folder where the snapshots are saved, created if it doesn't exist
+	 */
+	public DwcaSnapshotStore(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Load the snapshot of a resource.
+	 *
+	 * @param resourceId
+	 * @param dataHash
+	 *            data hash of the archive to import
+	 * @return the snapshot or null if there is no snapshot of this archive
+	 */
+	public DwcaSnapshot load(Integer resourceId, String dataHash) {
+		File snapshotFolder = getSnapshotFolder(resourceId, dataHash);
+		if (!snapshotFolder.isDirectory()) {
+			return null;
+		}
+		return new DwcaSnapshot(snapshotFolder, dataHash);
+	}
+
+	/**
+	 * Create an empty snapshot in a temporary folder, see {@link #save(Integer, DwcaSnapshot)}.
+	 *
+	 * @param resourceId
+	 * @param dataHash
+	 * @return
+	 * @throws IOException
+	 */
+	public DwcaSnapshot create(Integer resourceId, String dataHash) throws IOException {
+		File tempFolder = new File(getResourceFolder(resourceId), UUID.randomUUID().toString() + TEMP_EXTENSION);
+		if (!tempFolder.mkdirs()) {
+			throw new IOException("Can't create snapshot folder " + tempFolder);
+		}
+		return new DwcaSnapshot(tempFolder, dataHash);
+	}
+
+	/**
+	 * Make a snapshot created by {@link #create(Integer, String)} the snapshot of the resource, the previous snapshots
+	 * of the resource are deleted.
+	 *
+	 * @param resourceId
+	 * @param snapshot
+	 * @return the saved snapshot
+	 * @throws IOException
+	 */
+	public DwcaSnapshot save(Integer resourceId, DwcaSnapshot snapshot) throws IOException {
+		File snapshotFolder = getSnapshotFolder(resourceId, snapshot.getDataHash());
+		FileUtils.deleteDirectory(snapshotFolder);
+		Files.move(snapshot.getFolder().toPath(), snapshotFolder.toPath());
+
+		for (File file : getResourceFolder(resourceId).listFiles()) {
+			if (!file.equals(snapshotFolder) && !file.getName().endsWith(TEMP_EXTENSION)) {
+				FileUtils.deleteQuietly(file);
+			}
+		}
+		return new DwcaSnapshot(snapshotFolder, snapshot.getDataHash());
+	}
+
+	/**
+	 * Delete a snapshot, e.g. an incomplete snapshot created by {@link #create(Integer, String)}.
+	 *
+	 * @param snapshot
+	 */
+	public void discard(DwcaSnapshot snapshot) {
+		if (!FileUtils.deleteQuietly(snapshot.getFolder())) {
+			LOGGER.warn("Can't delete " + snapshot);
+		}
+	}
+
+	/**
+	 * Delete the snapshots of a resource, if any.
+	 *
+	 * @param resourceId
+	 */
+	public void delete(Integer resourceId) {
+		File resourceFolder = getResourceFolder(resourceId);
+		if (resourceFolder.exists() && !FileUtils.deleteQuietly(resourceFolder)) {
+			LOGGER.warn("Can't delete snapshots " + resourceFolder);
+		}
+	}
+
+	private File getResourceFolder(Integer resourceId) {
+		return new File(folder, resourceId.toString());
+	}
+
+	private File getSnapshotFolder(Integer resourceId, String dataHash) {
+		return new File(getResourceFolder(resourceId), dataHash + "-v" + SnapshotFormat.VERSION);
+	}
+}
@@ -0,0 +1,187 @@
+package net.canadensys.harvester.occurrence.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+
+/**
+ * Write the rows of a data file in a snapshot file (see {@link SnapshotFormat}).
+ * Rows are buffered until a row group is complete, each column of the row group is then dictionary encoded and
+ * compressed.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class SnapshotFileWriter {
+
+	public static final int DEFAULT_ROW_GROUP_SIZE = 16 * 1024;
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final DataOutputStream out;
+	private final int numberOfColumns;
+	private final int rowGroupSize;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+	private byte[] compressed = new byte[BUFFER_SIZE];
+
+	// current row group
+	private final String[][] columns;
+	private final int[] rowSizes;
+	private int numberOfRows;
+
+	private final List<Long> rowGroupOffsets = new ArrayList<Long>();
+	private final List<Integer> rowGroupSizes = new ArrayList<Integer>();
+	private long position;
+	private long totalNumberOfRows;
+
+	/**
+	 *
+	 * @param file
+	 *            snapshot file, replaced if it exists
+	 * @param numberOfColumns
+	 *            number of columns of the data file, cells after this number are not kept
+	 * @param rowGroupSize
+	 *            number of rows per row group
+	 * @throws IOException
+	 */
+	public SnapshotFileWriter(File file, int numberOfColumns, int rowGroupSize) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+		this.numberOfColumns = numberOfColumns;
+		this.rowGroupSize = rowGroupSize;
+		this.columns = new String[numberOfColumns][rowGroupSize];
+		this.rowSizes = new int[rowGroupSize];
+
+		out.writeInt(SnapshotFormat.MAGIC);
+		out.writeInt(SnapshotFormat.VERSION);
+		out.writeInt(numberOfColumns);
+		position = 12;
+	}
+
+	/**
+	 * Add a row, the content of the row is copied.
+	 *
+	 * @param row
+	 * @throws IOException
+	 */
+	public void write(DwcaRowIF row) throws IOException {
+		int size = Math.min(row.size(), numberOfColumns);
+		rowSizes[numberOfRows] = size;
+		for (int i = 0; i < numberOfColumns; i++) {
+			columns[i][numberOfRows] = (i < size) ? row.getString(i) : "";
+		}
+		numberOfRows++;
+		totalNumberOfRows++;
+		if (numberOfRows == rowGroupSize) {
+			flushRowGroup();
+		}
+	}
+
+	/**
+	 * Write the last row group and the footer.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			if (numberOfRows > 0) {
+				flushRowGroup();
+			}
+			long footerOffset = position;
+			out.writeInt(rowGroupOffsets.size());
+			for (int i = 0; i < rowGroupOffsets.size(); i++) {
+				out.writeLong(rowGroupOffsets.get(i));
+				out.writeInt(rowGroupSizes.get(i));
+			}
+			out.writeLong(footerOffset);
+			out.writeInt(SnapshotFormat.MAGIC);
+		}
+		finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	public long getNumberOfRows() {
+		return totalNumberOfRows;
+	}
+
+	private void flushRowGroup() throws IOException {
+		rowGroupOffsets.add(position);
+		rowGroupSizes.add(numberOfRows);
+		out.writeInt(numberOfRows);
+		position += 4;
+
+		chunk.reset();
+		for (int i = 0; i < numberOfRows; i++) {
+			SnapshotFormat.writeVarInt(chunk, rowSizes[i]);
+		}
+		writeChunk();
+
+		Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		List<String> values = new ArrayList<String>();
+		int[] codes = new int[numberOfRows];
+		Integer code;
+		for (String[] column : columns) {
+			dictionary.clear();
+			values.clear();
+			for (int i = 0; i < numberOfRows; i++) {
+				code = dictionary.get(column[i]);
+				if (code == null) {
+					code = values.size();
+					dictionary.put(column[i], code);
+					values.add(column[i]);
+				}
+				codes[i] = code;
+				column[i] = null;
+			}
+			chunk.reset();
+			SnapshotFormat.writeVarInt(chunk, values.size());
+			byte[] value;
+			for (String s : values) {
+				value = s.getBytes(SnapshotFormat.UTF8);
+				SnapshotFormat.writeVarInt(chunk, value.length);
+				chunk.write(value, 0, value.length);
+			}
+			for (int i = 0; i < numberOfRows; i++) {
+				SnapshotFormat.writeVarInt(chunk, codes[i]);
+			}
+			writeChunk();
+		}
+		numberOfRows = 0;
+	}
+
+	/**
+	 * Compress the content of chunk and write it.
+	 */
+	private void writeChunk() throws IOException {
+		byte[] content = chunk.toByteArray();
+		deflater.reset();
+		deflater.setInput(content);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length) {
+				byte[] larger = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, larger, 0, length);
+				compressed = larger;
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		out.writeInt(length);
+		out.writeInt(content.length);
+		out.write(compressed, 0, length);
+		position += 8 + length;
+	}
+}
@@ -0,0 +1,59 @@
+package net.canadensys.harvester.occurrence.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Constants and variable-length integer encoding of the snapshot files.
+ * A snapshot file contains the rows of one data file stored by column:
+ * <ul>
+ * <li>header: magic number, format version, number of columns</li>
+ * <li>row groups: number of rows followed by one chunk for the size of each row and one chunk per column. A chunk is
+ * its compressed length, its uncompressed length and the deflated content. A column chunk contains a dictionary of the
+ * distinct values of the row group followed by the dictionary index of each row.</li>
+ * <li>footer: offset and number of rows of each row group, followed by the offset of the footer and the magic number</li>
+ * </ul>
+ * Integers are stored as varint inside the chunks and as big-endian fixed length integers elsewhere. Strings are UTF-8
+ * encoded.
+ *
+ * @author canadensys
+ *
+ */
+final class SnapshotFormat {
+
+	static final int MAGIC = 0x4C534E50;
+	// increment when the format or the content (e.g. sanitizing) of the snapshots changes
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SnapshotFormat() {
+	}
+
+	static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Read a varint at position[0] and move the position after it.
+	 *
+	 * @param bytes
+	 * @param position
+	 * @return
+	 */
+	static int readVarInt(byte[] bytes, int[] position) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[position[0]++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+}
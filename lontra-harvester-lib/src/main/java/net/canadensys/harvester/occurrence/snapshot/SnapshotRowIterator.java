@@ -0,0 +1,316 @@
+package net.canadensys.harvester.occurrence.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gbif.utils.file.ClosableIterator;
+
+/**
+ * Iterator over the rows of a snapshot file (see {@link SnapshotFormat}).
+ * Rows are loaded one row group at a time and only the projected columns are decompressed, reading a row allocates
+ * nothing since the cells are the Strings of the dictionaries.
+ * The iterator can skip rows without reading them using the row group offsets (see {@link #skipTo(long)}).
+ * The returned DwcaRowIF instance is reused, it is only valid until the next call to next().
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class SnapshotRowIterator implements ClosableIterator<DwcaRowIF> {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final File file;
+	private final boolean[] projectedColumns;
+	private final int numberOfColumns;
+	private final long[] rowGroupOffsets;
+	private final int[] rowGroupSizes;
+	private final Inflater inflater = new Inflater();
+
+	private FileInputStream fis;
+	private DataInputStream in;
+	private int nextRowGroup;
+
+	// current row group
+	private final String[][] dictionaries;
+	private final int[][] codes;
+	private int[] rowSizes = new int[0];
+	private int numberOfRows;
+	private int rowIndex;
+	private byte[] compressed = new byte[BUFFER_SIZE];
+	private byte[] content = new byte[BUFFER_SIZE];
+
+	private final SnapshotRow row = new SnapshotRow();
+
+	/**
+	 *
+	 * @param file
+	 *            snapshot file
+	 * @param projectedColumns
+	 *            columns to read (by index) or null for all the columns, other cells are returned empty
+	 * @throws IOException
+	 *             if the file is not a complete snapshot file of the current version
+	 */
+	public SnapshotRowIterator(File file, boolean[] projectedColumns) throws IOException {
+		this.file = file;
+		this.projectedColumns = projectedColumns;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.readInt() != SnapshotFormat.MAGIC || raf.readInt() != SnapshotFormat.VERSION) {
+				throw new IOException(file + " is not a snapshot file of version " + SnapshotFormat.VERSION);
+			}
+			numberOfColumns = raf.readInt();
+			raf.seek(raf.length() - 12);
+			long footerOffset = raf.readLong();
+			if (raf.readInt() != SnapshotFormat.MAGIC) {
+				throw new IOException("Incomplete snapshot file " + file);
+			}
+			raf.seek(footerOffset);
+			int numberOfRowGroups = raf.readInt();
+			rowGroupOffsets = new long[numberOfRowGroups];
+			rowGroupSizes = new int[numberOfRowGroups];
+			for (int i = 0; i < numberOfRowGroups; i++) {
+				rowGroupOffsets[i] = raf.readLong();
+				rowGroupSizes[i] = raf.readInt();
+			}
+		}
+		catch (EOFException e) {
+			throw new IOException("Incomplete snapshot file " + file, e);
+		}
+		finally {
+			raf.close();
+		}
+		dictionaries = new String[numberOfColumns][];
+		codes = new int[numberOfColumns][];
+		open(0);
+	}
+
+	/**
+	 * Open the stream on a row group.
+	 */
+	private void open(int rowGroup) throws IOException {
+		closeStream();
+		nextRowGroup = rowGroup;
+		numberOfRows = 0;
+		rowIndex = 0;
+		if (rowGroup < rowGroupOffsets.length) {
+			fis = new FileInputStream(file);
+			fis.getChannel().position(rowGroupOffsets[rowGroup]);
+			in = new DataInputStream(new BufferedInputStream(fis, BUFFER_SIZE));
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (rowIndex < numberOfRows) {
+			return true;
+		}
+		if (nextRowGroup >= rowGroupOffsets.length) {
+			return false;
+		}
+		try {
+			readRowGroup();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't read snapshot file " + file, e);
+		}
+		return rowIndex < numberOfRows;
+	}
+
+	@Override
+	public DwcaRowIF next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		row.index = rowIndex++;
+		return row;
+	}
+
+	/**
+	 * Move the iterator before a row, the row groups before the one of the row are not read.
+	 *
+	 * @param ordinal
+	 *            number of rows to skip from the beginning of the file
+	 */
+	public void skipTo(long ordinal) {
+		long first = 0;
+		int rowGroup = 0;
+		while (rowGroup < rowGroupSizes.length && first + rowGroupSizes[rowGroup] <= ordinal) {
+			first += rowGroupSizes[rowGroup];
+			rowGroup++;
+		}
+		try {
+			open(rowGroup);
+			if (hasNext()) {
+				rowIndex = (int) Math.min(ordinal - first, numberOfRows);
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't read snapshot file " + file, e);
+		}
+	}
+
+	private void readRowGroup() throws IOException {
+		numberOfRows = in.readInt();
+		rowIndex = 0;
+		nextRowGroup++;
+
+		int length = readChunk();
+		int[] position = { 0 };
+		if (rowSizes.length < numberOfRows) {
+			rowSizes = new int[numberOfRows];
+		}
+		for (int i = 0; i < numberOfRows; i++) {
+			rowSizes[i] = SnapshotFormat.readVarInt(content, position);
+		}
+
+		for (int column = 0; column < numberOfColumns; column++) {
+			if (!isProjected(column)) {
+				// skip the compressed length, the uncompressed length and the content
+				length = in.readInt();
+				in.readInt();
+				skipFully(length);
+				continue;
+			}
+			readChunk();
+			position[0] = 0;
+			int dictionarySize = SnapshotFormat.readVarInt(content, position);
+			String[] dictionary = new String[dictionarySize];
+			int valueLength;
+			for (int i = 0; i < dictionarySize; i++) {
+				valueLength = SnapshotFormat.readVarInt(content, position);
+				dictionary[i] = new String(content, position[0], valueLength, SnapshotFormat.UTF8);
+				position[0] += valueLength;
+			}
+			int[] columnCodes = codes[column];
+			if (columnCodes == null || columnCodes.length < numberOfRows) {
+				columnCodes = new int[numberOfRows];
+				codes[column] = columnCodes;
+			}
+			for (int i = 0; i < numberOfRows; i++) {
+				columnCodes[i] = SnapshotFormat.readVarInt(content, position);
+			}
+			dictionaries[column] = dictionary;
+		}
+	}
+
+	/**
+	 * Read and decompress a chunk in content.
+	 *
+	 * @return uncompressed length
+	 */
+	private int readChunk() throws IOException {
+		int compressedLength = in.readInt();
+		int length = in.readInt();
+		if (compressed.length < compressedLength) {
+			compressed = new byte[compressedLength];
+		}
+		if (content.length < length) {
+			content = new byte[length];
+		}
+		in.readFully(compressed, 0, compressedLength);
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedLength);
+		try {
+			int inflated = 0;
+			while (inflated < length) {
+				int read = inflater.inflate(content, inflated, length - inflated);
+				if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new IOException("Corrupted snapshot file " + file);
+				}
+				inflated += read;
+			}
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Corrupted snapshot file " + file, e);
+		}
+		return length;
+	}
+
+	private void skipFully(int length) throws IOException {
+		int skipped = 0;
+		int n;
+		while (skipped < length) {
+			n = in.skipBytes(length - skipped);
+			if (n <= 0) {
+				throw new EOFException("Incomplete snapshot file " + file);
+			}
+			skipped += n;
+		}
+	}
+
+	private boolean isProjected(int column) {
+		return projectedColumns == null || (column < projectedColumns.length && projectedColumns[column]);
+	}
+
+	private void closeStream() throws IOException {
+		if (in != null) {
+			in.close();
+			in = null;
+			fis = null;
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		try {
+			closeStream();
+		}
+		catch (IOException e) {
+			// nothing was written
+		}
+		inflater.end();
+	}
+
+	/**
+	 * View on a row of the current row group.
+	 */
+	private class SnapshotRow implements DwcaRowIF {
+		private int index;
+
+		@Override
+		public int size() {
+			return rowSizes[index];
+		}
+
+		@Override
+		public CharSequence get(int column) {
+			return getString(column);
+		}
+
+		@Override
+		public String getString(int column) {
+			if (column >= rowSizes[index] || !isProjected(column)) {
+				return StringUtils.EMPTY;
+			}
+			return dictionaries[column][codes[column][index]];
+		}
+
+		@Override
+		public boolean isBlank() {
+			for (int column = 0; column < rowSizes[index]; column++) {
+				if (isProjected(column) && StringUtils.isNotBlank(dictionaries[column][codes[column][index]])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
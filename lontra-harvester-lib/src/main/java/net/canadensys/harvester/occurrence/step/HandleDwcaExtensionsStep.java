@@ -20,6 +20,7 @@ import org.springframework.context.ApplicationContext;
 /**
  * This step will read information about the extension available in the Dwc-A, check if it's a supported extension
  * and then dynamically create one StreamDwcExtensionContentStep per supported extension(s) to stream the content.
+ * If DWCA_CHANGED_EXTENSIONS is set, only the listed extensions are streamed.
  *
  * @author cgendreau
  *
@@ -39,6 +40,7 @@ public class HandleDwcaExtensionsStep implements StepIF {
 	private ItemReaderIF<Term> dwcaInfoReader;
 
 	private Map<SharedParameterEnum,Object> sharedParameters;
+	private List<String> changedExtensions;
 
 	@Override
 	public String getTitle() {
@@ -50,6 +52,9 @@ public class HandleDwcaExtensionsStep implements StepIF {
 	public void preStep(Map<SharedParameterEnum, Object> sharedParameters)
 			throws IllegalStateException {
 		this.sharedParameters = sharedParameters;
+		@SuppressWarnings("unchecked")
+		List<String> changedExtensions = (List<String>) sharedParameters.get(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS);
+		this.changedExtensions = changedExtensions;
 
 		dwcaInfoReader.openReader(sharedParameters);
 	}
@@ -68,7 +73,8 @@ public class HandleDwcaExtensionsStep implements StepIF {
 		Term currExtension = dwcaInfoReader.read();
 
 		while(currExtension != null){
-			if(SUPPORTED_EXTENSION.contains(currExtension)){
+			if(SUPPORTED_EXTENSION.contains(currExtension) &&
+					(changedExtensions == null || changedExtensions.contains(currExtension.simpleName()))){
 				AbstractStreamStep streamDwcExtensionContentStep = (AbstractStreamStep)appContext.getBean("streamDwcExtensionContentStep");
 
 				//tricky part, shallow copy(not a deep copy) sharedParameters to indicate each readers which extension to use
@@ -2,12 +2,14 @@ package net.canadensys.harvester.occurrence.step.async;
 
 import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
 import net.canadensys.harvester.ItemWriterIF;
+import net.canadensys.harvester.model.BulkExtensionDataObject;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
- * No processor for now but it will come
+ * No processor for now but it will come.
+ * The models are received as BulkExtensionDataObject (see StreamDwcExtensionContentStep).
  * 
  * @author cgendreau
  * 
@@ -27,4 +29,12 @@ public class AsyncManageOccurrenceExtensionStep extends GenericAsyncStep<Occurre
 		super.setWriter(writer);
 	}
 
+	@Override
+	protected Object fromMessageContent(Object content) {
+		if (content instanceof BulkExtensionDataObject) {
+			return ((BulkExtensionDataObject) content).retrieveModels();
+		}
+		return content;
+	}
+
 }
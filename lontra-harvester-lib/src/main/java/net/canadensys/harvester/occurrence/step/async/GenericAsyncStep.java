@@ -64,7 +64,7 @@ public class GenericAsyncStep<T> extends AbstractReceiverStep implements JMSCons
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean handleMessage(ProcessingMessageIF message) {
-		Object obj = ((DefaultMessage) message).getContent();
+		Object obj = fromMessageContent(((DefaultMessage) message).getContent());
 		try {
 			if (List.class.isAssignableFrom(obj.getClass())) {
 				writer.write((List<T>) obj);
@@ -79,6 +79,17 @@ public class GenericAsyncStep<T> extends AbstractReceiverStep implements JMSCons
 		return true;
 	}
 
+	/**
+	 * Get the object(s) to write from the content of a received message.
+	 * The content is returned as is by default, subclasses can rebuild the objects from a more compact content.
+	 * 
+	 * @param content
+	 * @return a T or a List of T
+	 */
+	protected Object fromMessageContent(Object content) {
+		return content;
+	}
+
 	public void setWriter(ItemWriterIF<T> writer) {
 		this.writer = writer;
 	}
@@ -0,0 +1,232 @@
+package net.canadensys.harvester.occurrence.step.async;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceModel;
+import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
+import net.canadensys.harvester.ItemProcessorIF;
+import net.canadensys.harvester.ItemWriterIF;
+import net.canadensys.harvester.exception.WriterException;
+import net.canadensys.harvester.jms.JMSConsumerMessageHandlerIF;
+import net.canadensys.harvester.jms.control.JMSControlProducer;
+import net.canadensys.harvester.message.ProcessingMessageIF;
+import net.canadensys.harvester.message.control.NodeErrorControlMessage;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.message.ProcessDwcaChunkMessage;
+import net.canadensys.harvester.occurrence.reader.DwcaFileRange;
+import net.canadensys.harvester.occurrence.reader.DwcaItemReader;
+
+import org.apache.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.SQLQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+/**
+ * Step taking a ProcessDwcaChunkMessage from JMS message, reading the records of the byte range of the core data file
+ * from the shared storage, processing them and writing the result as well as the origin data (OccurrenceRaw).
+ * The records are written by batch of flushInterval records. If the chunk can't be completely written, the records
+ * already written for its block of auto_id are deleted from the buffer schema so no partial chunk is left.
+ * NOT thread safe
+ *
+ * @author canadensys
+ *
+ */
+public class ProcessDwcaChunkStep extends AbstractReceiverStep implements JMSConsumerMessageHandlerIF {
+	private static final Logger LOGGER = Logger.getLogger(ProcessDwcaChunkStep.class);
+	private static final int DEFAULT_FLUSH_INTERVAL = 250;
+
+	@Autowired
+	@Qualifier("occurrenceProcessor")
+	private ItemProcessorIF<OccurrenceRawModel, OccurrenceModel> processor;
+
+	@Autowired
+	@Qualifier("occurrenceWriter")
+	private ItemWriterIF<OccurrenceModel> writer;
+
+	@Autowired
+	@Qualifier("rawOccurrenceWriter")
+	private ItemWriterIF<OccurrenceRawModel> rawWriter;
+
+	@Autowired
+	private JMSControlProducer errorReporter;
+
+	@Autowired
+	@Qualifier(value = "bufferSessionFactory")
+	private SessionFactory sessionFactory;
+
+	private DwcaItemReader reader = new DwcaItemReader();
+
+	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	@Override
+	public void preStep(Map<SharedParameterEnum, Object> sharedParameters) throws IllegalStateException {
+		if (writer == null || rawWriter == null) {
+			throw new IllegalStateException("No writer defined");
+		}
+		if (processor == null) {
+			throw new IllegalStateException("No processor defined");
+		}
+		if (errorReporter == null) {
+			throw new IllegalStateException("No errorReporter defined");
+		}
+		if (sessionFactory == null) {
+			throw new IllegalStateException("No sessionFactory defined");
+		}
+		writer.openWriter();
+		rawWriter.openWriter();
+		errorReporter.open();
+	}
+
+	@Override
+	public void postStep() {
+		writer.closeWriter();
+		rawWriter.closeWriter();
+		errorReporter.close();
+	}
+
+	@Override
+	public Class<?> getMessageClass() {
+		return ProcessDwcaChunkMessage.class;
+	}
+
+	@Override
+	public boolean handleMessage(ProcessingMessageIF message) {
+		ProcessDwcaChunkMessage chunkMsg = (ProcessDwcaChunkMessage) message;
+		DwcaFileRange fileRange = chunkMsg.getFileRange();
+		if (!new File(chunkMsg.getDwcaPath()).exists()) {
+			errorReporter.publish(new NodeErrorControlMessage(new IllegalStateException("DarwinCore archive " + chunkMsg.getDwcaPath()
+					+ " not found on this node")));
+			return false;
+		}
+
+		Map<SharedParameterEnum, Object> sharedParameters = new HashMap<SharedParameterEnum, Object>();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, chunkMsg.getDwcaPath());
+		sharedParameters.put(SharedParameterEnum.DWCA_FILE_RANGE, fileRange);
+		reader.openReader(sharedParameters);
+
+		long nextAutoId = chunkMsg.getFirstAutoId();
+		long lastAutoId = nextAutoId + fileRange.getNumberOfRows() - 1;
+		List<OccurrenceModel> occList = new ArrayList<OccurrenceModel>(flushInterval);
+		List<OccurrenceRawModel> occRawList = new ArrayList<OccurrenceRawModel>(flushInterval);
+		try {
+			OccurrenceRawModel rawModel = reader.read();
+			while (rawModel != null) {
+				if (nextAutoId > lastAutoId) {
+					discardChunk(chunkMsg, lastAutoId);
+					errorReporter.publish(new NodeErrorControlMessage(new IllegalStateException(fileRange
+							+ " contains more rows than expected")));
+					return false;
+				}
+				rawModel.setAuto_id((int) nextAutoId++);
+				rawModel.setSourcefileid(chunkMsg.getSourcefileid());
+				rawModel.setResource_id(chunkMsg.getResourceId());
+				occRawList.add(rawModel);
+				occList.add(processor.process(rawModel, null));
+
+				if (occRawList.size() == flushInterval) {
+					rawWriter.write(occRawList);
+					writer.write(occList);
+					occRawList.clear();
+					occList.clear();
+				}
+				rawModel = reader.read();
+			}
+			if (!occRawList.isEmpty()) {
+				rawWriter.write(occRawList);
+				writer.write(occList);
+			}
+		}
+		catch (WriterException e) {
+			discardChunk(chunkMsg, lastAutoId);
+			errorReporter.publish(new NodeErrorControlMessage(e));
+			return false;
+		}
+		finally {
+			reader.closeReader();
+		}
+		if (nextAutoId <= lastAutoId) {
+			LOGGER.warn(fileRange + ": only " + (nextAutoId - chunkMsg.getFirstAutoId()) + " rows read");
+		}
+		return true;
+	}
+
+	/**
+	 * Delete the records of a chunk that were already written.
+	 *
+	 * @param chunkMsg
+	 * @param lastAutoId
+	 *            last auto_id of the block reserved for the chunk
+	 */
+	private void discardChunk(ProcessDwcaChunkMessage chunkMsg, long lastAutoId) {
+		StatelessSession session = sessionFactory.openStatelessSession();
+		try {
+			session.beginTransaction();
+			for (String table : new String[] { "buffer.occurrence_raw", "buffer.occurrence" }) {
+				SQLQuery query = session.createSQLQuery("DELETE FROM " + table
+						+ " WHERE resource_id=:resource_id AND auto_id BETWEEN :first_auto_id AND :last_auto_id");
+				query.setParameter("resource_id", chunkMsg.getResourceId());
+				query.setParameter("first_auto_id", chunkMsg.getFirstAutoId());
+				query.setParameter("last_auto_id", lastAutoId);
+				query.executeUpdate();
+			}
+			session.getTransaction().commit();
+		}
+		catch (HibernateException hEx) {
+			LOGGER.fatal("Can't delete the records of " + chunkMsg.getFileRange() + " from the buffer schema", hEx);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	public void setProcessor(ItemProcessorIF<OccurrenceRawModel, OccurrenceModel> processor) {
+		this.processor = processor;
+	}
+
+	public void setWriter(ItemWriterIF<OccurrenceModel> writer) {
+		this.writer = writer;
+	}
+
+	public void setRawWriter(ItemWriterIF<OccurrenceRawModel> rawWriter) {
+		this.rawWriter = rawWriter;
+	}
+
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * Set the reader used to read the byte ranges, the reader is reused for all the messages.
+	 *
+	 * @param reader
+	 */
+	public void setReader(DwcaItemReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Number of records written at once.
+	 *
+	 * @param flushInterval
+	 */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Reading, inserting and processing occurrence data chunks";
+	}
+
+	@Override
+	public void cancel() {
+		// TODO Auto-generated method stub
+	}
+}
@@ -11,6 +11,7 @@ import net.canadensys.harvester.ItemWriterIF;
 import net.canadensys.harvester.exception.WriterException;
 import net.canadensys.harvester.jms.JMSConsumerMessageHandlerIF;
 import net.canadensys.harvester.jms.control.JMSControlProducer;
+import net.canadensys.harvester.mapper.StringDictionary;
 import net.canadensys.harvester.message.ProcessingMessageIF;
 import net.canadensys.harvester.message.control.NodeErrorControlMessage;
 import net.canadensys.harvester.model.BulkDataObject;
@@ -24,6 +25,8 @@ import org.springframework.beans.factory.annotation.Qualifier;
 /**
  * Step taking a ProcessOccurrenceMessage from JMS message, process a Occurrence Raw object list, writing the result as well as the origin data
  * (OccurrenceRaw).
+ * The values of the low cardinality columns are deduplicated (see StringDictionary) until the messages of another
+ * resource (sourcefileid) are received.
  * NOT thread safe
  * 
  * @author canadensys
@@ -31,6 +34,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
  */
 public class ProcessInsertOccurrenceStep extends AbstractReceiverStep implements JMSConsumerMessageHandlerIF {
 	private static final Logger LOGGER = Logger.getLogger(ProcessInsertOccurrenceStep.class);
+	private static final String SOURCEFILEID_FIELD = "sourcefileid";
 
 	@Autowired
 	@Qualifier("occurrenceProcessor")
@@ -47,6 +51,11 @@ public class ProcessInsertOccurrenceStep extends AbstractReceiverStep implements
 	@Autowired
 	private JMSControlProducer errorReporter;
 
+	private boolean stringDeduplication = true;
+	private final StringDictionary stringDictionary = new StringDictionary();
+	// sourcefileid of the values in stringDictionary
+	private String dictionarySourcefileid;
+
 	@Override
 	public void preStep(Map<SharedParameterEnum, Object> sharedParameters) throws IllegalStateException {
 		if (writer == null || rawWriter == null) {
@@ -82,9 +91,10 @@ public class ProcessInsertOccurrenceStep extends AbstractReceiverStep implements
 
 		List<OccurrenceModel> occList = new ArrayList<OccurrenceModel>(numberOfData);
 		List<OccurrenceRawModel> occRawList = new ArrayList<OccurrenceRawModel>(numberOfData);
+		StringDictionary.Column[] columns = getDictionaryColumns(bulkDataObject);
 		OccurrenceRawModel extractedRawModel = null;
 		for (int idx = 0; idx < numberOfData; idx++) {
-			extractedRawModel = bulkDataObject.retrieveObject(idx, new OccurrenceRawModel());
+			extractedRawModel = bulkDataObject.retrieveObject(idx, new OccurrenceRawModel(), columns);
 			occRawList.add(extractedRawModel);
 			occList.add(processor.process(extractedRawModel, null));
 		}
@@ -99,6 +109,35 @@ public class ProcessInsertOccurrenceStep extends AbstractReceiverStep implements
 		return true;
 	}
 
+	/**
+	 * Get the dictionary columns of the fields of a bulk, the dictionary is cleared when the bulk belongs to another
+	 * resource.
+	 *
+	 * @param bulkDataObject
+	 * @return the columns or null if the values are not deduplicated
+	 */
+	private StringDictionary.Column[] getDictionaryColumns(BulkDataObject<OccurrenceRawModel> bulkDataObject) {
+		if (!stringDeduplication || bulkDataObject.getData().isEmpty()) {
+			return null;
+		}
+		int sourcefileidIndex = bulkDataObject.getFieldNames().indexOf(SOURCEFILEID_FIELD);
+		String sourcefileid = (sourcefileidIndex < 0) ? null : bulkDataObject.getData().get(0)[sourcefileidIndex];
+		if (sourcefileid == null || !sourcefileid.equals(dictionarySourcefileid)) {
+			stringDictionary.clear();
+			dictionarySourcefileid = sourcefileid;
+		}
+		return stringDictionary.getColumns(bulkDataObject.getFieldNames());
+	}
+
+	/**
+	 * Should the values of the low cardinality columns share the same String instances? Default is true.
+	 *
+	 * @param stringDeduplication
+	 */
+	public void setStringDeduplication(boolean stringDeduplication) {
+		this.stringDeduplication = stringDeduplication;
+	}
+
 	public void setProcessor(ItemProcessorIF<OccurrenceRawModel, OccurrenceModel> processor) {
 		this.processor = processor;
 	}
@@ -20,7 +20,7 @@ import org.apache.log4j.Logger;
 /**
  * Generic step to stream user defined object (defined by S).
  * Read object of type T, process in type S.
- * This class will stream DefaultMessage objects with ArrayList<S> as content.
+ * This class will stream DefaultMessage objects with ArrayList<S> as content (see toMessageContent).
  * TODO too similar to GenericStreamStep<T>.
  * 
  * @author canadensys
@@ -112,13 +112,16 @@ public class GenericStreamProcessingStep<T, S> extends AbstractStreamStep {
 	 */
 	private void writeObjects(List<S> objList) {
 		try {
+			Object content = toMessageContent(objList);
 			for (Class<? extends AbstractReceiverStep> currAsyncReceiver : asyncReceivers) {
 				DefaultMessage dmsg = new DefaultMessage();
 				dmsg.setTimestamp(Calendar.getInstance().getTime().toString());
 				dmsg.setMsgHandlerClass(currAsyncReceiver);
-				dmsg.setContent(objList);
-				dmsg.setContentClass(objList.getClass());
-				dmsg.setContentClassGeneric(objList.get(0).getClass());
+				dmsg.setContent(content);
+				dmsg.setContentClass(content.getClass());
+				if (content instanceof List) {
+					dmsg.setContentClassGeneric(objList.get(0).getClass());
+				}
 				writer.write(dmsg);
 			}
 		}
@@ -127,6 +130,18 @@ public class GenericStreamProcessingStep<T, S> extends AbstractStreamStep {
 		}
 	}
 
+	/**
+	 * Get the content of the messages sent for a list of processed objects.
+	 * The list itself is sent by default, subclasses can send a more compact object. The content is serialized before
+	 * the list is reused.
+	 * 
+	 * @param objList
+	 * @return
+	 */
+	protected Object toMessageContent(List<S> objList) {
+		return objList;
+	}
+
 	public void setReader(ItemReaderIF<T> reader) {
 		this.reader = reader;
 	}
@@ -0,0 +1,231 @@
+package net.canadensys.harvester.occurrence.step.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import net.canadensys.dataportal.occurrence.model.DwcaResourceModel;
+import net.canadensys.harvester.ItemWriterIF;
+import net.canadensys.harvester.StepResult;
+import net.canadensys.harvester.exception.TaskExecutionException;
+import net.canadensys.harvester.exception.WriterException;
+import net.canadensys.harvester.message.ProcessingMessageIF;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.message.ProcessDwcaChunkMessage;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveCache;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+import net.canadensys.harvester.occurrence.reader.DwcaFileRange;
+import net.canadensys.harvester.occurrence.reader.DwcaFileSplitter;
+import net.canadensys.harvester.occurrence.step.async.ProcessDwcaChunkStep;
+
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+import org.hibernate.HibernateException;
+import org.hibernate.SQLQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+/**
+ * Step splitting the core data file in byte ranges and writing one ProcessDwcaChunkMessage per range, the records are
+ * read, processed and inserted by the processing nodes (see ProcessDwcaChunkStep).
+ * Only the line feeds of the data file are scanned, the rows are not parsed and no record is sent to the broker. The
+ * auto_id of all the records are reserved at once using idRangeSQL, each range gets a contiguous block of auto_id. The
+ * reservation is serialized with the other users of the sequence by an advisory lock, see {@link #setIdRangeSQL(String)}.
+ * The archive must be extracted in a folder shared with the processing nodes and its core data file must be supported
+ * by DwcaFileSplitter. Records can't be filtered (DWCA_ID_FILTER, DWCA_ID_EXCLUSION_LIST) and the streaming can't be
+ * resumed from a checkpoint, see {@link #isSupported(Map)}.
+ * NOT thread safe
+ *
+ * @author canadensys
+ *
+ */
+public class StreamDwcChunkStep extends AbstractStreamStep {
+
+	private static final Logger LOGGER = Logger.getLogger(StreamDwcChunkStep.class);
+
+	@Autowired
+	@Qualifier("jmsWriter")
+	private ItemWriterIF<ProcessingMessageIF> writer;
+
+	@Autowired
+	@Qualifier(value = "bufferSessionFactory")
+	private SessionFactory sessionFactory;
+
+	private DwcaFileSplitter splitter = new DwcaFileSplitter();
+
+	// must reserve :size values of the sequence and return the last one, the advisory lock (released at the end of the
+	// transaction) is also taken by DwcaLineProcessor before it draws ids from the sequence
+	private String idRangeSQL = "WITH id_lock AS (SELECT pg_advisory_xact_lock(CAST(CAST(CAST('buffer.occurrence_raw_auto_id_seq' AS regclass) AS oid) AS bigint))) SELECT setval('buffer.occurrence_raw_auto_id_seq', nextval('buffer.occurrence_raw_auto_id_seq') + :size - 1) FROM id_lock";
+
+	private String dwcaPath;
+	private DwcaFileDescriptor core;
+	private Integer resourceId;
+	private String sourcefileid;
+
+	public StreamDwcChunkStep() {
+		addAsyncReceiverStep(ProcessDwcaChunkStep.class);
+	}
+
+	/**
+	 * Check if the core data file of the archive can be streamed by byte ranges with these shared parameters.
+	 *
+	 * @param sharedParameters
+	 * @return
+	 */
+	public static boolean isSupported(Map<SharedParameterEnum, Object> sharedParameters) {
+		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE)
+				|| sharedParameters.containsKey(SharedParameterEnum.DWCA_CHECKPOINT)
+				|| sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_FILTER)
+				|| sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST)) {
+			return false;
+		}
+		String dwcaPath = (String) sharedParameters.get(SharedParameterEnum.DWCA_PATH);
+		if (dwcaPath == null) {
+			return false;
+		}
+		try {
+			return DwcaFileSplitter.isSupported(DwcaArchiveCache.getDescriptor(sharedParameters, new File(dwcaPath)).getCore());
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't open DarwinCore archive", e);
+		}
+		catch (UnsupportedArchiveException e) {
+			LOGGER.error("Can't open DarwinCore archive", e);
+		}
+		return false;
+	}
+
+	@Override
+	public void preStep(Map<SharedParameterEnum, Object> sharedParameters) throws IllegalStateException {
+		if (writer == null) {
+			throw new IllegalStateException("No writer defined");
+		}
+		if (sessionFactory == null) {
+			throw new IllegalStateException("No sessionFactory defined");
+		}
+		if (!isSupported(sharedParameters)) {
+			throw new IllegalStateException("The core data file can not be streamed by byte ranges");
+		}
+		DwcaResourceModel resourceModel = (DwcaResourceModel) sharedParameters.get(SharedParameterEnum.RESOURCE_MODEL);
+		resourceId = (Integer) sharedParameters.get(SharedParameterEnum.RESOURCE_ID);
+		if (resourceModel == null || resourceId == null) {
+			throw new IllegalStateException("sharedParameters missing: RESOURCE_MODEL and RESOURCE_ID are required.");
+		}
+		sourcefileid = resourceModel.getSourcefileid();
+		dwcaPath = new File((String) sharedParameters.get(SharedParameterEnum.DWCA_PATH)).getAbsolutePath();
+		try {
+			core = DwcaArchiveCache.getDescriptor(sharedParameters, new File(dwcaPath)).getCore();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't open DarwinCore archive", e);
+		}
+		catch (UnsupportedArchiveException e) {
+			throw new IllegalStateException("Can't open DarwinCore archive", e);
+		}
+		writer.openWriter();
+	}
+
+	@Override
+	public void postStep() {
+		writer.closeWriter();
+	}
+
+	@Override
+	public StepResult doStep() {
+		int numberOfRecords = 0;
+		long t = System.currentTimeMillis();
+		try {
+			List<DwcaFileRange> ranges = splitter.split(core);
+			for (DwcaFileRange range : ranges) {
+				numberOfRecords += range.getNumberOfRows();
+			}
+			if (numberOfRecords == 0) {
+				return new StepResult(0);
+			}
+
+			long nextAutoId = reserveAutoIds(numberOfRecords);
+			for (DwcaFileRange range : ranges) {
+				ProcessDwcaChunkMessage chunkMsg = new ProcessDwcaChunkMessage();
+				chunkMsg.setDwcaPath(dwcaPath);
+				chunkMsg.setFileRange(range);
+				chunkMsg.setFirstAutoId(nextAutoId);
+				chunkMsg.setResourceId(resourceId);
+				chunkMsg.setSourcefileid(sourcefileid);
+				chunkMsg.setWhen(Calendar.getInstance().getTime().toString());
+				writer.write(chunkMsg);
+				nextAutoId += range.getNumberOfRows();
+			}
+			LOGGER.info(ranges.size() + " ranges of " + core.getLocation() + " (" + numberOfRecords + " rows) sent in "
+					+ (System.currentTimeMillis() - t) + " ms");
+		}
+		catch (IOException e) {
+			throw new TaskExecutionException("Can't split " + core.getLocation(), e);
+		}
+		catch (WriterException e) {
+			LOGGER.fatal(e);
+		}
+		return new StepResult(numberOfRecords);
+	}
+
+	/**
+	 * Reserve a contiguous block of auto_id.
+	 *
+	 * @param size
+	 * @return first auto_id of the block
+	 */
+	private long reserveAutoIds(int size) {
+		StatelessSession session = sessionFactory.openStatelessSession();
+		try {
+			session.beginTransaction();
+			SQLQuery sqlQuery = session.createSQLQuery(idRangeSQL);
+			sqlQuery.setParameter("size", size);
+			long lastId = ((Number) sqlQuery.uniqueResult()).longValue();
+			session.getTransaction().commit();
+			return lastId - size + 1;
+		}
+		catch (HibernateException hEx) {
+			throw new TaskExecutionException("Can't reserve " + size + " auto_id", hEx);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	public void setWriter(ItemWriterIF<ProcessingMessageIF> writer) {
+		this.writer = writer;
+	}
+
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public void setSplitter(DwcaFileSplitter splitter) {
+		this.splitter = splitter;
+	}
+
+	/**
+	 * SQL query reserving a contiguous block of :size values of the auto_id sequence and returning the last one.
+	 * The query is executed in its own transaction. nextval and setval are not atomic: the default query (PostgreSQL)
+	 * takes a transaction level advisory lock keyed on the sequence, the query used by DwcaLineProcessor must take the
+	 * same lock.
+	 *
+	 * @param idRangeSQL
+	 */
+	public void setIdRangeSQL(String idRangeSQL) {
+		this.idRangeSQL = idRangeSQL;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Streaming DwcA chunks";
+	}
+
+	@Override
+	public void cancel() {
+		// TODO Auto-generated method stub
+	}
+}
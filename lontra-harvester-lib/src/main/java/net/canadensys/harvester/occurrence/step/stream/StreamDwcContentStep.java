@@ -1,5 +1,6 @@
 package net.canadensys.harvester.occurrence.step.stream;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -13,7 +14,10 @@ import net.canadensys.harvester.StepResult;
 import net.canadensys.harvester.exception.WriterException;
 import net.canadensys.harvester.message.ProcessingMessageIF;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpointStore;
 import net.canadensys.harvester.occurrence.message.ProcessOccurrenceMessage;
+import net.canadensys.harvester.occurrence.reader.ResumableReaderIF;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +25,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
  * Step reading a DarwinCore line, process the line, writing the processed lines at a fixed interval as ProcessingMessageIF.
+ * If a DwcaCheckpointStore is available and the reader is a ResumableReaderIF, a checkpoint is saved every
+ * checkpointInterval flushes so an interrupted import can be resumed (see DWCA_CHECKPOINT). No checkpoint is saved if
+ * the reader doesn't support it (see ResumableReaderIF.isCheckpointSupported).
  * NOT thread safe
  * 
  * @author canadensys
@@ -30,6 +37,7 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 
 	private static final Logger LOGGER = Logger.getLogger(StreamDwcContentStep.class);
 	private static final int DEFAULT_FLUSH_INTERVAL = 250;
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
 
 	// Fields from OccurrenceRawModel that are not DarwinCore fields but should be included in messages.
 	private static List<String> NON_DWC_FIELD_USED = new ArrayList<String>();
@@ -52,13 +60,23 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 	@Qualifier("lineProcessor")
 	private ItemProcessorIF<OccurrenceRawModel, OccurrenceRawModel> lineProcessor;
 
+	@Autowired(required = false)
+	private DwcaCheckpointStore checkpointStore;
+
 	private Map<SharedParameterEnum, Object> sharedParameters;
 
 	// Flush interval, number of OccurrenceRawModel until we flush it (into a JMS message)
 	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
 
+	// Checkpoint interval, number of flushes until we save a checkpoint
+	private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
 	private List<String> usedFields;
 
+	// checkpoint we are resuming from, if any
+	private DwcaCheckpoint resumeCheckpoint;
+	private Integer resourceId;
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public void preStep(Map<SharedParameterEnum, Object> sharedParameters) throws IllegalStateException {
@@ -72,6 +90,11 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 			throw new IllegalStateException("No reader defined");
 		}
 		this.sharedParameters = sharedParameters;
+		resumeCheckpoint = (DwcaCheckpoint) sharedParameters.get(SharedParameterEnum.DWCA_CHECKPOINT);
+		resourceId = (Integer) sharedParameters.get(SharedParameterEnum.RESOURCE_ID);
+		if (resumeCheckpoint != null && !(reader instanceof ResumableReaderIF)) {
+			throw new IllegalStateException("The reader can not resume from a checkpoint");
+		}
 
 		// the reader should fill DWCA_USED_TERMS
 		reader.openReader(sharedParameters);
@@ -95,7 +118,19 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 
 	@Override
 	public StepResult doStep() {
+		// records sent before the checkpoint are part of this import
 		int numberOfRecords = 0;
+		long lastAutoId = 0;
+		if (resumeCheckpoint != null) {
+			numberOfRecords = resumeCheckpoint.getNumberOfRecords();
+			lastAutoId = resumeCheckpoint.getLastAutoId();
+		}
+		boolean checkpointEnabled = checkpointStore != null && resourceId != null && reader instanceof ResumableReaderIF;
+		if (checkpointEnabled && !((ResumableReaderIF) reader).isCheckpointSupported()) {
+			LOGGER.warn("The reader can not create checkpoints (unordered read), this import can not be resumed");
+			checkpointEnabled = false;
+		}
+		int numberOfFlush = 0;
 		try {
 			ProcessOccurrenceMessage occMsg = new ProcessOccurrenceMessage(usedFields);
 
@@ -103,25 +138,34 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 			OccurrenceRawModel currRawModel = reader.read();
 			while (currRawModel != null) {
 				currRawModel = lineProcessor.process(currRawModel, sharedParameters);
+				if (currRawModel.getAuto_id() != null) {
+					lastAutoId = currRawModel.getAuto_id();
+				}
 
 				// should be done by ChunkSplitter
 				occMsg.addRawModel(currRawModel);
 				occMsg.setWhen(Calendar.getInstance().getTime().toString());
-
-				currRawModel = reader.read();
 				numberOfRecords++;
 
 				if (numberOfRecords % flushInterval == 0) {
 					writer.write(occMsg);
+					numberOfFlush++;
+					if (checkpointEnabled && numberOfFlush % checkpointInterval == 0) {
+						saveCheckpoint(lastAutoId, numberOfRecords);
+					}
 
 					occMsg = new ProcessOccurrenceMessage(usedFields);
 					occMsg.setWhen(Calendar.getInstance().getTime().toString());
 				}
+				currRawModel = reader.read();
 			}
 			// flush remaining content
 			if (occMsg.getBulkRawModel().getData().size() > 0) {
 				writer.write(occMsg);
 			}
+			if (checkpointEnabled) {
+				saveCheckpoint(lastAutoId, numberOfRecords);
+			}
 
 			System.out.println("Streaming the file took :" + (System.currentTimeMillis() - t) + " ms");
 		}
@@ -131,6 +175,24 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 		return new StepResult(numberOfRecords);
 	}
 
+	/**
+	 * Save the position of the reader, all the records read so far were sent.
+	 *
+	 * @param lastAutoId
+	 * @param numberOfRecords
+	 */
+	private void saveCheckpoint(long lastAutoId, int numberOfRecords) {
+		DwcaCheckpoint checkpoint = ((ResumableReaderIF) reader).getCheckpoint();
+		checkpoint.setLastAutoId(lastAutoId);
+		checkpoint.setNumberOfRecords(numberOfRecords);
+		try {
+			checkpointStore.save(resourceId, checkpoint);
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't save checkpoint", e);
+		}
+	}
+
 	public void setReader(ItemReaderIF<OccurrenceRawModel> reader) {
 		this.reader = reader;
 	}
@@ -147,6 +209,19 @@ public class StreamDwcContentStep extends AbstractStreamStep {
 		this.flushInterval = flushInterval;
 	}
 
+	public void setCheckpointStore(DwcaCheckpointStore checkpointStore) {
+		this.checkpointStore = checkpointStore;
+	}
+
+	/**
+	 * Number of flushes between two checkpoints.
+	 *
+	 * @param checkpointInterval
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
 	@Override
 	public String getTitle() {
 		return "Streaming DwcA content";
@@ -1,10 +1,13 @@
 package net.canadensys.harvester.occurrence.step.stream;
 
+import java.util.List;
+
 import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
 import net.canadensys.harvester.ItemProcessorIF;
 import net.canadensys.harvester.ItemReaderIF;
 import net.canadensys.harvester.ItemWriterIF;
 import net.canadensys.harvester.message.ProcessingMessageIF;
+import net.canadensys.harvester.model.BulkExtensionDataObject;
 import net.canadensys.harvester.occurrence.step.async.AsyncManageOccurrenceExtensionStep;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +15,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
  * Concrete implementation of GenericStreamProcessingStep for OccurrenceExtensionModel.
+ * The models are streamed as BulkExtensionDataObject so the terms of the extension are only sent once per message.
  * 
  * @author cgendreau
  * 
@@ -47,6 +51,15 @@ public class StreamDwcExtensionContentStep extends GenericStreamProcessingStep<O
 		super.setDwcaLineProcessor(lineProcessor);
 	}
 
+	@Override
+	protected Object toMessageContent(List<OccurrenceExtensionModel> objList) {
+		BulkExtensionDataObject bulk = new BulkExtensionDataObject();
+		for (OccurrenceExtensionModel currModel : objList) {
+			bulk.addModel(currModel);
+		}
+		return bulk;
+	}
+
 	@Override
 	public void cancel() {
 		// TODO Auto-generated method stub
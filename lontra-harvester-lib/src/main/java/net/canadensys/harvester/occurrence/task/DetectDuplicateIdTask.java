@@ -0,0 +1,170 @@
+package net.canadensys.harvester.occurrence.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.canadensys.harvester.ItemTaskIF;
+import net.canadensys.harvester.exception.TaskExecutionException;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.filter.DuplicateIdPolicy;
+import net.canadensys.harvester.occurrence.filter.DwcaIdFilter;
+import net.canadensys.harvester.occurrence.filter.IdSetIF;
+import net.canadensys.harvester.occurrence.filter.IdSetStorage;
+import net.canadensys.harvester.occurrence.filter.OpenAddressingIdSet;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveCache;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+import net.canadensys.harvester.occurrence.validation.DuplicateIdDetector;
+import net.canadensys.harvester.occurrence.validation.DuplicateIdReport;
+
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+
+/**
+ * Task detecting the core ids used by more than one row of a prepared DarwinCore Archive before it is streamed.
+ * The DuplicateIdReport is put in the shared parameters (DWCA_DUPLICATE_ID_REPORT) and the duplicated ids are handled
+ * according to the policy:
+ * FAIL (default) fails the task, EXCLUDE adds the ids to DWCA_ID_EXCLUSION_LIST (or to the exclusion of DWCA_ID_FILTER
+ * when provided) and KEEP_FIRST sets a DWCA_ID_FILTER accepting only the first record read for each duplicated id.
+ * The first record read depends on the read mode of the core (sequential or parallel) and KEEP_FIRST is not reliable
+ * when resuming from a checkpoint, the records of the previous import are not known by the filter.
+ * An archive that is still being downloaded (DWCA_PARTIAL_ARCHIVE) is not checked.
+ *
+ * @author canadensys
+ *
+ */
+public class DetectDuplicateIdTask implements ItemTaskIF {
+
+	private static final Logger LOGGER = Logger.getLogger(DetectDuplicateIdTask.class);
+	private static final int MAX_LOGGED_IDS = 10;
+
+	private DuplicateIdDetector duplicateIdDetector = new DuplicateIdDetector();
+	private DuplicateIdPolicy policy = DuplicateIdPolicy.FAIL;
+
+	/**
+	 * @param sharedParameters
+	 *            in:SharedParameterEnum.DWCA_PATH,SharedParameterEnum.DWCA_ARCHIVE_CACHE(optional),
+	 *            SharedParameterEnum.DWCA_ID_FILTER(optional),SharedParameterEnum.DWCA_ID_EXCLUSION_LIST(optional)
+	 *            out:SharedParameterEnum.DWCA_DUPLICATE_ID_REPORT,SharedParameterEnum.DWCA_ID_FILTER or
+	 *            SharedParameterEnum.DWCA_ID_EXCLUSION_LIST
+	 */
+	@Override
+	public void execute(Map<SharedParameterEnum, Object> sharedParameters) {
+		sharedParameters.remove(SharedParameterEnum.DWCA_DUPLICATE_ID_REPORT);
+		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE)) {
+			LOGGER.info("Dwc-A is still being downloaded, duplicate id detection skipped");
+			return;
+		}
+		String dwcaPath = (String) sharedParameters.get(SharedParameterEnum.DWCA_PATH);
+		if (dwcaPath == null) {
+			LOGGER.fatal("Misconfigured task : DWCA_PATH is required");
+			throw new TaskExecutionException("Misconfigured task");
+		}
+
+		File dwcaFile = new File(dwcaPath);
+		DuplicateIdReport report;
+		long start = System.currentTimeMillis();
+		try {
+			DwcaArchiveCache dwcaArchiveCache = (DwcaArchiveCache) sharedParameters.get(SharedParameterEnum.DWCA_ARCHIVE_CACHE);
+			DwcaArchiveDescriptor descriptor = (dwcaArchiveCache != null) ? dwcaArchiveCache.getDescriptor(dwcaFile)
+					: DwcaArchiveDescriptor.open(dwcaFile);
+			DwcaFileDescriptor core = descriptor.getCore();
+			if (!DuplicateIdDetector.isSupported(core)) {
+				LOGGER.warn("Ids of data file " + core.getLocation() + " can not be checked (encoding " + core.getEncoding()
+						+ ", delimiter " + core.getFieldsTerminatedBy() + ")");
+				return;
+			}
+			report = duplicateIdDetector.detect(dwcaFile, core);
+		}
+		catch (IOException e) {
+			throw new TaskExecutionException("Can't detect the duplicate ids of the DarwinCore Archive", e);
+		}
+		catch (UnsupportedArchiveException e) {
+			throw new TaskExecutionException("Can't detect the duplicate ids of the DarwinCore Archive", e);
+		}
+		LOGGER.info("Dwc-A ids checked in " + (System.currentTimeMillis() - start) + " ms: " + report);
+		sharedParameters.put(SharedParameterEnum.DWCA_DUPLICATE_ID_REPORT, report);
+		if (!report.hasDuplicates()) {
+			return;
+		}
+
+		List<String> duplicateIds = report.getDuplicateIds();
+		for (String id : duplicateIds.subList(0, Math.min(MAX_LOGGED_IDS, duplicateIds.size()))) {
+			LOGGER.warn(report.getLocation() + " duplicated id: " + id);
+		}
+		switch (policy) {
+			case EXCLUDE:
+				exclude(sharedParameters, duplicateIds);
+				break;
+			case KEEP_FIRST:
+				keepFirst(sharedParameters, duplicateIds);
+				break;
+			default:
+				throw new TaskExecutionException("Duplicate ids in DarwinCore Archive: " + report);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void exclude(Map<SharedParameterEnum, Object> sharedParameters, List<String> duplicateIds) {
+		DwcaIdFilter idFilter = (DwcaIdFilter) sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER);
+		if (idFilter != null) {
+			sharedParameters.put(SharedParameterEnum.DWCA_ID_FILTER, idFilter.withDuplicateIds(toIdSet(duplicateIds), false));
+			return;
+		}
+		Set<String> excludedIds = new LinkedHashSet<String>();
+		List<String> exclusionList = (List<String>) sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST);
+		if (exclusionList != null) {
+			excludedIds.addAll(exclusionList);
+		}
+		excludedIds.addAll(duplicateIds);
+		sharedParameters.put(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST, new ArrayList<String>(excludedIds));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void keepFirst(Map<SharedParameterEnum, Object> sharedParameters, List<String> duplicateIds) {
+		DwcaIdFilter idFilter = (DwcaIdFilter) sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER);
+		if (idFilter == null) {
+			List<String> exclusionList = (List<String>) sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST);
+			idFilter = (exclusionList != null) ? DwcaIdFilter.fromExclusionList(exclusionList) : new DwcaIdFilter(null, null);
+		}
+		// DWCA_ID_FILTER takes precedence over DWCA_ID_EXCLUSION_LIST
+		sharedParameters.put(SharedParameterEnum.DWCA_ID_FILTER, idFilter.withDuplicateIds(toIdSet(duplicateIds), true));
+	}
+
+	private IdSetIF toIdSet(List<String> ids) {
+		IdSetIF idSet = new OpenAddressingIdSet(IdSetStorage.HEAP, ids.size());
+		for (String id : ids) {
+			idSet.add(id);
+		}
+		return idSet;
+	}
+
+	/**
+	 * Set the detector used to find the duplicated ids.
+	 *
+	 * @param duplicateIdDetector
+	 */
+	public void setDuplicateIdDetector(DuplicateIdDetector duplicateIdDetector) {
+		this.duplicateIdDetector = duplicateIdDetector;
+	}
+
+	/**
+	 * What to do with the duplicated ids.
+	 * Default is FAIL.
+	 *
+	 * @param policy
+	 */
+	public void setPolicy(DuplicateIdPolicy policy) {
+		this.policy = policy;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Detecting duplicate Dwc-A ids";
+	}
+}
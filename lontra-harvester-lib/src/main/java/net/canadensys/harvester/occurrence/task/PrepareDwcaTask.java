@@ -1,29 +1,44 @@
 package net.canadensys.harvester.occurrence.task;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 import net.canadensys.harvester.ItemTaskIF;
 import net.canadensys.harvester.exception.TaskExecutionException;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
-import net.canadensys.utils.ZipUtils;
+import net.canadensys.harvester.occurrence.download.DwcaDownloader;
+import net.canadensys.harvester.occurrence.download.HttpValidatorStore;
+import net.canadensys.harvester.occurrence.download.HttpValidators;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprint;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprintStore;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+import net.canadensys.harvester.occurrence.reader.ParallelZipExtractor;
 
-import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.UrlValidator;
 import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
 
 /**
  * Task to prepare a Darwin Core Archive.
- * Preparation include : download (if necessary), unzip (if necessary), set shared variables
+ * Preparation include : download (if necessary), unzip (if necessary and enabled), set shared variables
+ * If a HttpValidatorStore is set, the download is conditional: when the server reports that the archive was not modified
+ * since the last import, DWCA_NOT_MODIFIED is set and DWCA_PATH is not. The download of an import whose records are
+ * filtered (DWCA_ID_FILTER or DWCA_ID_EXCLUSION_LIST) is never conditional.
+ * If the pipelined download is enabled (and the archive is not extracted), the task returns as soon as the entries of
+ * the archive can be read: DWCA_PATH points to the ZIP file that is still being downloaded and DWCA_PARTIAL_ARCHIVE
+ * tracks the download.
+ * If a DwcaFingerprintStore is set, the content of the archive is fingerprinted and compared with the last import of
+ * the resource: if the data did not change, DWCA_NOT_MODIFIED is set (or DWCA_METADATA_ONLY if the EML changed). If
+ * the core did not change but some extensions did, DWCA_CHANGED_EXTENSIONS lists them. The fingerprint only describes
+ * the content of the archive, it is not used when the records are filtered (DWCA_ID_FILTER or DWCA_ID_EXCLUSION_LIST).
+ * DWCA_FORCE_DOWNLOAD disables both checks.
  *
  * @author canadensys
  *
@@ -35,6 +50,13 @@ public class PrepareDwcaTask implements ItemTaskIF {
 	private static final String IPT_PREFIX = "dwca-";
 	private static final String WORKING_FOLDER = "work";
 
+	private boolean extractArchive = true;
+	private boolean pipelinedDownload = false;
+	private DwcaDownloader dwcaDownloader = new DwcaDownloader();
+	private ParallelZipExtractor zipExtractor = new ParallelZipExtractor();
+	private HttpValidatorStore validatorStore;
+	private DwcaFingerprintStore fingerprintStore;
+
 	// see setAllowDatasetShortnameExtraction method comments
 	// private boolean allowDatasetShortnameExtraction = false;
 
@@ -65,7 +87,10 @@ public class PrepareDwcaTask implements ItemTaskIF {
 
 	/**
 	 * @param sharedParameters
-	 *            out:SharedParameterEnum.DWCA_PATH,SharedParameterEnum.SOURCE_FILE_ID(if not already set)
+	 *            out:SharedParameterEnum.DWCA_PATH,SharedParameterEnum.SOURCE_FILE_ID(if not already set),
+	 *            SharedParameterEnum.DWCA_NOT_MODIFIED, SharedParameterEnum.DWCA_HTTP_VALIDATORS,
+	 *            SharedParameterEnum.DWCA_PARTIAL_ARCHIVE, SharedParameterEnum.DWCA_FINGERPRINT,
+	 *            SharedParameterEnum.DWCA_METADATA_ONLY, SharedParameterEnum.DWCA_CHANGED_EXTENSIONS
 	 */
 	@Override
 	public void execute(Map<SharedParameterEnum, Object> sharedParameters) {
@@ -73,6 +98,13 @@ public class PrepareDwcaTask implements ItemTaskIF {
 		File dwcaFile = null;
 		String dwcaIdentifier;
 		String dwcaFileLocation = extractDwcaFileLocation(sharedParameters);
+		// values from a previous execution
+		sharedParameters.remove(SharedParameterEnum.DWCA_NOT_MODIFIED);
+		sharedParameters.remove(SharedParameterEnum.DWCA_HTTP_VALIDATORS);
+		sharedParameters.remove(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE);
+		sharedParameters.remove(SharedParameterEnum.DWCA_FINGERPRINT);
+		sharedParameters.remove(SharedParameterEnum.DWCA_METADATA_ONLY);
+		sharedParameters.remove(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS);
 
 		// make sure the files exists
 		if (dwcaFileLocation != null) {
@@ -85,21 +117,32 @@ public class PrepareDwcaTask implements ItemTaskIF {
 				URL dlUrl;
 				try {
 					dlUrl = new URL(dwcaFileLocation);
-					// Get the filename as defined by Content-Disposition:filename="dwca-mt-specimens.zip"
-					String filename = dlUrl.openConnection().getHeaderField("Content-Disposition");
+					HttpValidators previousValidators = null;
+					// a filtered import is never skipped and its validators are not saved
+					boolean filtered = isFiltered(sharedParameters);
+					if (validatorStore != null && !filtered
+							&& !Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_FORCE_DOWNLOAD))) {
+						previousValidators = validatorStore.load(dwcaFileLocation);
+					}
 
-					// If the URL end point can not tell the name of the file, generate a UUID and keep the extension
-					if (StringUtils.isBlank(filename)) {
-						filename = UUID.randomUUID().toString() + "." + FilenameUtils.getExtension(dwcaFileLocation);
+					DwcaDownloader.Result result;
+					if (pipelinedDownload && !extractArchive) {
+						result = dwcaDownloader.downloadPipelined(dlUrl, workFolder.getAbsoluteFile(), previousValidators);
 					}
 					else {
-						filename = filename.replaceAll("\"", "").replace("filename=", "");
+						result = dwcaDownloader.download(dlUrl, workFolder.getAbsoluteFile(), previousValidators);
 					}
-
-					String destinationFile = workFolder.getAbsolutePath() + File.separator + filename;
-
-					downloadDwca(dlUrl, destinationFile);
-					dwcaFileLocation = destinationFile;
+					if (result.isNotModified()) {
+						sharedParameters.put(SharedParameterEnum.DWCA_NOT_MODIFIED, Boolean.TRUE);
+						return;
+					}
+					if (result.getValidators() != null && !filtered) {
+						sharedParameters.put(SharedParameterEnum.DWCA_HTTP_VALIDATORS, result.getValidators());
+					}
+					if (result.getPartialArchive() != null) {
+						sharedParameters.put(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE, result.getPartialArchive());
+					}
+					dwcaFileLocation = result.getFile().getAbsolutePath();
 				}
 				catch (MalformedURLException e) {
 					LOGGER.fatal(e);
@@ -129,10 +172,13 @@ public class PrepareDwcaTask implements ItemTaskIF {
 			dwcaIdentifier = StringUtils.removeStart(dwcaIdentifier, IPT_PREFIX);
 		}
 
-		if (FilenameUtils.isExtension(dwcaFileLocation, "zip")) {
+		if (extractArchive && FilenameUtils.isExtension(dwcaFileLocation, "zip")) {
 			String unzippedFolder = FilenameUtils.removeExtension(dwcaFileLocation);
-			if (!ZipUtils.unzipFileOrFolder(new File(dwcaFileLocation), unzippedFolder)) {
-				throw new TaskExecutionException("Error while unziping the DarwinCore Archive");
+			try {
+				zipExtractor.extract(new File(dwcaFileLocation), new File(unzippedFolder));
+			}
+			catch (IOException e) {
+				throw new TaskExecutionException("Error while unziping the DarwinCore Archive", e);
 			}
 			// use the unzipped folder
 			dwcaFileLocation = unzippedFolder;
@@ -146,49 +192,138 @@ public class PrepareDwcaTask implements ItemTaskIF {
 
 		// set the path for the Dwc-A
 		sharedParameters.put(SharedParameterEnum.DWCA_PATH, dwcaFileLocation);
+
+		if (fingerprintStore != null) {
+			checkFingerprint(sharedParameters, new File(dwcaFileLocation));
+		}
 	}
 
 	/**
-	 * Download a DarwinCore archive from a URL and save it locally.
+	 * Compute the fingerprint of the archive and compare it with the fingerprint of the last import of the resource.
+	 * An archive that is still being downloaded is not fingerprinted since it would mean waiting for the complete
+	 * download.
 	 *
-	 * @param url
-	 * @param destinationFile
-	 * @return
+	 * @param sharedParameters
+	 * @param dwcaFile
 	 */
-	private boolean downloadDwca(URL url, String destinationFile) {
-		File fl = null;
-		OutputStream os = null;
-		InputStream is = null;
-		boolean success = false;
+	private void checkFingerprint(Map<SharedParameterEnum, Object> sharedParameters, File dwcaFile) {
+		Integer resourceId = (Integer) sharedParameters.get(SharedParameterEnum.RESOURCE_ID);
+		if (resourceId == null || sharedParameters.containsKey(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE)) {
+			return;
+		}
+		// a filtered import doesn't contain all the records of the archive, the next import must not be skipped
+		if (isFiltered(sharedParameters)) {
+			LOGGER.info("Records of " + dwcaFile + " are filtered, the archive is not fingerprinted");
+			return;
+		}
+		DwcaFingerprint fingerprint;
 		try {
-			fl = new File(destinationFile);
-			os = new FileOutputStream(fl);
-			is = url.openStream();
-
-			// Download the file
-			IOUtils.copy(is, os);
-			success = true;
+			fingerprint = DwcaFingerprint.compute(dwcaFile, DwcaArchiveDescriptor.open(dwcaFile));
 		}
-		catch (Exception e) {
-			LOGGER.fatal(e);
+		catch (IOException e) {
+			LOGGER.error("Can't compute the fingerprint of " + dwcaFile, e);
+			return;
 		}
-		finally {
-			if (os != null) {
-				try {
-					os.close();
-				}
-				catch (IOException e) {
-				}
+		catch (UnsupportedArchiveException e) {
+			LOGGER.error("Can't compute the fingerprint of " + dwcaFile, e);
+			return;
+		}
+
+		DwcaFingerprint previousFingerprint = null;
+		if (!Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_FORCE_DOWNLOAD))) {
+			previousFingerprint = fingerprintStore.load(resourceId);
+		}
+		if (fingerprint.isSameData(previousFingerprint)) {
+			if (fingerprint.isSameMetadata(previousFingerprint)) {
+				LOGGER.info("Content of " + dwcaFile + " not modified since the last import");
+				sharedParameters.put(SharedParameterEnum.DWCA_NOT_MODIFIED, Boolean.TRUE);
 			}
-			if (is != null) {
-				try {
-					is.close();
-				}
-				catch (IOException e) {
-				}
+			else if (previousFingerprint.getNumberOfRecords() != null) {
+				LOGGER.info("Only the metadata of " + dwcaFile + " was modified since the last import");
+				sharedParameters.put(SharedParameterEnum.DWCA_METADATA_ONLY, Boolean.TRUE);
+				// the records are not imported again
+				fingerprint = fingerprint.withNumberOfRecords(previousFingerprint.getNumberOfRecords());
 			}
 		}
-		return success;
+		else if (fingerprint.isSameCore(previousFingerprint) && previousFingerprint.getNumberOfRecords() != null) {
+			List<String> changedExtensions = new ArrayList<String>(fingerprint.getChangedExtensions(previousFingerprint));
+			LOGGER.info("Only the extensions " + changedExtensions + " of " + dwcaFile + " were modified since the last import");
+			sharedParameters.put(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS, changedExtensions);
+			// the core records are not imported again
+			fingerprint = fingerprint.withNumberOfRecords(previousFingerprint.getNumberOfRecords());
+		}
+		sharedParameters.put(SharedParameterEnum.DWCA_FINGERPRINT, fingerprint);
+	}
+
+	/**
+	 * Check if only some records of the archive will be imported.
+	 *
+	 * @param sharedParameters
+	 * @return
+	 */
+	public static boolean isFiltered(Map<SharedParameterEnum, Object> sharedParameters) {
+		return sharedParameters.get(SharedParameterEnum.DWCA_ID_FILTER) != null
+				|| sharedParameters.get(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST) != null;
+	}
+
+	/**
+	 * Should a zipped DarwinCore archive be extracted before reading it?
+	 * If false, DWCA_PATH points to the ZIP file and the readers stream the data files from the ZIP entries.
+	 * Default is true.
+	 *
+	 * @param extractArchive
+	 */
+	public void setExtractArchive(boolean extractArchive) {
+		this.extractArchive = extractArchive;
+	}
+
+	/**
+	 * Should the readers start reading a zipped archive while it is downloaded?
+	 * Only used when the archive is not extracted (see setExtractArchive) and if the server supports range requests.
+	 * Default is false.
+	 *
+	 * @param pipelinedDownload
+	 */
+	public void setPipelinedDownload(boolean pipelinedDownload) {
+		this.pipelinedDownload = pipelinedDownload;
+	}
+
+	/**
+	 * Set the downloader used when the archive location is a URL.
+	 *
+	 * @param dwcaDownloader
+	 */
+	public void setDwcaDownloader(DwcaDownloader dwcaDownloader) {
+		this.dwcaDownloader = dwcaDownloader;
+	}
+
+	/**
+	 * Set the extractor used when the archive is extracted (see setExtractArchive).
+	 *
+	 * @param zipExtractor
+	 */
+	public void setZipExtractor(ParallelZipExtractor zipExtractor) {
+		this.zipExtractor = zipExtractor;
+	}
+
+	/**
+	 * Set the store of the HTTP validators of the last imported archives. If null (default), archives are always
+	 * downloaded.
+	 *
+	 * @param validatorStore
+	 */
+	public void setValidatorStore(HttpValidatorStore validatorStore) {
+		this.validatorStore = validatorStore;
+	}
+
+	/**
+	 * Set the store of the fingerprints of the last imported archives. If null (default), archives are not
+	 * fingerprinted.
+	 *
+	 * @param fingerprintStore
+	 */
+	public void setFingerprintStore(DwcaFingerprintStore fingerprintStore) {
+		this.fingerprintStore = fingerprintStore;
 	}
 
 	// public boolean isAllowDatasetShortnameExtraction() {
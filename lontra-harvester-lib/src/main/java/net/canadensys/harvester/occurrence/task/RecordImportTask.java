@@ -1,5 +1,6 @@
 package net.canadensys.harvester.occurrence.task;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
 
@@ -8,6 +9,10 @@ import net.canadensys.dataportal.occurrence.model.ImportLogModel;
 import net.canadensys.harvester.ItemTaskIF;
 import net.canadensys.harvester.exception.TaskExecutionException;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.download.HttpValidatorStore;
+import net.canadensys.harvester.occurrence.download.HttpValidators;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprint;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprintStore;
 
 import org.apache.log4j.Logger;
 import org.hibernate.Session;
@@ -18,6 +23,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Task to record(save) the import for traceability
+ * If a DwcaFingerprintStore is defined, the fingerprint of the imported archive (DWCA_FINGERPRINT) is saved with the
+ * number of records and, if a HttpValidatorStore is defined, the HTTP validators of the downloaded archive
+ * (DWCA_HTTP_VALIDATORS) are saved. Both are skipped when the records were filtered (DWCA_ID_FILTER or
+ * DWCA_ID_EXCLUSION_LIST) since the next import of the archive must not be skipped.
  *
  * @author canadensys
  *
@@ -29,12 +38,20 @@ public class RecordImportTask implements ItemTaskIF {
 	@Qualifier(value = "publicSessionFactory")
 	private SessionFactory sessionFactory;
 
+	@Autowired(required = false)
+	private DwcaFingerprintStore fingerprintStore;
+
+	@Autowired(required = false)
+	private HttpValidatorStore validatorStore;
+
 	// get log4j handler
 	private static final Logger LOGGER = Logger.getLogger(RecordImportTask.class);
 
 	/**
 	 * @param sharedParameters
-	 *            SharedParameterEnum.NUMBER_OF_RECORDS, SharedParameterEnum.RESOURCE_MODEL required
+	 *            SharedParameterEnum.NUMBER_OF_RECORDS, SharedParameterEnum.RESOURCE_MODEL required,
+	 *            SharedParameterEnum.DWCA_FINGERPRINT optional, SharedParameterEnum.DWCA_HTTP_VALIDATORS optional,
+	 *            SharedParameterEnum.DWCA_ID_FILTER optional, SharedParameterEnum.DWCA_ID_EXCLUSION_LIST optional
 	 */
 	@Transactional("publicTransactionManager")
 	@Override
@@ -56,12 +73,43 @@ public class RecordImportTask implements ItemTaskIF {
 		importLogModel.setUpdated_by(CURRENT_USER);
 		importLogModel.setEvent_end_date_time(new Date());
 		session.save(importLogModel);
+
+		// a filtered import doesn't contain all the records of the archive, the next import must not be skipped
+		if (PrepareDwcaTask.isFiltered(sharedParameters)) {
+			return;
+		}
+		DwcaFingerprint fingerprint = (DwcaFingerprint) sharedParameters.get(SharedParameterEnum.DWCA_FINGERPRINT);
+		if (fingerprintStore != null && fingerprint != null) {
+			try {
+				fingerprintStore.save(resourceModel.getId(), fingerprint.withNumberOfRecords(numberOfRecords));
+			}
+			catch (IOException e) {
+				LOGGER.error("Can't save fingerprint " + fingerprint, e);
+			}
+		}
+		HttpValidators validators = (HttpValidators) sharedParameters.get(SharedParameterEnum.DWCA_HTTP_VALIDATORS);
+		if (validatorStore != null && validators != null) {
+			try {
+				validatorStore.save(validators);
+			}
+			catch (IOException e) {
+				LOGGER.error("Can't save HTTP validators " + validators, e);
+			}
+		}
 	}
 
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
 	}
 
+	public void setFingerprintStore(DwcaFingerprintStore fingerprintStore) {
+		this.fingerprintStore = fingerprintStore;
+	}
+
+	public void setValidatorStore(HttpValidatorStore validatorStore) {
+		this.validatorStore = validatorStore;
+	}
+
 	@Override
 	public String getTitle() {
 		return "Recording import";
@@ -8,6 +8,7 @@ import net.canadensys.harvester.ItemTaskIF;
 import net.canadensys.harvester.config.DatabaseConfig;
 import net.canadensys.harvester.exception.TaskExecutionException;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprint;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -21,6 +22,11 @@ import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Task to move all the records for a specific sourcefileid from buffer to public database schema
+ * If DWCA_METADATA_ONLY is set, only the resource information is moved and the number of records is taken from
+ * DWCA_FINGERPRINT.
+ * If DWCA_CHANGED_EXTENSIONS is set, the resource information and the records of the listed extensions are moved, the
+ * occurrences are kept (only hasmedia is updated if the Multimedia extension changed) and the number of records is taken
+ * from DWCA_FINGERPRINT.
  *
  * @author canadensys
  *
@@ -29,6 +35,9 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 	// get log4j handler
 	private static final Logger LOGGER = Logger.getLogger(ReplaceOldOccurrenceTask.class);
 
+	// ext_type of the extension setting occurrence.hasmedia, see computeMultimediaDataTask
+	private static final String MULTIMEDIA_EXT_TYPE = "Multimedia";
+
 	@Autowired
 	private DatabaseConfig databaseConfig;
 
@@ -38,7 +47,8 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 
 	/**
 	 * @param sharedParameters
-	 *            SharedParameterEnum.SOURCE_FILE_ID required
+	 *            SharedParameterEnum.SOURCE_FILE_ID required, SharedParameterEnum.DWCA_FINGERPRINT required if
+	 *            SharedParameterEnum.DWCA_METADATA_ONLY or SharedParameterEnum.DWCA_CHANGED_EXTENSIONS is set
 	 */
 	@Transactional("publicTransactionManager")
 	@Override
@@ -55,6 +65,28 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 
 		String sourceFileId = resourceModel.getSourcefileid();
 
+		@SuppressWarnings("unchecked")
+		List<String> changedExtensions = (List<String>) sharedParameters.get(SharedParameterEnum.DWCA_CHANGED_EXTENSIONS);
+		if (Boolean.TRUE.equals(sharedParameters.get(SharedParameterEnum.DWCA_METADATA_ONLY)) || changedExtensions != null) {
+			DwcaFingerprint fingerprint = (DwcaFingerprint) sharedParameters.get(SharedParameterEnum.DWCA_FINGERPRINT);
+			if (fingerprint == null || fingerprint.getNumberOfRecords() == null) {
+				LOGGER.fatal("Misconfigured task : fingerprint with the number of records is required to only replace the resource information");
+				throw new TaskExecutionException("Misconfigured ReplaceOldOccurrenceTask");
+			}
+			try {
+				if (changedExtensions != null) {
+					replaceExtensions(session, sourceFileId, resourceID, changedExtensions);
+				}
+				replaceResourceInformation(session, resourceModel, resourceID);
+			}
+			catch (HibernateException hEx) {
+				LOGGER.fatal("Can't replace previous resource information in public schema.", hEx);
+				throw new TaskExecutionException("Can't replace previous resource information in public schema.");
+			}
+			sharedParameters.put(SharedParameterEnum.NUMBER_OF_RECORDS, fingerprint.getNumberOfRecords());
+			return;
+		}
+
 		/**
 		 * Important: observe if the fields are in the same order and have the same
 		 * amount of fields in both public and buffer schema to avoid errors
@@ -73,14 +105,6 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 			query.setInteger(0, resourceID);
 			query.executeUpdate();
 
-			query = session.createSQLQuery("DELETE FROM contact WHERE resource_metadata_fkey=?");
-			query.setInteger(0, resourceID);
-			query.executeUpdate();
-
-			query = session.createSQLQuery("DELETE FROM resource_metadata WHERE gbif_package_id=?");
-			query.setString(0, resourceModel.getGbif_package_id());
-			query.executeUpdate();
-
 			// get public occurrence table columns names
 			String occurrenceTableColumns = StringUtils.join(getColumnListForTable(session, "public", "occurrence"), ",");
 			// copy records from buffer
@@ -102,13 +126,6 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 			query.setInteger(0, resourceID);
 			query.executeUpdate();
 
-			query = session.createSQLQuery("INSERT INTO resource_metadata (SELECT * FROM buffer.resource_metadata WHERE gbif_package_id = ?)");
-			query.setString(0, resourceModel.getGbif_package_id());
-			query.executeUpdate();
-			query = session.createSQLQuery("INSERT INTO contact (SELECT * FROM buffer.contact WHERE resource_metadata_fkey=?)");
-			query.setInteger(0, resourceID);
-			query.executeUpdate();
-
 			// empty buffer schema for this sourcefileid
 			query = session.createSQLQuery("DELETE FROM buffer.occurrence WHERE sourcefileid=?");
 			query.setString(0, sourceFileId);
@@ -120,13 +137,7 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 			query.setInteger(0, resourceID);
 			query.executeUpdate();
 
-			// empty buffer schema for resource_uuid
-			query = session.createSQLQuery("DELETE FROM buffer.contact WHERE resource_metadata_fkey = ?");
-			query.setInteger(0, resourceID);
-			query.executeUpdate();
-			query = session.createSQLQuery("DELETE FROM buffer.resource_metadata WHERE gbif_package_id=?");
-			query.setString(0, resourceModel.getGbif_package_id());
-			query.executeUpdate();
+			replaceResourceInformation(session, resourceModel, resourceID);
 
 			sharedParameters.put(SharedParameterEnum.NUMBER_OF_RECORDS, numberOfRecords);
 		}
@@ -136,6 +147,76 @@ public class ReplaceOldOccurrenceTask implements ItemTaskIF {
 		}
 	}
 
+	/**
+	 * Replace the records of some extensions of the public schema by the ones of the buffer schema.
+	 *
+	 * @param session
+	 * @param sourceFileId
+	 * @param resourceID
+	 * @param extensionTypes
+	 *            ext_type of the extensions to replace
+	 */
+	private void replaceExtensions(Session session, String sourceFileId, Integer resourceID, List<String> extensionTypes) {
+		for (String extensionType : extensionTypes) {
+			SQLQuery query = session.createSQLQuery("DELETE FROM occurrence_extension WHERE resource_id=? AND ext_type=?");
+			query.setInteger(0, resourceID);
+			query.setString(1, extensionType);
+			query.executeUpdate();
+
+			query = session
+					.createSQLQuery("INSERT INTO occurrence_extension (SELECT * FROM buffer.occurrence_extension WHERE resource_id=? AND ext_type=?)");
+			query.setInteger(0, resourceID);
+			query.setString(1, extensionType);
+			query.executeUpdate();
+		}
+		// the other extensions are not in the buffer schema
+		SQLQuery query = session.createSQLQuery("DELETE FROM buffer.occurrence_extension WHERE resource_id=?");
+		query.setInteger(0, resourceID);
+		query.executeUpdate();
+
+		if (extensionTypes.contains(MULTIMEDIA_EXT_TYPE)) {
+			query = session.createSQLQuery("UPDATE occurrence AS occ SET hasmedia = EXISTS(SELECT dwca_id FROM occurrence_extension "
+					+ "WHERE dwca_id = occ.dwca_id AND resource_id = ? AND ext_type = ?) WHERE sourcefileid=?");
+			query.setInteger(0, resourceID);
+			query.setString(1, MULTIMEDIA_EXT_TYPE);
+			query.setString(2, sourceFileId);
+			query.executeUpdate();
+		}
+	}
+
+	/**
+	 * Replace the resource information (resource_metadata and contact) of the public schema by the one of the buffer
+	 * schema.
+	 *
+	 * @param session
+	 * @param resourceModel
+	 * @param resourceID
+	 */
+	private void replaceResourceInformation(Session session, DwcaResourceModel resourceModel, Integer resourceID) {
+		SQLQuery query = session.createSQLQuery("DELETE FROM contact WHERE resource_metadata_fkey=?");
+		query.setInteger(0, resourceID);
+		query.executeUpdate();
+
+		query = session.createSQLQuery("DELETE FROM resource_metadata WHERE gbif_package_id=?");
+		query.setString(0, resourceModel.getGbif_package_id());
+		query.executeUpdate();
+
+		query = session.createSQLQuery("INSERT INTO resource_metadata (SELECT * FROM buffer.resource_metadata WHERE gbif_package_id = ?)");
+		query.setString(0, resourceModel.getGbif_package_id());
+		query.executeUpdate();
+		query = session.createSQLQuery("INSERT INTO contact (SELECT * FROM buffer.contact WHERE resource_metadata_fkey=?)");
+		query.setInteger(0, resourceID);
+		query.executeUpdate();
+
+		// empty buffer schema for resource_uuid
+		query = session.createSQLQuery("DELETE FROM buffer.contact WHERE resource_metadata_fkey = ?");
+		query.setInteger(0, resourceID);
+		query.executeUpdate();
+		query = session.createSQLQuery("DELETE FROM buffer.resource_metadata WHERE gbif_package_id=?");
+		query.setString(0, resourceModel.getGbif_package_id());
+		query.executeUpdate();
+	}
+
 	/**
 	 * Get the name of all columns of a table. The main purpose is to ensure correct colum order when moving
 	 * from buffer to public schema.
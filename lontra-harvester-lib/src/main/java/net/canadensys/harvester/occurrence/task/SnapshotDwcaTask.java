@@ -0,0 +1,133 @@
+package net.canadensys.harvester.occurrence.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import net.canadensys.harvester.ItemTaskIF;
+import net.canadensys.harvester.exception.TaskExecutionException;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.fingerprint.DwcaFingerprint;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveCache;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+import net.canadensys.harvester.occurrence.reader.DwcaSnapshotBuilder;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshot;
+import net.canadensys.harvester.occurrence.snapshot.DwcaSnapshotStore;
+
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+
+/**
+ * Task providing a columnar binary snapshot of the data files of a prepared DarwinCore Archive (DWCA_SNAPSHOT), the
+ * readers will then read the rows from the snapshot instead of parsing the data files.
+ * Snapshots are kept by resource and identified by the data hash of the archive (DWCA_FINGERPRINT, computed if not
+ * provided): the snapshot is created on the first import of an archive and reused by the following imports of the same
+ * data (retries, forced imports, configuration or processing changes).
+ * The snapshot is an optimization, if it can't be created the data files are read.
+ * An archive that is still being downloaded (DWCA_PARTIAL_ARCHIVE) is not snapshotted.
+ *
+ * @author canadensys
+ *
+ */
+public class SnapshotDwcaTask implements ItemTaskIF {
+
+	private static final Logger LOGGER = Logger.getLogger(SnapshotDwcaTask.class);
+
+	private DwcaSnapshotStore snapshotStore;
+	private DwcaSnapshotBuilder snapshotBuilder = new DwcaSnapshotBuilder();
+
+	/**
+	 * @param sharedParameters
+	 *            in:SharedParameterEnum.DWCA_PATH,SharedParameterEnum.RESOURCE_ID,
+	 *            SharedParameterEnum.DWCA_FINGERPRINT(optional),SharedParameterEnum.DWCA_ARCHIVE_CACHE(optional)
+	 *            out:SharedParameterEnum.DWCA_SNAPSHOT
+	 */
+	@Override
+	public void execute(Map<SharedParameterEnum, Object> sharedParameters) {
+		sharedParameters.remove(SharedParameterEnum.DWCA_SNAPSHOT);
+		if (snapshotStore == null) {
+			LOGGER.fatal("Misconfigured task : snapshotStore is required");
+			throw new TaskExecutionException("Misconfigured task");
+		}
+		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE)) {
+			LOGGER.info("Dwc-A is still being downloaded, snapshot skipped");
+			return;
+		}
+		String dwcaPath = (String) sharedParameters.get(SharedParameterEnum.DWCA_PATH);
+		Integer resourceId = (Integer) sharedParameters.get(SharedParameterEnum.RESOURCE_ID);
+		if (dwcaPath == null || resourceId == null) {
+			LOGGER.fatal("Misconfigured task : DWCA_PATH and RESOURCE_ID are required");
+			throw new TaskExecutionException("Misconfigured task");
+		}
+
+		File dwcaFile = new File(dwcaPath);
+		DwcaSnapshot snapshot = null;
+		try {
+			DwcaArchiveDescriptor descriptor = DwcaArchiveCache.getDescriptor(sharedParameters, dwcaFile);
+			DwcaFingerprint fingerprint = (DwcaFingerprint) sharedParameters.get(SharedParameterEnum.DWCA_FINGERPRINT);
+			if (fingerprint == null) {
+				fingerprint = DwcaFingerprint.compute(dwcaFile, descriptor);
+			}
+			snapshot = snapshotStore.load(resourceId, fingerprint.getDataHash());
+			if (snapshot != null) {
+				LOGGER.info("Reading the rows of " + dwcaFile + " from " + snapshot);
+			}
+			else {
+				snapshot = createSnapshot(resourceId, fingerprint.getDataHash(), dwcaFile, descriptor);
+			}
+		}
+		catch (IOException e) {
+			LOGGER.error("Can't create the snapshot of " + dwcaFile + ", reading the data files", e);
+		}
+		catch (UnsupportedArchiveException e) {
+			LOGGER.error("Can't create the snapshot of " + dwcaFile + ", reading the data files", e);
+		}
+
+		if (snapshot != null) {
+			sharedParameters.put(SharedParameterEnum.DWCA_SNAPSHOT, snapshot);
+		}
+	}
+
+	private DwcaSnapshot createSnapshot(Integer resourceId, String dataHash, File dwcaFile, DwcaArchiveDescriptor descriptor)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		DwcaSnapshot snapshot = snapshotStore.create(resourceId, dataHash);
+		try {
+			snapshotBuilder.build(dwcaFile, descriptor, snapshot);
+			snapshot = snapshotStore.save(resourceId, snapshot);
+		}
+		catch (IOException e) {
+			snapshotStore.discard(snapshot);
+			throw e;
+		}
+		catch (RuntimeException e) {
+			snapshotStore.discard(snapshot);
+			throw e;
+		}
+		LOGGER.info("Snapshot of " + dwcaFile + " created in " + (System.currentTimeMillis() - start) + " ms: " + snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Set the store of the snapshots, required.
+	 *
+	 * @param snapshotStore
+	 */
+	public void setSnapshotStore(DwcaSnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	/**
+	 * Set the builder used to read the data files when a snapshot is created.
+	 *
+	 * @param snapshotBuilder
+	 */
+	public void setSnapshotBuilder(DwcaSnapshotBuilder snapshotBuilder) {
+		this.snapshotBuilder = snapshotBuilder;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Snapshotting dwca";
+	}
+}
@@ -0,0 +1,148 @@
+package net.canadensys.harvester.occurrence.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.canadensys.harvester.ItemTaskIF;
+import net.canadensys.harvester.exception.TaskExecutionException;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveCache;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+import net.canadensys.harvester.occurrence.validation.DwcaFileScanner;
+import net.canadensys.harvester.occurrence.validation.DwcaFileStatistics;
+import net.canadensys.harvester.occurrence.validation.DwcaValidationReport;
+
+import org.apache.log4j.Logger;
+import org.gbif.dwca.io.UnsupportedArchiveException;
+
+/**
+ * Task scanning all the data files of a prepared DarwinCore Archive before it is streamed: rows are counted, the number
+ * of columns is checked against meta.xml, empty ids, duplicate core ids and invalid characters are detected and the
+ * fill rate of each column is computed.
+ * The DwcaValidationReport is put in the shared parameters (DWCA_VALIDATION_REPORT). If failOnError is true (default),
+ * an archive with errors fails the task before anything is sent to the processing nodes.
+ * Duplicate core ids are not checked when records are filtered (DWCA_ID_FILTER or DWCA_ID_EXCLUSION_LIST), they are
+ * then expected to be handled by the filter (see DetectDuplicateIdTask).
+ * An archive that is still being downloaded (DWCA_PARTIAL_ARCHIVE) is not validated.
+ *
+ * @author canadensys
+ *
+ */
+public class ValidateDwcaTask implements ItemTaskIF {
+
+	private static final Logger LOGGER = Logger.getLogger(ValidateDwcaTask.class);
+
+	private DwcaFileScanner dwcaFileScanner = new DwcaFileScanner();
+	private boolean failOnError = true;
+
+	/**
+	 * @param sharedParameters
+	 *            in:SharedParameterEnum.DWCA_PATH,SharedParameterEnum.DWCA_ARCHIVE_CACHE(optional)
+	 *            out:SharedParameterEnum.DWCA_VALIDATION_REPORT
+	 */
+	@Override
+	public void execute(Map<SharedParameterEnum, Object> sharedParameters) {
+		sharedParameters.remove(SharedParameterEnum.DWCA_VALIDATION_REPORT);
+		if (sharedParameters.containsKey(SharedParameterEnum.DWCA_PARTIAL_ARCHIVE)) {
+			LOGGER.info("Dwc-A is still being downloaded, validation skipped");
+			return;
+		}
+		String dwcaPath = (String) sharedParameters.get(SharedParameterEnum.DWCA_PATH);
+		if (dwcaPath == null) {
+			LOGGER.fatal("Misconfigured task : DWCA_PATH is required");
+			throw new TaskExecutionException("Misconfigured task");
+		}
+
+		File dwcaFile = new File(dwcaPath);
+		DwcaValidationReport report;
+		long start = System.currentTimeMillis();
+		try {
+			DwcaArchiveCache dwcaArchiveCache = (DwcaArchiveCache) sharedParameters.get(SharedParameterEnum.DWCA_ARCHIVE_CACHE);
+			DwcaArchiveDescriptor descriptor = (dwcaArchiveCache != null) ? dwcaArchiveCache.getDescriptor(dwcaFile)
+					: DwcaArchiveDescriptor.open(dwcaFile);
+			boolean checkDuplicateIds = !sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_FILTER)
+					&& !sharedParameters.containsKey(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST);
+			DwcaFileStatistics core = scan(dwcaFile, descriptor.getCore(), checkDuplicateIds);
+			List<DwcaFileStatistics> extensions = new ArrayList<DwcaFileStatistics>();
+			DwcaFileStatistics extension;
+			for (DwcaFileDescriptor extensionDescriptor : descriptor.getExtensions()) {
+				extension = scan(dwcaFile, extensionDescriptor, false);
+				if (extension != null) {
+					extensions.add(extension);
+				}
+			}
+			report = new DwcaValidationReport(core, extensions);
+		}
+		catch (IOException e) {
+			throw new TaskExecutionException("Can't validate the DarwinCore Archive", e);
+		}
+		catch (UnsupportedArchiveException e) {
+			throw new TaskExecutionException("Can't validate the DarwinCore Archive", e);
+		}
+		LOGGER.info("Dwc-A validated in " + (System.currentTimeMillis() - start) + " ms: " + report);
+		for (DwcaFileStatistics statistics : report.getAllStatistics()) {
+			logStatistics(statistics);
+		}
+
+		sharedParameters.put(SharedParameterEnum.DWCA_VALIDATION_REPORT, report);
+		if (report.hasErrors()) {
+			if (failOnError) {
+				throw new TaskExecutionException("Invalid DarwinCore Archive: " + report);
+			}
+			LOGGER.warn("Invalid DarwinCore Archive: " + report);
+		}
+	}
+
+	/**
+	 * @return statistics of the data file or null if it can not be scanned
+	 */
+	private DwcaFileStatistics scan(File dwcaFile, DwcaFileDescriptor descriptor, boolean checkDuplicateIds) throws IOException {
+		if (!DwcaFileScanner.isSupported(descriptor)) {
+			LOGGER.warn("Data file " + descriptor.getLocation() + " can not be validated (encoding " + descriptor.getEncoding()
+					+ ", delimiter " + descriptor.getFieldsTerminatedBy() + ")");
+			return null;
+		}
+		return dwcaFileScanner.scan(dwcaFile, descriptor, checkDuplicateIds);
+	}
+
+	private void logStatistics(DwcaFileStatistics statistics) {
+		for (String error : statistics.getErrorSamples()) {
+			LOGGER.warn(statistics.getLocation() + " " + error);
+		}
+		if (LOGGER.isDebugEnabled()) {
+			String[] headers = statistics.getHeaders();
+			for (int i = 0; i < headers.length; i++) {
+				LOGGER.debug(statistics.getLocation() + " " + headers[i] + " fill rate: "
+						+ String.format("%.1f%%", statistics.getFillRate(i) * 100));
+			}
+		}
+	}
+
+	/**
+	 * Set the scanner used to validate the data files.
+	 *
+	 * @param dwcaFileScanner
+	 */
+	public void setDwcaFileScanner(DwcaFileScanner dwcaFileScanner) {
+		this.dwcaFileScanner = dwcaFileScanner;
+	}
+
+	/**
+	 * Should an archive with errors fail the task? If false, the errors are only logged.
+	 * Default is true.
+	 *
+	 * @param failOnError
+	 */
+	public void setFailOnError(boolean failOnError) {
+		this.failOnError = failOnError;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Validating dwca";
+	}
+}
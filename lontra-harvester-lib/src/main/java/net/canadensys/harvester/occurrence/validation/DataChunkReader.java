@@ -0,0 +1,107 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Split the stream of a data file in chunks of complete lines, skipping the byte order mark and the header lines.
+ * Only encodings where the byte '\n' always represents a line feed are supported.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+class DataChunkReader {
+
+	private static final byte LF = '\n';
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	private final InputStream is;
+	private final int headerLinesToSkip;
+	private final int chunkSize;
+	private boolean firstChunk = true;
+	private byte[] carry = new byte[0];
+	private boolean eof = false;
+
+	/**
+	 *
+	 * @param is
+	 *            stream of the data file, not closed by this class
+	 * @param ignoreHeaderLines
+	 *            number of lines to skip at the beginning of the stream
+	 * @param chunkSize
+	 *            approximate size (in bytes) of each chunk, a chunk is larger when a line is longer than this size
+	 */
+	DataChunkReader(InputStream is, int ignoreHeaderLines, int chunkSize) {
+		this.is = is;
+		this.headerLinesToSkip = ignoreHeaderLines;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return next chunk or null at the end of the stream
+	 */
+	byte[] next() throws IOException {
+		while (!eof) {
+			byte[] buffer = Arrays.copyOf(carry, Math.max(chunkSize, carry.length * 2));
+			int length = carry.length;
+			int read;
+			while (length < buffer.length && (read = is.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+			}
+			eof = (length < buffer.length);
+
+			int start = firstChunk ? skipHeader(buffer, length) : 0;
+			if (start < 0) {
+				// the header is longer than the buffer
+				carry = Arrays.copyOf(buffer, length);
+				continue;
+			}
+			firstChunk = false;
+			int end = length;
+			if (!eof) {
+				end = lastIndexOf(buffer, start, length) + 1;
+				if (end == 0) {
+					// a single line longer than the buffer
+					carry = Arrays.copyOfRange(buffer, start, length);
+					continue;
+				}
+			}
+			carry = Arrays.copyOfRange(buffer, end, length);
+			if (end > start) {
+				return Arrays.copyOfRange(buffer, start, end);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return position of the first data line or -1 if the header lines are not complete
+	 */
+	private int skipHeader(byte[] buffer, int length) {
+		int position = 0;
+		if (length >= UTF8_BOM.length && buffer[0] == UTF8_BOM[0] && buffer[1] == UTF8_BOM[1] && buffer[2] == UTF8_BOM[2]) {
+			position = UTF8_BOM.length;
+		}
+		for (int i = 0; i < headerLinesToSkip; i++) {
+			while (position < length && buffer[position] != LF) {
+				position++;
+			}
+			if (position == length && !eof) {
+				return -1;
+			}
+			position = Math.min(position + 1, length);
+		}
+		return position;
+	}
+
+	private int lastIndexOf(byte[] buffer, int start, int length) {
+		for (int i = length - 1; i >= start; i--) {
+			if (buffer[i] == LF) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
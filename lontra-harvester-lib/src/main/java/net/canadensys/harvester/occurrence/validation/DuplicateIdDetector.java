@@ -0,0 +1,535 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveSupport;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Find the identifiers used by more than one row of a core data file, without keeping the identifiers in memory.
+ * The first pass hashes the bytes of the id column (64 bits) and sorts the hashes to find the ones seen more than
+ * once. When there are more than maxHashesInMemory rows, the hashes are spilled to temporary files partitioned on their
+ * first bits and each partition is sorted separately. Only when some hashes are repeated, a second pass decodes the
+ * identifiers of those hashes to keep the real duplicates (different identifiers can share a hash).
+ * Like DwcaFileScanner, the data file is read in chunks scanned on the bytes by a bounded pool and rows without
+ * identifier are ignored.
+ * This class is thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DuplicateIdDetector {
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+	public static final int DEFAULT_MAX_HASHES_IN_MEMORY = 8 * 1024 * 1024;
+
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final int PARTITION_BITS = 6;
+	private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+	private static final String TEMP_FILE_PREFIX = "lontra-idhash";
+
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int maxHashesInMemory = DEFAULT_MAX_HASHES_IN_MEMORY;
+	private File tempFolder = null;
+
+	/**
+	 * Check if the identifiers of a data file can be checked.
+	 *
+	 * @param descriptor
+	 * @return
+	 */
+	public static boolean isSupported(DwcaFileDescriptor descriptor) {
+		return DwcaFileScanner.isSupported(descriptor) && descriptor.getIdIndex() >= 0;
+	}
+
+	/**
+	 * Find the duplicated identifiers of a data file.
+	 *
+	 * @param dwcaFile
+	 *            archive folder or ZIP file
+	 * @param descriptor
+	 *            data file to check (usually the core), must be supported (see {@link #isSupported(DwcaFileDescriptor)})
+	 * @return
+	 * @throws IOException
+	 */
+	public DuplicateIdReport detect(File dwcaFile, final DwcaFileDescriptor descriptor) throws IOException {
+		if (!isSupported(descriptor)) {
+			throw new IllegalArgumentException("Identifiers of data file " + descriptor.getLocation() + " can not be checked");
+		}
+		final HashCollector hashes = new HashCollector();
+		final long[] numberOfRows = new long[1];
+		final long[] candidates;
+		try {
+			processChunks(dwcaFile, descriptor, new ChunkHandler<HashChunkResult>() {
+				@Override
+				Callable<HashChunkResult> newTask(byte[] chunk) {
+					return new HashChunkTask(chunk, descriptor);
+				}
+
+				@Override
+				void merge(HashChunkResult result) throws IOException {
+					numberOfRows[0] += result.count;
+					for (int i = 0; i < result.count; i++) {
+						hashes.add(result.hashes[i]);
+					}
+				}
+			});
+			candidates = hashes.findRepeatedHashes();
+		}
+		finally {
+			hashes.close();
+		}
+		if (candidates.length == 0) {
+			return new DuplicateIdReport(descriptor.getLocation(), numberOfRows[0], new ArrayList<String>(), 0);
+		}
+
+		// decode the identifiers of the repeated hashes, in file order
+		final Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		processChunks(dwcaFile, descriptor, new ChunkHandler<List<String>>() {
+			@Override
+			Callable<List<String>> newTask(byte[] chunk) {
+				return new CandidateChunkTask(chunk, descriptor, candidates);
+			}
+
+			@Override
+			void merge(List<String> ids) {
+				Integer count;
+				for (String id : ids) {
+					count = counts.get(id);
+					counts.put(id, (count == null) ? 1 : count + 1);
+				}
+			}
+		});
+		List<String> duplicateIds = new ArrayList<String>();
+		long numberOfDuplicateRows = 0;
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() > 1) {
+				duplicateIds.add(entry.getKey());
+				numberOfDuplicateRows += entry.getValue() - 1;
+			}
+		}
+		return new DuplicateIdReport(descriptor.getLocation(), numberOfRows[0], duplicateIds, numberOfDuplicateRows);
+	}
+
+	/**
+	 * Read the data file in chunks, run a task per chunk on a bounded pool and merge the results in file order.
+	 */
+	private <T> void processChunks(File dwcaFile, DwcaFileDescriptor descriptor, ChunkHandler<T> handler) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(parallelism, 1));
+		LinkedList<Future<T>> inFlight = new LinkedList<Future<T>>();
+		int maxChunksInFlight = Math.max(parallelism, 1) * 2;
+		InputStream is = DwcaArchiveSupport.openDataStream(dwcaFile, descriptor);
+		try {
+			DataChunkReader chunkReader = new DataChunkReader(is, descriptor.getIgnoreHeaderLines(), chunkSize);
+			byte[] chunk;
+			while ((chunk = chunkReader.next()) != null) {
+				if (inFlight.size() >= maxChunksInFlight) {
+					handler.merge(inFlight.removeFirst().get());
+				}
+				inFlight.add(executor.submit(handler.newTask(chunk)));
+			}
+			while (!inFlight.isEmpty()) {
+				handler.merge(inFlight.removeFirst().get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Detection of duplicate ids in " + descriptor.getLocation() + " interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Can't read the ids of " + descriptor.getLocation(), e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+			is.close();
+		}
+	}
+
+	/**
+	 * 64 bits hash of the bytes of an identifier (FNV-1a followed by the MurmurHash3 finalizer so all the bits, including
+	 * the ones used for partitioning, are well distributed).
+	 */
+	static long hash(byte[] bytes, int start, int end) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++) {
+			h ^= bytes[i] & 0xFF;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Number of threads reading the chunks.
+	 * Default is 4.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Approximate size (in bytes) of each chunk.
+	 * Default is 4MB.
+	 *
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Maximum number of hashes (8 bytes each) kept in memory before they are spilled to temporary files.
+	 * Default is 8M.
+	 *
+	 * @param maxHashesInMemory
+	 */
+	public void setMaxHashesInMemory(int maxHashesInMemory) {
+		this.maxHashesInMemory = maxHashesInMemory;
+	}
+
+	/**
+	 * Folder of the temporary files, the default temporary folder is used if null.
+	 *
+	 * @param tempFolder
+	 */
+	public void setTempFolder(File tempFolder) {
+		this.tempFolder = tempFolder;
+	}
+
+	private static abstract class ChunkHandler<T> {
+		abstract Callable<T> newTask(byte[] chunk);
+
+		abstract void merge(T result) throws IOException;
+	}
+
+	/**
+	 * Hashes of the identifiers of a chunk.
+	 */
+	private static class HashChunkResult {
+		private long[] hashes = new long[1024];
+		private int count;
+
+		void add(long hash) {
+			if (count == hashes.length) {
+				hashes = Arrays.copyOf(hashes, count * 2);
+			}
+			hashes[count++] = hash;
+		}
+	}
+
+	/**
+	 * Locate the identifier of each row of a chunk.
+	 */
+	private static abstract class IdChunkTask<T> implements Callable<T> {
+		protected final byte[] bytes;
+		private final byte delimiter;
+		private final boolean quoted;
+		private final byte quote;
+		private final int idIndex;
+
+		IdChunkTask(byte[] bytes, DwcaFileDescriptor descriptor) {
+			this.bytes = bytes;
+			this.delimiter = (byte) descriptor.getFieldsTerminatedBy().charAt(0);
+			Character quoteChar = descriptor.getFieldsEnclosedBy();
+			this.quoted = (quoteChar != null && quoteChar.charValue() != delimiter);
+			this.quote = quoted ? (byte) quoteChar.charValue() : 0;
+			this.idIndex = descriptor.getIdIndex();
+		}
+
+		/**
+		 * Called for each row with a non-empty identifier.
+		 *
+		 * @param start
+		 * @param end
+		 * @param escaped
+		 *            does the identifier contain a doubled quote
+		 */
+		abstract void onId(int start, int end, boolean escaped);
+
+		void scanIds() {
+			int lineStart = 0;
+			while (lineStart < bytes.length) {
+				int lineEnd = lineStart;
+				while (lineEnd < bytes.length && bytes[lineEnd] != LF) {
+					lineEnd++;
+				}
+				int contentEnd = lineEnd;
+				if (contentEnd > lineStart && bytes[contentEnd - 1] == CR) {
+					contentEnd--;
+				}
+				// like the readers, blank lines are not rows
+				if (contentEnd > lineStart) {
+					scanRow(lineStart, contentEnd);
+				}
+				lineStart = lineEnd + 1;
+			}
+		}
+
+		/**
+		 * Delimit the cells like DelimitedLineTokenizer until the identifier.
+		 */
+		private void scanRow(int start, int end) {
+			int position = start;
+			int cellStart;
+			int cellEnd;
+			boolean escaped;
+			for (int column = 0; column <= idIndex; column++) {
+				escaped = false;
+				if (quoted && position < end && bytes[position] == quote) {
+					cellStart = ++position;
+					while (position < end) {
+						if (bytes[position] == quote) {
+							// doubled quote is an escaped quote
+							if (position + 1 < end && bytes[position + 1] == quote) {
+								escaped = true;
+								position += 2;
+								continue;
+							}
+							break;
+						}
+						position++;
+					}
+					cellEnd = position;
+					// ignore anything between the closing quote and the next delimiter
+					while (position < end && bytes[position] != delimiter) {
+						position++;
+					}
+				}
+				else {
+					cellStart = position;
+					while (position < end && bytes[position] != delimiter) {
+						position++;
+					}
+					cellEnd = position;
+				}
+
+				if (column == idIndex) {
+					if (cellEnd > cellStart) {
+						onId(cellStart, cellEnd, escaped);
+					}
+					return;
+				}
+				if (position >= end) {
+					// missing column
+					return;
+				}
+				// skip the delimiter
+				position++;
+			}
+		}
+	}
+
+	/**
+	 * First pass: hash all the identifiers.
+	 */
+	private static class HashChunkTask extends IdChunkTask<HashChunkResult> {
+		private final HashChunkResult result = new HashChunkResult();
+
+		HashChunkTask(byte[] bytes, DwcaFileDescriptor descriptor) {
+			super(bytes, descriptor);
+		}
+
+		@Override
+		public HashChunkResult call() {
+			scanIds();
+			return result;
+		}
+
+		@Override
+		void onId(int start, int end, boolean escaped) {
+			result.add(hash(bytes, start, end));
+		}
+	}
+
+	/**
+	 * Second pass: decode the identifiers of the repeated hashes.
+	 */
+	private static class CandidateChunkTask extends IdChunkTask<List<String>> {
+		private final long[] candidates;
+		private final Charset charset;
+		private final String quote;
+		private final List<String> ids = new ArrayList<String>();
+
+		CandidateChunkTask(byte[] bytes, DwcaFileDescriptor descriptor, long[] candidates) {
+			super(bytes, descriptor);
+			this.candidates = candidates;
+			this.charset = Charset.forName(descriptor.getEncoding());
+			this.quote = String.valueOf(descriptor.getFieldsEnclosedBy());
+		}
+
+		@Override
+		public List<String> call() {
+			scanIds();
+			return ids;
+		}
+
+		@Override
+		void onId(int start, int end, boolean escaped) {
+			if (Arrays.binarySearch(candidates, hash(bytes, start, end)) >= 0) {
+				String id = new String(bytes, start, end - start, charset);
+				// same value as the one returned by the readers
+				ids.add(escaped ? StringUtils.replace(id, quote + quote, quote) : id);
+			}
+		}
+	}
+
+	/**
+	 * Collect the hashes in memory and spill them to partition files once maxHashesInMemory is reached.
+	 * This class is mutable and not thread safe.
+	 */
+	private class HashCollector {
+		private long[] hashes = new long[1024];
+		private int count;
+		private File[] partitionFiles;
+		private DataOutputStream[] partitions;
+
+		void add(long hash) throws IOException {
+			if (partitions == null) {
+				if (count < hashes.length) {
+					hashes[count++] = hash;
+					return;
+				}
+				if (hashes.length < maxHashesInMemory) {
+					hashes = Arrays.copyOf(hashes, (int) Math.min((long) hashes.length * 2, maxHashesInMemory));
+					hashes[count++] = hash;
+					return;
+				}
+				spill();
+			}
+			partitions[(int) (hash >>> (Long.SIZE - PARTITION_BITS))].writeLong(hash);
+		}
+
+		/**
+		 * Move the hashes in memory to the partition files, the next hashes are written directly to the files.
+		 */
+		private void spill() throws IOException {
+			int numberOfPartitions = 1 << PARTITION_BITS;
+			partitionFiles = new File[numberOfPartitions];
+			partitions = new DataOutputStream[numberOfPartitions];
+			for (int i = 0; i < numberOfPartitions; i++) {
+				partitionFiles[i] = File.createTempFile(TEMP_FILE_PREFIX, ".bin", tempFolder);
+				partitions[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partitionFiles[i]),
+						SPILL_BUFFER_SIZE));
+			}
+			long[] inMemory = hashes;
+			int inMemoryCount = count;
+			hashes = null;
+			count = 0;
+			for (int i = 0; i < inMemoryCount; i++) {
+				add(inMemory[i]);
+			}
+		}
+
+		/**
+		 * @return sorted hashes seen more than once
+		 */
+		long[] findRepeatedHashes() throws IOException {
+			LongList repeated = new LongList();
+			if (partitions == null) {
+				collectRepeated(hashes, count, repeated);
+			}
+			else {
+				for (int i = 0; i < partitions.length; i++) {
+					partitions[i].close();
+					long[] partition = readPartition(partitionFiles[i]);
+					collectRepeated(partition, partition.length, repeated);
+				}
+			}
+			long[] result = repeated.toArray();
+			// partitions are ordered on the unsigned value of the hash
+			Arrays.sort(result);
+			return result;
+		}
+
+		private long[] readPartition(File partitionFile) throws IOException {
+			RandomAccessFile raf = new RandomAccessFile(partitionFile, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				}
+				buffer.flip();
+				long[] partition = new long[buffer.remaining() / 8];
+				buffer.asLongBuffer().get(partition);
+				return partition;
+			}
+			finally {
+				raf.close();
+			}
+		}
+
+		private void collectRepeated(long[] values, int length, LongList repeated) {
+			Arrays.sort(values, 0, length);
+			for (int i = 1; i < length; i++) {
+				if (values[i] == values[i - 1] && (i == 1 || values[i - 1] != values[i - 2])) {
+					repeated.add(values[i]);
+				}
+			}
+		}
+
+		void close() {
+			hashes = null;
+			if (partitions != null) {
+				for (int i = 0; i < partitions.length; i++) {
+					try {
+						partitions[i].close();
+					}
+					catch (IOException e) {
+						// the file is removed anyway
+					}
+					partitionFiles[i].delete();
+				}
+			}
+		}
+	}
+
+	private static class LongList {
+		private long[] values = new long[16];
+		private int count;
+
+		void add(long value) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = value;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(values, count);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Duplicated identifiers of a core data file, found by DuplicateIdDetector.
+ * This class is immutable.
+ *
+ * @author canadensys
+ *
+ */
+public final class DuplicateIdReport {
+
+	private final String location;
+	private final long numberOfRows;
+	private final List<String> duplicateIds;
+	private final long numberOfDuplicateRows;
+
+	/**
+	 *
+	 * @param location
+	 *            location of the data file relative to the archive
+	 * @param numberOfRows
+	 *            number of rows with an identifier
+	 * @param duplicateIds
+	 *            identifiers used by more than one row, in the order of their first row
+	 * @param numberOfDuplicateRows
+	 *            number of rows using an identifier already used by a previous row
+	 */
+	public DuplicateIdReport(String location, long numberOfRows, List<String> duplicateIds, long numberOfDuplicateRows) {
+		this.location = location;
+		this.numberOfRows = numberOfRows;
+		this.duplicateIds = Collections.unmodifiableList(new ArrayList<String>(duplicateIds));
+		this.numberOfDuplicateRows = numberOfDuplicateRows;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return number of rows with an identifier, rows without identifier are not counted
+	 */
+	public long getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	/**
+	 * @return unmodifiable list of the identifiers used by more than one row
+	 */
+	public List<String> getDuplicateIds() {
+		return duplicateIds;
+	}
+
+	public long getNumberOfDuplicateRows() {
+		return numberOfDuplicateRows;
+	}
+
+	public boolean hasDuplicates() {
+		return !duplicateIds.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return location + ": " + numberOfRows + " rows, " + duplicateIds.size() + " duplicated ids, " + numberOfDuplicateRows
+				+ " rows with a duplicate id";
+	}
+}
@@ -0,0 +1,377 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.canadensys.harvester.occurrence.filter.IdSetIF;
+import net.canadensys.harvester.occurrence.filter.IdSetStorage;
+import net.canadensys.harvester.occurrence.filter.OpenAddressingIdSet;
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveSupport;
+import net.canadensys.harvester.occurrence.reader.DwcaFileDescriptor;
+import net.canadensys.harvester.occurrence.reader.parser.ParallelDwcaFileIterator;
+
+/**
+ * Scan a data file of a DarwinCore Archive to collect its DwcaFileStatistics without creating the rows.
+ * The file is read sequentially in chunks of complete lines, each chunk is scanned on the bytes by a thread of a bounded
+ * pool. Only the identifiers (when checked for duplicates) and the lines with non-ASCII bytes (to check the encoding)
+ * are decoded. The chunk results are merged in file order so the row numbers of the errors are exact.
+ * Like ParallelDwcaFileIterator, only encodings where the byte '\n' always represents a line feed are supported, the
+ * delimiter and the quote character must be ASCII and a line feed inside a quoted cell is not supported.
+ * This class is thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFileScanner {
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	// rough estimate of the length of a row, used to size the set of identifiers
+	private static final int EXPECTED_ROW_LENGTH = 256;
+	private static final int MIN_EXPECTED_IDS = 1024;
+
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private IdSetStorage idSetStorage = IdSetStorage.HEAP;
+
+	/**
+	 * Check if a data file can be scanned.
+	 *
+	 * @param descriptor
+	 * @return
+	 */
+	public static boolean isSupported(DwcaFileDescriptor descriptor) {
+		String delimiter = descriptor.getFieldsTerminatedBy();
+		Character quote = descriptor.getFieldsEnclosedBy();
+		return delimiter != null && delimiter.length() == 1 && delimiter.charAt(0) <= Byte.MAX_VALUE
+				&& (quote == null || quote.charValue() <= Byte.MAX_VALUE) && Charset.isSupported(descriptor.getEncoding())
+				&& ParallelDwcaFileIterator.isSupported(Charset.forName(descriptor.getEncoding()));
+	}
+
+	/**
+	 * Scan a data file.
+	 *
+	 * @param dwcaFile
+	 *            archive folder or ZIP file
+	 * @param descriptor
+	 *            data file to scan, must be supported (see {@link #isSupported(DwcaFileDescriptor)})
+	 * @param checkDuplicateIds
+	 *            should the identifiers be checked for duplicates (core only)
+	 * @return
+	 * @throws IOException
+	 */
+	public DwcaFileStatistics scan(File dwcaFile, DwcaFileDescriptor descriptor, boolean checkDuplicateIds) throws IOException {
+		if (!isSupported(descriptor)) {
+			throw new IllegalArgumentException("Data file " + descriptor.getLocation() + " can not be scanned");
+		}
+		DwcaFileStatistics statistics = new DwcaFileStatistics(descriptor.getLocation(), descriptor.getHeaders(),
+				checkDuplicateIds);
+		IdSetIF ids = checkDuplicateIds ? new OpenAddressingIdSet(idSetStorage, getExpectedNumberOfIds(dwcaFile, descriptor))
+				: null;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(parallelism, 1));
+		LinkedList<Future<ChunkResult>> inFlight = new LinkedList<Future<ChunkResult>>();
+		int maxChunksInFlight = Math.max(parallelism, 1) * 2;
+		InputStream is = DwcaArchiveSupport.openDataStream(dwcaFile, descriptor);
+		try {
+			DataChunkReader chunkReader = new DataChunkReader(is, descriptor.getIgnoreHeaderLines(), chunkSize);
+			byte[] chunk;
+			while ((chunk = chunkReader.next()) != null) {
+				if (inFlight.size() >= maxChunksInFlight) {
+					merge(inFlight.removeFirst().get(), statistics, ids);
+				}
+				inFlight.add(executor.submit(new ScanChunkTask(chunk, descriptor, checkDuplicateIds)));
+			}
+			while (!inFlight.isEmpty()) {
+				merge(inFlight.removeFirst().get(), statistics, ids);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Scan of " + descriptor.getLocation() + " interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Can't scan " + descriptor.getLocation(), e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+			is.close();
+			if (ids != null) {
+				ids.close();
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Approximate the number of identifiers from the length of the data file to limit rehashing.
+	 *
+	 * @param dwcaFile
+	 * @param descriptor
+	 * @return
+	 */
+	private static int getExpectedNumberOfIds(File dwcaFile, DwcaFileDescriptor descriptor) {
+		long expected = DwcaArchiveSupport.getDataLength(dwcaFile, descriptor) / EXPECTED_ROW_LENGTH;
+		return (int) Math.max(MIN_EXPECTED_IDS, Math.min(Integer.MAX_VALUE / 4, expected));
+	}
+
+	/**
+	 * Merge the result of a chunk, chunks must be merged in file order.
+	 */
+	private void merge(ChunkResult result, DwcaFileStatistics statistics, IdSetIF ids) {
+		long firstRow = statistics.getNumberOfRows() + 1;
+		statistics.addRows(result.rows);
+		statistics.addRowsWithMissingColumns(result.rowsWithMissingColumns);
+		statistics.addRowsWithExtraColumns(result.rowsWithExtraColumns);
+		statistics.addMalformedRows(result.malformedRows);
+		statistics.addEmptyIds(result.emptyIds);
+		statistics.addFilledCells(result.filledCells);
+		for (int i = 0; i < result.errorCount; i++) {
+			statistics.addErrorSample("row " + (firstRow + result.errorRows[i]) + ": " + result.errors[i]);
+		}
+		if (ids != null) {
+			for (int i = 0; i < result.idCount; i++) {
+				if (!ids.add(result.ids[i])) {
+					statistics.addDuplicateId();
+					statistics.addErrorSample("row " + (firstRow + result.idRows[i]) + ": duplicate id " + result.ids[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of threads scanning the chunks.
+	 * Default is 4.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Approximate size (in bytes) of each chunk.
+	 * Default is 4MB.
+	 *
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Storage of the identifiers used to find the duplicates.
+	 * Default is HEAP.
+	 *
+	 * @param idSetStorage
+	 */
+	public void setIdSetStorage(IdSetStorage idSetStorage) {
+		this.idSetStorage = idSetStorage;
+	}
+
+	/**
+	 * Result of the scan of a chunk, row numbers are relative to the chunk (0 is the first row).
+	 */
+	private static class ChunkResult {
+		private long rows;
+		private long rowsWithMissingColumns;
+		private long rowsWithExtraColumns;
+		private long malformedRows;
+		private long emptyIds;
+		private final long[] filledCells;
+
+		private String[] ids = new String[0];
+		private int[] idRows = new int[0];
+		private int idCount;
+
+		private final String[] errors = new String[DwcaFileStatistics.MAX_ERROR_SAMPLES];
+		private final int[] errorRows = new int[DwcaFileStatistics.MAX_ERROR_SAMPLES];
+		private int errorCount;
+
+		ChunkResult(int numberOfColumns) {
+			filledCells = new long[numberOfColumns];
+		}
+
+		void addId(String id, int row) {
+			if (idCount == ids.length) {
+				int capacity = Math.max(1024, idCount * 2);
+				ids = Arrays.copyOf(ids, capacity);
+				idRows = Arrays.copyOf(idRows, capacity);
+			}
+			ids[idCount] = id;
+			idRows[idCount] = row;
+			idCount++;
+		}
+
+		void addError(String error, int row) {
+			if (errorCount < errors.length) {
+				errors[errorCount] = error;
+				errorRows[errorCount] = row;
+				errorCount++;
+			}
+		}
+	}
+
+	/**
+	 * Scan the lines of a chunk.
+	 */
+	private static class ScanChunkTask implements Callable<ChunkResult> {
+		private final byte[] bytes;
+		private final Charset charset;
+		private final byte delimiter;
+		private final boolean quoted;
+		private final byte quote;
+		private final int numberOfColumns;
+		private final int idIndex;
+		private final boolean collectIds;
+
+		private CharsetDecoder decoder;
+		private CharBuffer decoded;
+
+		ScanChunkTask(byte[] bytes, DwcaFileDescriptor descriptor, boolean collectIds) {
+			this.bytes = bytes;
+			this.charset = Charset.forName(descriptor.getEncoding());
+			this.delimiter = (byte) descriptor.getFieldsTerminatedBy().charAt(0);
+			Character quoteChar = descriptor.getFieldsEnclosedBy();
+			this.quoted = (quoteChar != null && quoteChar.charValue() != delimiter);
+			this.quote = quoted ? (byte) quoteChar.charValue() : 0;
+			this.numberOfColumns = descriptor.getHeaders().length;
+			this.idIndex = descriptor.getIdIndex();
+			this.collectIds = collectIds;
+		}
+
+		@Override
+		public ChunkResult call() {
+			ChunkResult result = new ChunkResult(numberOfColumns);
+			int lineStart = 0;
+			int row = 0;
+			while (lineStart < bytes.length) {
+				int lineEnd = lineStart;
+				boolean ascii = true;
+				while (lineEnd < bytes.length && bytes[lineEnd] != LF) {
+					// negative means the byte is not ASCII
+					ascii &= (bytes[lineEnd] >= 0);
+					lineEnd++;
+				}
+				int contentEnd = lineEnd;
+				if (contentEnd > lineStart && bytes[contentEnd - 1] == CR) {
+					contentEnd--;
+				}
+				// like the readers, blank lines are not rows
+				if (contentEnd > lineStart) {
+					if (!ascii && !canDecode(lineStart, contentEnd)) {
+						result.malformedRows++;
+						result.addError("invalid " + charset.name() + " characters", row);
+					}
+					scanRow(lineStart, contentEnd, row, result);
+					row++;
+				}
+				lineStart = lineEnd + 1;
+			}
+			result.rows = row;
+			return result;
+		}
+
+		/**
+		 * Delimit the cells like DelimitedLineTokenizer without creating them.
+		 */
+		private void scanRow(int start, int end, int row, ChunkResult result) {
+			int column = 0;
+			int position = start;
+			int idStart = -1;
+			int idEnd = -1;
+			while (true) {
+				int cellStart;
+				int cellEnd;
+				if (quoted && position < end && bytes[position] == quote) {
+					cellStart = ++position;
+					while (position < end) {
+						if (bytes[position] == quote) {
+							// doubled quote is an escaped quote
+							if (position + 1 < end && bytes[position + 1] == quote) {
+								position += 2;
+								continue;
+							}
+							break;
+						}
+						position++;
+					}
+					cellEnd = position;
+					// ignore anything between the closing quote and the next delimiter
+					while (position < end && bytes[position] != delimiter) {
+						position++;
+					}
+				}
+				else {
+					cellStart = position;
+					while (position < end && bytes[position] != delimiter) {
+						position++;
+					}
+					cellEnd = position;
+				}
+
+				if (cellEnd > cellStart && column < numberOfColumns) {
+					result.filledCells[column]++;
+				}
+				if (column == idIndex) {
+					idStart = cellStart;
+					idEnd = cellEnd;
+				}
+				column++;
+				if (position >= end) {
+					break;
+				}
+				// skip the delimiter
+				position++;
+			}
+
+			if (column < numberOfColumns) {
+				result.rowsWithMissingColumns++;
+				result.addError(column + " columns instead of " + numberOfColumns, row);
+			}
+			else if (column > numberOfColumns) {
+				result.rowsWithExtraColumns++;
+			}
+			if (idEnd <= idStart) {
+				result.emptyIds++;
+				result.addError("no id", row);
+			}
+			else if (collectIds) {
+				result.addId(new String(bytes, idStart, idEnd - idStart, charset), row);
+			}
+		}
+
+		private boolean canDecode(int start, int end) {
+			if (decoder == null) {
+				decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+						.onUnmappableCharacter(CodingErrorAction.REPORT);
+			}
+			int length = end - start;
+			if (decoded == null || decoded.capacity() < length) {
+				decoded = CharBuffer.allocate(Math.max(length, 256));
+			}
+			decoded.clear();
+			decoder.reset();
+			ByteBuffer in = ByteBuffer.wrap(bytes, start, length);
+			return !decoder.decode(in, decoded, true).isError() && !decoder.flush(decoded).isError();
+		}
+	}
+}
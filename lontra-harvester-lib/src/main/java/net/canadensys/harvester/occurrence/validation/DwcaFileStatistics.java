@@ -0,0 +1,181 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics and errors of a data file (core or extension) of a DarwinCore Archive, collected by DwcaFileScanner.
+ * Errors are rows with missing columns, rows that can not be decoded with the encoding of meta.xml, rows without
+ * identifier and (core only) rows with a duplicate identifier. Rows with more columns than declared in meta.xml are only
+ * counted.
+ * This class is mutable and not thread safe.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFileStatistics {
+
+	public static final int MAX_ERROR_SAMPLES = 10;
+
+	private final String location;
+	private final String[] headers;
+	private final boolean duplicateIdsChecked;
+
+	private long numberOfRows;
+	private long numberOfRowsWithMissingColumns;
+	private long numberOfRowsWithExtraColumns;
+	private long numberOfMalformedRows;
+	private long numberOfEmptyIds;
+	private long numberOfDuplicateIds;
+	private final long[] filledCells;
+	private final List<String> errorSamples = new ArrayList<String>();
+
+	/**
+	 *
+	 * @param location
+	 *            location of the data file relative to the archive
+	 * @param headers
+	 *            headers of the data file, in the column order
+	 * @param duplicateIdsChecked
+	 *            are the identifiers checked for duplicates
+	 */
+	public DwcaFileStatistics(String location, String[] headers, boolean duplicateIdsChecked) {
+		this.location = location;
+		this.headers = headers.clone();
+		this.duplicateIdsChecked = duplicateIdsChecked;
+		this.filledCells = new long[headers.length];
+	}
+
+	/**
+	 * @return true if at least one row has an error
+	 */
+	public boolean hasErrors() {
+		return numberOfRowsWithMissingColumns > 0 || numberOfMalformedRows > 0 || numberOfEmptyIds > 0 || numberOfDuplicateIds > 0;
+	}
+
+	/**
+	 * Get the ratio of rows with a value in a column.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return fill rate between 0 and 1
+	 */
+	public double getFillRate(int column) {
+		return (numberOfRows == 0) ? 0 : (double) filledCells[column] / numberOfRows;
+	}
+
+	void addRows(long rows) {
+		numberOfRows += rows;
+	}
+
+	void addRowsWithMissingColumns(long rows) {
+		numberOfRowsWithMissingColumns += rows;
+	}
+
+	void addRowsWithExtraColumns(long rows) {
+		numberOfRowsWithExtraColumns += rows;
+	}
+
+	void addMalformedRows(long rows) {
+		numberOfMalformedRows += rows;
+	}
+
+	void addEmptyIds(long rows) {
+		numberOfEmptyIds += rows;
+	}
+
+	void addDuplicateId() {
+		numberOfDuplicateIds++;
+	}
+
+	void addFilledCells(long[] chunkFilledCells) {
+		for (int i = 0; i < filledCells.length; i++) {
+			filledCells[i] += chunkFilledCells[i];
+		}
+	}
+
+	/**
+	 * Keep the description of an error, only the first MAX_ERROR_SAMPLES are kept.
+	 *
+	 * @param error
+	 */
+	void addErrorSample(String error) {
+		if (errorSamples.size() < MAX_ERROR_SAMPLES) {
+			errorSamples.add(error);
+		}
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return copy of the headers, in the column order
+	 */
+	public String[] getHeaders() {
+		return headers.clone();
+	}
+
+	public boolean isDuplicateIdsChecked() {
+		return duplicateIdsChecked;
+	}
+
+	/**
+	 * @return number of rows, excluding the header lines and the blank lines
+	 */
+	public long getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	public long getNumberOfRowsWithMissingColumns() {
+		return numberOfRowsWithMissingColumns;
+	}
+
+	public long getNumberOfRowsWithExtraColumns() {
+		return numberOfRowsWithExtraColumns;
+	}
+
+	public long getNumberOfMalformedRows() {
+		return numberOfMalformedRows;
+	}
+
+	public long getNumberOfEmptyIds() {
+		return numberOfEmptyIds;
+	}
+
+	/**
+	 * @return number of rows using an identifier already used by a previous row
+	 */
+	public long getNumberOfDuplicateIds() {
+		return numberOfDuplicateIds;
+	}
+
+	/**
+	 * @return unmodifiable list of the first errors
+	 */
+	public List<String> getErrorSamples() {
+		return Collections.unmodifiableList(errorSamples);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(location).append(": ").append(numberOfRows).append(" rows");
+		if (numberOfRowsWithMissingColumns > 0) {
+			sb.append(", ").append(numberOfRowsWithMissingColumns).append(" with missing columns");
+		}
+		if (numberOfRowsWithExtraColumns > 0) {
+			sb.append(", ").append(numberOfRowsWithExtraColumns).append(" with extra columns");
+		}
+		if (numberOfMalformedRows > 0) {
+			sb.append(", ").append(numberOfMalformedRows).append(" with invalid characters");
+		}
+		if (numberOfEmptyIds > 0) {
+			sb.append(", ").append(numberOfEmptyIds).append(" without id");
+		}
+		if (numberOfDuplicateIds > 0) {
+			sb.append(", ").append(numberOfDuplicateIds).append(" with a duplicate id");
+		}
+		return sb.toString();
+	}
+}
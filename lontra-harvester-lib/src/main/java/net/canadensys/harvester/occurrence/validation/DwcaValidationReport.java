@@ -0,0 +1,80 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics of the data files of a DarwinCore Archive, produced by ValidateDwcaTask.
+ * A data file that could not be scanned (see DwcaFileScanner.isSupported) is not part of the report.
+ * This class is immutable (the statistics should not be modified once the report is created).
+ *
+ * @author canadensys
+ *
+ */
+public final class DwcaValidationReport {
+
+	private final DwcaFileStatistics core;
+	private final List<DwcaFileStatistics> extensions;
+
+	/**
+	 *
+	 * @param core
+	 *            statistics of the core or null if the core was not scanned
+	 * @param extensions
+	 */
+	public DwcaValidationReport(DwcaFileStatistics core, List<DwcaFileStatistics> extensions) {
+		this.core = core;
+		this.extensions = Collections.unmodifiableList(new ArrayList<DwcaFileStatistics>(extensions));
+	}
+
+	/**
+	 * @return true if at least one data file has an error
+	 */
+	public boolean hasErrors() {
+		for (DwcaFileStatistics statistics : getAllStatistics()) {
+			if (statistics.hasErrors()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return statistics of the core (if scanned) followed by the statistics of the extensions
+	 */
+	public List<DwcaFileStatistics> getAllStatistics() {
+		List<DwcaFileStatistics> allStatistics = new ArrayList<DwcaFileStatistics>(extensions.size() + 1);
+		if (core != null) {
+			allStatistics.add(core);
+		}
+		allStatistics.addAll(extensions);
+		return allStatistics;
+	}
+
+	/**
+	 * @return statistics of the core or null if the core was not scanned
+	 */
+	public DwcaFileStatistics getCore() {
+		return core;
+	}
+
+	/**
+	 * @return unmodifiable list of the statistics of the scanned extensions
+	 */
+	public List<DwcaFileStatistics> getExtensions() {
+		return extensions;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (DwcaFileStatistics statistics : getAllStatistics()) {
+			if (sb.length() > 0) {
+				sb.append("; ");
+			}
+			sb.append(statistics);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,277 @@
+package net.canadensys.harvester.reader;
+
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.canadensys.harvester.ItemReaderIF;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.reader.ResumableReaderIF;
+
+import org.apache.log4j.Logger;
+
+/**
+ * ItemReaderIF decorator that runs the wrapped reader on a dedicated thread.
+ * Items are read ahead into a bounded ring buffer (preallocated slots) so the I/O and parsing of the wrapped reader
+ * overlap with the processing done by the caller of read().
+ * If the wrapped reader is a ResumableReaderIF, the position of each item is kept with the item so checkpoints reflect
+ * the items returned by read() and not the items read ahead.
+ * openReader, read, abort and closeReader are expected to be called by the same (consumer) thread.
+ *
+ * @author canadensys
+ *
+ * @param <T>
+ *            type of object to read
+ */
+public class PrefetchItemReader<T> implements ItemReaderIF<T>, ResumableReaderIF {
+
+	private static final Logger LOGGER = Logger.getLogger(PrefetchItemReader.class);
+
+	public static final int DEFAULT_DEPTH = 1024;
+
+	private final ItemReaderIF<T> wrappedReader;
+	private final ResumableReaderIF resumableReader;
+	private final Slot<T>[] slots;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	// guarded by lock
+	private int head;
+	private int tail;
+	private int count;
+	private boolean endReached;
+	private boolean stopped;
+	// RuntimeException or Error thrown by the wrapped reader
+	private Throwable producerException;
+
+	private Thread producerThread;
+	// position of the last item returned by read()
+	private DwcaCheckpoint currentCheckpoint;
+
+	public PrefetchItemReader(ItemReaderIF<T> wrappedReader) {
+		this(wrappedReader, DEFAULT_DEPTH);
+	}
+
+	/**
+	 *
+	 * @param wrappedReader
+	 * @param depth
+	 *            maximum number of items read ahead
+	 */
+	@SuppressWarnings("unchecked")
+	public PrefetchItemReader(ItemReaderIF<T> wrappedReader, int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("depth must be greater than 0");
+		}
+		this.wrappedReader = wrappedReader;
+		this.resumableReader = (wrappedReader instanceof ResumableReaderIF) ? (ResumableReaderIF) wrappedReader : null;
+		this.slots = new Slot[depth];
+		for (int i = 0; i < depth; i++) {
+			slots[i] = new Slot<T>(resumableReader != null);
+		}
+		currentCheckpoint = (resumableReader != null) ? new DwcaCheckpoint() : null;
+	}
+
+	/**
+	 * Open the wrapped reader in the current thread (so the shared parameters it sets are available when this method
+	 * returns) and start the read-ahead thread.
+	 */
+	@Override
+	public void openReader(Map<SharedParameterEnum, Object> sharedParameters) {
+		wrappedReader.openReader(sharedParameters);
+		if (resumableReader != null) {
+			resumableReader.fillCheckpoint(currentCheckpoint);
+		}
+		lock.lock();
+		try {
+			head = tail = count = 0;
+			endReached = stopped = false;
+			producerException = null;
+		}
+		finally {
+			lock.unlock();
+		}
+		producerThread = new Thread(new Producer(), "prefetch-" + wrappedReader.getClass().getSimpleName());
+		producerThread.setDaemon(true);
+		producerThread.start();
+	}
+
+	@Override
+	public T read() {
+		lock.lock();
+		try {
+			while (count == 0 && !endReached && !stopped) {
+				notEmpty.await();
+			}
+			if (stopped) {
+				return null;
+			}
+			if (count == 0) {
+				// items read before an error are returned first
+				if (producerException instanceof Error) {
+					throw (Error) producerException;
+				}
+				if (producerException != null) {
+					throw (RuntimeException) producerException;
+				}
+				return null;
+			}
+			Slot<T> slot = slots[head];
+			T item = slot.item;
+			slot.item = null;
+			if (slot.checkpoint != null) {
+				// exchange the checkpoint instances, no copy required
+				DwcaCheckpoint previous = currentCheckpoint;
+				currentCheckpoint = slot.checkpoint;
+				slot.checkpoint = previous;
+			}
+			head = (head + 1) % slots.length;
+			count--;
+			notFull.signal();
+			return item;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Abort the wrapped reader and stop reading ahead. read() will return null.
+	 */
+	@Override
+	public void abort() {
+		wrappedReader.abort();
+		stop();
+	}
+
+	/**
+	 * Stop the read-ahead thread, wait for it to complete and close the wrapped reader.
+	 */
+	@Override
+	public void closeReader() {
+		stop();
+		if (producerThread != null) {
+			try {
+				producerThread.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			producerThread = null;
+		}
+		wrappedReader.closeReader();
+	}
+
+	@Override
+	public DwcaCheckpoint getCheckpoint() {
+		if (currentCheckpoint == null) {
+			throw new IllegalStateException("The wrapped reader is not a ResumableReaderIF");
+		}
+		return currentCheckpoint.copy();
+	}
+
+	@Override
+	public void fillCheckpoint(DwcaCheckpoint checkpoint) {
+		DwcaCheckpoint current = getCheckpoint();
+		checkpoint.setDataFile(current.getDataFile());
+		checkpoint.setDataLength(current.getDataLength());
+		checkpoint.setByteOffset(current.getByteOffset());
+		checkpoint.setOrdinal(current.getOrdinal());
+	}
+
+	@Override
+	public boolean isCheckpointSupported() {
+		return resumableReader != null && resumableReader.isCheckpointSupported();
+	}
+
+	private void stop() {
+		lock.lock();
+		try {
+			stopped = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Read from the wrapped reader until the end is reached or the reader is stopped.
+	 * The end is always signaled, even if the wrapped reader fails, so read() never waits for an item that will not come.
+	 */
+	private class Producer implements Runnable {
+		@Override
+		public void run() {
+			Throwable failure = null;
+			try {
+				T item;
+				Slot<T> slot;
+				while (true) {
+					// read outside of the lock
+					item = wrappedReader.read();
+					lock.lock();
+					try {
+						if (item == null) {
+							return;
+						}
+						while (count == slots.length && !stopped) {
+							notFull.await();
+						}
+						if (stopped) {
+							return;
+						}
+						slot = slots[tail];
+						slot.item = item;
+						if (slot.checkpoint != null) {
+							resumableReader.fillCheckpoint(slot.checkpoint);
+						}
+						tail = (tail + 1) % slots.length;
+						count++;
+						notEmpty.signal();
+					}
+					finally {
+						lock.unlock();
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (RuntimeException | Error e) {
+				LOGGER.error("Error while reading ahead", e);
+				failure = e;
+			}
+			finally {
+				lock.lock();
+				try {
+					producerException = failure;
+					endReached = true;
+					notEmpty.signal();
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Slot of the ring buffer, checkpoint instances are reused.
+	 */
+	private static class Slot<T> {
+		private T item;
+		private DwcaCheckpoint checkpoint;
+
+		Slot(boolean withCheckpoint) {
+			checkpoint = withCheckpoint ? new DwcaCheckpoint() : null;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package net.canadensys.harvester.mapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.junit.Test;
+
+/**
+ * Test that BeanAccessor gets and sets the properties like BeanUtils.
+ *
+ * @author canadensys
+ *
+ */
+public class BeanAccessorTest {
+
+	public static class TestBean {
+		private String name;
+		private Integer count;
+		private int total;
+		private Map<String, String> data;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Integer getCount() {
+			return count;
+		}
+
+		public void setCount(Integer count) {
+			this.count = count;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public void setTotal(int total) {
+			if (total < 0) {
+				throw new IllegalArgumentException("negative total");
+			}
+			this.total = total;
+		}
+
+		public Map<String, String> getData() {
+			return data;
+		}
+
+		public void setData(Map<String, String> data) {
+			this.data = data;
+		}
+	}
+
+	private static final Object[][] PROPERTIES = { { "name", "Gomphus" }, { "name", "" }, { "name", null },
+			{ "name", new StringBuilder("Gomphus") }, { "count", "12" }, { "count", 12 }, { "count", null }, { "total", "7" },
+			{ "total", 7 }, { "total", null }, { "data", Collections.singletonMap("a", "b") }, { "data", null },
+			{ "unknown", "x" }, { "http://purl.org/dc/terms/rights", "CC0" } };
+
+	@Test
+	public void testSameAsBeanUtils() throws IllegalAccessException, InvocationTargetException {
+		BeanAccessor<TestBean> accessor = new BeanAccessor<TestBean>(TestBean.class);
+		for (Object[] property : PROPERTIES) {
+			TestBean expected = new TestBean();
+			expected.setTotal(3);
+			BeanUtils.setProperty(expected, (String) property[0], property[1]);
+
+			TestBean bean = new TestBean();
+			bean.setTotal(3);
+			accessor.setProperty(bean, (String) property[0], property[1]);
+
+			String message = property[0] + "=" + property[1];
+			assertEquals(message, expected.getName(), bean.getName());
+			assertEquals(message, expected.getCount(), bean.getCount());
+			assertEquals(message, expected.getTotal(), bean.getTotal());
+			assertEquals(message, expected.getData(), bean.getData());
+		}
+	}
+
+	@Test
+	public void testSetters() {
+		BeanAccessor<TestBean> accessor = new BeanAccessor<TestBean>(TestBean.class);
+		assertNotNull(accessor.getSetter("name"));
+		assertTrue(accessor.isWriteable("total"));
+		// not a property
+		assertNull(accessor.getSetter("unknown"));
+		assertFalse(accessor.isWriteable("class"));
+		assertNull(accessor.getSetter("http://purl.org/dc/terms/rights"));
+		// expression on an existing property, delegated to BeanUtils
+		assertNotNull(accessor.getSetter("data(a)"));
+	}
+
+	@Test
+	public void testGetters() throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+		BeanAccessor<TestBean> accessor = BeanAccessor.forClass(TestBean.class);
+		assertSame(accessor, BeanAccessor.forClass(TestBean.class));
+
+		TestBean bean = new TestBean();
+		bean.setName("Gomphus");
+		bean.setTotal(7);
+		bean.setData(Collections.singletonMap("a", "b"));
+		for (String name : new String[] { "name", "count", "total", "data", "class" }) {
+			assertTrue(accessor.isReadable(name));
+			assertEquals(name, BeanUtils.getProperty(bean, name), accessor.getGetter(name).getAsString(bean));
+		}
+		assertEquals(Integer.valueOf(7), accessor.getGetter("total").get(bean));
+		assertNull(accessor.getGetter("unknown"));
+	}
+
+	@Test(expected = InvocationTargetException.class)
+	public void testSetterException() throws IllegalAccessException, InvocationTargetException {
+		new BeanAccessor<TestBean>(TestBean.class).setProperty(new TestBean(), "total", -1);
+	}
+}
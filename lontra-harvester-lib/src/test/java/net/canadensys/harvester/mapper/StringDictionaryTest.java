@@ -0,0 +1,74 @@
+package net.canadensys.harvester.mapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the deduplication of values by StringDictionary.
+ *
+ * @author canadensys
+ *
+ */
+public class StringDictionaryTest {
+
+	@Test
+	public void testIntern() {
+		StringDictionary dictionary = new StringDictionary(3, 100, 10);
+		StringDictionary.Column country = dictionary.getColumn("country");
+		String canada = new String("Canada");
+		assertSame(canada, country.intern(canada));
+		assertSame(canada, country.intern(new String("Canada")));
+		assertSame(country, dictionary.getColumn("country"));
+		assertNull(country.intern(null));
+
+		// too long to be kept
+		String longValue = new String("Canada, Québec");
+		assertNotSame(longValue, country.intern(new String(longValue)));
+
+		// each column has its own values
+		StringDictionary.Column kingdom = dictionary.getColumn("kingdom");
+		String otherCanada = new String("Canada");
+		assertSame(otherCanada, kingdom.intern(otherCanada));
+		assertEquals(2, dictionary.size());
+	}
+
+	@Test
+	public void testCardinality() {
+		StringDictionary dictionary = new StringDictionary(3, 100, 10);
+		StringDictionary.Column catalogNumber = dictionary.getColumns(new String[] { "catalognumber" })[0];
+		for (int i = 0; i < 3; i++) {
+			catalogNumber.intern(Integer.toString(i));
+		}
+		assertTrue(catalogNumber.isEnabled());
+		assertEquals(3, dictionary.size());
+
+		// 4th distinct value, the column is switched off and its values released
+		String value = new String("3");
+		assertSame(value, catalogNumber.intern(value));
+		assertFalse(catalogNumber.isEnabled());
+		assertEquals(0, dictionary.size());
+		String zero = new String("0");
+		assertSame(zero, catalogNumber.intern(zero));
+
+		dictionary.clear();
+		assertTrue(dictionary.getColumn("catalognumber").isEnabled());
+	}
+
+	@Test
+	public void testMaxSize() {
+		StringDictionary dictionary = new StringDictionary(10, 2, 10);
+		StringDictionary.Column country = dictionary.getColumn("country");
+		country.intern("Canada");
+		country.intern("France");
+		String peru = new String("Peru");
+		country.intern(peru);
+		assertEquals(2, dictionary.size());
+		assertNotSame(peru, country.intern(new String("Peru")));
+	}
+}
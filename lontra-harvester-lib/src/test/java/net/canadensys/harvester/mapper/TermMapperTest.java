@@ -2,6 +2,10 @@ package net.canadensys.harvester.mapper;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
+
 import org.gbif.dwc.terms.DcTerm;
 import org.junit.Test;
 
@@ -16,5 +20,27 @@ public class TermMapperTest {
 		assertEquals("license", TermMapper.getInstance().getTermMapping(DcTerm.rights));
 		// Test with a Term we know we do not have a mappin for
 		assertNull(TermMapper.getInstance().getTermMapping(DcTerm.accrualPeriodicity));
+
+		assertEquals("license", TermMapper.getInstance().getTermMapping("http://purl.org/dc/terms/rights"));
+		assertNull(TermMapper.getInstance().getTermMapping("accrualPeriodicity"));
+	}
+
+	@Test
+	public void testPlan() {
+		String[] names = new String[] { "id", "country", "http://purl.org/dc/terms/rights", "unknownTerm" };
+		TermMappingPlan plan = TermMapper.getInstance().createPlan(names, BeanAccessor.forClass(OccurrenceRawModel.class));
+		assertSame(names, plan.getNames());
+		assertEquals(0, plan.getIdIndex());
+
+		assertNotNull(plan.getSetter(1));
+		assertNull(plan.getMappedSetter(1));
+		assertNull(plan.getSetter(2));
+		assertEquals("license", plan.getMappedName(2));
+		assertNotNull(plan.getMappedSetter(2));
+
+		assertFalse(plan.isIgnored(0));
+		assertFalse(plan.isIgnored(2));
+		assertTrue(plan.isIgnored(3));
+		assertEquals(Arrays.asList("country"), plan.getWriteableNames());
 	}
 }
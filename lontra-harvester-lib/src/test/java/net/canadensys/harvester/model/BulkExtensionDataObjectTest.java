@@ -0,0 +1,121 @@
+package net.canadensys.harvester.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
+import net.canadensys.harvester.occurrence.mapper.OccurrenceExtensionMapper;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test behavior of BulkExtensionDataObject serialization
+ *
+ * @author canadensys
+ *
+ */
+public class BulkExtensionDataObjectTest {
+
+	private static final String IDENTIFIER = "http://purl.org/dc/terms/identifier";
+	private static final String FORMAT = "http://purl.org/dc/terms/format";
+
+	private static OccurrenceExtensionModel newModel(int autoId, String dwcaid, Map<String, String> extData) {
+		OccurrenceExtensionModel model = new OccurrenceExtensionModel();
+		model.setAuto_id(autoId);
+		model.setDwcaid(dwcaid);
+		model.setExt_type("Multimedia");
+		model.setSourcefileid("source");
+		model.setResource_id(1);
+		model.setExt_data(extData);
+		return model;
+	}
+
+	@Test
+	public void testBulkExtensionDataObjectSerialization() {
+		OccurrenceExtensionMapper mapper = new OccurrenceExtensionMapper();
+		String[] names = new String[] { "id", IDENTIFIER, FORMAT };
+
+		BulkExtensionDataObject bulkObj = new BulkExtensionDataObject();
+		OccurrenceExtensionModel model = mapper.mapElement(names, new Object[] { "1", "http://img/1.jpg", "image/jpeg" });
+		bulkObj.addModel(newModel(10, model.getDwcaid(), model.getExt_data()));
+		model = mapper.mapElement(names, new Object[] { "2", "http://img/2.jpg", null });
+		bulkObj.addModel(newModel(11, model.getDwcaid(), model.getExt_data()));
+
+		// Serialize the Bulk object as JSON
+		String jsonRepresentation = null;
+		ObjectMapper objMapper = new ObjectMapper();
+		try {
+			jsonRepresentation = objMapper.writeValueAsString(bulkObj);
+		}
+		catch (JsonProcessingException e) {
+			e.printStackTrace();
+			fail();
+		}
+		// the terms are only printed once
+		assertEquals(jsonRepresentation.indexOf(IDENTIFIER), jsonRepresentation.lastIndexOf(IDENTIFIER));
+
+		// Reconstruct a new object based on the JSON representation
+		BulkExtensionDataObject reconstructedBulkObj = null;
+		try {
+			reconstructedBulkObj = objMapper.readValue(jsonRepresentation, BulkExtensionDataObject.class);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			fail("Can't reconstruct BulkExtensionDataObject from its JSON string");
+		}
+
+		List<OccurrenceExtensionModel> models = reconstructedBulkObj.retrieveModels();
+		assertEquals(2, models.size());
+		assertEquals("1", models.get(0).getDwcaid());
+		assertEquals(Integer.valueOf(10), models.get(0).getAuto_id());
+		assertEquals("http://img/1.jpg", models.get(0).getExt_data().get(IDENTIFIER));
+		assertEquals("image/jpeg", models.get(0).getExt_data().get(FORMAT));
+		assertEquals("2", models.get(1).getDwcaid());
+		assertEquals(2, models.get(1).getExt_data().size());
+		assertEquals(null, models.get(1).getExt_data().get(FORMAT));
+		assertEquals("Multimedia", models.get(1).getExt_type());
+		assertEquals(Integer.valueOf(1), models.get(1).getResource_id());
+		assertFalse(models.get(1).getExt_data().containsKey("id"));
+	}
+
+	@Test
+	public void testBulkExtensionDataObjectFromMap() {
+		Map<String, String> extData = new HashMap<String, String>();
+		extData.put(IDENTIFIER, "http://img/1.jpg");
+		extData.put(FORMAT, "image/jpeg");
+
+		BulkExtensionDataObject bulkObj = new BulkExtensionDataObject();
+		bulkObj.addModel(newModel(1, "1", extData));
+		extData = new HashMap<String, String>();
+		extData.put(FORMAT, "image/png");
+		bulkObj.addModel(newModel(2, "2", extData));
+
+		assertEquals(2, bulkObj.size());
+		assertEquals(2, bulkObj.getTerms().size());
+		Map<String, String> rebuiltExtData = bulkObj.retrieveModels().get(1).getExt_data();
+		assertEquals("image/png", rebuiltExtData.get(FORMAT));
+		assertEquals(null, rebuiltExtData.get(IDENTIFIER));
+		assertEquals(2, rebuiltExtData.keySet().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBulkExtensionDataObjectUnknownTerm() {
+		Map<String, String> extData = new HashMap<String, String>();
+		extData.put(IDENTIFIER, "http://img/1.jpg");
+
+		BulkExtensionDataObject bulkObj = new BulkExtensionDataObject();
+		bulkObj.addModel(newModel(1, "1", extData));
+		extData = new HashMap<String, String>();
+		extData.put(FORMAT, "image/png");
+		bulkObj.addModel(newModel(2, "2", extData));
+	}
+}
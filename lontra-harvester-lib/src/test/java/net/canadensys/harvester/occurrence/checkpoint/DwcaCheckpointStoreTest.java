@@ -0,0 +1,53 @@
+package net.canadensys.harvester.occurrence.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the persistence of the checkpoints.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaCheckpointStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSaveLoadDelete() throws IOException {
+		DwcaCheckpointStore store = new DwcaCheckpointStore(new File(folder.getRoot(), "checkpoint"));
+		assertNull(store.load(1));
+
+		DwcaCheckpoint checkpoint = new DwcaCheckpoint();
+		checkpoint.setDataFile("occurrence.txt");
+		checkpoint.setDataLength(123456789012L);
+		checkpoint.setByteOffset(98765432100L);
+		checkpoint.setOrdinal(9000000);
+		checkpoint.setLastAutoId(42);
+		checkpoint.setNumberOfRecords(8999990);
+		store.save(1, checkpoint);
+		// replace the existing checkpoint
+		checkpoint.setOrdinal(9000250);
+		store.save(1, checkpoint);
+
+		DwcaCheckpoint loaded = store.load(1);
+		assertEquals("occurrence.txt", loaded.getDataFile());
+		assertEquals(123456789012L, loaded.getDataLength());
+		assertEquals(98765432100L, loaded.getByteOffset());
+		assertEquals(9000250, loaded.getOrdinal());
+		assertEquals(42, loaded.getLastAutoId());
+		assertEquals(8999990, loaded.getNumberOfRecords());
+		assertNull(store.load(2));
+
+		store.delete(1);
+		assertNull(store.load(1));
+	}
+}
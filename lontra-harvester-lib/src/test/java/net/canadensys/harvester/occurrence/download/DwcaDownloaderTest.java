@@ -0,0 +1,230 @@
+package net.canadensys.harvester.occurrence.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test DwcaDownloader against an in-process HTTP server.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaDownloaderTest {
+
+	private static final String ETAG = "\"v1\"";
+	private static final String LAST_MODIFIED = "Tue, 15 Nov 1994 12:45:26 GMT";
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+	private static final Pattern SUFFIX_RANGE = Pattern.compile("bytes=-(\\d+)");
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private HttpServer server;
+	private byte[] content;
+	private final AtomicInteger requestCount = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		content = new byte[100000];
+		new Random(7).nextBytes(content);
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/ranges/dwca.zip", new ArchiveHandler(true));
+		server.createContext("/noranges/dwca.zip", new ArchiveHandler(false));
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testRangeDownload() throws IOException {
+		DwcaDownloader downloader = new DwcaDownloader();
+		downloader.setRangeSize(16384);
+		DwcaDownloader.Result result = downloader.download(getURL("/ranges/dwca.zip"), tempFolder.getRoot(), null);
+
+		assertFalse(result.isNotModified());
+		assertEquals("dwca-test.zip", result.getFile().getName());
+		assertArrayEquals(content, Files.readAllBytes(result.getFile().toPath()));
+		// 100000 bytes in ranges of 16384 bytes
+		assertEquals(7, requestCount.get());
+		assertEquals(ETAG, result.getValidators().getEtag());
+		assertEquals(LAST_MODIFIED, result.getValidators().getLastModified());
+	}
+
+	@Test
+	public void testNoRangeSupport() throws IOException {
+		DwcaDownloader downloader = new DwcaDownloader();
+		downloader.setRangeSize(16384);
+		DwcaDownloader.Result result = downloader.download(getURL("/noranges/dwca.zip"), tempFolder.getRoot(), null);
+
+		assertArrayEquals(content, Files.readAllBytes(result.getFile().toPath()));
+		assertEquals(1, requestCount.get());
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+		URL url = getURL("/ranges/dwca.zip");
+		HttpValidatorStore store = new HttpValidatorStore(tempFolder.newFolder());
+		assertNull(store.load(url.toString()));
+		store.save(new HttpValidators(url.toString(), ETAG, LAST_MODIFIED));
+
+		DwcaDownloader.Result result = new DwcaDownloader().download(url, tempFolder.getRoot(), store.load(url.toString()));
+		assertTrue(result.isNotModified());
+		assertNull(result.getFile());
+		assertEquals(1, requestCount.get());
+		// only the validators folder
+		assertEquals(1, tempFolder.getRoot().listFiles().length);
+	}
+
+	@Test
+	public void testPipelinedDownload() throws IOException {
+		byte[] data = createDataFile(20000);
+		content = createZip(data);
+
+		DwcaDownloader downloader = new DwcaDownloader();
+		downloader.setRangeSize(4096);
+		DwcaDownloader.Result result = downloader.downloadPipelined(getURL("/ranges/dwca.zip"), tempFolder.getRoot(), null);
+		PartialZipArchive partialArchive = result.getPartialArchive();
+		assertNotNull(partialArchive);
+		assertEquals(ETAG, result.getValidators().getEtag());
+		assertEquals(3, partialArchive.getDirectory().getEntryNames().size());
+
+		// entries can be read while the file is downloaded
+		assertArrayEquals("<archive/>".getBytes("UTF-8"), IOUtils.toByteArray(partialArchive.openEntry("dwca/meta.xml")));
+		assertArrayEquals(data, IOUtils.toByteArray(partialArchive.openEntry("dwca/occurrence.txt")));
+		assertArrayEquals(data, IOUtils.toByteArray(partialArchive.openEntry("dwca/stored.txt")));
+
+		partialArchive.awaitCompletion();
+		assertTrue(partialArchive.isComplete());
+		assertNull(PartialZipArchive.get(result.getFile()));
+		assertArrayEquals(content, Files.readAllBytes(result.getFile().toPath()));
+	}
+
+	@Test
+	public void testPipelinedDownloadWithoutRangeSupport() throws IOException {
+		content = createZip(createDataFile(100));
+		DwcaDownloader.Result result = new DwcaDownloader().downloadPipelined(getURL("/noranges/dwca.zip"), tempFolder.getRoot(),
+				null);
+		assertNull(result.getPartialArchive());
+		assertArrayEquals(content, Files.readAllBytes(result.getFile().toPath()));
+	}
+
+	private static byte[] createDataFile(int numberOfLines) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < numberOfLines; i++) {
+			sb.append(i).append("\tAus bus ").append(i % 17).append("\n");
+		}
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	private static byte[] createZip(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(bos);
+		zos.putNextEntry(new ZipEntry("dwca/occurrence.txt"));
+		zos.write(data);
+		zos.closeEntry();
+
+		ZipEntry stored = new ZipEntry("dwca/stored.txt");
+		stored.setMethod(ZipEntry.STORED);
+		stored.setSize(data.length);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		stored.setCrc(crc.getValue());
+		zos.putNextEntry(stored);
+		zos.write(data);
+		zos.closeEntry();
+
+		zos.putNextEntry(new ZipEntry("dwca/meta.xml"));
+		zos.write("<archive/>".getBytes("UTF-8"));
+		zos.closeEntry();
+		zos.close();
+		return bos.toByteArray();
+	}
+
+	private URL getURL(String path) throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	/**
+	 * Serve the content with validators and, optionally, range support.
+	 */
+	private class ArchiveHandler implements HttpHandler {
+		private final boolean supportRanges;
+
+		ArchiveHandler(boolean supportRanges) {
+			this.supportRanges = supportRanges;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			requestCount.incrementAndGet();
+			exchange.getResponseHeaders().add("ETag", ETAG);
+			exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+			exchange.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"dwca-test.zip\"");
+
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+
+			int start = 0;
+			int end = content.length - 1;
+			int status = 200;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+			if (supportRanges && range != null && (ifRange == null || ETAG.equals(ifRange))) {
+				Matcher matcher = RANGE.matcher(range);
+				Matcher suffixMatcher = SUFFIX_RANGE.matcher(range);
+				if (matcher.matches()) {
+					start = Integer.parseInt(matcher.group(1));
+					end = Math.min(Integer.parseInt(matcher.group(2)), content.length - 1);
+					status = 206;
+				}
+				else if (suffixMatcher.matches()) {
+					start = Math.max(0, content.length - Integer.parseInt(suffixMatcher.group(1)));
+					status = 206;
+				}
+				if (status == 206) {
+					exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+				}
+			}
+			exchange.sendResponseHeaders(status, end - start + 1);
+			OutputStream os = exchange.getResponseBody();
+			os.write(content, start, end - start + 1);
+			os.close();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package net.canadensys.harvester.occurrence.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the id sets and the DwcaIdFilter.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaIdFilterTest {
+
+	private static final int NUMBER_OF_IDS = 50000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testIdSet() {
+		for (IdSetStorage storage : IdSetStorage.values()) {
+			// small expected size to force rehashing
+			OpenAddressingIdSet idSet = new OpenAddressingIdSet(storage, 10);
+			for (int i = 0; i < NUMBER_OF_IDS; i++) {
+				assertTrue(idSet.add("urn:catalog:QMOR:" + i));
+			}
+			assertFalse(idSet.add("urn:catalog:QMOR:42"));
+			assertEquals(NUMBER_OF_IDS, idSet.size());
+
+			idSet.enableBloomFilter(0.01);
+			idSet.add("éèà");
+			for (int i = 0; i < NUMBER_OF_IDS; i++) {
+				assertTrue(idSet.contains("urn:catalog:QMOR:" + i));
+			}
+			assertTrue(idSet.contains("éèà"));
+			assertFalse(idSet.contains("urn:catalog:QMOR:" + NUMBER_OF_IDS));
+			assertFalse(idSet.contains(""));
+			assertFalse(idSet.contains(null));
+			idSet.close();
+		}
+	}
+
+	@Test
+	public void testIdSetChunkBoundary() {
+		// 14 bytes ids, the 16 bytes entries exactly fill each 64 KB chunk of the arena
+		int numberOfIds = 5000;
+		OpenAddressingIdSet idSet = new OpenAddressingIdSet(IdSetStorage.HEAP, 10);
+		for (int i = 0; i < numberOfIds; i++) {
+			assertTrue(idSet.add(String.format("QMOR:%09d", i)));
+		}
+		for (int i = 0; i < numberOfIds; i++) {
+			assertTrue(idSet.contains(String.format("QMOR:%09d", i)));
+		}
+		assertFalse(idSet.contains(String.format("QMOR:%09d", numberOfIds)));
+		assertEquals(numberOfIds, idSet.size());
+
+		// the longest identifier fits in a chunk
+		char[] longId = new char[64 * 1024 - 2];
+		Arrays.fill(longId, 'a');
+		assertTrue(idSet.add(new String(longId)));
+		assertTrue(idSet.contains(new String(longId)));
+		assertTrue(idSet.contains(String.format("QMOR:%09d", 0)));
+		idSet.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIdTooLong() {
+		char[] longId = new char[64 * 1024 - 1];
+		Arrays.fill(longId, 'a');
+		new OpenAddressingIdSet().add(new String(longId));
+	}
+
+	@Test
+	public void testLoadAndFilter() throws IOException {
+		File exclusionFile = folder.newFile("exclude.txt");
+		FileUtils.writeLines(exclusionFile, "UTF-8", Arrays.asList("1", "", "3", "3"));
+		File inclusionFile = folder.newFile("include.txt");
+		FileUtils.writeLines(inclusionFile, "UTF-8", Arrays.asList("1", "2", "3"));
+
+		IdSetIF exclusionSet = DwcaIdFilter.load(exclusionFile, IdSetStorage.MAPPED, true);
+		assertEquals(2, exclusionSet.size());
+
+		DwcaIdFilter filter = new DwcaIdFilter(exclusionSet, DwcaIdFilter.load(inclusionFile, IdSetStorage.OFF_HEAP, false));
+		assertFalse(filter.accept("1"));
+		assertTrue(filter.accept("2"));
+		assertFalse(filter.accept("4"));
+		filter.close();
+
+		filter = DwcaIdFilter.fromExclusionList(Arrays.asList("1", "3"));
+		assertTrue(filter.accept("4"));
+		assertFalse(filter.accept("3"));
+	}
+
+	@Test
+	public void testDuplicateIds() {
+		IdSetIF duplicateIds = new OpenAddressingIdSet(IdSetStorage.HEAP, 2);
+		duplicateIds.add("2");
+		duplicateIds.add("3");
+		DwcaIdFilter base = DwcaIdFilter.fromExclusionList(Arrays.asList("3"));
+
+		DwcaIdFilter filter = base.withDuplicateIds(duplicateIds, false);
+		assertFalse(filter.isKeepFirstDuplicate());
+		assertTrue(filter.accept("1"));
+		assertFalse(filter.accept("2"));
+		assertFalse(filter.accept("3"));
+
+		filter = base.withDuplicateIds(duplicateIds, true);
+		assertTrue(filter.isKeepFirstDuplicate());
+		assertTrue(filter.accept("2"));
+		assertFalse(filter.accept("2"));
+		// still excluded
+		assertFalse(filter.accept("3"));
+		assertTrue(filter.accept("1"));
+		assertTrue(filter.accept("1"));
+	}
+}
@@ -0,0 +1,126 @@
+package net.canadensys.harvester.occurrence.fingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the computation and the persistence of archive fingerprints.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFingerprintTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCompute() throws IOException {
+		File dwcaFolder = folder.newFolder("dwca-qmor-specimens");
+		FileUtils.copyDirectory(new File("src/test/resources/dwca-qmor-specimens"), dwcaFolder);
+		DwcaFingerprint fingerprint = DwcaFingerprint.compute(dwcaFolder, DwcaArchiveDescriptor.open(dwcaFolder));
+
+		// same content, same fingerprint
+		DwcaFingerprint same = DwcaFingerprint.compute(dwcaFolder, DwcaArchiveDescriptor.open(dwcaFolder));
+		assertTrue(fingerprint.isSameData(same));
+		assertTrue(fingerprint.isSameMetadata(same));
+
+		// EML only
+		FileUtils.write(new File(dwcaFolder, "eml.xml"), "<!-- updated -->", "UTF-8", true);
+		DwcaFingerprint emlUpdated = DwcaFingerprint.compute(dwcaFolder, DwcaArchiveDescriptor.open(dwcaFolder));
+		assertTrue(fingerprint.isSameData(emlUpdated));
+		assertFalse(fingerprint.isSameMetadata(emlUpdated));
+		assertTrue(fingerprint.isSameCore(emlUpdated));
+		assertTrue(fingerprint.getChangedExtensions(emlUpdated).isEmpty());
+
+		// extension only
+		FileUtils.write(new File(dwcaFolder, "multimedia.txt"), "\n", "UTF-8", true);
+		DwcaFingerprint extensionUpdated = DwcaFingerprint.compute(dwcaFolder, DwcaArchiveDescriptor.open(dwcaFolder));
+		assertFalse(emlUpdated.isSameData(extensionUpdated));
+		assertTrue(emlUpdated.isSameCore(extensionUpdated));
+		assertEquals(Collections.singleton("Multimedia"), emlUpdated.getChangedExtensions(extensionUpdated));
+		emlUpdated = extensionUpdated;
+
+		// data file
+		FileUtils.write(new File(dwcaFolder, "occurrence.txt"), "\n", "UTF-8", true);
+		DwcaFingerprint dataUpdated = DwcaFingerprint.compute(dwcaFolder, DwcaArchiveDescriptor.open(dwcaFolder));
+		assertFalse(emlUpdated.isSameData(dataUpdated));
+		assertTrue(emlUpdated.isSameMetadata(dataUpdated));
+		assertFalse(emlUpdated.isSameCore(dataUpdated));
+	}
+
+	@Test
+	public void testComponents() {
+		Map<String, String> extensionHashes = new HashMap<String, String>();
+		extensionHashes.put("Multimedia", "m1");
+		extensionHashes.put("Reference", "r1");
+		DwcaFingerprint previous = new DwcaFingerprint("abc", "def", 42, "core", extensionHashes);
+
+		extensionHashes.put("Multimedia", "m2");
+		extensionHashes.remove("Reference");
+		extensionHashes.put("Identification", "i1");
+		DwcaFingerprint fingerprint = new DwcaFingerprint("ghi", "def", null, "core", extensionHashes);
+		assertTrue(fingerprint.isSameCore(previous));
+		assertEquals(new TreeSet<String>(Arrays.asList("Identification", "Multimedia", "Reference")),
+				fingerprint.getChangedExtensions(previous));
+		assertEquals("core", fingerprint.withNumberOfRecords(42).getCoreHash());
+		assertEquals(extensionHashes, fingerprint.withNumberOfRecords(42).getExtensionHashes());
+
+		// fingerprints without component hashes
+		assertFalse(new DwcaFingerprint("abc", "def", 42).isSameCore(previous));
+		assertFalse(previous.isSameCore(new DwcaFingerprint("abc", "def", 42)));
+	}
+
+	@Test
+	public void testStore() throws IOException {
+		File storeFolder = new File(folder.getRoot(), "fingerprint");
+		DwcaFingerprintStore store = new DwcaFingerprintStore(storeFolder);
+		assertNull(store.load(1));
+
+		DwcaFingerprint fingerprint = new DwcaFingerprint("abc", "def", null);
+		store.save(1, fingerprint.withNumberOfRecords(42));
+		store.save(2, new DwcaFingerprint("ghi", null, null));
+
+		DwcaFingerprint loaded = store.load(1);
+		assertTrue(fingerprint.isSameData(loaded));
+		assertTrue(fingerprint.isSameMetadata(loaded));
+		assertEquals(Integer.valueOf(42), loaded.getNumberOfRecords());
+
+		loaded = store.load(2);
+		assertEquals("ghi", loaded.getDataHash());
+		assertNull(loaded.getMetadataHash());
+		assertNull(loaded.getNumberOfRecords());
+		assertFalse(fingerprint.isSameData(loaded));
+		assertFalse(fingerprint.isSameMetadata(loaded));
+
+		Map<String, String> extensionHashes = new HashMap<String, String>();
+		extensionHashes.put("Multimedia", "m1");
+		store.save(3, new DwcaFingerprint("jkl", null, 7, "core", extensionHashes));
+		loaded = store.load(3);
+		assertEquals("core", loaded.getCoreHash());
+		assertEquals(extensionHashes, loaded.getExtensionHashes());
+		assertNull(store.load(2).getCoreHash());
+		assertTrue(store.load(2).getExtensionHashes().isEmpty());
+
+		store.delete(1);
+		assertNull(store.load(1));
+		assertEquals(2, storeFolder.listFiles().length);
+	}
+}
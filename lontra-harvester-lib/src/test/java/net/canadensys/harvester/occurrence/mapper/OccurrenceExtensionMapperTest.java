@@ -1,6 +1,7 @@
 package net.canadensys.harvester.occurrence.mapper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -30,4 +31,36 @@ public class OccurrenceExtensionMapperTest {
 		assertEquals("i18", model.getDwcaid());
 		assertEquals("sunny", model.getExt_data().get("weather"));
 	}
+
+	@Test
+	public void testOccurrenceExtensionArrayMapper() {
+
+		OccurrenceExtensionMapper occurrenceExtensionMapper = new OccurrenceExtensionMapper();
+
+		OccurrenceExtensionModel model = occurrenceExtensionMapper.mapElement(new String[] { "id", "weather" },
+				new Object[] { "i18", "sunny" });
+
+		assertEquals("i18", model.getDwcaid());
+		assertEquals("sunny", model.getExt_data().get("weather"));
+	}
+
+	@Test
+	public void testOccurrenceExtensionArrayMapperSchema() {
+
+		OccurrenceExtensionMapper occurrenceExtensionMapper = new OccurrenceExtensionMapper();
+		String[] names = new String[] { "weather", "id", "wind", "weather" };
+
+		OccurrenceExtensionModel model1 = occurrenceExtensionMapper.mapElement(names, new Object[] { "sunny", "i18", "west",
+				"cloudy" });
+		OccurrenceExtensionModel model2 = occurrenceExtensionMapper.mapElement(names, new Object[] { "rainy", "i19", null, null });
+
+		assertEquals("i18", model1.getDwcaid());
+		// the last value wins, like in a Map
+		assertEquals("cloudy", model1.getExt_data().get("weather"));
+		assertEquals("west", model1.getExt_data().get("wind"));
+		assertEquals(2, model2.getExt_data().size());
+		assertEquals(null, model2.getExt_data().get("wind"));
+		// the rows of the same names share the schema
+		assertSame(ExtensionDataSchema.getSchema(model1.getExt_data()), ExtensionDataSchema.getSchema(model2.getExt_data()));
+	}
 }
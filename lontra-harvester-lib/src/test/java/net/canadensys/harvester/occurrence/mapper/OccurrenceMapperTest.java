@@ -17,15 +17,13 @@ import org.junit.Test;
  */
 public class OccurrenceMapperTest {
 
-	private static final char NULL_CHAR = '\0';
-
 	@Test
 	public void testMapping() {
 		OccurrenceMapper occMapper = new OccurrenceMapper();
 		Map<String, Object> properties = new HashMap<String, Object>();
 
 		properties.put("id", "1");
-		properties.put("country", "test country" + NULL_CHAR);
+		properties.put("country", "test country");
 		properties.put("http://purl.org/dc/terms/rights", "CC0");
 
 		OccurrenceRawModel rawModel = occMapper.mapElement(properties);
@@ -33,11 +31,30 @@ public class OccurrenceMapperTest {
 		// make sure the id is transposed to dwcaid field
 		assertEquals("1", rawModel.getDwcaid());
 
-		// ensure we do not map invalid characters
 		assertEquals("test country", rawModel.getCountry());
 		
 		// ensure the mapping rights -> license was applied
 		assertEquals("CC0", rawModel.getLicense());
 	}
 
+	@Test
+	public void testArrayMapping() {
+		OccurrenceMapper occMapper = new OccurrenceMapper();
+		String[] names = new String[] { "id", "country", "http://purl.org/dc/terms/rights" };
+		Object[] values = new Object[] { "1", new StringBuilder("test country"), "CC0" };
+
+		OccurrenceRawModel rawModel = occMapper.mapElement(names, values);
+		assertEquals("1", rawModel.getDwcaid());
+		assertEquals("test country", rawModel.getCountry());
+		assertEquals("CC0", rawModel.getLicense());
+
+		// values array reused with the same names
+		values[0] = "2";
+		values[1] = "other country";
+		rawModel = occMapper.mapElement(names, values);
+		assertEquals("2", rawModel.getDwcaid());
+		assertEquals("other country", rawModel.getCountry());
+		assertEquals("CC0", rawModel.getLicense());
+	}
+
 }
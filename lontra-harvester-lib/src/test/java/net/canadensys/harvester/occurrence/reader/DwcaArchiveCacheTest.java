@@ -0,0 +1,71 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.mock.MockSharedParameters;
+
+import org.apache.commons.io.FileUtils;
+import org.gbif.dwc.terms.GbifTerm;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the sharing of parsed archive descriptors between readers.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaArchiveCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDescriptorCache() throws IOException {
+		File dwcaFolder = folder.newFolder("dwca-qmor-specimens");
+		FileUtils.copyDirectory(new File("src/test/resources/dwca-qmor-specimens"), dwcaFolder);
+		DwcaArchiveCache cache = new DwcaArchiveCache();
+
+		DwcaArchiveDescriptor descriptor = cache.getDescriptor(dwcaFolder);
+		assertNotNull(descriptor.getExtension(GbifTerm.Multimedia));
+		assertEquals("PreservedSpecimen", descriptor.getCore().getDefaultValues().get("basisofrecord"));
+		assertSame(descriptor, cache.getDescriptor(dwcaFolder));
+
+		// a modified archive must be parsed again
+		new File(dwcaFolder, "meta.xml").setLastModified(descriptor.getModificationTime() + 2000);
+		assertNotSame(descriptor, cache.getDescriptor(dwcaFolder));
+		assertEquals(1, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testReadersShareDescriptor() throws IOException {
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		DwcaArchiveCache cache = new DwcaArchiveCache();
+		sharedParameters.put(SharedParameterEnum.DWCA_ARCHIVE_CACHE, cache);
+
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.openReader(sharedParameters);
+		assertNotNull(dwcaItemReader.read());
+		dwcaItemReader.closeReader();
+
+		DwcaExtensionInfoReader extInfoReader = new DwcaExtensionInfoReader();
+		extInfoReader.openReader(sharedParameters);
+		assertEquals(GbifTerm.Multimedia, extInfoReader.read());
+		extInfoReader.closeReader();
+
+		// both readers used the same parsed archive
+		assertEquals(1, cache.size());
+	}
+}
@@ -0,0 +1,84 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.mock.MockSharedParameters;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test reading a DarwinCore Archive straight from a ZIP file.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaArchiveSupportTest {
+
+	private static final File QMOR_FOLDER = new File("src/test/resources/dwca-qmor-specimens");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testExtractMetadata() throws IOException {
+		File zipFile = zipFolder(QMOR_FOLDER, "dwca-qmor-specimens/");
+
+		File metadataFolder = DwcaArchiveSupport.extractMetadata(zipFile);
+		assertTrue(new File(metadataFolder, "meta.xml").exists());
+		assertTrue(new File(metadataFolder, "eml.xml").exists());
+		// data files are not extracted
+		assertFalse(new File(metadataFolder, "occurrence.txt").exists());
+	}
+
+	@Test
+	public void testStreamFromZip() throws IOException {
+		File zipFile = zipFolder(QMOR_FOLDER, "");
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, zipFile.getAbsolutePath());
+
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.openReader(sharedParameters);
+
+		OccurrenceRawModel rawModel = dwcaItemReader.read();
+		assertEquals("1", rawModel.getDwcaid());
+		assertEquals("PreservedSpecimen", rawModel.getBasisofrecord());
+		assertEquals("Rigaud", rawModel.getMunicipality());
+		int count = 0;
+		while (rawModel != null) {
+			count++;
+			rawModel = dwcaItemReader.read();
+		}
+		dwcaItemReader.closeReader();
+		assertEquals(11, count);
+	}
+
+	private File zipFolder(File sourceFolder, String entryPrefix) throws IOException {
+		File zipFile = new File(folder.getRoot(), sourceFolder.getName() + ".zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			for (File file : sourceFolder.listFiles()) {
+				zos.putNextEntry(new ZipEntry(entryPrefix + file.getName()));
+				FileUtils.copyFile(file, zos);
+				zos.closeEntry();
+			}
+		}
+		finally {
+			zos.close();
+		}
+		return zipFile;
+	}
+}
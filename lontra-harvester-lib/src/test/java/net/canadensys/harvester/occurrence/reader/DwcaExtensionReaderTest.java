@@ -7,6 +7,7 @@ import static org.junit.Assert.assertNotNull;
 import java.util.HashMap;
 import java.util.Map;
 
+import net.canadensys.harvester.ItemMapperIF;
 import net.canadensys.harvester.mapper.DefaultBeanMapper;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
 import net.canadensys.harvester.occurrence.mock.MockHabitObject;
@@ -45,4 +46,30 @@ public class DwcaExtensionReaderTest {
 			obj = extReader.read();
 		}
 	}
+
+	/**
+	 * A mapper that only implements the Map version of mapElement receives the same properties.
+	 */
+	@Test
+	public void testExtensionReadingMapMapper() {
+		Map<SharedParameterEnum, Object> sharedParameters = new HashMap<SharedParameterEnum, Object>();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, "src/test/resources/dwca-vascan-checklist");
+		sharedParameters.put(SharedParameterEnum.DWCA_EXTENSION_TYPE, GbifTerm.Description);
+
+		final DefaultBeanMapper<MockHabitObject> beanMapper = new DefaultBeanMapper<MockHabitObject>(MockHabitObject.class);
+		DwcaExtensionReader<MockHabitObject> extReader = new DwcaExtensionReader<MockHabitObject>();
+		extReader.setMapper(new ItemMapperIF<MockHabitObject>() {
+			@Override
+			public MockHabitObject mapElement(Map<String, Object> properties) {
+				return beanMapper.mapElement(properties);
+			}
+		});
+
+		extReader.openReader(sharedParameters);
+		MockHabitObject obj = extReader.read();
+		assertEquals("herb", obj.getDescription());
+		assertEquals("EN", obj.getLanguage());
+		assertNotNull(obj.getId());
+		extReader.closeReader();
+	}
 }
@@ -0,0 +1,100 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import net.canadensys.harvester.occurrence.reader.parser.BoundedInputStream;
+import net.canadensys.harvester.occurrence.reader.parser.DelimitedLineTokenizer;
+import net.canadensys.harvester.occurrence.reader.parser.StreamDwcaFileIterator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the byte ranges created by DwcaFileSplitter and their reading.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFileSplitterTest {
+
+	private static final int NUMBER_OF_ROWS = 1000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeDataFile() throws IOException {
+		File file = folder.newFile("occurrence.txt");
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+			os.write("id\tscientificName\n".getBytes(UTF8));
+			for (int i = 0; i < NUMBER_OF_ROWS; i++) {
+				if (i % 100 == 0) {
+					// blank lines are not rows
+					os.write("\n\r\n".getBytes(UTF8));
+				}
+				String lineEnd = (i % 2 == 0) ? "\r\n" : "\n";
+				os.write((i + "\tGomphus é" + lineEnd).getBytes(UTF8));
+			}
+			// no line feed at the end of the file
+			os.write((NUMBER_OF_ROWS + "\tGomphus é").getBytes(UTF8));
+		}
+		finally {
+			os.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testSplit() throws IOException {
+		File dataFile = writeDataFile();
+		DwcaFileSplitter splitter = new DwcaFileSplitter();
+		splitter.setRangeSize(1024);
+		List<DwcaFileRange> ranges = splitter.split(dataFile, "occurrence.txt", 1);
+		assertTrue(ranges.size() > 1);
+
+		int numberOfRows = 0;
+		long end = 0;
+		for (DwcaFileRange range : ranges) {
+			assertEquals("occurrence.txt", range.getDataFile());
+			assertTrue(range.getOffset() >= end);
+			end = range.getOffset() + range.getLength();
+
+			// read the range like the processing nodes do
+			FileInputStream fis = new FileInputStream(dataFile);
+			fis.getChannel().position(range.getOffset());
+			StreamDwcaFileIterator it = new StreamDwcaFileIterator(new BoundedInputStream(fis, range.getLength()), UTF8,
+					new DelimitedLineTokenizer("\t", null, 2), 0);
+			int rowsInRange = 0;
+			while (it.hasNext()) {
+				assertEquals(Integer.toString(numberOfRows + rowsInRange), it.next().getString(0));
+				rowsInRange++;
+			}
+			it.close();
+			assertEquals(range.getNumberOfRows(), rowsInRange);
+			numberOfRows += rowsInRange;
+		}
+		assertEquals(dataFile.length(), end);
+		assertEquals(NUMBER_OF_ROWS + 1, numberOfRows);
+	}
+
+	@Test
+	public void testSplitHeaderOnly() throws IOException {
+		File dataFile = folder.newFile("header.txt");
+		OutputStream os = new FileOutputStream(dataFile);
+		os.write("id\tscientificName\n\n".getBytes(UTF8));
+		os.close();
+		assertTrue(new DwcaFileSplitter().split(dataFile, "header.txt", 1).isEmpty());
+	}
+}
@@ -0,0 +1,56 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.model.DwcaJoinedRecord;
+
+import org.gbif.dwc.terms.GbifTerm;
+import org.junit.Test;
+
+/**
+ * Test the join of the extension rows to the core records.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaJoinItemReaderTest {
+
+	@Test
+	public void testJoin() {
+		Map<SharedParameterEnum, Object> sharedParameters = new HashMap<SharedParameterEnum, Object>();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, "src/test/resources/dwca-qmor-specimens");
+
+		DwcaJoinItemReader joinReader = new DwcaJoinItemReader();
+		// force the sort to spill to disk
+		joinReader.setMaxRowsInMemory(3);
+		joinReader.openReader(sharedParameters);
+
+		DwcaJoinedRecord record = joinReader.read();
+		int count = 0;
+		String previousId = null;
+		while (record != null) {
+			String id = record.getCore().getDwcaid();
+			if (previousId != null) {
+				assertTrue(previousId.compareTo(id) < 0);
+			}
+			if ("1".equals(id)) {
+				assertTrue(record.hasExtension(GbifTerm.Multimedia));
+				assertEquals("StillImage", record.getExtension(GbifTerm.Multimedia).get(0).getExt_data().get("type"));
+			}
+			else {
+				assertFalse(record.hasExtension(GbifTerm.Multimedia));
+			}
+			previousId = id;
+			count++;
+			record = joinReader.read();
+		}
+		joinReader.closeReader();
+		assertEquals(10, count);
+	}
+}
@@ -4,19 +4,31 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import net.canadensys.dataportal.occurrence.model.OccurrenceRawModel;
 import net.canadensys.harvester.ItemReaderIF;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.filter.DwcaIdFilter;
+import net.canadensys.harvester.occurrence.filter.IdSetStorage;
+import net.canadensys.harvester.occurrence.filter.OpenAddressingIdSet;
 import net.canadensys.harvester.occurrence.mock.MockSharedParameters;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Test the reading of a DarwinCore Archive file and get a object back.
@@ -28,6 +40,11 @@ import org.junit.Test;
 public class DwcaReaderTest {
 
 	private final int QMOR_EXPECTED_NUMBER_OF_RECORDS = 11;
+	// number of copies of the QMOR rows in the large archive
+	private static final int LARGE_QMOR_COPIES = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
 
 	@Test
 	public void testDwcaItemReader() {
@@ -97,6 +114,178 @@ public class DwcaReaderTest {
 		assertEquals("Gomphus", rawModel.getGenus());
 	}
 
+	/**
+	 * Test the parallel read mode on a data file split in many byte ranges.
+	 */
+	@Test
+	public void testDwcaItemReaderParallel() throws IOException {
+		File dwcaFolder = copyLargeQMORArchive();
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, dwcaFolder.getAbsolutePath());
+		List<String> dwcaIdExclusionList = new ArrayList<String>();
+		dwcaIdExclusionList.add("4");
+		sharedParameters.put(SharedParameterEnum.DWCA_ID_EXCLUSION_LIST, dwcaIdExclusionList);
+
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.setParallelism(4);
+		dwcaItemReader.setChunkSize(1);
+		dwcaItemReader.openReader(sharedParameters);
+
+		List<String> dwcaIds = new ArrayList<String>();
+		OccurrenceRawModel rawModel = dwcaItemReader.read();
+		// ensure that we read default values
+		assertEquals("PreservedSpecimen", rawModel.getBasisofrecord());
+		assertEquals("Rigaud", rawModel.getMunicipality());
+		while (rawModel != null) {
+			dwcaIds.add(rawModel.getDwcaid());
+			rawModel = dwcaItemReader.read();
+		}
+		dwcaItemReader.closeReader();
+
+		// ordered read keeps the file order
+		List<String> expectedIds = readIds(dwcaFolder);
+		expectedIds.remove("4");
+		assertEquals(QMOR_EXPECTED_NUMBER_OF_RECORDS * LARGE_QMOR_COPIES - 1, dwcaIds.size());
+		assertEquals(expectedIds, dwcaIds);
+	}
+
+	@Test
+	public void testDwcaItemReaderParallelUnordered() throws IOException {
+		File dwcaFolder = copyLargeQMORArchive();
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, dwcaFolder.getAbsolutePath());
+
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.setParallelism(4);
+		dwcaItemReader.setChunkSize(1);
+		dwcaItemReader.setOrderedRead(false);
+		dwcaItemReader.openReader(sharedParameters);
+
+		Set<String> dwcaIds = new HashSet<String>();
+		OccurrenceRawModel rawModel = dwcaItemReader.read();
+		while (rawModel != null) {
+			dwcaIds.add(rawModel.getDwcaid());
+			rawModel = dwcaItemReader.read();
+		}
+		dwcaItemReader.closeReader();
+
+		assertEquals(QMOR_EXPECTED_NUMBER_OF_RECORDS * LARGE_QMOR_COPIES, dwcaIds.size());
+		assertEquals(new HashSet<String>(readIds(dwcaFolder)), dwcaIds);
+	}
+
+	@Test
+	public void testDwcaItemReaderMapped() {
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		int count = 0;
+
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.setMappedRead(true);
+		dwcaItemReader.openReader(sharedParameters);
+
+		OccurrenceRawModel rawModel = dwcaItemReader.read();
+		assertEquals("1", rawModel.getDwcaid());
+		assertEquals("PreservedSpecimen", rawModel.getBasisofrecord());
+		assertEquals("Rigaud", rawModel.getMunicipality());
+		assertEquals("Gomphus", rawModel.getGenus());
+		while (rawModel != null) {
+			count++;
+			rawModel = dwcaItemReader.read();
+		}
+		dwcaItemReader.closeReader();
+
+		assertEquals(QMOR_EXPECTED_NUMBER_OF_RECORDS, count);
+	}
+
+	@Test
+	public void testDwcaItemReaderResume() {
+		for (boolean mappedRead : new boolean[] { false, true }) {
+			Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+
+			DwcaItemReader dwcaItemReader = new DwcaItemReader();
+			dwcaItemReader.setMappedRead(mappedRead);
+			dwcaItemReader.openReader(sharedParameters);
+			for (int i = 0; i < 4; i++) {
+				dwcaItemReader.read();
+			}
+			DwcaCheckpoint checkpoint = dwcaItemReader.getCheckpoint();
+			OccurrenceRawModel expectedModel = dwcaItemReader.read();
+			dwcaItemReader.closeReader();
+			assertEquals(4, checkpoint.getOrdinal());
+
+			sharedParameters.put(SharedParameterEnum.DWCA_CHECKPOINT, checkpoint);
+			dwcaItemReader = new DwcaItemReader();
+			dwcaItemReader.setMappedRead(mappedRead);
+			dwcaItemReader.openReader(sharedParameters);
+			assertEquals(expectedModel.getDwcaid(), dwcaItemReader.read().getDwcaid());
+			int count = 5;
+			while (dwcaItemReader.read() != null) {
+				count++;
+			}
+			dwcaItemReader.closeReader();
+			assertEquals(QMOR_EXPECTED_NUMBER_OF_RECORDS, count);
+		}
+	}
+
+	/**
+	 * No checkpoint can be created in unordered parallel read mode but the reader resumes in the file order.
+	 */
+	@Test
+	public void testDwcaItemReaderResumeUnordered() throws IOException {
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		sharedParameters.put(SharedParameterEnum.DWCA_PATH, copyLargeQMORArchive().getAbsolutePath());
+
+		DwcaItemReader dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.setParallelism(4);
+		dwcaItemReader.setOrderedRead(false);
+		dwcaItemReader.openReader(sharedParameters);
+		assertFalse(dwcaItemReader.isCheckpointSupported());
+		dwcaItemReader.closeReader();
+
+		// checkpoint created by an ordered read
+		dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.openReader(sharedParameters);
+		for (int i = 0; i < 4; i++) {
+			dwcaItemReader.read();
+		}
+		DwcaCheckpoint checkpoint = dwcaItemReader.getCheckpoint();
+		List<String> expectedIds = new ArrayList<String>();
+		OccurrenceRawModel rawModel = dwcaItemReader.read();
+		while (rawModel != null) {
+			expectedIds.add(rawModel.getDwcaid());
+			rawModel = dwcaItemReader.read();
+		}
+		dwcaItemReader.closeReader();
+
+		sharedParameters.put(SharedParameterEnum.DWCA_CHECKPOINT, checkpoint);
+		dwcaItemReader = new DwcaItemReader();
+		dwcaItemReader.setParallelism(4);
+		dwcaItemReader.setChunkSize(1);
+		dwcaItemReader.setOrderedRead(false);
+		dwcaItemReader.openReader(sharedParameters);
+		assertTrue(dwcaItemReader.isCheckpointSupported());
+		List<String> dwcaIds = new ArrayList<String>();
+		rawModel = dwcaItemReader.read();
+		while (rawModel != null) {
+			dwcaIds.add(rawModel.getDwcaid());
+			rawModel = dwcaItemReader.read();
+		}
+		dwcaItemReader.closeReader();
+		assertEquals(expectedIds, dwcaIds);
+	}
+
+	/**
+	 * The duplicate ids accepted before a checkpoint are unknown, a KEEP_FIRST filter can't be used to resume.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testDwcaItemReaderResumeKeepFirstDuplicate() {
+		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
+		DwcaIdFilter idFilter = new DwcaIdFilter(null, null).withDuplicateIds(new OpenAddressingIdSet(IdSetStorage.HEAP, 1), true);
+		sharedParameters.put(SharedParameterEnum.DWCA_ID_FILTER, idFilter);
+		sharedParameters.put(SharedParameterEnum.DWCA_CHECKPOINT, new DwcaCheckpoint());
+
+		new DwcaItemReader().openReader(sharedParameters);
+	}
+
 	@Test
 	public void testDwcaItemReaderAbort() {
 		Map<SharedParameterEnum, Object> sharedParameters = MockSharedParameters.getQMORSharedParameters();
@@ -111,4 +300,42 @@ public class DwcaReaderTest {
 		rawModel = dwcaItemReader.read();
 		assertNull(rawModel);
 	}
+
+	/**
+	 * Copy the QMOR archive with its rows repeated, the core data file is then split in many byte ranges (8 KB at least)
+	 * by the parallel read mode. The ids of the copies are suffixed by the copy number.
+	 *
+	 * @return folder of the archive
+	 * @throws IOException
+	 */
+	private File copyLargeQMORArchive() throws IOException {
+		File dwcaFolder = folder.newFolder();
+		FileUtils.copyDirectory(new File("src/test/resources/dwca-qmor-specimens"), dwcaFolder);
+		File occurrenceFile = new File(dwcaFolder, "occurrence.txt");
+		List<String> lines = FileUtils.readLines(occurrenceFile, "UTF-8");
+		List<String> largeLines = new ArrayList<String>(lines);
+		for (int copy = 1; copy < LARGE_QMOR_COPIES; copy++) {
+			for (String line : lines) {
+				largeLines.add(line.replaceFirst("\t", "-" + copy + "\t"));
+			}
+		}
+		FileUtils.writeLines(occurrenceFile, "UTF-8", largeLines, "\n");
+		assertTrue(occurrenceFile.length() > 16 * 8192);
+		return dwcaFolder;
+	}
+
+	/**
+	 * Read the ids (first column) of the core data file.
+	 *
+	 * @param dwcaFolder
+	 * @return ids in the file order
+	 * @throws IOException
+	 */
+	private List<String> readIds(File dwcaFolder) throws IOException {
+		List<String> ids = new ArrayList<String>();
+		for (String line : FileUtils.readLines(new File(dwcaFolder, "occurrence.txt"), "UTF-8")) {
+			ids.add(line.substring(0, line.indexOf('\t')));
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,130 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the parallel extraction of ZIP files.
+ *
+ * @author canadensys
+ *
+ */
+public class ParallelZipExtractorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testExtract() throws IOException {
+		byte[] occurrences = new byte[3 * 1024 * 1024];
+		new Random(1).nextBytes(occurrences);
+		byte[] multimedia = "id\tidentifier\n1\thttp://data.canadensys.net/1.jpg\n".getBytes("UTF-8");
+		byte[] meta = "<archive/>".getBytes("UTF-8");
+
+		File zipFile = folder.newFile("dwca.zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			zos.putNextEntry(new ZipEntry("data/"));
+			zos.closeEntry();
+			addEntry(zos, "data/occurrence.txt", occurrences, false);
+			addEntry(zos, "multimedia.txt", multimedia, true);
+			addEntry(zos, "meta.xml", meta, false);
+		}
+		finally {
+			zos.close();
+		}
+
+		ParallelZipExtractor extractor = new ParallelZipExtractor();
+		extractor.setBufferSize(64 * 1024);
+		File destination = new File(folder.getRoot(), "dwca");
+		extractor.extract(zipFile, destination);
+
+		assertArrayEquals(occurrences, FileUtils.readFileToByteArray(new File(destination, "data/occurrence.txt")));
+		assertArrayEquals(multimedia, FileUtils.readFileToByteArray(new File(destination, "multimedia.txt")));
+		assertArrayEquals(meta, FileUtils.readFileToByteArray(new File(destination, "meta.xml")));
+		// data folder, multimedia.txt and meta.xml
+		assertEquals(3, destination.listFiles().length);
+	}
+
+	@Test
+	public void testInvalidCrc() throws IOException {
+		byte[] content = "id\tscientificName\n1\tCarex\n".getBytes("UTF-8");
+		File zipFile = folder.newFile("corrupted.zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			addEntry(zos, "occurrence.txt", content, true);
+		}
+		finally {
+			zos.close();
+		}
+		// alter the stored content (right after the local header and the name)
+		RandomAccessFile raf = new RandomAccessFile(zipFile, "rw");
+		try {
+			raf.seek(30 + "occurrence.txt".length());
+			raf.write('X');
+		}
+		finally {
+			raf.close();
+		}
+
+		try {
+			new ParallelZipExtractor().extract(zipFile, new File(folder.getRoot(), "corrupted"));
+			fail("Invalid CRC not detected");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().contains("CRC"));
+		}
+	}
+
+	@Test
+	public void testEntryOutsideFolder() throws IOException {
+		File zipFile = folder.newFile("slip.zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			addEntry(zos, "../outside.txt", "x".getBytes("UTF-8"), false);
+		}
+		finally {
+			zos.close();
+		}
+
+		try {
+			new ParallelZipExtractor().extract(zipFile, new File(folder.getRoot(), "slip"));
+			fail("Entry outside of the folder not detected");
+		}
+		catch (IOException e) {
+			assertFalse(new File(folder.getRoot(), "outside.txt").exists());
+		}
+	}
+
+	private static void addEntry(ZipOutputStream zos, String name, byte[] content, boolean stored) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		if (stored) {
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(content.length);
+			entry.setCompressedSize(content.length);
+			entry.setCrc(crc.getValue());
+		}
+		zos.putNextEntry(entry);
+		zos.write(content);
+		zos.closeEntry();
+	}
+}
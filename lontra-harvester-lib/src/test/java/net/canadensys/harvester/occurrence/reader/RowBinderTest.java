@@ -0,0 +1,69 @@
+package net.canadensys.harvester.occurrence.reader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import net.canadensys.harvester.occurrence.reader.parser.StringArrayRow;
+
+import org.junit.Test;
+
+/**
+ * Test the binding of rows by RowBinder.
+ *
+ * @author canadensys
+ *
+ */
+public class RowBinderTest {
+
+	@Test
+	public void testBind() {
+		Map<String, String> defaultValues = new HashMap<String, String>();
+		defaultValues.put("country", "Canada");
+		defaultValues.put("license", "CC0");
+		RowBinder rowBinder = RowBinder.compile(new String[] { "id", "country", "locality" }, defaultValues);
+
+		// names are shared, the default value replaces the column with the same name
+		assertSame(rowBinder.getNames(), rowBinder.getNames());
+		assertArrayEquals(new String[] { "id", "country", "locality", "license" }, rowBinder.getNames());
+
+		Object[] values = rowBinder.newValues();
+		rowBinder.bind(new StringArrayRow(new String[] { "1", "Mexico", "Montreal" }), values);
+		assertArrayEquals(new Object[] { "1", "Canada", "Montreal", "CC0" }, values);
+
+		// missing cells are bound as empty values
+		rowBinder.bindStrings(new StringArrayRow(new String[] { "2" }), values);
+		assertArrayEquals(new Object[] { "2", "Canada", "", "CC0" }, values);
+	}
+
+	@Test
+	public void testNoDefaultValues() {
+		RowBinder rowBinder = RowBinder.compile(new String[] { "id", "locality" }, null);
+		Object[] values = rowBinder.newValues();
+		assertEquals(2, values.length);
+		rowBinder.bindStrings(new StringArrayRow(new String[] { "1", "Ottawa" }), values);
+		assertArrayEquals(new Object[] { "1", "Ottawa" }, values);
+	}
+
+	@Test
+	public void testProjection() {
+		Map<String, String> defaultValues = new HashMap<String, String>();
+		defaultValues.put("license", "CC0");
+		defaultValues.put("unknown", "x");
+		RowBinder rowBinder = RowBinder.compile(new String[] { "id", "country", "notused", "locality" }, defaultValues,
+				new HashSet<String>(Arrays.asList("id", "locality", "license")));
+
+		assertArrayEquals(new String[] { "id", "locality", "license" }, rowBinder.getNames());
+		assertTrue(Arrays.equals(new boolean[] { true, false, false, true }, rowBinder.getBoundColumns(4)));
+
+		Object[] values = rowBinder.newValues();
+		rowBinder.bind(new StringArrayRow(new String[] { "1", "Canada", "x", "Montreal" }), values);
+		assertArrayEquals(new Object[] { "1", "Montreal", "CC0" }, values);
+	}
+}
@@ -0,0 +1,79 @@
+package net.canadensys.harvester.occurrence.reader.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.gbif.utils.file.ClosableIterator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the external merge sort of ExternalRowSorter.
+ *
+ * @author canadensys
+ *
+ */
+public class ExternalRowSorterTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Test
+	public void testSortWithSpill() throws IOException {
+		List<String[]> rows = new ArrayList<String[]>();
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			// key, original position, a null cell
+			rows.add(new String[] { "k" + random.nextInt(100), Integer.toString(i), null });
+		}
+
+		File runFolder = tempFolder.newFolder();
+		ClosableIterator<String[]> sorted = new ExternalRowSorter(0, 64, runFolder).sort(rows.iterator());
+		// 15 runs written, the last one is merged from memory
+		assertEquals(15, runFolder.list().length);
+
+		String[] previous = null;
+		int count = 0;
+		while (sorted.hasNext()) {
+			String[] row = sorted.next();
+			assertEquals(null, row[2]);
+			if (previous != null) {
+				int comparison = previous[0].compareTo(row[0]);
+				assertFalse(comparison > 0);
+				// stable for rows with the same key
+				if (comparison == 0) {
+					assertFalse(Integer.parseInt(previous[1]) > Integer.parseInt(row[1]));
+				}
+			}
+			previous = row;
+			count++;
+		}
+		sorted.close();
+		assertEquals(1000, count);
+		assertEquals(0, runFolder.list().length);
+	}
+
+	@Test
+	public void testSortInMemory() throws IOException {
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(new String[] { "b" });
+		rows.add(new String[] { null });
+		rows.add(new String[] { "a" });
+
+		File runFolder = tempFolder.newFolder();
+		ClosableIterator<String[]> sorted = new ExternalRowSorter(0, 10, runFolder).sort(rows.iterator());
+		assertEquals(0, runFolder.list().length);
+		assertEquals(null, sorted.next()[0]);
+		assertEquals("a", sorted.next()[0]);
+		assertEquals("b", sorted.next()[0]);
+		assertFalse(sorted.hasNext());
+		sorted.close();
+	}
+}
@@ -0,0 +1,28 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * Test the tokenization of lines by DelimitedLineTokenizer.
+ *
+ * @author canadensys
+ *
+ */
+public class DelimitedLineTokenizerTest {
+
+	@Test
+	public void testTokenize() {
+		DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer(',', '"', 4);
+		assertArrayEquals(new String[] { "1", "a,b", "say \"hi\"", "" }, tokenizer.tokenize("1,\"a,b\",\"say \"\"hi\"\"\""));
+	}
+
+	@Test
+	public void testProjection() {
+		// only the first and third columns are materialized
+		DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer(",", '"', 4, new boolean[] { true, false, true });
+		assertArrayEquals(new String[] { "1", "", "say \"hi\"", "" }, tokenizer.tokenize("1,\"a,b\",\"say \"\"hi\"\"\",x"));
+		assertArrayEquals(new String[] { "1", "", "c", "" }, tokenizer.tokenize("1,b,c,d"));
+	}
+}
@@ -0,0 +1,137 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Test the byte-level sanitizing of data files.
+ *
+ * @author canadensys
+ *
+ */
+public class InputSanitizerTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	@Test
+	public void testSanitize() throws IOException {
+		InputSanitizer sanitizer = new InputSanitizer(UTF8, "\t", '"');
+		byte[] content = concat("1\tSaint-J\u0000érôme\u000B\r\n2\t\"Rigaud\"\rlast".getBytes(UTF8), new byte[] { (byte) 0xC3,
+				(byte) 0x28, (byte) 0xE2, (byte) 0x82 });
+
+		ByteBuffer out = ByteBuffer.allocate(InputSanitizer.getMaxOutputLength(content.length));
+		sanitizer.sanitize(ByteBuffer.wrap(content), out, true);
+		assertEquals("1\tSaint-Jérôme \n2\t\"Rigaud\"\nlast\uFFFD(\uFFFD", new String(out.array(), 0, out.position(), UTF8));
+
+		assertTrue(sanitizer.hasInvalidCharacters());
+		assertEquals(1, sanitizer.getRemovedNulCount());
+		assertEquals(1, sanitizer.getReplacedControlCount());
+		// the incomplete sequence at the end of the data is also replaced
+		assertEquals(2, sanitizer.getReplacedSequenceCount());
+		assertEquals(2, sanitizer.getNormalizedLineEndingCount());
+	}
+
+	@Test
+	public void testValidContent() {
+		InputSanitizer sanitizer = new InputSanitizer(UTF8, "\t", null);
+		byte[] content = "\uFEFFid\tname\n1\tSaint-Jérôme \uD83C\uDF3F\n".getBytes(UTF8);
+
+		ByteBuffer out = ByteBuffer.allocate(InputSanitizer.getMaxOutputLength(content.length));
+		sanitizer.sanitize(ByteBuffer.wrap(content), out, true);
+		assertArrayEquals(content, toArray(out));
+		assertFalse(sanitizer.hasInvalidCharacters());
+		assertEquals(0, sanitizer.getNormalizedLineEndingCount());
+	}
+
+	@Test
+	public void testIncompleteInput() {
+		InputSanitizer sanitizer = new InputSanitizer(UTF8, "\t", null);
+		ByteBuffer in = ByteBuffer.wrap(new byte[] { 'a', (byte) 0xC3, 'b', '\r' });
+		ByteBuffer out = ByteBuffer.allocate(16);
+
+		// the end of the input is kept until more bytes are available
+		in.limit(2);
+		sanitizer.sanitize(in, out, false);
+		assertEquals(1, in.position());
+		in.limit(4);
+		sanitizer.sanitize(in, out, false);
+		assertEquals(3, in.position());
+		sanitizer.sanitize(in, out, true);
+		assertEquals(4, in.position());
+		assertEquals("a\uFFFDb\n", new String(out.array(), 0, out.position(), UTF8));
+	}
+
+	@Test
+	public void testOtherEncoding() {
+		// non-ASCII bytes are not checked, the control character used as delimiter is kept
+		InputSanitizer sanitizer = new InputSanitizer(LATIN1, "\u0001", null);
+		byte[] content = "1\u0001Saint-J\u0000érôme\u0002".getBytes(LATIN1);
+
+		ByteBuffer out = ByteBuffer.allocate(InputSanitizer.getMaxOutputLength(content.length));
+		sanitizer.sanitize(ByteBuffer.wrap(content), out, true);
+		assertEquals("1\u0001Saint-Jérôme ", new String(out.array(), 0, out.position(), LATIN1));
+		assertEquals(1, sanitizer.getRemovedNulCount());
+		assertEquals(1, sanitizer.getReplacedControlCount());
+	}
+
+	@Test
+	public void testSanitizeCells() {
+		InputSanitizer sanitizer = new InputSanitizer(null, "\t", null);
+		String[] cells = new String[] { "1", "Saint-J\u0000érôme\u0007", null };
+		sanitizer.sanitize(cells);
+		assertArrayEquals(new String[] { "1", "Saint-Jérôme ", null }, cells);
+		assertEquals(1, sanitizer.getRemovedNulCount());
+		assertEquals(1, sanitizer.getReplacedControlCount());
+	}
+
+	@Test
+	public void testSanitizingInputStream() throws IOException {
+		InputSanitizer sanitizer = new InputSanitizer(UTF8, "\t", null);
+		String line = "1\tSaint-J\u0000érôme\r\n";
+		StringBuilder content = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			content.append(line);
+			expected.append("1\tSaint-Jérôme\n");
+		}
+
+		// small buffer to split sequences and line endings
+		InputStream is = new SanitizingInputStream(new ByteArrayInputStream(content.toString().getBytes(UTF8)), sanitizer, 7);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[5];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		is.close();
+		assertEquals(expected.toString(), new String(out.toByteArray(), UTF8));
+		assertEquals(100, sanitizer.getRemovedNulCount());
+		assertEquals(0, sanitizer.getReplacedSequenceCount());
+		assertEquals(100, sanitizer.getNormalizedLineEndingCount());
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] array = new byte[buffer.position()];
+		System.arraycopy(buffer.array(), 0, array, 0, array.length);
+		return array;
+	}
+}
@@ -0,0 +1,145 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the tokenization of a data file on a memory-mapped buffer.
+ *
+ * @author canadensys
+ *
+ */
+public class MappedDwcaFileIteratorTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTabDelimitedFile() throws IOException {
+		File dataFile = folder.newFile("occurrence.txt");
+		FileUtils.writeStringToFile(dataFile, "\uFEFFid\tname\tlocality\r\n1\tGomphus\tRigaud\r\n\r\n2\t\tSaint-J\u0000érôme\r\n3\tlast",
+				"UTF-8");
+
+		MappedDwcaFileIterator it = new MappedDwcaFileIterator(dataFile, UTF8, '\t', null, 1, 3, 1024);
+		try {
+			assertTrue(it.hasNext());
+			DwcaRowIF row = it.next();
+			assertEquals(3, row.size());
+			assertEquals("1", row.getString(0));
+			assertEquals("Rigaud", row.getString(2));
+
+			DwcaRowIF secondRow = it.next();
+			// rows are reused
+			assertSame(row, secondRow);
+			assertEquals("2", secondRow.getString(0));
+			assertEquals("", secondRow.getString(1));
+			// NUL character removed
+			assertEquals("Saint-Jérôme", secondRow.getString(2));
+
+			DwcaRowIF thirdRow = it.next();
+			assertEquals("last", thirdRow.getString(1));
+			// missing cell
+			assertEquals("", thirdRow.getString(2));
+			assertFalse(it.hasNext());
+		}
+		finally {
+			it.close();
+		}
+	}
+
+	@Test
+	public void testQuotedFile() throws IOException {
+		File dataFile = folder.newFile("occurrence.csv");
+		FileUtils.writeStringToFile(dataFile, "1,\"a,b\",\"say \"\"hi\"\"\"\n,,\n", "UTF-8");
+
+		MappedDwcaFileIterator it = new MappedDwcaFileIterator(dataFile, UTF8, ',', '"', 0, 3, 1024);
+		try {
+			DwcaRowIF row = it.next();
+			assertEquals("a,b", row.getString(1));
+			assertEquals("say \"hi\"", row.get(2).toString());
+			assertFalse(row.isBlank());
+
+			row = it.next();
+			assertEquals(3, row.size());
+			assertTrue(row.isBlank());
+			assertFalse(it.hasNext());
+		}
+		finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * Use a small window to make sure rows are read across windows.
+	 */
+	@Test
+	public void testMultipleWindows() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i).append("\tvalue ").append(i).append("\n");
+		}
+		File dataFile = folder.newFile("occurrence.txt");
+		FileUtils.writeStringToFile(dataFile, sb.toString(), "UTF-8");
+
+		MappedDwcaFileIterator it = new MappedDwcaFileIterator(dataFile, UTF8, '\t', null, 0, 2, 64);
+		int count = 0;
+		try {
+			while (it.hasNext()) {
+				DwcaRowIF row = it.next();
+				assertEquals(Integer.toString(count), row.getString(0));
+				assertEquals("value " + count, row.getString(1));
+				count++;
+			}
+		}
+		finally {
+			it.close();
+		}
+		assertEquals(1000, count);
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		StringBuilder sb = new StringBuilder("id\tvalue\n");
+		for (int i = 0; i < 100; i++) {
+			sb.append(i).append("\tvalue ").append(i).append("\n");
+		}
+		File dataFile = folder.newFile("occurrence.txt");
+		FileUtils.writeStringToFile(dataFile, sb.toString(), "UTF-8");
+
+		long offset;
+		MappedDwcaFileIterator it = new MappedDwcaFileIterator(dataFile, UTF8, '\t', null, 1, 2, 64);
+		try {
+			for (int i = 0; i < 42; i++) {
+				it.next();
+			}
+			offset = it.getOffset();
+		}
+		finally {
+			it.close();
+		}
+
+		it = new MappedDwcaFileIterator(dataFile, UTF8, '\t', null, 1, 2, 64);
+		try {
+			it.seek(offset);
+			assertEquals("42", it.next().getString(0));
+			it.seek(dataFile.length());
+			assertFalse(it.hasNext());
+		}
+		finally {
+			it.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package net.canadensys.harvester.occurrence.reader.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the parallel parsing of a delimited data file.
+ *
+ * @author canadensys
+ *
+ */
+public class ParallelDwcaFileIteratorTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTokenizer() {
+		DelimitedLineTokenizer tabTokenizer = new DelimitedLineTokenizer('\t', null, 4);
+		assertArrayEquals(new String[] { "1", "", "a", "" }, tabTokenizer.tokenize("1\t\ta"));
+		assertArrayEquals(new String[] { "1", "\"b\"", "c", "d", "e" }, tabTokenizer.tokenize("1\t\"b\"\tc\td\te"));
+
+		DelimitedLineTokenizer csvTokenizer = new DelimitedLineTokenizer(',', '"', 3);
+		assertArrayEquals(new String[] { "1", "a,b", "say \"hi\"" }, csvTokenizer.tokenize("1,\"a,b\",\"say \"\"hi\"\"\""));
+		assertArrayEquals(new String[] { "", "", "" }, csvTokenizer.tokenize(","));
+	}
+
+	@Test
+	public void testOrderedRead() throws IOException {
+		File dataFile = writeDataFile(1000, true);
+		List<String[]> rows = readAll(dataFile, 1, true);
+
+		assertEquals(1000, rows.size());
+		for (int i = 0; i < rows.size(); i++) {
+			assertEquals(Integer.toString(i), rows.get(i)[0]);
+			assertEquals("é" + i, rows.get(i)[2]);
+		}
+	}
+
+	@Test
+	public void testUnorderedRead() throws IOException {
+		File dataFile = writeDataFile(1000, false);
+		List<String[]> rows = readAll(dataFile, 0, false);
+
+		assertEquals(1000, rows.size());
+		boolean[] found = new boolean[1000];
+		for (String[] row : rows) {
+			found[Integer.parseInt(row[0])] = true;
+		}
+		for (boolean f : found) {
+			assertTrue(f);
+		}
+	}
+
+	@Test
+	public void testOrderedReadKeepsChunksInFlightBounded() throws IOException {
+		File dataFile = writeDataFile(20000, true);
+		ParallelDwcaFileIterator it = new ParallelDwcaFileIterator(dataFile, UTF8, new DelimitedLineTokenizer('\t', null, 3), 1,
+				2, 128, true);
+		// ranges are at least 8192 bytes, the file must be split in many more ranges than the number of ranges in flight
+		assertTrue(dataFile.length() / 8192 > it.getMaxChunksInFlight() * 10);
+		int count = 0;
+		int maxChunksInFlight = 0;
+		try {
+			while (it.hasNext()) {
+				assertEquals(Integer.toString(count), it.next()[0]);
+				assertTrue(it.getChunksInFlight() <= it.getMaxChunksInFlight());
+				maxChunksInFlight = Math.max(maxChunksInFlight, it.getChunksInFlight());
+				count++;
+			}
+			assertEquals(0, it.getChunksInFlight());
+		}
+		finally {
+			it.close();
+		}
+		assertEquals(20000, count);
+		// ranges were parsed ahead of the one being read
+		assertTrue(maxChunksInFlight > 1);
+	}
+
+	@Test
+	public void testIsSupported() {
+		assertTrue(ParallelDwcaFileIterator.isSupported(UTF8));
+		assertTrue(ParallelDwcaFileIterator.isSupported(Charset.forName("ISO-8859-1")));
+		assertFalse(ParallelDwcaFileIterator.isSupported(Charset.forName("UTF-16")));
+	}
+
+	private List<String[]> readAll(File dataFile, int headerLines, boolean ordered) throws IOException {
+		List<String[]> rows = new ArrayList<String[]>();
+		ParallelDwcaFileIterator it = new ParallelDwcaFileIterator(dataFile, UTF8, new DelimitedLineTokenizer('\t', null, 3),
+				headerLines, 4, 128, ordered);
+		try {
+			while (it.hasNext()) {
+				rows.add(it.next());
+			}
+		}
+		finally {
+			it.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Write a data file with CRLF line endings, a blank line and no line terminator on the last line.
+	 */
+	private File writeDataFile(int numberOfRows, boolean withHeader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		if (withHeader) {
+			sb.append("id\tvalue\tlabel\r\n");
+		}
+		for (int i = 0; i < numberOfRows; i++) {
+			if (i > 0) {
+				sb.append("\r\n");
+			}
+			if (i == numberOfRows / 2) {
+				sb.append("\r\n");
+			}
+			sb.append(i).append("\tvalue ").append(i).append("\té").append(i);
+		}
+		File dataFile = folder.newFile("occurrence.txt");
+		FileUtils.writeStringToFile(dataFile, sb.toString(), "UTF-8");
+		return dataFile;
+	}
+}
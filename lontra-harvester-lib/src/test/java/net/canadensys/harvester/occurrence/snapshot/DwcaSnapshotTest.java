@@ -0,0 +1,111 @@
+package net.canadensys.harvester.occurrence.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.canadensys.harvester.occurrence.reader.parser.DwcaRowIF;
+import net.canadensys.harvester.occurrence.reader.parser.StringArrayRow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the snapshot files and the DwcaSnapshotStore.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaSnapshotTest {
+
+	private static final int NUMBER_OF_ROWS = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeSnapshotFile() throws IOException {
+		File file = folder.newFile("occurrence.snapshot");
+		// small row groups to test the row group boundaries
+		SnapshotFileWriter writer = new SnapshotFileWriter(file, 3, 64);
+		for (int i = 0; i < NUMBER_OF_ROWS; i++) {
+			if (i % 100 == 99) {
+				// missing columns
+				writer.write(new StringArrayRow(new String[] { Integer.toString(i) }));
+			}
+			else {
+				writer.write(new StringArrayRow(new String[] { Integer.toString(i), "Gomphus é" + (i % 3), "" }));
+			}
+		}
+		writer.close();
+		assertEquals(NUMBER_OF_ROWS, writer.getNumberOfRows());
+		return file;
+	}
+
+	@Test
+	public void testReadSnapshotFile() throws IOException {
+		SnapshotRowIterator it = new SnapshotRowIterator(writeSnapshotFile(), null);
+		int i = 0;
+		DwcaRowIF row;
+		while (it.hasNext()) {
+			row = it.next();
+			assertEquals(Integer.toString(i), row.getString(0));
+			if (i % 100 == 99) {
+				assertEquals(1, row.size());
+				assertEquals("", row.getString(1));
+			}
+			else {
+				assertEquals(3, row.size());
+				assertEquals("Gomphus é" + (i % 3), row.get(1).toString());
+				assertEquals("", row.getString(2));
+			}
+			assertFalse(row.isBlank());
+			i++;
+		}
+		it.close();
+		assertEquals(NUMBER_OF_ROWS, i);
+	}
+
+	@Test
+	public void testProjectionAndSkip() throws IOException {
+		SnapshotRowIterator it = new SnapshotRowIterator(writeSnapshotFile(), new boolean[] { false, true });
+		it.skipTo(130);
+		DwcaRowIF row = it.next();
+		// not projected
+		assertEquals("", row.getString(0));
+		assertEquals("Gomphus é" + (130 % 3), row.getString(1));
+
+		it.skipTo(NUMBER_OF_ROWS - 1);
+		assertTrue(it.hasNext());
+		// only the id, which is not projected
+		assertTrue(it.next().isBlank());
+		assertFalse(it.hasNext());
+		it.close();
+	}
+
+	@Test
+	public void testStore() throws IOException {
+		DwcaSnapshotStore store = new DwcaSnapshotStore(folder.newFolder("snapshot"));
+		assertNull(store.load(1, "abc"));
+
+		DwcaSnapshot snapshot = store.create(1, "abc");
+		assertNull(store.load(1, "abc"));
+		snapshot = store.save(1, snapshot);
+		assertNotNull(store.load(1, "abc"));
+
+		// a new archive replaces the snapshot
+		store.save(1, store.create(1, "def"));
+		assertNull(store.load(1, "abc"));
+		assertNotNull(store.load(1, "def"));
+
+		store.discard(store.create(2, "abc"));
+		assertNull(store.load(2, "abc"));
+		store.delete(1);
+		assertNull(store.load(1, "def"));
+	}
+}
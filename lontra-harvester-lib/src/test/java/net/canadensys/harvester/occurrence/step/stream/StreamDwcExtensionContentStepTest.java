@@ -2,7 +2,6 @@ package net.canadensys.harvester.occurrence.step.stream;
 
 import static org.junit.Assert.assertEquals;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +11,7 @@ import net.canadensys.dataportal.occurrence.model.OccurrenceExtensionModel;
 import net.canadensys.harvester.ItemProcessorIF;
 import net.canadensys.harvester.config.ProcessingConfigTest;
 import net.canadensys.harvester.message.ProcessingMessageIF;
+import net.canadensys.harvester.model.BulkExtensionDataObject;
 import net.canadensys.harvester.occurrence.SharedParameterEnum;
 import net.canadensys.harvester.occurrence.mapper.OccurrenceExtensionMapper;
 import net.canadensys.harvester.occurrence.message.DefaultMessage;
@@ -70,7 +70,9 @@ public class StreamDwcExtensionContentStepTest {
 		List<ProcessingMessageIF> objList = mockMessageWriter.getContent();
 		DefaultMessage firstObj = (DefaultMessage) objList.get(0);
 
-		assertEquals(OccurrenceExtensionModel.class, ((ArrayList<?>) firstObj.getContent()).get(0).getClass());
+		assertEquals(BulkExtensionDataObject.class, firstObj.getContent().getClass());
+		assertEquals(OccurrenceExtensionModel.class, ((BulkExtensionDataObject) firstObj.getContent()).retrieveModels().get(0)
+				.getClass());
 	}
 
 }
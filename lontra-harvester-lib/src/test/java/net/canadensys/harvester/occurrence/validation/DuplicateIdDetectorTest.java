@@ -0,0 +1,80 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the duplicated ids found by DuplicateIdDetector.
+ *
+ * @author canadensys
+ *
+ */
+public class DuplicateIdDetectorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dwcaFolder;
+	private File occurrenceFile;
+
+	@Before
+	public void copyArchive() throws IOException {
+		dwcaFolder = folder.newFolder("dwca-qmor-specimens");
+		FileUtils.copyDirectory(new File("src/test/resources/dwca-qmor-specimens"), dwcaFolder);
+		occurrenceFile = new File(dwcaFolder, "occurrence.txt");
+	}
+
+	@Test
+	public void testNoDuplicate() throws IOException {
+		DwcaArchiveDescriptor descriptor = DwcaArchiveDescriptor.open(dwcaFolder);
+		DuplicateIdReport report = new DuplicateIdDetector().detect(dwcaFolder, descriptor.getCore());
+
+		assertEquals(FileUtils.readLines(occurrenceFile, "UTF-8").size(), report.getNumberOfRows());
+		assertFalse(report.hasDuplicates());
+		assertEquals(0, report.getNumberOfDuplicateRows());
+	}
+
+	@Test
+	public void testDuplicates() throws IOException {
+		List<String> lines = FileUtils.readLines(occurrenceFile, "UTF-8");
+		int numberOfRows = lines.size();
+		String firstRow = lines.get(0);
+		String secondRow = lines.get(1);
+		String secondId = secondRow.substring(0, secondRow.indexOf('\t'));
+		lines.add(secondRow);
+		lines.add(firstRow);
+		lines.add(firstRow);
+		// empty id, ignored
+		lines.add(firstRow.substring(firstRow.indexOf('\t')));
+		FileUtils.writeLines(occurrenceFile, "UTF-8", lines, "\n");
+
+		DwcaArchiveDescriptor descriptor = DwcaArchiveDescriptor.open(dwcaFolder);
+		DuplicateIdDetector detector = new DuplicateIdDetector();
+		// use many small chunks and spill the hashes to the partition files
+		detector.setChunkSize(1024);
+		detector.setParallelism(3);
+		detector.setMaxHashesInMemory(2);
+		detector.setTempFolder(folder.newFolder("tmp"));
+		DuplicateIdReport report = detector.detect(dwcaFolder, descriptor.getCore());
+
+		assertEquals(numberOfRows + 3, report.getNumberOfRows());
+		assertTrue(report.hasDuplicates());
+		// in the order of their first row
+		assertEquals(Arrays.asList("1", secondId), report.getDuplicateIds());
+		assertEquals(3, report.getNumberOfDuplicateRows());
+	}
+}
@@ -0,0 +1,122 @@
+package net.canadensys.harvester.occurrence.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.canadensys.harvester.occurrence.reader.DwcaArchiveDescriptor;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the statistics and the errors collected by DwcaFileScanner.
+ *
+ * @author canadensys
+ *
+ */
+public class DwcaFileScannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dwcaFolder;
+	private File occurrenceFile;
+
+	@Before
+	public void copyArchive() throws IOException {
+		dwcaFolder = folder.newFolder("dwca-qmor-specimens");
+		FileUtils.copyDirectory(new File("src/test/resources/dwca-qmor-specimens"), dwcaFolder);
+		occurrenceFile = new File(dwcaFolder, "occurrence.txt");
+	}
+
+	@Test
+	public void testValidArchive() throws IOException {
+		DwcaArchiveDescriptor descriptor = DwcaArchiveDescriptor.open(dwcaFolder);
+		DwcaFileStatistics core = new DwcaFileScanner().scan(dwcaFolder, descriptor.getCore(), true);
+
+		assertEquals(FileUtils.readLines(occurrenceFile, "UTF-8").size(), core.getNumberOfRows());
+		assertFalse(core.hasErrors());
+		assertEquals(0, core.getNumberOfDuplicateIds());
+		assertTrue(core.getErrorSamples().isEmpty());
+		// the id is always there
+		assertEquals(1d, core.getFillRate(0), 0);
+	}
+
+	@Test
+	public void testInvalidRows() throws IOException {
+		List<String> lines = FileUtils.readLines(occurrenceFile, "UTF-8");
+		int numberOfRows = lines.size();
+		String firstRow = lines.get(0);
+		String firstRowWithoutId = firstRow.substring(firstRow.indexOf('\t'));
+		// duplicate id
+		lines.add(firstRow);
+		// missing columns
+		lines.add("999\tQMOR-999");
+		// empty id
+		lines.add(firstRowWithoutId);
+		FileUtils.writeLines(occurrenceFile, "UTF-8", lines, "\n");
+		// invalid UTF-8 sequence in the genus
+		byte[] invalidRow = ("1000" + firstRowWithoutId.replace("Gomphus", "G\u0001\u0002mphus") + "\n").getBytes("UTF-8");
+		for (int i = 0; i < invalidRow.length; i++) {
+			if (invalidRow[i] == 1) {
+				invalidRow[i] = (byte) 0xC3;
+				invalidRow[i + 1] = (byte) 0x28;
+			}
+		}
+		FileUtils.writeByteArrayToFile(occurrenceFile, invalidRow, true);
+
+		DwcaArchiveDescriptor descriptor = DwcaArchiveDescriptor.open(dwcaFolder);
+		DwcaFileScanner scanner = new DwcaFileScanner();
+		// use many small chunks
+		scanner.setChunkSize(1024);
+		scanner.setParallelism(3);
+		DwcaFileStatistics core = scanner.scan(dwcaFolder, descriptor.getCore(), true);
+
+		assertEquals(numberOfRows + 4, core.getNumberOfRows());
+		assertTrue(core.hasErrors());
+		assertEquals(1, core.getNumberOfDuplicateIds());
+		assertEquals(1, core.getNumberOfRowsWithMissingColumns());
+		assertEquals(1, core.getNumberOfEmptyIds());
+		assertEquals(1, core.getNumberOfMalformedRows());
+		assertTrue(core.getErrorSamples().contains("row " + (numberOfRows + 1) + ": duplicate id 1"));
+		assertTrue(core.getErrorSamples().contains("row " + (numberOfRows + 2) + ": 2 columns instead of 67"));
+	}
+
+	@Test
+	public void testManyIds() throws IOException {
+		// short rows with 14 bytes ids, the ids fill more than one chunk of the id set
+		int numberOfRows = 10000;
+		List<String> lines = new ArrayList<String>(numberOfRows + 1);
+		for (int i = 0; i < numberOfRows; i++) {
+			lines.add(String.format("QMOR:%09d", i));
+		}
+		lines.add(lines.get(4097));
+		FileUtils.writeLines(occurrenceFile, "UTF-8", lines, "\n");
+
+		DwcaArchiveDescriptor descriptor = DwcaArchiveDescriptor.open(dwcaFolder);
+		DwcaFileStatistics core = new DwcaFileScanner().scan(dwcaFolder, descriptor.getCore(), true);
+
+		assertEquals(numberOfRows + 1, core.getNumberOfRows());
+		assertEquals(1, core.getNumberOfDuplicateIds());
+		assertTrue(core.getErrorSamples().contains("row " + (numberOfRows + 1) + ": duplicate id " + lines.get(4097)));
+	}
+
+	@Test
+	public void testExtension() throws IOException {
+		DwcaArchiveDescriptor descriptor = DwcaArchiveDescriptor.open(dwcaFolder);
+		DwcaFileStatistics multimedia = new DwcaFileScanner().scan(dwcaFolder, descriptor.getExtensions().iterator().next(),
+				false);
+		assertEquals(1, multimedia.getNumberOfRows());
+		assertFalse(multimedia.isDuplicateIdsChecked());
+		assertFalse(multimedia.hasErrors());
+	}
+}
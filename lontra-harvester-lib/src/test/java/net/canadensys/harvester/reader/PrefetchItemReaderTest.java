@@ -0,0 +1,168 @@
+package net.canadensys.harvester.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.canadensys.harvester.ItemReaderIF;
+import net.canadensys.harvester.occurrence.SharedParameterEnum;
+import net.canadensys.harvester.occurrence.checkpoint.DwcaCheckpoint;
+import net.canadensys.harvester.occurrence.reader.ResumableReaderIF;
+
+import org.junit.Test;
+
+/**
+ * Test the read-ahead of PrefetchItemReader.
+ *
+ * @author canadensys
+ *
+ */
+public class PrefetchItemReaderTest {
+
+	private static final int NUMBER_OF_ITEMS = 10000;
+
+	@Test
+	public void testReadAhead() {
+		CountingReader countingReader = new CountingReader(NUMBER_OF_ITEMS, -1);
+		PrefetchItemReader<Integer> reader = new PrefetchItemReader<Integer>(countingReader, 8);
+		reader.openReader(new HashMap<SharedParameterEnum, Object>());
+
+		Integer item;
+		int expected = 0;
+		while ((item = reader.read()) != null) {
+			assertEquals(expected, item.intValue());
+			// the checkpoint follows the items returned, not the items read ahead
+			assertEquals(expected + 1, reader.getCheckpoint().getOrdinal());
+			expected++;
+		}
+		reader.closeReader();
+		assertEquals(NUMBER_OF_ITEMS, expected);
+		assertTrue(countingReader.closed);
+	}
+
+	@Test
+	public void testAbort() {
+		CountingReader countingReader = new CountingReader(NUMBER_OF_ITEMS, -1);
+		PrefetchItemReader<Integer> reader = new PrefetchItemReader<Integer>(countingReader, 8);
+		reader.openReader(new HashMap<SharedParameterEnum, Object>());
+		assertEquals(0, reader.read().intValue());
+		reader.abort();
+		assertNull(reader.read());
+		reader.closeReader();
+		assertTrue(countingReader.closed);
+	}
+
+	@Test
+	public void testReaderException() {
+		PrefetchItemReader<Integer> reader = new PrefetchItemReader<Integer>(new CountingReader(NUMBER_OF_ITEMS, 5), 8);
+		reader.openReader(new HashMap<SharedParameterEnum, Object>());
+		try {
+			// items read before the error are returned
+			for (int i = 0; i < 5; i++) {
+				assertEquals(i, reader.read().intValue());
+			}
+			reader.read();
+			fail("The exception of the wrapped reader should be rethrown");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("read error", e.getMessage());
+		}
+		finally {
+			reader.closeReader();
+		}
+	}
+
+	/**
+	 * An Error of the wrapped reader should not leave read() waiting for the next item.
+	 */
+	@Test(timeout = 10000)
+	public void testReaderError() {
+		PrefetchItemReader<Integer> reader = new PrefetchItemReader<Integer>(new CountingReader(NUMBER_OF_ITEMS, 5, true), 8);
+		reader.openReader(new HashMap<SharedParameterEnum, Object>());
+		try {
+			for (int i = 0; i < 5; i++) {
+				assertEquals(i, reader.read().intValue());
+			}
+			reader.read();
+			fail("The error of the wrapped reader should be rethrown");
+		}
+		catch (Error e) {
+			assertEquals("read error", e.getMessage());
+		}
+		finally {
+			reader.closeReader();
+		}
+	}
+
+	/**
+	 * Reader returning a sequence of Integer.
+	 */
+	private static class CountingReader implements ItemReaderIF<Integer>, ResumableReaderIF {
+		private final int numberOfItems;
+		private final int failAt;
+		// throw an Error instead of a RuntimeException
+		private final boolean error;
+		private volatile boolean canceled;
+		private volatile boolean closed;
+		private int current;
+
+		CountingReader(int numberOfItems, int failAt) {
+			this(numberOfItems, failAt, false);
+		}
+
+		CountingReader(int numberOfItems, int failAt, boolean error) {
+			this.numberOfItems = numberOfItems;
+			this.failAt = failAt;
+			this.error = error;
+		}
+
+		@Override
+		public void openReader(Map<SharedParameterEnum, Object> sharedParameters) {
+		}
+
+		@Override
+		public void closeReader() {
+			closed = true;
+		}
+
+		@Override
+		public void abort() {
+			canceled = true;
+		}
+
+		@Override
+		public Integer read() {
+			if (canceled || current == numberOfItems) {
+				return null;
+			}
+			if (current == failAt && error) {
+				throw new Error("read error");
+			}
+			if (current == failAt) {
+				throw new IllegalStateException("read error");
+			}
+			return current++;
+		}
+
+		@Override
+		public DwcaCheckpoint getCheckpoint() {
+			DwcaCheckpoint checkpoint = new DwcaCheckpoint();
+			fillCheckpoint(checkpoint);
+			return checkpoint;
+		}
+
+		@Override
+		public void fillCheckpoint(DwcaCheckpoint checkpoint) {
+			checkpoint.setOrdinal(current);
+		}
+
+		@Override
+		public boolean isCheckpointSupported() {
+			return true;
+		}
+	}
+}
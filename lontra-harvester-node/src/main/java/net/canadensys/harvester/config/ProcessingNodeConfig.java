@@ -23,6 +23,7 @@ import net.canadensys.harvester.occurrence.processor.OccurrenceProcessor;
 import net.canadensys.harvester.occurrence.processor.ResourceMetadataProcessor;
 import net.canadensys.harvester.occurrence.step.InsertResourceInformationStep;
 import net.canadensys.harvester.occurrence.step.async.AsyncManageOccurrenceExtensionStep;
+import net.canadensys.harvester.occurrence.step.async.ProcessDwcaChunkStep;
 import net.canadensys.harvester.occurrence.step.async.ProcessInsertOccurrenceStep;
 import net.canadensys.harvester.occurrence.writer.OccurrenceHibernateWriter;
 import net.canadensys.harvester.occurrence.writer.RawOccurrenceHibernateWriter;
@@ -167,6 +168,11 @@ public class ProcessingNodeConfig {
 		return new ProcessInsertOccurrenceStep();
 	}
 
+	@Bean(name = "processDwcaChunkStep")
+	public StepIF processDwcaChunkStep() {
+		return new ProcessDwcaChunkStep();
+	}
+
 	@Bean(name = "insertResourceInformationStep")
 	public StepIF insertResourceInformationStep() {
 		return new InsertResourceInformationStep();
@@ -37,6 +37,9 @@ public class ProcessingNodeMain {
 	@Autowired
 	private StepIF processInsertOccurrenceStep;
 
+	@Autowired
+	private StepIF processDwcaChunkStep;
+
 	@Autowired
 	private StepIF insertResourceInformationStep;
 
@@ -72,6 +75,9 @@ public class ProcessingNodeMain {
 		registeredMsgHandlers.add((JMSConsumerMessageHandlerIF) processInsertOccurrenceStep);
 		registeredSteps.add(processInsertOccurrenceStep);
 
+		registeredMsgHandlers.add((JMSConsumerMessageHandlerIF) processDwcaChunkStep);
+		registeredSteps.add(processDwcaChunkStep);
+
 		registeredMsgHandlers.add((JMSConsumerMessageHandlerIF) insertResourceInformationStep);
 		registeredSteps.add(insertResourceInformationStep);
 